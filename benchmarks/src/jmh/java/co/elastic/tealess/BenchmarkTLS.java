@@ -0,0 +1,111 @@
+package co.elastic.tealess;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+
+/**
+ * In-memory TLS peers for the benchmarks. Everything here runs over ByteBuffers, so no sockets are involved, and
+ * handshakes are driven by {@link EngineHandshake} from the core tests.
+ * <p>
+ * The server uses the self-signed keystore from the core tests, and clients trust the same keystore.
+ */
+public final class BenchmarkTLS {
+  private static final char[] passphrase = "password".toCharArray();
+
+  // TLS 1.2 so that the server's Certificate message is in the clear and can be decoded.
+  public static final String[] protocols = {"TLSv1.2"};
+
+  private BenchmarkTLS() {
+  }
+
+  public static KeyStore keyStore() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    try (InputStream in = BenchmarkTLS.class.getClassLoader().getResourceAsStream("keystore.jks")) {
+      keyStore.load(in, passphrase);
+    }
+    return keyStore;
+  }
+
+  public static SSLContext serverContext() throws Exception {
+    KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(keyStore(), passphrase);
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(kmf.getKeyManagers(), null, null);
+    return context;
+  }
+
+  public static SSLEngine server(SSLContext context) {
+    SSLEngine server = context.createSSLEngine();
+    server.setUseClientMode(false);
+    server.setEnabledProtocols(protocols);
+    return server;
+  }
+
+  public static SSLContext jdkClientContext() throws Exception {
+    TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    tmf.init(keyStore());
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, tmf.getTrustManagers(), null);
+    return context;
+  }
+
+  public static SSLContext tealessClientContext() throws Exception {
+    TealessSSLContextBuilder builder = new TealessSSLContextBuilder();
+    builder.setTrustStore(keyStore());
+    builder.setTracker((chain, authType, exception) -> { });
+    return builder.build();
+  }
+
+  /**
+   * The engine is created without peer host and port, so each one performs a full handshake rather than resuming a
+   * cached session.
+   */
+  public static SSLEngine client(SSLContext context) {
+    SSLEngine client = context.createSSLEngine();
+    client.setUseClientMode(true);
+    client.setEnabledProtocols(protocols);
+    return client;
+  }
+
+  /**
+   * Capture the first flight from each side: the client's ClientHello and the server's reply (ServerHello,
+   * Certificate, ServerKeyExchange, ServerHelloDone), as they appear on the wire.
+   *
+   * @return { client bytes, server bytes }
+   */
+  public static byte[][] captureFirstFlights() throws Exception {
+    SSLEngine client = client(jdkClientContext());
+    SSLEngine server = server(serverContext());
+    ByteBuffer clientToServer = ByteBuffer.allocate(client.getSession().getPacketBufferSize() * 4);
+    ByteBuffer serverToClient = ByteBuffer.allocate(server.getSession().getPacketBufferSize() * 4);
+    ByteBuffer application = ByteBuffer.allocate(server.getSession().getApplicationBufferSize());
+
+    client.beginHandshake();
+    server.beginHandshake();
+    EngineHandshake.step(client, clientToServer, serverToClient, application);
+    byte[] clientFlight = copy(clientToServer);
+    EngineHandshake.step(server, serverToClient, clientToServer, application);
+    byte[] serverFlight = copy(serverToClient);
+    return new byte[][]{clientFlight, serverFlight};
+  }
+
+  /**
+   * Run a complete handshake between client and server.
+   */
+  public static void handshake(SSLEngine client, SSLEngine server) throws Exception {
+    EngineHandshake.run(client, server);
+  }
+
+  private static byte[] copy(ByteBuffer written) {
+    ByteBuffer readable = written.duplicate();
+    readable.flip();
+    byte[] bytes = new byte[readable.remaining()];
+    readable.get(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,85 @@
+package co.elastic.tealess;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TealessSSLEngine compared with the JDK SSLEngine it wraps, on the client side of an in-memory connection.
+ * <p>
+ * The server is always a plain JDK engine, so differences between the two implementations are Tealess overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SSLEngineBenchmark {
+  @Param({"jdk", "tealess"})
+  public String implementation;
+
+  @Param({"1024", "16384"})
+  public int size;
+
+  private SSLContext clientContext;
+  private SSLContext serverContext;
+  private SSLEngine client;
+  private SSLEngine server;
+
+  private ByteBuffer application;
+  private ByteBuffer network;
+  private ByteBuffer received;
+
+  @Setup
+  public void setup() throws Exception {
+    clientContext = implementation.equals("tealess") ? BenchmarkTLS.tealessClientContext() : BenchmarkTLS.jdkClientContext();
+    client = BenchmarkTLS.client(clientContext);
+    serverContext = BenchmarkTLS.serverContext();
+    server = BenchmarkTLS.server(serverContext);
+    BenchmarkTLS.handshake(client, server);
+
+    application = ByteBuffer.allocate(size);
+    network = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+    received = ByteBuffer.allocate(server.getSession().getApplicationBufferSize());
+  }
+
+  /**
+   * Client wrap then server unwrap of one record of application data.
+   */
+  @Benchmark
+  public int wrapUnwrap() throws SSLException {
+    application.clear();
+    network.clear();
+    client.wrap(application, network);
+    network.flip();
+    received.clear();
+    server.unwrap(network, received);
+    return received.position();
+  }
+
+  /**
+   * A complete handshake with fresh engines, which is where Tealess captures wire data.
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public SSLEngine handshake() throws Exception {
+    SSLEngine fresh = BenchmarkTLS.client(clientContext);
+    BenchmarkTLS.handshake(fresh, BenchmarkTLS.server(serverContext));
+    return fresh;
+  }
+}
@@ -0,0 +1,122 @@
+package co.elastic.tealess.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call overhead of the observable stream wrappers compared with the streams they wrap.
+ * <p>
+ * The wrapped streams do no work, so the difference between the raw and observed benchmarks is the cost of the
+ * wrapper plus an observer that only counts bytes. The detached benchmarks measure the wrappers after
+ * {@link ObservableInputStream#detach()}, which is how they run once a handshake has completed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservableStreamBenchmark {
+  @Param({"1", "64", "16384"})
+  public int chunkSize;
+
+  private byte[] chunk;
+  private long observed;
+
+  private InputStream rawInput;
+  private InputStream observedInput;
+  private InputStream detachedInput;
+  private OutputStream rawOutput;
+  private OutputStream observedOutput;
+  private OutputStream detachedOutput;
+
+  @Setup
+  public void setup() {
+    chunk = new byte[chunkSize];
+    InputObserver inputObserver = (b, off, len, ret) -> observed += ret;
+    OutputObserver outputObserver = (b, off, len) -> observed += len;
+    ExceptionObserver exceptionObserver = cause -> { };
+
+    rawInput = new NullInputStream();
+    observedInput = new ObservableInputStream(rawInput, inputObserver, exceptionObserver);
+    ObservableInputStream detached = new ObservableInputStream(rawInput, inputObserver, exceptionObserver);
+    detached.detach();
+    detachedInput = detached;
+
+    rawOutput = new NullOutputStream();
+    observedOutput = new ObservableOutputStream(rawOutput, outputObserver, exceptionObserver);
+    ObservableOutputStream detachedOut = new ObservableOutputStream(rawOutput, outputObserver, exceptionObserver);
+    detachedOut.detach();
+    detachedOutput = detachedOut;
+  }
+
+  @Benchmark
+  public int rawRead() throws IOException {
+    return rawInput.read(chunk, 0, chunkSize);
+  }
+
+  @Benchmark
+  public int observedRead() throws IOException {
+    return observedInput.read(chunk, 0, chunkSize);
+  }
+
+  @Benchmark
+  public int detachedRead() throws IOException {
+    return detachedInput.read(chunk, 0, chunkSize);
+  }
+
+  @Benchmark
+  public void rawWrite(Blackhole blackhole) throws IOException {
+    rawOutput.write(chunk, 0, chunkSize);
+    blackhole.consume(observed);
+  }
+
+  @Benchmark
+  public void observedWrite(Blackhole blackhole) throws IOException {
+    observedOutput.write(chunk, 0, chunkSize);
+    blackhole.consume(observed);
+  }
+
+  @Benchmark
+  public void detachedWrite(Blackhole blackhole) throws IOException {
+    detachedOutput.write(chunk, 0, chunkSize);
+    blackhole.consume(observed);
+  }
+
+  private static class NullInputStream extends InputStream {
+    @Override
+    public int read() {
+      return 0;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      return len;
+    }
+  }
+
+  private static class NullOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+}
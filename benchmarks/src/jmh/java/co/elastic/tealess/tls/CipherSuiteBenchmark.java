@@ -0,0 +1,46 @@
+package co.elastic.tealess.tls;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cipher suite lookups for the suites a JDK 8 client offers by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherSuiteBenchmark {
+  // Pairs of code point bytes, in the order a JDK 8 ClientHello sends them.
+  private final byte[] offered = {
+          (byte) 0xC0, (byte) 0x2C, (byte) 0xC0, (byte) 0x2B, (byte) 0xC0, (byte) 0x30, (byte) 0xC0, (byte) 0x2F,
+          (byte) 0x00, (byte) 0x9F, (byte) 0x00, (byte) 0xA3, (byte) 0x00, (byte) 0x9E, (byte) 0x00, (byte) 0xA2,
+          (byte) 0xC0, (byte) 0x24, (byte) 0xC0, (byte) 0x28, (byte) 0xC0, (byte) 0x23, (byte) 0xC0, (byte) 0x27,
+          (byte) 0x00, (byte) 0x6B, (byte) 0x00, (byte) 0x6A, (byte) 0x00, (byte) 0x67, (byte) 0x00, (byte) 0x40,
+          (byte) 0xC0, (byte) 0x2E, (byte) 0xC0, (byte) 0x32, (byte) 0xC0, (byte) 0x2D, (byte) 0xC0, (byte) 0x31,
+          (byte) 0xC0, (byte) 0x26, (byte) 0xC0, (byte) 0x2A, (byte) 0xC0, (byte) 0x25, (byte) 0xC0, (byte) 0x29,
+          (byte) 0xC0, (byte) 0x0A, (byte) 0xC0, (byte) 0x14, (byte) 0xC0, (byte) 0x09, (byte) 0xC0, (byte) 0x13,
+          (byte) 0x00, (byte) 0x39, (byte) 0x00, (byte) 0x38, (byte) 0x00, (byte) 0x33, (byte) 0x00, (byte) 0x32,
+          (byte) 0x00, (byte) 0x9D, (byte) 0x00, (byte) 0x9C, (byte) 0x00, (byte) 0x3D, (byte) 0x00, (byte) 0x3C,
+          (byte) 0x00, (byte) 0x35, (byte) 0x00, (byte) 0x2F, (byte) 0x00, (byte) 0xFF
+  };
+
+  @Benchmark
+  public void forValue(Blackhole blackhole) throws InvalidValue {
+    for (int i = 0; i < offered.length; i += 2) {
+      blackhole.consume(CipherSuite.forValue(offered[i], offered[i + 1]));
+    }
+  }
+}
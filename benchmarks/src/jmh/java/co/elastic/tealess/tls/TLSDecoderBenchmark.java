@@ -0,0 +1,75 @@
+package co.elastic.tealess.tls;
+
+import co.elastic.tealess.BenchmarkTLS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of real ClientHello and server first-flight bytes captured from an in-memory JDK handshake.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLSDecoderBenchmark {
+  private ByteBuffer clientHello;
+  private ByteBuffer serverFlight;
+
+  @Setup
+  public void setup() throws Exception {
+    byte[][] flights = BenchmarkTLS.captureFirstFlights();
+    clientHello = ByteBuffer.wrap(flights[0]);
+    serverFlight = ByteBuffer.wrap(flights[1]);
+  }
+
+  /**
+   * Record and handshake header decoding only; the hello's fields are left undecoded.
+   */
+  @Benchmark
+  public TLSHandshake decodeClientHello() throws InvalidValue {
+    TLSPlaintext plaintext = TLSDecoder.decode(clientHello.duplicate());
+    return TLSDecoder.decodeHandshake(plaintext.getPayload());
+  }
+
+  @Benchmark
+  public Object decodeClientHelloCipherSuites() throws InvalidValue {
+    TLSPlaintext plaintext = TLSDecoder.decode(clientHello.duplicate());
+    return ((ClientHello) TLSDecoder.decodeHandshake(plaintext.getPayload())).getCipherSuites();
+  }
+
+  /**
+   * Stream-decode ServerHello, Certificate, ServerKeyExchange and ServerHelloDone without parsing the certificates.
+   */
+  @Benchmark
+  public void decodeServerFlight(Blackhole blackhole) throws InvalidValue {
+    TLSStreamDecoder decoder = new TLSStreamDecoder(blackhole::consume);
+    decoder.feed(serverFlight.duplicate());
+  }
+
+  /**
+   * As decodeServerFlight, but also parse the certificate chain as X.509.
+   */
+  @Benchmark
+  public void decodeServerFlightCertificates(Blackhole blackhole) throws InvalidValue {
+    TLSStreamDecoder decoder = new TLSStreamDecoder(message -> {
+      if (message instanceof CertificateMessage) {
+        blackhole.consume(((CertificateMessage) message).getChain());
+      }
+    });
+    decoder.feed(serverFlight.duplicate());
+  }
+}
@@ -15,7 +15,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.nio.file.Path;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
@@ -25,7 +24,6 @@ import java.security.cert.CertificateException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Created by jls on 4/6/2017.
@@ -82,7 +80,7 @@ public class BeatsCommand implements Command {
 
     TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
     try {
-      cb.setTrustStore(trust.buildKeyStore());
+      cb.setTrustStore(trust);
       cb.setKeyManagerFactory(keys.buildKeyManagerFactory());
     } catch (IOException | CertificateException | NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
       throw new Bug("Failed building keystores", e);
@@ -94,31 +92,23 @@ public class BeatsCommand implements Command {
     } catch (KeyManagementException | KeyStoreException | NoSuchAlgorithmException e) {
       throw new ConfigurationProblem("Failed to build tealess context.", e);
     }
+    checker.setResolver(name -> {
+      Collection<InetAddress> addresses = Resolver.SystemResolver.resolve(name);
+      System.out.printf("%s resolved to %d addresses\n\n", name, addresses.size());
+      return addresses;
+    });
 
 
     // XXX: the 'elasticsearch' output supports URLs. Probably should handle this.
     InetSocketAddressInput addressInput = new InetSocketAddressInput(-1); // no default port
     for (String address : ((List<String>) flatSettings.get(settingsPrefix + ".hosts"))) {
-      Collection<InetAddress> addresses;
       InetSocketAddress inetAddress = addressInput.parse(address);
 
       if (inetAddress.getPort() == -1) {
         throw new ConfigurationProblem("No port given for host " + address);
       }
 
-      String hostname = inetAddress.getHostString();
-
-      try {
-        logger.trace("Doing name resolution on {}", hostname);
-        addresses = Resolver.SystemResolver.resolve(hostname);
-      } catch (UnknownHostException e) {
-        throw new ConfigurationProblem("Unknown host", e);
-      }
-
-      System.out.printf("%s resolved to %d addresses\n\n", hostname, addresses.size());
-      List<SSLReport> reports = addresses.stream()
-              .map(a -> checker.check(new InetSocketAddress(a, inetAddress.getPort()), hostname))
-              .collect(Collectors.toList());
+      List<SSLReport> reports = checker.checkAll(inetAddress);
 
       SSLReportAnalyzer.analyzeMany(reports);
     }
@@ -0,0 +1,217 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess.cli;
+
+import co.elastic.tealess.Bug;
+import co.elastic.tealess.ConfigurationProblem;
+import co.elastic.tealess.KeyStoreBuilder;
+import co.elastic.tealess.TealessSSLContextBuilder;
+import co.elastic.tealess.cli.bench.HandshakeBenchmark;
+import co.elastic.tealess.cli.input.ArgsParser;
+import co.elastic.tealess.cli.input.InetSocketAddressInput;
+import co.elastic.tealess.metrics.LatencyHistogram;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load a TLS server with handshakes and report how many it completes per second.
+ */
+public class BenchCommand implements Command {
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final String DESCRIPTION = "Handshake with an address over many concurrent connections and report handshake throughput and latency.";
+  private static final double nanosPerMilli = 1e6;
+
+  private final KeyStoreBuilder keys;
+  private final KeyStoreBuilder trust;
+  private InetSocketAddress address = null;
+  private int connections = 16;
+  private double rate = 0;
+  private long duration = 10;
+  private int resumePercent = 0;
+  private int timeout = 5000;
+
+  BenchCommand() throws Bug {
+    try {
+      keys = new KeyStoreBuilder();
+      trust = new KeyStoreBuilder();
+    } catch (IOException | CertificateException | KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
+      throw new Bug("'new KeyStoreBuilder' failed", e);
+    }
+  }
+
+  private void setAddress(InetSocketAddress address) {
+    this.address = address;
+  }
+
+  private void setConnections(Integer connections) {
+    if (connections < 1) {
+      throw new IllegalArgumentException("connections must be at least 1");
+    }
+    this.connections = connections;
+  }
+
+  private void setRate(Double rate) {
+    if (rate < 0) {
+      throw new IllegalArgumentException("rate cannot be negative");
+    }
+    this.rate = rate;
+  }
+
+  private void setDuration(Long duration) {
+    if (duration < 1) {
+      throw new IllegalArgumentException("duration must be at least 1 second");
+    }
+    this.duration = duration;
+  }
+
+  private void setResumePercent(Integer percent) {
+    if (percent < 0 || percent > 100) {
+      throw new IllegalArgumentException("resume-percent must be between 0 and 100");
+    }
+    this.resumePercent = percent;
+  }
+
+  private void setTimeout(Integer timeout) {
+    if (timeout < 1) {
+      throw new IllegalArgumentException("timeout must be positive");
+    }
+    this.timeout = timeout;
+  }
+
+  private void setCAPath(Path path) throws CertificateException, KeyStoreException, IOException {
+    logger.info("Adding to trust: capath {}", path);
+    trust.addCAPath(path);
+  }
+
+  private void setTrustStore(Path path) throws UnrecoverableKeyException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    trust.useKeyStore(path.toFile());
+  }
+
+  private void setKeyStore(Path path) throws UnrecoverableKeyException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    keys.useKeyStore(path.toFile());
+  }
+
+  @Override
+  public ArgsParser getParser() {
+    return new ArgsParser()
+            .setDescription(DESCRIPTION)
+            .addNamed(new Setting<Level>("log-level", "The log level").setDefaultValue(Level.WARN).parseWith(Level::valueOf), LogUtils::setLogLevel)
+            .addNamed(new Setting<Path>("capath", "The path to a file containing one or more certificates to trust in PEM format.").parseWith(Paths::get), this::setCAPath)
+            .addNamed(new Setting<Path>("truststore", "The path to a java keystore or pkcs12 file containing certificate authorities to trust").parseWith(Paths::get), this::setTrustStore)
+            .addNamed(new Setting<Path>("keystore", "The path to a java keystore or pkcs12 file containing private key(s) and client certificates to use when connecting to a remote server.").parseWith(Paths::get), this::setKeyStore)
+            .addNamed(new Setting<Integer>("connections", "The number of connections handshaking at the same time").setDefaultValue(connections).parseWith(Integer::valueOf), this::setConnections)
+            .addNamed(new Setting<Double>("rate", "The handshakes per second to attempt across all connections, or 0 for as many as possible").setDefaultValue(rate).parseWith(Double::valueOf), this::setRate)
+            .addNamed(new Setting<Long>("duration", "How long, in seconds, to keep handshaking").setDefaultValue(duration).parseWith(Long::valueOf), this::setDuration)
+            .addNamed(new Setting<Integer>("resume-percent", "The percentage of handshakes, 0 to 100, whose session is kept for later handshakes to resume").setDefaultValue(resumePercent).parseWith(Integer::valueOf), this::setResumePercent)
+            .addNamed(new Setting<Integer>("timeout", "The time, in milliseconds, to wait for a connection or for the server during a handshake").setDefaultValue(timeout).parseWith(Integer::valueOf), this::setTimeout)
+            .addPositional(new Setting<>("address", "The address in form of `host` or `host:port` to connect", new InetSocketAddressInput(443)), this::setAddress);
+  }
+
+  @Override
+  public void run() throws ConfigurationProblem, Bug {
+    if (address.isUnresolved()) {
+      throw new ConfigurationProblem("Unable to resolve " + address.getHostString());
+    }
+
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    // The default tracker prints every certificate chain, which would drown out the results.
+    cb.setTracker((chain, authType, exception) -> { });
+    SSLContext context;
+    try {
+      cb.setTrustStore(trust);
+      cb.setKeyManagerFactory(keys.buildKeyManagerFactory());
+      context = cb.build();
+    } catch (IOException | CertificateException | UnrecoverableKeyException e) {
+      throw new Bug("Failed building keystores", e);
+    } catch (KeyManagementException | KeyStoreException | NoSuchAlgorithmException e) {
+      throw new ConfigurationProblem("Failed to build tealess context.", e);
+    }
+
+    HandshakeBenchmark benchmark = new HandshakeBenchmark(context, address, address.getHostString());
+    benchmark.setConnections(connections);
+    benchmark.setRate(rate);
+    benchmark.setDuration(duration, TimeUnit.SECONDS);
+    benchmark.setResumePercent(resumePercent);
+    benchmark.setTimeout(timeout);
+
+    System.out.printf("Handshaking with %s over %d connections for %d seconds\n", address, connections, duration);
+    benchmark.start();
+    long previous = 0;
+    try {
+      while (!benchmark.awaitCompletion(1, TimeUnit.SECONDS)) {
+        long total = total(benchmark);
+        System.out.printf("  %d handshakes/s, %d failed so far\n", total - previous, benchmark.getFailed());
+        previous = total;
+      }
+    } catch (InterruptedException e) {
+      benchmark.stop();
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    report(benchmark);
+  }
+
+  private static long total(HandshakeBenchmark benchmark) {
+    return benchmark.getFullHandshakes().getCount() + benchmark.getResumedHandshakes().getCount() + benchmark.getFailed();
+  }
+
+  private static void report(HandshakeBenchmark benchmark) {
+    double seconds = benchmark.getElapsed(TimeUnit.NANOSECONDS) / 1e9;
+    System.out.println();
+    System.out.printf("Completed in %.1f seconds\n", seconds);
+    report("Full handshakes", benchmark.getFullHandshakes(), seconds);
+    report("Resumed handshakes", benchmark.getResumedHandshakes(), seconds);
+    if (benchmark.getTicketsMissed() > 0) {
+      System.out.printf("Sessions not kept because their TLS 1.3 ticket could not be read in time: %d\n", benchmark.getTicketsMissed());
+    }
+    System.out.printf("Failed handshakes: %d (%.1f/s)\n", benchmark.getFailed(), benchmark.getFailed() / seconds);
+    for (Map.Entry<String, HandshakeBenchmark.Failure> entry : benchmark.getFailures().entrySet()) {
+      HandshakeBenchmark.Failure failure = entry.getValue();
+      System.out.printf("  %d x %s, e.g. %s\n", failure.getCount(), entry.getKey(), failure.getExample().getMessage());
+    }
+  }
+
+  private static void report(String name, LatencyHistogram histogram, double seconds) {
+    System.out.printf("%s: %d (%.1f/s)\n", name, histogram.getCount(), histogram.getCount() / seconds);
+    if (histogram.getCount() > 0) {
+      System.out.printf("  latency p50 %.2fms, p99 %.2fms, p99.9 %.2fms, max %.2fms\n",
+              histogram.getValueAtPercentile(50) / nanosPerMilli,
+              histogram.getValueAtPercentile(99) / nanosPerMilli,
+              histogram.getValueAtPercentile(99.9) / nanosPerMilli,
+              histogram.getMax() / nanosPerMilli);
+    }
+  }
+}
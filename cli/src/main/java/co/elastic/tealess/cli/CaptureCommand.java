@@ -0,0 +1,154 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess.cli;
+
+import co.elastic.tealess.Bug;
+import co.elastic.tealess.ConfigurationProblem;
+import co.elastic.tealess.cli.input.ArgsParser;
+import co.elastic.tealess.cli.input.PathInput;
+import co.elastic.tealess.metrics.LatencyHistogram;
+import co.elastic.tealess.pcap.CaptureAnalyzer;
+import co.elastic.tealess.pcap.HandshakeSummary;
+import org.apache.logging.log4j.Level;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summarize the TLS handshakes in a packet capture.
+ */
+public class CaptureCommand implements Command {
+  private static final String DESCRIPTION = "Diagnose the TLS handshakes in a pcap or pcapng capture file.";
+
+  private Path path = null;
+  private boolean failuresOnly = false;
+  private boolean showMessages = false;
+  private long idleTimeout = 300;
+
+  private final Map<HandshakeSummary.Outcome, Long> outcomes = new EnumMap<>(HandshakeSummary.Outcome.class);
+  private final Map<String, Long> versions = new TreeMap<>();
+  private final Map<String, Long> problems = new TreeMap<>();
+  private final LatencyHistogram handshakeTime = new LatencyHistogram();
+  private final LatencyHistogram serverResponseTime = new LatencyHistogram();
+
+  private void setPath(Path path) {
+    this.path = path;
+  }
+
+  private void setFailuresOnly(Boolean failuresOnly) {
+    this.failuresOnly = failuresOnly;
+  }
+
+  private void setShowMessages(Boolean showMessages) {
+    this.showMessages = showMessages;
+  }
+
+  private void setIdleTimeout(Long idleTimeout) {
+    if (idleTimeout < 1) {
+      throw new IllegalArgumentException("idle-timeout must be positive");
+    }
+    this.idleTimeout = idleTimeout;
+  }
+
+  @Override
+  public ArgsParser getParser() {
+    return new ArgsParser()
+            .setDescription(DESCRIPTION)
+            .addNamed(new Setting<Level>("log-level", "The log level").setDefaultValue(Level.WARN).parseWith(Level::valueOf), LogUtils::setLogLevel)
+            .addNamed(new Setting<Boolean>("failures", "Only list the handshakes which did not complete").setDefaultValue(failuresOnly).parseWith(Boolean::valueOf), this::setFailuresOnly)
+            .addNamed(new Setting<Boolean>("messages", "List the handshake messages under each handshake listed").setDefaultValue(showMessages).parseWith(Boolean::valueOf), this::setShowMessages)
+            .addNamed(new Setting<Long>("idle-timeout", "The time, in seconds of capture time, after which a silent connection is taken to be over").setDefaultValue(idleTimeout).parseWith(Long::valueOf), this::setIdleTimeout)
+            .addPositional(new Setting<>("capture", "The path to the pcap or pcapng file", PathInput.singleton), this::setPath);
+  }
+
+  @Override
+  public void run() throws ConfigurationProblem, Bug {
+    CaptureAnalyzer analyzer = new CaptureAnalyzer(this::handshake);
+    analyzer.setIdleTimeout(idleTimeout, TimeUnit.SECONDS);
+    analyzer.setKeepMessages(showMessages);
+    long start = System.nanoTime();
+    try {
+      analyzer.analyze(path);
+    } catch (IOException e) {
+      throw new ConfigurationProblem("Unable to read the capture " + path, e);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.println();
+    System.out.printf("%d handshakes in %d TCP connections and %d packets, read in %.1f seconds\n",
+            analyzer.getHandshakes(), analyzer.getConnections(), analyzer.getPackets(), seconds);
+    if (analyzer.isTruncated()) {
+      System.out.println("Warning: the capture file ends in the middle of a packet.");
+    }
+    outcomes.forEach((outcome, count) -> System.out.printf("  %s: %d\n", outcome, count));
+    if (!versions.isEmpty()) {
+      System.out.println("Versions:");
+      versions.forEach((version, count) -> System.out.printf("  %s: %d\n", version, count));
+    }
+    report("Handshake time (ClientHello to both sides encrypting)", handshakeTime);
+    report("Server response time (ClientHello to ServerHello)", serverResponseTime);
+    if (!problems.isEmpty()) {
+      System.out.println("Problems:");
+      problems.forEach((problem, count) -> System.out.printf("  %d x %s\n", count, problem));
+    }
+  }
+
+  private void handshake(HandshakeSummary summary) {
+    HandshakeSummary.Outcome outcome = summary.getOutcome();
+    outcomes.merge(outcome, 1L, Long::sum);
+    if (summary.getVersion() != null) {
+      versions.merge(summary.getVersion().toString(), 1L, Long::sum);
+    }
+    if (summary.getHandshakeTime(TimeUnit.NANOSECONDS) >= 0) {
+      handshakeTime.record(summary.getHandshakeTime(TimeUnit.NANOSECONDS));
+    }
+    if (summary.getServerResponseTime(TimeUnit.NANOSECONDS) >= 0) {
+      serverResponseTime.record(summary.getServerResponseTime(TimeUnit.NANOSECONDS));
+    }
+    String problem = summary.getProblem();
+    if (problem != null) {
+      problems.merge(problem, 1L, Long::sum);
+    }
+
+    if (failuresOnly && outcome == HandshakeSummary.Outcome.Completed) {
+      return;
+    }
+    System.out.println(summary);
+    if (problem != null) {
+      System.out.println("  " + problem);
+    }
+    if (showMessages) {
+      System.out.println(summary.formatMessages());
+    }
+  }
+
+  private static void report(String name, LatencyHistogram histogram) {
+    if (histogram.getCount() == 0) {
+      return;
+    }
+    System.out.printf("%s: p50 %.3fms, p90 %.3fms, p99 %.3fms, max %.3fms\n", name,
+            histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+            histogram.getValueAtPercentile(99) / 1e6, histogram.getMax() / 1e6);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess.cli;
+
+import co.elastic.tealess.Bug;
+import co.elastic.tealess.CipherSuiteScanner;
+import co.elastic.tealess.ConfigurationProblem;
+import co.elastic.tealess.ServerCapabilities;
+import co.elastic.tealess.cli.input.ArgsParser;
+import co.elastic.tealess.cli.input.InetSocketAddressInput;
+import co.elastic.tealess.tls.CipherSuite;
+import org.apache.logging.log4j.Level;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * List the protocols and cipher suites a server accepts.
+ */
+public class CiphersCommand implements Command {
+  private static final String DESCRIPTION = "Find every protocol and cipher suite an address accepts.";
+
+  private InetSocketAddress address = null;
+  private int concurrency = 32;
+  private int timeout = 5000;
+
+  private void setAddress(InetSocketAddress address) {
+    this.address = address;
+  }
+
+  private void setConcurrency(Integer concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be at least 1");
+    }
+    this.concurrency = concurrency;
+  }
+
+  private void setTimeout(Integer timeout) {
+    if (timeout < 1) {
+      throw new IllegalArgumentException("timeout must be positive");
+    }
+    this.timeout = timeout;
+  }
+
+  @Override
+  public ArgsParser getParser() {
+    return new ArgsParser()
+            .setDescription(DESCRIPTION)
+            .addNamed(new Setting<Level>("log-level", "The log level").setDefaultValue(Level.WARN).parseWith(Level::valueOf), LogUtils::setLogLevel)
+            .addNamed(new Setting<Integer>("concurrency", "The maximum number of probes to run at the same time").setDefaultValue(concurrency).parseWith(Integer::valueOf), this::setConcurrency)
+            .addNamed(new Setting<Integer>("timeout", "The time, in milliseconds, allowed for each probe to connect and be answered").setDefaultValue(timeout).parseWith(Integer::valueOf), this::setTimeout)
+            .addPositional(new Setting<>("address", "The address in form of `host` or `host:port` to connect", new InetSocketAddressInput(443)), this::setAddress);
+  }
+
+  @Override
+  public void run() throws ConfigurationProblem, Bug {
+    if (address.isUnresolved()) {
+      throw new ConfigurationProblem("Unable to resolve " + address.getHostString());
+    }
+
+    CipherSuiteScanner scanner = new CipherSuiteScanner();
+    scanner.setConcurrency(concurrency);
+    scanner.setTimeout(timeout);
+
+    ServerCapabilities capabilities;
+    try {
+      capabilities = scanner.scan(address, address.getHostString());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    if (capabilities.getProtocols().isEmpty()) {
+      System.out.printf("%s accepted none of the protocols probed\n", address);
+    }
+    for (String protocol : capabilities.getProtocols()) {
+      System.out.printf("%s:\n", protocol);
+      for (CipherSuite suite : capabilities.getCipherSuites(protocol)) {
+        System.out.printf("  %s (%s)\n", suite, suite.keyExchange());
+      }
+    }
+
+    System.out.println();
+    if (!capabilities.isComplete()) {
+      System.out.printf("Warning: %d probes were not answered, so these results may be incomplete. First failure: %s\n",
+              capabilities.getErrors(), capabilities.getException());
+    }
+    System.out.printf("%d probes in %.1f seconds, %d key exchange families pruned\n", capabilities.getProbes(),
+            capabilities.getElapsed(TimeUnit.MILLISECONDS) / 1e3, capabilities.getPrunedFamilies());
+  }
+}
@@ -29,7 +29,6 @@ import org.apache.logging.log4j.Logger;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyManagementException;
@@ -39,7 +38,7 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by jls on 10/27/16.
@@ -51,6 +50,9 @@ public class ConnectCommand implements Command {
   private final KeyStoreBuilder keys;
   private final KeyStoreBuilder trust;
   private InetSocketAddress address = null;
+  private int concurrency = 8;
+  private long deadline = 10000;
+  private int resumptionAttempts = 0;
 
   ConnectCommand() throws Bug {
     try {
@@ -70,6 +72,27 @@ public class ConnectCommand implements Command {
     this.address = address;
   }
 
+  private void setConcurrency(Integer concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be at least 1");
+    }
+    this.concurrency = concurrency;
+  }
+
+  private void setDeadline(Long deadline) {
+    if (deadline < 1) {
+      throw new IllegalArgumentException("deadline must be at least 1 millisecond");
+    }
+    this.deadline = deadline;
+  }
+
+  private void setResumptionAttempts(Integer attempts) {
+    if (attempts < 0) {
+      throw new IllegalArgumentException("resumption attempts cannot be negative");
+    }
+    this.resumptionAttempts = attempts;
+  }
+
   private void setCAPath(Path path) throws CertificateException, KeyStoreException, IOException {
     logger.info("Adding to trust: capath {}", path);
     trust.addCAPath(path);
@@ -91,6 +114,9 @@ public class ConnectCommand implements Command {
             .addNamed(new Setting<Path>("capath", "The path to a file containing one or more certificates to trust in PEM format.").parseWith(Paths::get), this::setCAPath)
             .addNamed(new Setting<Path>("truststore", "The path to a java keystore or pkcs12 file containing certificate authorities to trust").parseWith(Paths::get), this::setTrustStore)
             .addNamed(new Setting<Path>("keystore", "The path to a java keystore or pkcs12 file containing private key(s) and client certificates to use when connecting to a remote server.").parseWith(Paths::get), this::setKeyStore)
+            .addNamed(new Setting<Integer>("concurrency", "The maximum number of resolved addresses to check at the same time").setDefaultValue(concurrency).parseWith(Integer::valueOf), this::setConcurrency)
+            .addNamed(new Setting<Integer>("resumption", "After connecting, reconnect this many times to check the server resumes the TLS session").setDefaultValue(resumptionAttempts).parseWith(Integer::valueOf), this::setResumptionAttempts)
+            .addNamed(new Setting<Long>("deadline", "The time, in milliseconds, to wait for all addresses to be checked").setDefaultValue(deadline).parseWith(Long::valueOf), this::setDeadline)
             .addPositional(new Setting<>("address", "The address in form of `host` or `host:port` to connect", new InetSocketAddressInput(443)), this::setAddress);
   }
 
@@ -98,7 +124,7 @@ public class ConnectCommand implements Command {
   public void run() throws ConfigurationProblem, Bug {
     TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
     try {
-      cb.setTrustStore(trust.buildKeyStore());
+      cb.setTrustStore(trust);
       cb.setKeyManagerFactory(keys.buildKeyManagerFactory());
     } catch (IOException | CertificateException | NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
       throw new Bug("Failed building keystores", e);
@@ -110,23 +136,15 @@ public class ConnectCommand implements Command {
     } catch (KeyManagementException | KeyStoreException | NoSuchAlgorithmException e) {
       throw new ConfigurationProblem("Failed to build tealess context.", e);
     }
-
-    String hostname = address.getHostString();
-
-    Collection<InetAddress> addresses;
-    try {
-      logger.trace("Doing name resolution on {}", hostname);
-      addresses = Resolver.SystemResolver.resolve(hostname);
-    } catch (UnknownHostException e) {
-      throw new ConfigurationProblem("Unknown host", e);
-    }
-
-    System.out.printf("%s resolved to %d addresses\n", hostname, addresses.size());
-    List<SSLReport> reports = addresses.stream()
-            .map(a -> checker.check(new InetSocketAddress(a, address.getPort()), hostname))
-            .collect(Collectors.toList());
-
-    System.out.println();
+    checker.setResumptionAttempts(resumptionAttempts);
+    checker.setResolver(name -> {
+      Collection<InetAddress> addresses = Resolver.SystemResolver.resolve(name);
+      System.out.printf("%s resolved to %d addresses\n", name, addresses.size());
+      System.out.println();
+      return addresses;
+    });
+
+    List<SSLReport> reports = checker.checkAll(address, concurrency, deadline, TimeUnit.MILLISECONDS);
 
     SSLReportAnalyzer.analyzeMany(reports);
   }
@@ -44,6 +44,18 @@ class Main {
       case "connect":
         command = new ConnectCommand();
         break;
+      case "scan":
+        command = new ScanCommand();
+        break;
+      case "ciphers":
+        command = new CiphersCommand();
+        break;
+      case "bench":
+        command = new BenchCommand();
+        break;
+      case "capture":
+        command = new CaptureCommand();
+        break;
       case "environment":
         command = new EnvironmentCommand();
         break;
@@ -95,6 +107,10 @@ class Main {
     System.out.println("No command given.");
     System.out.println("Command: ");
     System.out.println("  connect");
+    System.out.println("  scan");
+    System.out.println("  ciphers");
+    System.out.println("  bench");
+    System.out.println("  capture");
     System.out.println("  environment");
   }
 
@@ -0,0 +1,456 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess.cli;
+
+import co.elastic.tealess.*;
+import co.elastic.tealess.cli.input.ArgsParser;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLSession;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Check many targets in one process, reusing a single SSL context and trust store for all of them.
+ * <p>
+ * Each target is checked at every address its host resolves to. Results are printed one line per address, labelled
+ * `host:port@ip`, in the order the checks finish.
+ */
+public class ScanCommand implements Command {
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final String DESCRIPTION = "Connect to many addresses, read one `host` or `host:port` per line from a file or stdin, and report on each.";
+  private static final Path STDIN = Paths.get("-");
+  private static final int defaultPort = 443;
+
+  private final KeyStoreBuilder keys;
+  private final KeyStoreBuilder trust;
+  private Path targets = STDIN;
+  private int concurrency = 256;
+  private double hostRate = 0;
+  private int timeout = 5000;
+  private long deadline = 0;
+
+  ScanCommand() throws Bug {
+    try {
+      keys = new KeyStoreBuilder();
+      trust = new KeyStoreBuilder();
+    } catch (IOException | CertificateException | KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
+      throw new Bug("'new KeyStoreBuilder' failed", e);
+    }
+  }
+
+  private void setTargets(Path path) {
+    if (!path.equals(STDIN) && !Files.isReadable(path)) {
+      throw new IllegalArgumentException("Cannot read target list: " + path);
+    }
+    this.targets = path;
+  }
+
+  private void setConcurrency(Integer concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be at least 1");
+    }
+    this.concurrency = concurrency;
+  }
+
+  private void setHostRate(Double hostRate) {
+    if (hostRate < 0) {
+      throw new IllegalArgumentException("host-rate cannot be negative");
+    }
+    this.hostRate = hostRate;
+  }
+
+  private void setTimeout(Integer timeout) {
+    if (timeout < 1) {
+      throw new IllegalArgumentException("timeout must be positive");
+    }
+    this.timeout = timeout;
+  }
+
+  private void setDeadline(Long deadline) {
+    if (deadline < 0) {
+      throw new IllegalArgumentException("deadline cannot be negative");
+    }
+    this.deadline = deadline;
+  }
+
+  private void setCAPath(Path path) throws CertificateException, KeyStoreException, IOException {
+    logger.info("Adding to trust: capath {}", path);
+    trust.addCAPath(path);
+  }
+
+  private void setTrustStore(Path path) throws UnrecoverableKeyException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    trust.useKeyStore(path.toFile());
+  }
+
+  private void setKeyStore(Path path) throws UnrecoverableKeyException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    keys.useKeyStore(path.toFile());
+  }
+
+  @Override
+  public ArgsParser getParser() {
+    return new ArgsParser()
+            .setDescription(DESCRIPTION)
+            .addNamed(new Setting<Level>("log-level", "The log level").setDefaultValue(Level.WARN).parseWith(Level::valueOf), LogUtils::setLogLevel)
+            .addNamed(new Setting<Path>("capath", "The path to a file containing one or more certificates to trust in PEM format.").parseWith(Paths::get), this::setCAPath)
+            .addNamed(new Setting<Path>("truststore", "The path to a java keystore or pkcs12 file containing certificate authorities to trust").parseWith(Paths::get), this::setTrustStore)
+            .addNamed(new Setting<Path>("keystore", "The path to a java keystore or pkcs12 file containing private key(s) and client certificates to use when connecting to a remote server.").parseWith(Paths::get), this::setKeyStore)
+            .addNamed(new Setting<Path>("targets", "The file to read targets from, one per line. Use - for stdin").setDefaultValue(targets).parseWith(Paths::get), this::setTargets)
+            .addNamed(new Setting<Integer>("concurrency", "The maximum number of checks to run at the same time").setDefaultValue(concurrency).parseWith(Integer::valueOf), this::setConcurrency)
+            .addNamed(new Setting<Double>("host-rate", "The maximum number of checks per second to start against any one host. 0 means no limit").setDefaultValue(hostRate).parseWith(Double::valueOf), this::setHostRate)
+            .addNamed(new Setting<Integer>("timeout", "The time, in milliseconds, allowed for each check to connect and handshake").setDefaultValue(timeout).parseWith(Integer::valueOf), this::setTimeout)
+            .addNamed(new Setting<Long>("deadline", "The time, in milliseconds, to wait for the whole scan to complete. 0 means no deadline").setDefaultValue(deadline).parseWith(Long::valueOf), this::setDeadline);
+  }
+
+  @Override
+  public void run() throws ConfigurationProblem, Bug {
+    List<Target> targetList;
+    try {
+      targetList = readTargets();
+    } catch (IOException e) {
+      throw new ConfigurationProblem("Failed reading target list " + targets, e);
+    }
+
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    try {
+      cb.setTrustStore(trust);
+      cb.setKeyManagerFactory(keys.buildKeyManagerFactory());
+    } catch (IOException | CertificateException | NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
+      throw new Bug("Failed building keystores", e);
+    }
+
+    NonBlockingSSLChecker checker;
+    try {
+      checker = new NonBlockingSSLChecker(cb);
+    } catch (KeyManagementException | KeyStoreException | NoSuchAlgorithmException | IOException e) {
+      throw new ConfigurationProblem("Failed to build tealess context.", e);
+    }
+    checker.setTimeout(timeout);
+    checker.setMaxInFlight(concurrency);
+
+    Scan scan = new Scan(checker, targetList);
+    try {
+      scan.run();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // Stop name resolution before closing the checker, so no check is started once the checker is closing.
+      scan.resolver.shutdownNow();
+      try {
+        scan.resolver.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      scan.abandonResolutions();
+      // Closing the checker fails anything still in flight, so every dispatched target gets a result line.
+      try {
+        checker.close();
+      } catch (IOException e) {
+        logger.warn("Failed closing checker", e);
+      }
+    }
+
+    System.out.println();
+    System.out.printf("Scanned %d targets: %d successful, %d failed, %d targets not checked before the deadline\n",
+            targetList.size(), scan.successes.get(), scan.failures.get(), scan.skipped.get());
+  }
+
+  private List<Target> readTargets() throws IOException {
+    BufferedReader reader;
+    if (targets.equals(STDIN)) {
+      reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    } else {
+      reader = Files.newBufferedReader(targets, StandardCharsets.UTF_8);
+    }
+
+    List<Target> list = new ArrayList<>();
+    try {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        try {
+          list.add(Target.parse(line, defaultPort));
+        } catch (IllegalArgumentException e) {
+          System.out.printf("Skipping line %d: %s\n", lineNumber, e.getMessage());
+        }
+      }
+    } finally {
+      if (!targets.equals(STDIN)) {
+        reader.close();
+      }
+    }
+    return list;
+  }
+
+  static String label(Target target, InetSocketAddress address) {
+    return target + "@" + address.getAddress().getHostAddress();
+  }
+
+  private static String describe(String label, SSLReport report) {
+    if (report.success()) {
+      SSLSession session = report.getSSLSession();
+      return String.format("Success: %s %s %s", label, session.getProtocol(), session.getCipherSuite());
+    }
+    return describe(label, report.getException());
+  }
+
+  private static String describe(Object target, Throwable e) {
+    Throwable blame = Blame.get(e);
+    String message = blame.getMessage() == null ? "" : blame.getMessage().split("\r?\n")[0];
+    return String.format("Failure: %s %s - %s", target, blame.getClass().getName(), message);
+  }
+
+  static class Target {
+    final String host;
+    final int port;
+
+    Target(String host, int port) {
+      this.host = host;
+      this.port = port;
+    }
+
+    /**
+     * Parse `host`, `host:port`, `[ipv6]` or `[ipv6]:port`.
+     */
+    static Target parse(String text, int defaultPort) {
+      String host;
+      String port = null;
+      if (text.startsWith("[")) {
+        int end = text.indexOf(']');
+        if (end == -1) {
+          throw new IllegalArgumentException("Missing ']' in " + text);
+        }
+        host = text.substring(1, end);
+        if (end + 1 < text.length()) {
+          if (text.charAt(end + 1) != ':') {
+            throw new IllegalArgumentException("Expected ':' after ']' in " + text);
+          }
+          port = text.substring(end + 2);
+        }
+      } else {
+        int colon = text.lastIndexOf(':');
+        if (colon != -1 && text.indexOf(':') != colon) {
+          // More than one colon means a bare ipv6 address without a port.
+          colon = -1;
+        }
+        host = colon == -1 ? text : text.substring(0, colon);
+        if (colon != -1) {
+          port = text.substring(colon + 1);
+        }
+      }
+
+      if (host.isEmpty()) {
+        throw new IllegalArgumentException("Missing host in " + text);
+      }
+
+      int portNumber = defaultPort;
+      if (port != null) {
+        try {
+          portNumber = Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid port in " + text);
+        }
+        if (portNumber < 1 || portNumber > 65535) {
+          throw new IllegalArgumentException("Port value must be between 1 and 65535 in " + text);
+        }
+      }
+      return new Target(host, portNumber);
+    }
+
+    @Override
+    public String toString() {
+      return (host.indexOf(':') == -1 ? host : "[" + host + "]") + ":" + port;
+    }
+  }
+
+  /**
+   * Targets grouped by host. A host is in the ready queue at most once, at the earliest time its next check may start.
+   */
+  private class Scan {
+    private final NonBlockingSSLChecker checker;
+    private final int total;
+    private final Map<String, ArrayDeque<Target>> byHost = new HashMap<>();
+    private final DelayQueue<HostSlot> ready = new DelayQueue<>();
+    private final Semaphore permits = new Semaphore(concurrency);
+    private final ExecutorService resolver;
+    // Each dispatched target's name resolution, so those never run can be failed when the scan ends.
+    private final List<CompletableFuture<List<InetSocketAddress>>> resolutions = new ArrayList<>();
+    private final long intervalNanos;
+
+    private final AtomicInteger successes = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    Scan(NonBlockingSSLChecker checker, List<Target> targetList) {
+      this.checker = checker;
+      this.total = targetList.size();
+      this.intervalNanos = hostRate == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / hostRate);
+      for (Target target : targetList) {
+        byHost.computeIfAbsent(target.host, (k) -> new ArrayDeque<>()).add(target);
+      }
+      long now = System.nanoTime();
+      byHost.keySet().forEach(host -> ready.add(new HostSlot(host, now)));
+
+      // Name resolution is blocking, so keep it off both this thread and the checker's selector thread.
+      resolver = Executors.newFixedThreadPool(Math.min(concurrency, 32), new DaemonThreadFactory("tealess-scan-resolver-"));
+    }
+
+    void run() throws InterruptedException {
+      final long end = deadline == 0 ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline);
+      int dispatched = 0;
+
+      while (dispatched < total) {
+        long remaining = end - System.nanoTime();
+        if (remaining <= 0 || !permits.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+          break;
+        }
+        HostSlot slot = ready.poll(end - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (slot == null) {
+          permits.release();
+          break;
+        }
+
+        ArrayDeque<Target> queue = byHost.get(slot.host);
+        dispatch(queue.poll());
+        dispatched++;
+        if (!queue.isEmpty()) {
+          ready.add(new HostSlot(slot.host, System.nanoTime() + intervalNanos));
+        }
+      }
+
+      // Wait for everything in flight, but no longer than the deadline allows.
+      long remaining = end - System.nanoTime();
+      if (remaining > 0 && permits.tryAcquire(concurrency, remaining, TimeUnit.NANOSECONDS)) {
+        permits.release(concurrency);
+      }
+
+      if (dispatched < total) {
+        for (ArrayDeque<Target> queue : byHost.values()) {
+          for (Target target : queue) {
+            skipped.incrementAndGet();
+            print(String.format("Skipped: %s - deadline reached before this target was checked", target));
+          }
+        }
+      }
+    }
+
+    /**
+     * Check every address of the target. The target holds its permit until all of them are done; the checker's own
+     * in-flight limit bounds how many of those checks run at once.
+     */
+    private void dispatch(Target target) {
+      CompletableFuture<List<InetSocketAddress>> resolution = CompletableFuture.supplyAsync(() -> resolve(target), resolver);
+      resolutions.add(resolution);
+      resolution
+              .thenCompose(addresses -> CompletableFuture.allOf(addresses.stream()
+                      .map(address -> checker.check(address, target.host).handle((report, e) -> {
+                        String label = label(target, address);
+                        if (e != null) {
+                          failures.incrementAndGet();
+                          print(describe(label, e));
+                        } else {
+                          (report.success() ? successes : failures).incrementAndGet();
+                          print(describe(label, report));
+                        }
+                        return null;
+                      }))
+                      .toArray(CompletableFuture[]::new)))
+              .whenComplete((ignored, e) -> {
+                // Each address reported its own result above, so only a failed resolution is left to report.
+                if (e != null) {
+                  failures.incrementAndGet();
+                  print(describe(target, e));
+                }
+                permits.release();
+              });
+    }
+
+    /**
+     * Fail the resolutions the stopped resolver never finished, so their targets are reported rather than lost.
+     */
+    void abandonResolutions() {
+      IOException cause = new IOException("Scan ended before the name was resolved");
+      for (CompletableFuture<List<InetSocketAddress>> resolution : resolutions) {
+        resolution.completeExceptionally(cause);
+      }
+    }
+
+    private List<InetSocketAddress> resolve(Target target) {
+      try {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (InetAddress address : Resolver.SystemResolver.resolve(target.host)) {
+          addresses.add(new InetSocketAddress(address, target.port));
+        }
+        return addresses;
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }
+
+    private void print(String line) {
+      synchronized (System.out) {
+        System.out.println(line);
+      }
+    }
+  }
+
+  private static class HostSlot implements Delayed {
+    private final String host;
+    private final long when;
+
+    HostSlot(String host, long when) {
+      this.host = host;
+      this.when = when;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(when - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+      return Long.compare(when, ((HostSlot) o).when);
+    }
+  }
+}
@@ -6,19 +6,18 @@ import co.elastic.tealess.KeyStoreBuilder;
 import co.elastic.tealess.TealessSSLContextBuilder;
 import co.elastic.tealess.cli.input.ArgsParser;
 import co.elastic.tealess.cli.input.InetSocketAddressInput;
-import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.ServerSocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.ssl.SslHandler;
+import co.elastic.tealess.cli.server.Mode;
+import co.elastic.tealess.cli.server.TLSServerInitializer;
+import co.elastic.tealess.cli.server.Transport;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLEngine;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.file.Path;
@@ -38,8 +37,15 @@ public class ServerCommand implements Command {
   private static final String DESCRIPTION = "Run a TLS server with a given configuration.";
   private final KeyStoreBuilder keys;
   private final KeyStoreBuilder trust;
-  private final Path keyStore = null;
+  private Path keyStore = null;
   private InetSocketAddress address = null;
+  private Transport transport = Transport.nio;
+  private int bossThreads = 1;
+  private int workerThreads = 0;
+  private Mode mode = Mode.echo;
+  private int responseSize = 1024;
+  private long handshakeTimeout = 10000;
+  private int backlog = 1024;
 
   public ServerCommand() throws Bug {
     try {
@@ -64,11 +70,45 @@ public class ServerCommand implements Command {
   }
 
   private void setKeyStore(Path path) throws UnrecoverableKeyException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
-    if (keyStore != null) {
-      keys.useKeyStore(keyStore.toFile());
-    } else {
-      keys.empty();
+    keys.useKeyStore(path.toFile());
+    keyStore = path;
+  }
+
+  private void setTransport(Transport transport) {
+    this.transport = transport;
+  }
+
+  private void setBossThreads(Integer threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("boss threads must be at least 1");
+    }
+    bossThreads = threads;
+  }
+
+  private void setWorkerThreads(Integer threads) {
+    if (threads < 0) {
+      throw new IllegalArgumentException("worker threads cannot be negative");
+    }
+    workerThreads = threads;
+  }
+
+  private void setMode(Mode mode) {
+    this.mode = mode;
+  }
+
+  private void setResponseSize(Integer size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("response size cannot be negative");
     }
+    responseSize = size;
+  }
+
+  private void setHandshakeTimeout(Long timeout) {
+    handshakeTimeout = timeout;
+  }
+
+  private void setBacklog(Integer backlog) {
+    this.backlog = backlog;
   }
 
   @Override
@@ -78,15 +118,26 @@ public class ServerCommand implements Command {
             .addNamed(new Setting<Level>("log-level", "The log level").setDefaultValue(Level.WARN).parseWith(Level::valueOf), LogUtils::setLogLevel)
             .addNamed(new Setting<Path>("capath", "The path to a file containing one or more certificates to trust in PEM format.").parseWith(Paths::get), this::setCAPath)
             .addNamed(new Setting<Path>("truststore", "The path to a java keystore or pkcs12 file containing certificate authorities to trust").parseWith(Paths::get), this::setTrustStore)
-            .addNamed(new Setting<Path>("keystore", "The path to a java keystore or pkcs12 file containing private key(s) and client certificates to use when connecting to a remote server.").parseWith(Paths::get), this::setKeyStore)
-            .addPositional(new Setting<>("address", "The address in form of `host` or `host:port` to connect", new InetSocketAddressInput(443)), this::setAddress);
+            .addNamed(new Setting<Path>("keystore", "The path to a java keystore or pkcs12 file containing the private key and certificate this server presents.").parseWith(Paths::get), this::setKeyStore)
+            .addNamed(new Setting<Mode>("mode", "What to do with data from clients: echo, sink or responder").setDefaultValue(mode).parseWith(Mode::valueOf), this::setMode)
+            .addNamed(new Setting<Integer>("response-size", "The number of bytes a responder sends for each message").setDefaultValue(responseSize).parseWith(Integer::valueOf), this::setResponseSize)
+            .addNamed(new Setting<Transport>("transport", "The network transport. Only nio is available").setDefaultValue(transport).parseWith(Transport::valueOf), this::setTransport)
+            .addNamed(new Setting<Integer>("boss-threads", "The number of threads accepting connections").setDefaultValue(bossThreads).parseWith(Integer::valueOf), this::setBossThreads)
+            .addNamed(new Setting<Integer>("worker-threads", "The number of threads serving connections, or 0 for twice the number of processors").setDefaultValue(workerThreads).parseWith(Integer::valueOf), this::setWorkerThreads)
+            .addNamed(new Setting<Long>("handshake-timeout", "The time, in milliseconds, a client has to complete its handshake").setDefaultValue(handshakeTimeout).parseWith(Long::valueOf), this::setHandshakeTimeout)
+            .addNamed(new Setting<Integer>("backlog", "The maximum number of connections waiting to be accepted").setDefaultValue(backlog).parseWith(Integer::valueOf), this::setBacklog)
+            .addPositional(new Setting<>("address", "The address in form of `host` or `host:port` to listen on", new InetSocketAddressInput(443)), this::setAddress);
   }
 
   @Override
   public void run() throws ConfigurationProblem, Bug {
+    if (keyStore == null) {
+      throw new ConfigurationProblem("A server needs a --keystore holding its private key and certificate.");
+    }
+
     TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
     try {
-      cb.setTrustStore(trust.buildKeyStore());
+      cb.setTrustStore(trust);
       cb.setKeyManagerFactory(keys.buildKeyManagerFactory());
     } catch (IOException | CertificateException | NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
       throw new Bug("Failed building keystores", e);
@@ -96,53 +147,27 @@ public class ServerCommand implements Command {
     try {
       ctx = cb.build();
     } catch (KeyManagementException | KeyStoreException | NoSuchAlgorithmException e) {
-      e.printStackTrace();
-      return;
+      throw new ConfigurationProblem("Failed to build tealess context.", e);
     }
 
-    EventLoopGroup group = new NioEventLoopGroup();
-
-    Bootstrap bootstrap = new Bootstrap();
-    bootstrap.group(group);
-    bootstrap.channel(NioServerSocketChannel.class).handler(new ChannelInitializer<ServerSocketChannel>() {
-      @Override
-      protected void initChannel(ServerSocketChannel ch) throws Exception {
-        ChannelPipeline pipeline = ch.pipeline();
-        pipeline.addLast(new SimpleChannelInboundHandler<NioSocketChannel>() {
-          @Override
-          protected void channelRead0(ChannelHandlerContext chc, NioSocketChannel msg) throws Exception {
-            System.out.println("New connection " + msg);
-            group.register(msg);
-            ChannelPipeline pipeline = msg.pipeline();
-            SSLEngine engine = ctx.createSSLEngine();
-            engine.setUseClientMode(false);
-            SslHandler sslHandler = new SslHandler(engine);
-            sslHandler.setHandshakeTimeoutMillis(1000);
-            pipeline.addLast(sslHandler);
-            pipeline.addLast(new SimpleChannelInboundHandler<Object>() {
-
-              @Override
-              protected void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
-
-              }
-
-              @Override
-              public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-                System.out.println("Exception: " + cause.getMessage());
-              }
-            });
-          }
-        });
-        //pipeline.addLast(sslHandler);
-      }
-    });
-    System.out.println("Binding " + address);
-    ChannelFuture future = bootstrap.bind(address);
+    EventLoopGroup boss = transport.newGroup(bossThreads);
+    EventLoopGroup workers = transport.newGroup(workerThreads);
     try {
-      System.out.println("Waiting...");
-      future.sync();
-    } catch (InterruptedException e1) {
-      e1.printStackTrace();
+      ServerBootstrap bootstrap = new ServerBootstrap()
+              .group(boss, workers)
+              .channel(transport.serverChannel())
+              .option(ChannelOption.SO_BACKLOG, backlog)
+              .childOption(ChannelOption.TCP_NODELAY, true)
+              .childHandler(new TLSServerInitializer(ctx, mode.newHandler(responseSize), handshakeTimeout));
+
+      Channel channel = bootstrap.bind(address).sync().channel();
+      System.out.printf("Listening on %s (%s transport, %s mode)\n", channel.localAddress(), transport, mode);
+      channel.closeFuture().sync();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      boss.shutdownGracefully();
+      workers.shutdownGracefully();
     }
   }
 }
@@ -58,26 +58,25 @@ public class TrustCommand implements Command {
       }
     }
 
-    final KeyStore keyStore;
-    try {
-      keyStore = ksb.buildKeyStore();
-    } catch (IOException | CertificateException | KeyStoreException | NoSuchAlgorithmException e) {
-      throw new Bug("Failed to build keystore in memory", e);
-    } catch (UnrecoverableKeyException e) {
-      throw new ConfigurationProblem(e.getMessage(), e);
-    }
-
-
     // Add the certificate chain to the key store
     for (int i = 0; i < chain.length; i++) {
       String alias = String.format("%s[%d]", address, i);
       try {
-        keyStore.setCertificateEntry(alias, chain[i]);
+        ksb.addTrustedCertificate(alias, chain[i]);
       } catch (KeyStoreException e) {
         throw new Bug("Failed to add certificate to key store", e);
       }
     }
 
+    final KeyStore keyStore;
+    try {
+      keyStore = ksb.buildKeyStore();
+    } catch (IOException | CertificateException | KeyStoreException | NoSuchAlgorithmException e) {
+      throw new Bug("Failed to build keystore in memory", e);
+    } catch (UnrecoverableKeyException e) {
+      throw new ConfigurationProblem(e.getMessage(), e);
+    }
+
     System.out.printf("Enter passphrase for keyStore %s: ", path);
     char[] passphrase = System.console().readPassword();
     System.out.printf("Confirm passphrase for keyStore %s: ", path);
@@ -189,7 +188,7 @@ public class TrustCommand implements Command {
 
     final TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
     try {
-      cb.setTrustStore(trust.buildKeyStore());
+      cb.setTrustStore(trust);
       cb.setKeyManagerFactory(keys.buildKeyManagerFactory());
     } catch (IOException | CertificateException | NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
       throw new Bug("Failed building keystores", e);
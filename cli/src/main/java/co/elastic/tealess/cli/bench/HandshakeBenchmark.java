@@ -0,0 +1,306 @@
+package co.elastic.tealess.cli.bench;
+
+import co.elastic.tealess.Blame;
+import co.elastic.tealess.DaemonThreadFactory;
+import co.elastic.tealess.metrics.LatencyHistogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Repeatedly connects to one address and handshakes, from a number of concurrent connections and at an optional
+ * overall rate, to find how many handshakes per second a server absorbs.
+ * <p>
+ * Each connection is closed as soon as its handshake completes. A handshake counts as resumed when its session was
+ * created before the handshake began. Sessions are offered for resumption by the given percentage of connections;
+ * the rest invalidate their session so the next handshake is a full one.
+ * <p>
+ * A TLS 1.3 session can only be resumed once its ticket, sent after the handshake, has been read. Waiting for it would
+ * hold each connection long after its handshake and cap the rate measured, so kept TLS 1.3 connections are handed to
+ * separate threads which read the ticket and close them, outside the measured cycle.
+ */
+public class HandshakeBenchmark {
+  private static final Logger logger = LogManager.getLogger();
+  // A TLS 1.3 client only stores the server's session ticket when it next reads.
+  private static final int ticketTimeout = 100;
+
+  private final SSLContext context;
+  private final InetSocketAddress address;
+  private final String hostname;
+  private int connections = 16;
+  private double rate = 0;
+  private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+  private int resumePercent = 0;
+  private int timeout = 5000;
+
+  private final LatencyHistogram full = new LatencyHistogram();
+  private final LatencyHistogram resumed = new LatencyHistogram();
+  private final LongAdder failed = new LongAdder();
+  private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+
+  private ExecutorService workers;
+  private ThreadPoolExecutor ticketReaders;
+  private final LongAdder ticketsMissed = new LongAdder();
+  private long start;
+  private volatile long finish;
+
+  public HandshakeBenchmark(SSLContext context, InetSocketAddress address, String hostname) {
+    this.context = context;
+    this.address = address;
+    this.hostname = hostname;
+  }
+
+  /**
+   * @param connections the number of connections handshaking at the same time
+   */
+  public void setConnections(int connections) {
+    if (connections < 1) {
+      throw new IllegalArgumentException("connections must be at least 1. Got " + connections);
+    }
+    this.connections = connections;
+  }
+
+  /**
+   * @param rate the handshakes per second to start across all connections, or 0 to go as fast as they can
+   */
+  public void setRate(double rate) {
+    if (rate < 0) {
+      throw new IllegalArgumentException("rate cannot be negative. Got " + rate);
+    }
+    this.rate = rate;
+  }
+
+  public void setDuration(long duration, TimeUnit unit) {
+    if (duration <= 0) {
+      throw new IllegalArgumentException("duration must be positive. Got " + duration);
+    }
+    this.durationNanos = unit.toNanos(duration);
+  }
+
+  /**
+   * @param percent how many handshakes, from 0 to 100, keep their session for later ones to resume
+   */
+  public void setResumePercent(int percent) {
+    if (percent < 0 || percent > 100) {
+      throw new IllegalArgumentException("resume percent must be between 0 and 100. Got " + percent);
+    }
+    this.resumePercent = percent;
+  }
+
+  /**
+   * @param timeout milliseconds allowed for each connect and for each read during a handshake
+   */
+  public void setTimeout(int timeout) {
+    if (timeout < 1) {
+      throw new IllegalArgumentException("timeout must be positive. Got " + timeout);
+    }
+    this.timeout = timeout;
+  }
+
+  public synchronized void start() {
+    if (workers != null) {
+      throw new IllegalStateException("The benchmark has already started");
+    }
+    workers = Executors.newFixedThreadPool(connections, new DaemonThreadFactory("tealess-bench-"));
+    // Bounded, so a server slow to send tickets cannot pile up open connections; those turned away are not resumed.
+    ticketReaders = new ThreadPoolExecutor(connections, connections, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(connections), new DaemonThreadFactory("tealess-bench-ticket-"),
+            (task, executor) -> ((TicketRead) task).abandon());
+
+    start = System.nanoTime();
+    final long end = start + durationNanos;
+    final long intervalNanos = rate == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    final AtomicLong nextSlot = new AtomicLong(start);
+    for (int i = 0; i < connections; i++) {
+      workers.execute(() -> work(end, intervalNanos, nextSlot));
+    }
+    workers.shutdown();
+  }
+
+  /**
+   * @return true if the benchmark finished within the given time.
+   */
+  public boolean awaitCompletion(long time, TimeUnit unit) throws InterruptedException {
+    if (!workers.awaitTermination(time, unit)) {
+      return false;
+    }
+    if (finish == 0) {
+      finish = System.nanoTime();
+    }
+    // Only closes connections; the handshakes are already counted.
+    ticketReaders.shutdown();
+    ticketReaders.awaitTermination(ticketTimeout * 2, TimeUnit.MILLISECONDS);
+    return true;
+  }
+
+  /**
+   * Stop starting new handshakes. Handshakes in progress still finish, or time out.
+   */
+  public void stop() {
+    workers.shutdownNow();
+    ticketReaders.shutdown();
+  }
+
+  private void work(long end, long intervalNanos, AtomicLong nextSlot) {
+    while (!Thread.currentThread().isInterrupted()) {
+      if (intervalNanos > 0) {
+        long slot = nextSlot.getAndAdd(intervalNanos);
+        if (slot >= end) {
+          return;
+        }
+        long wait = slot - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(wait);
+        }
+      } else if (System.nanoTime() >= end) {
+        return;
+      }
+      handshake();
+    }
+  }
+
+  private void handshake() {
+    // Whatever must be closed when this cycle ends, or null once a ticket reader owns the connection.
+    Socket open = new Socket();
+    try {
+      open.connect(address, timeout);
+      open.setSoTimeout(timeout);
+      SSLSocket sslSocket = (SSLSocket) context.getSocketFactory().createSocket(open, hostname, address.getPort(), true);
+      open = sslSocket;
+      final long startMillis = System.currentTimeMillis();
+      final long start = System.nanoTime();
+      sslSocket.startHandshake();
+      final long elapsed = System.nanoTime() - start;
+
+      SSLSession session = sslSocket.getSession();
+      (session.getCreationTime() < startMillis ? resumed : full).record(elapsed);
+      if (ThreadLocalRandom.current().nextInt(100) >= resumePercent) {
+        session.invalidate();
+      } else if ("TLSv1.3".equals(session.getProtocol())) {
+        ticketReaders.execute(new TicketRead(sslSocket));
+        open = null;
+      }
+    } catch (IOException | RuntimeException e) {
+      // JSSE reports some handshake problems unchecked; count those too rather than losing this worker.
+      failed.increment();
+      Throwable blame = Blame.get(e);
+      failures.computeIfAbsent(blame.getClass().getName(), k -> new Failure(blame)).count.increment();
+      logger.debug("Handshake with {} failed: {}", address, e);
+    } finally {
+      if (open != null) {
+        close(open);
+      }
+    }
+  }
+
+  private static void close(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      logger.debug("Failed closing connection: {}", e);
+    }
+  }
+
+  /**
+   * Reads from a connection whose handshake is over, so the client stores the session ticket, then closes it.
+   */
+  private class TicketRead implements Runnable {
+    private final SSLSocket socket;
+
+    TicketRead(SSLSocket socket) {
+      this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+      try {
+        socket.setSoTimeout(ticketTimeout);
+        // Servers answer close_notify by closing, which ends the read as soon as the ticket before it is stored.
+        socket.shutdownOutput();
+        socket.getInputStream().read();
+      } catch (IOException | UnsupportedOperationException e) {
+        // Expected: the server may have nothing to send until the timeout.
+      } finally {
+        close(socket);
+      }
+    }
+
+    void abandon() {
+      ticketsMissed.increment();
+      close(socket);
+    }
+  }
+
+  /**
+   * @return the time since the benchmark started, until it finished if it has.
+   */
+  public long getElapsed(TimeUnit unit) {
+    long end = finish == 0 ? System.nanoTime() : finish;
+    return unit.convert(end - start, TimeUnit.NANOSECONDS);
+  }
+
+  public LatencyHistogram getFullHandshakes() {
+    return full;
+  }
+
+  public LatencyHistogram getResumedHandshakes() {
+    return resumed;
+  }
+
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  /**
+   * @return how many kept TLS 1.3 connections were closed without reading their session ticket, because every ticket
+   * reader was busy. Their sessions cannot be resumed.
+   */
+  public long getTicketsMissed() {
+    return ticketsMissed.sum();
+  }
+
+  /**
+   * @return failures by the class of their root cause.
+   */
+  public Map<String, Failure> getFailures() {
+    return new TreeMap<>(failures);
+  }
+
+  public static class Failure {
+    private final Throwable example;
+    private final LongAdder count = new LongAdder();
+
+    Failure(Throwable example) {
+      this.example = example;
+    }
+
+    /**
+     * @return the root cause of the first failure of this kind.
+     */
+    public Throwable getExample() {
+      return example;
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package co.elastic.tealess.cli.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The last handler of a connection, so failures from TLS or the application end here.
+ */
+abstract class ApplicationHandler extends ChannelInboundHandlerAdapter {
+  private static final Logger logger = LogManager.getLogger();
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    logger.warn("Closing connection with {}: {}", ctx.channel().remoteAddress(), cause.toString());
+    ctx.close();
+  }
+}
@@ -0,0 +1,18 @@
+package co.elastic.tealess.cli.server;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+
+@ChannelHandler.Sharable
+class EchoHandler extends ApplicationHandler {
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    // Writing hands the buffer back to Netty, which releases it once sent.
+    ctx.write(msg);
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext ctx) {
+    ctx.flush();
+  }
+}
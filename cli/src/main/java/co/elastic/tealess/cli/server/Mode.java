@@ -0,0 +1,28 @@
+package co.elastic.tealess.cli.server;
+
+import io.netty.channel.ChannelHandler;
+
+/**
+ * What the server does with application data once a client has completed its handshake.
+ */
+public enum Mode {
+  /** Send every byte back to the client. */
+  echo,
+  /** Read and discard everything. */
+  sink,
+  /** Answer each message from the client with a fixed-size response, like a request/response protocol. */
+  responder;
+
+  public ChannelHandler newHandler(int responseSize) {
+    switch (this) {
+      case echo:
+        return new EchoHandler();
+      case sink:
+        return new SinkHandler();
+      case responder:
+        return new ResponderHandler(responseSize);
+      default:
+        throw new IllegalStateException("Unknown mode " + this);
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package co.elastic.tealess.cli.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
+
+@ChannelHandler.Sharable
+class ResponderHandler extends ApplicationHandler {
+  // Shared by every connection; each write sends a duplicate, so the content is never copied or freed.
+  private final ByteBuf response;
+
+  ResponderHandler(int responseSize) {
+    if (responseSize < 0) {
+      throw new IllegalArgumentException("response size cannot be negative. Got " + responseSize);
+    }
+    byte[] content = new byte[responseSize];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) ('a' + i % 26);
+    }
+    response = Unpooled.unreleasableBuffer(Unpooled.directBuffer(responseSize).writeBytes(content));
+  }
+
+  // Answer each message rather than each read: TLS records which carry no application data still complete a read.
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    ReferenceCountUtil.release(msg);
+    ctx.write(response.duplicate());
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext ctx) {
+    ctx.flush();
+  }
+}
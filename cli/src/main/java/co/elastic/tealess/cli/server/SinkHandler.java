@@ -0,0 +1,25 @@
+package co.elastic.tealess.cli.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.atomic.LongAdder;
+
+@ChannelHandler.Sharable
+class SinkHandler extends ApplicationHandler {
+  private final LongAdder bytes = new LongAdder();
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    if (msg instanceof ByteBuf) {
+      bytes.add(((ByteBuf) msg).readableBytes());
+    }
+    ReferenceCountUtil.release(msg);
+  }
+
+  long getBytes() {
+    return bytes.sum();
+  }
+}
@@ -0,0 +1,49 @@
+package co.elastic.tealess.cli.server;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * Sets up each accepted connection: TLS first, then the application handler once the handshake succeeds.
+ */
+public class TLSServerInitializer extends ChannelInitializer<SocketChannel> {
+  private static final Logger logger = LogManager.getLogger();
+
+  private final SSLContext context;
+  private final ChannelHandler application;
+  private final long handshakeTimeoutMillis;
+
+  /**
+   * @param application a {@link ChannelHandler.Sharable} handler, added to every connection
+   */
+  public TLSServerInitializer(SSLContext context, ChannelHandler application, long handshakeTimeoutMillis) {
+    this.context = context;
+    this.application = application;
+    this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+  }
+
+  @Override
+  protected void initChannel(SocketChannel channel) {
+    SSLEngine engine = context.createSSLEngine();
+    engine.setUseClientMode(false);
+    SslHandler sslHandler = new SslHandler(engine);
+    sslHandler.setHandshakeTimeoutMillis(handshakeTimeoutMillis);
+    sslHandler.handshakeFuture().addListener(future -> {
+      if (future.isSuccess()) {
+        logger.debug("Handshake completed with {}: {}", channel.remoteAddress(), engine.getSession().getCipherSuite());
+      } else {
+        logger.warn("Handshake failed with {}: {}", channel.remoteAddress(), future.cause().toString());
+      }
+    });
+
+    channel.pipeline().addLast("tls", sslHandler);
+    channel.pipeline().addLast("application", application);
+  }
+}
@@ -0,0 +1,27 @@
+package co.elastic.tealess.cli.server;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * The Netty transport to serve with.
+ * <p>
+ * Only nio for now: the bundled Netty 4.0.4 has no native epoll transport, so that needs a Netty upgrade and
+ * netty-transport-native-epoll first.
+ */
+public enum Transport {
+  nio;
+
+  /**
+   * @param threads the number of event loops, or 0 for Netty's default of twice the number of processors.
+   */
+  public EventLoopGroup newGroup(int threads) {
+    return new NioEventLoopGroup(threads);
+  }
+
+  public Class<? extends ServerChannel> serverChannel() {
+    return NioServerSocketChannel.class;
+  }
+}
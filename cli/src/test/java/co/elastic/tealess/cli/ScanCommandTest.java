@@ -0,0 +1,49 @@
+package co.elastic.tealess.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScanCommandTest {
+  private static void assertTarget(String text, String host, int port) {
+    ScanCommand.Target target = ScanCommand.Target.parse(text, 443);
+    assertEquals(host, target.host);
+    assertEquals(port, target.port);
+  }
+
+  @Test
+  void testHostOnly() {
+    assertTarget("example.com", "example.com", 443);
+  }
+
+  @Test
+  void testHostAndPort() {
+    assertTarget("example.com:9200", "example.com", 9200);
+  }
+
+  @Test
+  void testIPv6() {
+    assertTarget("::1", "::1", 443);
+    assertTarget("[::1]", "::1", 443);
+    assertTarget("[fe80::1]:5044", "fe80::1", 5044);
+  }
+
+  @Test
+  void testLabelNamesTheAddressChecked() throws Exception {
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getByName("127.0.0.2"), 9200);
+    assertEquals("example.com:9200@127.0.0.2", ScanCommand.label(ScanCommand.Target.parse("example.com:9200", 443), address));
+    assertEquals("[::1]:443@127.0.0.2", ScanCommand.label(ScanCommand.Target.parse("::1", 443), address));
+  }
+
+  @Test
+  void testInvalid() {
+    assertThrows(IllegalArgumentException.class, () -> ScanCommand.Target.parse("example.com:http", 443));
+    assertThrows(IllegalArgumentException.class, () -> ScanCommand.Target.parse("example.com:70000", 443));
+    assertThrows(IllegalArgumentException.class, () -> ScanCommand.Target.parse("[::1", 443));
+    assertThrows(IllegalArgumentException.class, () -> ScanCommand.Target.parse(":443", 443));
+  }
+}
@@ -0,0 +1,102 @@
+package co.elastic.tealess.cli.bench;
+
+import co.elastic.tealess.TealessSSLContextBuilder;
+import co.elastic.tealess.TestTLSServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandshakeBenchmarkTest {
+  private SSLContext clientContext;
+  private TestTLSServer server;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    // Wait for the client to hang up, so TLS 1.3 session tickets can be read.
+    server = new TestTLSServer(socket -> {
+      socket.startHandshake();
+      socket.getInputStream().read();
+    });
+
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(server.getKeyStore());
+    cb.setTracker((chain, authType, exception) -> { });
+    clientContext = cb.build();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    server.close();
+  }
+
+  private HandshakeBenchmark run(int port, int resumePercent) throws InterruptedException {
+    return run(clientContext, port, resumePercent);
+  }
+
+  private HandshakeBenchmark run(SSLContext clientContext, int port, int resumePercent) throws InterruptedException {
+    HandshakeBenchmark benchmark = new HandshakeBenchmark(clientContext, new InetSocketAddress("localhost", port), "localhost");
+    benchmark.setConnections(2);
+    benchmark.setRate(50);
+    benchmark.setDuration(300, TimeUnit.MILLISECONDS);
+    benchmark.setResumePercent(resumePercent);
+    benchmark.setTimeout(2000);
+    benchmark.start();
+    assertTrue(benchmark.awaitCompletion(10, TimeUnit.SECONDS));
+    return benchmark;
+  }
+
+  @Test
+  void fullHandshakesWithoutResumption() throws Exception {
+    HandshakeBenchmark benchmark = run(server.getPort(), 0);
+    assertEquals(0, benchmark.getFailed(), () -> benchmark.getFailures().toString());
+    assertTrue(benchmark.getFullHandshakes().getCount() > 1);
+    assertEquals(0, benchmark.getResumedHandshakes().getCount());
+    // At 50 per second for 300ms, there should be no more than 16 handshakes.
+    assertTrue(benchmark.getFullHandshakes().getCount() <= 16);
+  }
+
+  @Test
+  void resumedHandshakesWhenSessionsAreKept() throws Exception {
+    HandshakeBenchmark benchmark = run(server.getPort(), 100);
+    assertEquals(0, benchmark.getFailed(), () -> benchmark.getFailures().toString());
+    assertTrue(benchmark.getFullHandshakes().getCount() >= 1);
+    assertTrue(benchmark.getResumedHandshakes().getCount() >= 1);
+  }
+
+  @Test
+  void failuresAreGroupedByRootCause() throws Exception {
+    int port;
+    try (ServerSocket closed = new ServerSocket(0)) {
+      port = closed.getLocalPort();
+    }
+    HandshakeBenchmark benchmark = run(port, 0);
+    assertTrue(benchmark.getFailed() > 0);
+    assertEquals(0, benchmark.getFullHandshakes().getCount());
+    Map<String, HandshakeBenchmark.Failure> failures = benchmark.getFailures();
+    assertEquals(1, failures.size(), failures::toString);
+    HandshakeBenchmark.Failure failure = failures.get("java.net.ConnectException");
+    assertNotNull(failure, failures::toString);
+    assertEquals(benchmark.getFailed(), failure.getCount());
+  }
+
+  @Test
+  void uncheckedFailuresAreCountedAndWorkersCarryOn() throws Exception {
+    // An SSLContext which was never initialized throws IllegalStateException once connected.
+    HandshakeBenchmark benchmark = run(SSLContext.getInstance("TLS"), server.getPort(), 0);
+    Map<String, HandshakeBenchmark.Failure> failures = benchmark.getFailures();
+    HandshakeBenchmark.Failure failure = failures.get("java.lang.IllegalStateException");
+    assertNotNull(failure, failures::toString);
+    // Two connections failing once each would be 2, so more means the workers kept going.
+    assertTrue(failure.getCount() > 2, failures::toString);
+    assertEquals(benchmark.getFailed(), failure.getCount());
+  }
+}
@@ -0,0 +1,58 @@
+package co.elastic.tealess.cli.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApplicationHandlerTest {
+  private static ByteBuf text(String text) {
+    return Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void echoSendsEverythingBack() {
+    EmbeddedChannel channel = new EmbeddedChannel(Mode.echo.newHandler(0));
+    channel.writeInbound(text("hello"));
+    ByteBuf reply = (ByteBuf) channel.readOutbound();
+    assertEquals("hello", reply.toString(StandardCharsets.UTF_8));
+    reply.release();
+    assertFalse(channel.finish());
+  }
+
+  @Test
+  void sinkDiscardsEverything() {
+    SinkHandler sink = (SinkHandler) Mode.sink.newHandler(0);
+    EmbeddedChannel channel = new EmbeddedChannel(sink);
+    ByteBuf message = text("hello");
+    channel.writeInbound(message);
+    assertNull(channel.readOutbound());
+    assertEquals(0, message.refCnt());
+    assertEquals(5, sink.getBytes());
+  }
+
+  @Test
+  void responderAnswersEachMessage() {
+    EmbeddedChannel channel = new EmbeddedChannel(Mode.responder.newHandler(4));
+    channel.writeInbound(text("one"), text("two"));
+    for (int i = 0; i < 2; i++) {
+      ByteBuf reply = (ByteBuf) channel.readOutbound();
+      assertEquals("abcd", reply.toString(StandardCharsets.UTF_8));
+    }
+    assertNull(channel.readOutbound());
+  }
+
+  @Test
+  void responderRejectsNegativeSize() {
+    assertThrows(IllegalArgumentException.class, () -> Mode.responder.newHandler(-1));
+  }
+
+  @Test
+  void epollIsNotATransport() {
+    assertThrows(IllegalArgumentException.class, () -> Transport.valueOf("epoll"));
+  }
+}
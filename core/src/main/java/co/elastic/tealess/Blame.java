@@ -19,7 +19,7 @@
 
 package co.elastic.tealess;
 
-class Blame {
+public class Blame {
   public static Throwable get(Throwable e) {
     Throwable i;
     while ((i = e.getCause()) != null) {
@@ -0,0 +1,178 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Loads every certificate in a directory of CA files, such as /etc/ssl/certs.
+ * <p>
+ * Such directories hold hundreds of files, plus hash-named symlinks (from c_rehash) pointing at the same files, and
+ * often a bundle repeating all of them. Links are followed to their target, and each target is parsed once, in
+ * parallel. Certificates are de-duplicated by their SHA-256 fingerprint.
+ */
+public class CertificateDirectoryLoader {
+  private static final Logger logger = LogManager.getLogger();
+
+  private CertificateDirectoryLoader() {
+  }
+
+  public static class Result {
+    private final List<X509Certificate> certificates;
+    private final int files;
+    private final int duplicates;
+    private final long elapsedNanos;
+
+    Result(List<X509Certificate> certificates, int files, int duplicates, long elapsedNanos) {
+      this.certificates = certificates;
+      this.files = files;
+      this.duplicates = duplicates;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the distinct certificates, in file name order.
+     */
+    public List<X509Certificate> getCertificates() {
+      return certificates;
+    }
+
+    /**
+     * @return the number of distinct files parsed, after following links.
+     */
+    public int getFiles() {
+      return files;
+    }
+
+    /**
+     * @return the number of certificates dropped because an earlier file held the same certificate.
+     */
+    public int getDuplicates() {
+      return duplicates;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+      return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  public static Result load(Path directory) throws IOException, CertificateException {
+    long start = System.nanoTime();
+
+    // Sorted, so the surviving copy of a duplicate (and the alias order) doesn't depend on the file system.
+    Set<Path> files = new TreeSet<>();
+    Set<Path> targets = new HashSet<>();
+    List<Path> distinct = new ArrayList<>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (Path entry : entries) {
+        files.add(entry);
+      }
+    }
+    for (Path file : files) {
+      if (!Files.isRegularFile(file)) {
+        logger.info("Ignoring non-file '{}'", file);
+        continue;
+      }
+      Path target = file.toRealPath();
+      if (targets.add(target)) {
+        distinct.add(target);
+      } else {
+        logger.debug("Skipping {}, a link to a file already loaded: {}", file, target);
+      }
+    }
+
+    List<List<X509Certificate>> parsed;
+    try {
+      parsed = distinct.parallelStream().map(CertificateDirectoryLoader::parse).collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (ParseFailure e) {
+      throw new CertificateException(e.getMessage(), e.getCause());
+    }
+
+    Set<ByteBuffer> fingerprints = new HashSet<>();
+    List<X509Certificate> certificates = new ArrayList<>();
+    int duplicates = 0;
+    for (int i = 0; i < parsed.size(); i++) {
+      for (X509Certificate certificate : parsed.get(i)) {
+        if (fingerprints.add(fingerprint(certificate))) {
+          certificates.add(certificate);
+        } else {
+          logger.trace("Duplicate certificate in {}: {}", distinct.get(i), certificate.getSubjectX500Principal());
+          duplicates++;
+        }
+      }
+    }
+
+    Result result = new Result(Collections.unmodifiableList(certificates), distinct.size(), duplicates, System.nanoTime() - start);
+    logger.info("Loaded {} certificates ({} duplicates) from {} files in {} in {}ms", certificates.size(), duplicates, distinct.size(), directory, result.getElapsed(TimeUnit.MILLISECONDS));
+    return result;
+  }
+
+  private static List<X509Certificate> parse(Path file) {
+    try {
+      return TrustMaterialCache.certificates(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (CertificateException e) {
+      throw new ParseFailure(file, e);
+    } catch (GeneralSecurityException e) {
+      throw new ParseFailure(file, new CertificateException(e));
+    }
+  }
+
+  static ByteBuffer fingerprint(X509Certificate certificate) {
+    try {
+      return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("SHA-256 is required to be available in every JVM", e);
+    } catch (CertificateException e) {
+      // A parsed certificate always has an encoding.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class ParseFailure extends RuntimeException {
+    ParseFailure(Path file, CertificateException cause) {
+      super("Failure loading certificates from " + file, cause);
+    }
+  }
+}
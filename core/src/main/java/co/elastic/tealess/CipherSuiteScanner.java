@@ -0,0 +1,305 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import co.elastic.tealess.tls.CipherSuite;
+import co.elastic.tealess.tls.ClientHelloEncoder;
+import co.elastic.tealess.tls.ContentType;
+import co.elastic.tealess.tls.InvalidValue;
+import co.elastic.tealess.tls.ServerHello;
+import co.elastic.tealess.tls.TLSDecoder;
+import co.elastic.tealess.tls.TLSHandshake;
+import co.elastic.tealess.tls.TLSPlaintext;
+import co.elastic.tealess.tls.Version;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Find which protocols and cipher suites a server accepts.
+ * <p>
+ * Each probe sends one ClientHello, from {@link ClientHelloEncoder}, over a plain socket and reads only the first
+ * record of the reply: a ServerHello means the server accepts the offer, an alert or a closed connection means it
+ * does not. No handshake is completed, so a probe costs the server little and us nothing beyond a round trip, and any
+ * suite can be probed whether or not this JVM supports it. Probes run in parallel and each answer starts the next
+ * round of probes for its protocol as soon as it arrives:
+ * <ol>
+ * <li>each protocol is offered with every cipher suite; a protocol the server rejects is not probed further;</li>
+ * <li>each key exchange family ({@link CipherSuite#keyExchange()}) is offered as a whole, and a family the server
+ * rejects is pruned without probing its suites one by one;</li>
+ * <li>each remaining suite is offered on its own.</li>
+ * </ol>
+ * TLS 1.3 is probed with its own suites, which no other version can use. A server accepting a TLS 1.3 offer answers
+ * with a HelloRetryRequest, since the probe sends no key share, and that names its choice just as a ServerHello does.
+ */
+public class CipherSuiteScanner {
+  private static final Logger logger = LogManager.getLogger();
+  private static final int defaultConcurrency = 32;
+  private static final int defaultTimeout = 5000;
+  private static final Map<String, Version> probedProtocols = new LinkedHashMap<>();
+  private static final Set<CipherSuite> tls13CipherSuites = EnumSet.noneOf(CipherSuite.class);
+  private static final Set<CipherSuite> legacyCipherSuites = EnumSet.noneOf(CipherSuite.class);
+
+  static {
+    probedProtocols.put("SSLv3", Version.SSL3_0);
+    probedProtocols.put("TLSv1", Version.TLS1_0);
+    probedProtocols.put("TLSv1.1", Version.TLS1_1);
+    probedProtocols.put("TLSv1.2", Version.TLS1_2);
+    probedProtocols.put("TLSv1.3", Version.TLS1_3);
+
+    for (CipherSuite suite : CipherSuite.values()) {
+      (suite.isTLS13() ? tls13CipherSuites : legacyCipherSuites).add(suite);
+    }
+    // Signalling values are not cipher suites a server can choose.
+    legacyCipherSuites.removeAll(EnumSet.of(CipherSuite.TLS_NULL_WITH_NULL_NULL,
+            CipherSuite.TLS_EMPTY_RENEGOTIATION_INFO_SCSV, CipherSuite.TLS_FALLBACK_SCSV));
+  }
+
+  // Each probe thread encodes its ClientHello records into the same buffer.
+  private final ThreadLocal<ByteBuffer> records = ThreadLocal.withInitial(() -> ByteBuffer.allocate(5 + (1 << 14)));
+  private int concurrency = defaultConcurrency;
+  private int timeout = defaultTimeout;
+
+  /**
+   * @param concurrency the maximum number of probes in flight at once
+   */
+  public void setConcurrency(int concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be at least 1. Got " + concurrency);
+    }
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * @param timeout milliseconds allowed for each probe to connect and to be answered
+   */
+  public void setTimeout(int timeout) {
+    if (timeout < 1) {
+      throw new IllegalArgumentException("timeout must be positive. Got " + timeout);
+    }
+    this.timeout = timeout;
+  }
+
+  public ServerCapabilities scan(InetSocketAddress address, String hostname) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("tealess-cipher-scan-"));
+    try {
+      return new Scan(address, hostname, executor).run();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private class Scan {
+    private final InetSocketAddress address;
+    private final String hostname;
+    private final ExecutorService executor;
+
+    private final Map<String, Set<CipherSuite>> accepted = new LinkedHashMap<>();
+    // One encoder, with its ClientHello template, for each (protocol, offered suites) offer of this scan.
+    private final Map<String, Map<Collection<CipherSuite>, ClientHelloEncoder>> offers = new LinkedHashMap<>();
+    private final AtomicInteger probes = new AtomicInteger();
+    private final AtomicInteger prunedFamilies = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicReference<Throwable> exception = new AtomicReference<>();
+
+    Scan(InetSocketAddress address, String hostname, ExecutorService executor) {
+      this.address = address;
+      this.hostname = hostname;
+      this.executor = executor;
+      for (String protocol : probedProtocols.keySet()) {
+        accepted.put(protocol, new ConcurrentSkipListSet<>());
+        offers.put(protocol, new ConcurrentHashMap<>());
+      }
+    }
+
+    ServerCapabilities run() throws InterruptedException {
+      long start = System.nanoTime();
+      CompletableFuture<?>[] scans = probedProtocols.keySet().stream().map(this::scanProtocol).toArray(CompletableFuture[]::new);
+      try {
+        CompletableFuture.allOf(scans).join();
+      } catch (CompletionException e) {
+        // Each probe handles its own failures, so this is a bug, but report what was found anyway.
+        logger.warn("Cipher suite scan of {} failed", address, e);
+        exception.compareAndSet(null, e.getCause());
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+
+      Map<String, List<CipherSuite>> result = new LinkedHashMap<>();
+      accepted.forEach((protocol, suites) -> {
+        if (!suites.isEmpty()) {
+          result.put(protocol, new ArrayList<>(suites));
+        }
+      });
+      return new ServerCapabilities(address, result, probes.get(), prunedFamilies.get(), errors.get(), exception.get(),
+              System.nanoTime() - start);
+    }
+
+    private CompletableFuture<Void> scanProtocol(String protocol) {
+      Set<CipherSuite> cipherSuites = "TLSv1.3".equals(protocol) ? tls13CipherSuites : legacyCipherSuites;
+      return probe(protocol, cipherSuites).thenCompose(hello -> {
+        if (hello == null || !hello.getNegotiatedVersion().equals(probedProtocols.get(protocol))) {
+          logger.debug("{} rejected {}", address, protocol);
+          return CompletableFuture.completedFuture(null);
+        }
+        CipherSuite chosen = hello.getCipherSuite();
+        accepted.get(protocol).add(chosen);
+
+        Map<String, List<CipherSuite>> families = cipherSuites.stream()
+                .collect(Collectors.groupingBy(CipherSuite::keyExchange));
+        return allOf(families.values().stream().map(family -> family.contains(chosen)
+                ? probeEach(protocol, family, chosen)
+                : scanFamily(protocol, family)));
+      });
+    }
+
+    private CompletableFuture<Void> scanFamily(String protocol, List<CipherSuite> family) {
+      return probe(protocol, family).thenCompose(hello -> {
+        if (hello == null) {
+          prunedFamilies.incrementAndGet();
+          return CompletableFuture.completedFuture(null);
+        }
+        accepted.get(protocol).add(hello.getCipherSuite());
+        return probeEach(protocol, family, hello.getCipherSuite());
+      });
+    }
+
+    /**
+     * Offer each suite of the family except one already known to be accepted.
+     */
+    private CompletableFuture<Void> probeEach(String protocol, List<CipherSuite> family, CipherSuite known) {
+      return allOf(family.stream()
+              .filter(suite -> suite != known)
+              .map(suite -> probe(protocol, Collections.singletonList(suite)).thenAccept(hello -> {
+                if (hello != null) {
+                  accepted.get(protocol).add(hello.getCipherSuite());
+                }
+              })));
+    }
+
+    /**
+     * @return a future of the server's ServerHello, or of null if the server rejected the offer. It never completes
+     * exceptionally.
+     */
+    private CompletableFuture<ServerHello> probe(String protocol, Collection<CipherSuite> suites) {
+      ClientHelloEncoder offer = offers.get(protocol).computeIfAbsent(suites, s -> encoder(protocol, s));
+      return CompletableFuture.supplyAsync(() -> {
+        if (Thread.currentThread().isInterrupted()) {
+          return null;
+        }
+        ByteBuffer record = records.get();
+        record.clear();
+        offer.encode(record);
+        record.flip();
+
+        probes.incrementAndGet();
+        try {
+          ServerHello hello = exchange(record);
+          if (hello != null && !suites.contains(hello.getCipherSuite())) {
+            logger.warn("{} chose {} which was not offered with {}", address, hello.getCipherSuite(), protocol);
+            return null;
+          }
+          return hello;
+        } catch (IOException | InvalidValue e) {
+          errors.incrementAndGet();
+          exception.compareAndSet(null, e);
+          logger.debug("Probe of {} with {} failed", address, protocol, e);
+          return null;
+        }
+      }, executor);
+    }
+
+    /**
+     * Build the offer's ClientHello template now, so probe threads only read it.
+     */
+    private ClientHelloEncoder encoder(String protocol, Collection<CipherSuite> suites) {
+      ClientHelloEncoder encoder = new ClientHelloEncoder()
+              .setVersion(probedProtocols.get(protocol))
+              .setCipherSuites(suites)
+              .setServerName(hostname);
+      encoder.length();
+      return encoder;
+    }
+
+    /**
+     * @return the server's ServerHello, or null if it answered with an alert or closed the connection.
+     */
+    private ServerHello exchange(ByteBuffer record) throws IOException, InvalidValue {
+      try (Socket socket = new Socket()) {
+        socket.connect(address, timeout);
+        socket.setSoTimeout(timeout);
+        OutputStream out = socket.getOutputStream();
+        out.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+        out.flush();
+
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] reply = new byte[5];
+        try {
+          in.readFully(reply, 0, 5);
+          int length = ((reply[3] & 0xff) << 8) | (reply[4] & 0xff);
+          reply = Arrays.copyOf(reply, 5 + length);
+          in.readFully(reply, 5, length);
+        } catch (EOFException | SocketException e) {
+          // Many servers reject an offer by closing or resetting the connection rather than with an alert.
+          return null;
+        }
+
+        TLSPlaintext plaintext = TLSDecoder.decode(ByteBuffer.wrap(reply));
+        if (plaintext.getContentType() != ContentType.Handshake) {
+          return null;
+        }
+        TLSHandshake handshake = TLSDecoder.decodeHandshake(plaintext.getPayload());
+        return handshake instanceof ServerHello ? (ServerHello) handshake : null;
+      }
+    }
+  }
+
+  private static CompletableFuture<Void> allOf(Stream<CompletableFuture<Void>> futures) {
+    return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+  }
+}
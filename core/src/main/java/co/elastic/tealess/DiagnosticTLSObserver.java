@@ -1,8 +1,11 @@
 package co.elastic.tealess;
 
+import co.elastic.tealess.io.LifecycleObserver;
 import co.elastic.tealess.io.ObservableSSLSocket;
 import co.elastic.tealess.io.ObservableSocket;
 import co.elastic.tealess.io.Transaction;
+import co.elastic.tealess.jfr.TLSEvents;
+import co.elastic.tealess.metrics.HandshakeListener;
 import co.elastic.tealess.tls.*;
 
 import javax.net.ssl.*;
@@ -14,13 +17,12 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
-public class DiagnosticTLSObserver implements TLSObserver {
+public class DiagnosticTLSObserver implements TLSObserver, LifecycleObserver {
   private static final List<String> SupportedCipherSuites;
   private static final Logger logger = LogManager.getLogger();
 
@@ -35,19 +37,45 @@ public class DiagnosticTLSObserver implements TLSObserver {
     SupportedCipherSuites = ciphers;
   }
 
-  private final ByteBuffer inputBuffer = ByteBuffer.allocate(16384);
-  private final ByteBuffer outputBuffer = ByteBuffer.allocate(16384);
-  private final List<Transaction<?>> log = new LinkedList<>();
+  private final HandshakeCapture capture;
   private final TrustManager[] trustManagers;
+  private final HandshakeListener listener;
+  private volatile boolean handshakeCompleted = false;
+  // System.nanoTime() of the first handshake bytes, or 0 before then. Only tracked with a listener.
+  private volatile long handshakeStart;
+  // The Flight Recorder event for this handshake, or null before its first bytes.
+  private volatile TLSEvents.Handshake handshakeEvent;
+  private boolean handshakeFailed;
+
+  // The wrappers this observer created, switched to pass-through once the handshake completes.
+  private ObservableSocket transport;
+  private ObservableSSLSocket application;
 
   public DiagnosticTLSObserver(TrustManager[] trustManagers) {
+    this(trustManagers, HandshakeListener.NOOP);
+  }
+
+  public DiagnosticTLSObserver(TrustManager[] trustManagers, HandshakeListener listener) {
     this.trustManagers = trustManagers;
+    this.listener = listener;
+    this.capture = new HandshakeCapture(listener);
   }
 
+  /**
+   * Each message is prefixed with the milliseconds since the first message, so slow steps in the exchange stand out.
+   */
   private static String formatLog(List<Transaction<TLSMessage>> log) {
-    return log.stream().map(m -> String.format("  %s", m)).collect(Collectors.joining("\n"));
+    if (log.isEmpty()) {
+      return "";
+    }
+    long start = log.get(0).timestamp;
+    return log.stream().map(m -> String.format("  %+9.3fms %s", (m.timestamp - start) / 1e6, m)).collect(Collectors.joining("\n"));
   }
 
+  /**
+   * @param inputBuffer the bytes read from the network, ready for reading (position 0, limit at the end of the data).
+   * @param outputBuffer the bytes written to the network, ready for reading.
+   */
   public static void diagnoseException(List<Transaction<?>> log, ByteBuffer inputBuffer, ByteBuffer outputBuffer, Throwable cause, TrustManager[] trustManagers) throws SSLException {
     StringBuilder report = new StringBuilder();
 
@@ -98,7 +126,11 @@ public class DiagnosticTLSObserver implements TLSObserver {
       } else if (blame.getMessage().matches("no cipher suites in common")) {
         report.append("The client provided ciphers and that this server did not accept\n");
         List<Transaction<TLSMessage>> messageLog = readLog(log, inputBuffer, outputBuffer);
-        List<CipherSuite> clientCiphers = ((ClientHello) messageLog.get(0).value).getCipherSuites();
+        List<CipherSuite> clientCiphers = messageLog.stream()
+                .filter(transaction -> transaction.value instanceof ClientHello)
+                .findFirst()
+                .map(transaction -> ((ClientHello) transaction.value).getCipherSuites())
+                .orElse(Collections.emptyList());
         List<CipherSuite> disabled = new ArrayList(10);
         List<CipherSuite> unsupported = new ArrayList(10);
         for (CipherSuite cipherSuite : clientCiphers) {
@@ -153,34 +185,34 @@ public class DiagnosticTLSObserver implements TLSObserver {
 
   private static List<Transaction<TLSMessage>> readLog(List<Transaction<?>> log, ByteBuffer inputBuffer, ByteBuffer outputBuffer) {
     List<Transaction<TLSMessage>> messageLog = new LinkedList<>();
-    inputBuffer.flip();
-    outputBuffer.flip();
+    // A message is timestamped with the read or write that completed it.
+    long[] timestamp = new long[1];
+    TLSEvents events = TLSEvents.get();
+    TLSStreamDecoder outputDecoder = new TLSStreamDecoder(message -> {
+      events.recordDecoded(false, message);
+      messageLog.add(Transaction.create(Transaction.Operation.Output, message, timestamp[0]));
+    });
+    TLSStreamDecoder inputDecoder = new TLSStreamDecoder(message -> {
+      events.recordDecoded(true, message);
+      messageLog.add(Transaction.create(Transaction.Operation.Input, message, timestamp[0]));
+      if (message instanceof ServerHello) {
+        outputDecoder.negotiated(((ServerHello) message).getNegotiatedVersion());
+      }
+    });
+    ByteBuffer input = inputBuffer.duplicate();
+    ByteBuffer output = outputBuffer.duplicate();
 
-//        builder.append("Here is a network log before the failure:\n");
-    int inputBytes = 0, outputBytes = 0;
+    // Feed each direction in the order the bytes crossed the network so the messages interleave as they happened.
     for (Transaction<?> transaction : log) {
-      int length;
+      timestamp[0] = transaction.timestamp;
       switch (transaction.op) {
         case Input:
-//                    builder.append(String.format("  [%s] ", transaction.op));
-          length = ((Transaction<Integer>) transaction).value;
-          if (inputBuffer.position() == 0 || inputBuffer.position() < inputBytes) {
-            decodeBuffer(inputBuffer, length, (message) -> messageLog.add(Transaction.create(Transaction.Operation.Input, message)));
-          }
-          inputBytes += length;
+          feed(inputDecoder, input, ((Transaction<Integer>) transaction).value);
           break;
         case Output:
-//                    builder.append(String.format("  [%s] ", transaction.op));
-          length = ((Transaction<Integer>) transaction).value;
-          if (outputBuffer.position() == 0 || outputBuffer.position() < outputBytes) {
-            decodeBuffer(outputBuffer, length, (message) -> messageLog.add(Transaction.create(Transaction.Operation.Output, message)));
-          }
-          outputBytes += length;
+          feed(outputDecoder, output, ((Transaction<Integer>) transaction).value);
           break;
         case Exception:
-//                    builder.append(String.format("  [%s] %s\n", transaction.op, transaction.value));
-          //Throwable cause = ((Transaction<Throwable>)transaction).value;
-          //System.out.println("Terminating exception: " + cause.getClass() + ": " + cause);
           break;
       }
     }
@@ -188,86 +220,14 @@ public class DiagnosticTLSObserver implements TLSObserver {
     return messageLog;
   }
 
-  private static void decodeBuffer(ByteBuffer buffer, int length, Function<TLSMessage, Boolean> handler) {
-    // XXX: Refactor this into
-    int initial = buffer.position();
-    length = Math.min(initial + length, buffer.limit()) - initial;
-    while (buffer.position() < initial + length) {
-      final TLSPlaintext plaintext;
-      try {
-        plaintext = TLSPlaintext.parse(buffer);
-      } catch (InvalidValue e) {
-//                builder.append(String.format("Invalid value decoding handshake: %s\n", e));
-        e.printStackTrace();
-        return;
-      }
-
-      ByteBuffer plainPayload = plaintext.getPayload();
-      switch (plaintext.getContentType()) {
-        case ChangeCipherSpec:
-        case ApplicationData:
-          handler.apply(plaintext);
-//                    builder.append(String.format("%s\n", plaintext.getContentType()));
-          break;
-        case Alert:
-          Alert alert;
-          try {
-            alert = TLSDecoder.decodeAlert(plainPayload);
-            handler.apply(alert);
-//                        builder.append(String.format("%s\n", alert));
-          } catch (InvalidValue e) {
-//                        builder.append(String.format("Invalid value decoding alert: %s\n", e));
-            e.printStackTrace();
-            return;
-          }
-          break;
-        case Handshake:
-          // multiple handshake messages can be contained in a single TLSPlaintext
-          while (plainPayload.hasRemaining()) {
-            //System.out.println(plainPayload);
-            final TLSHandshake handshake;
-            try {
-              handshake = TLSDecoder.decodeHandshake(plainPayload);
-            } catch (InvalidValue e) {
-//                            builder.append(String.format("Invalid value decoding handshake: %s\n", e));
-              e.printStackTrace();
-              return;
-            }
-            handler.apply(handshake);
-//                        builder.append(String.format("%s\n", handshake));
-//                        if (handshake instanceof CertificateMessage) {
-//                            CertificateMessage message = (CertificateMessage) handshake;
-//                            int i = 0;
-//                            for (Certificate certificate : message.getChain()) {
-//                                X509Certificate x509 = (X509Certificate) certificate;
-//                                builder.append(String.format("%d: %s\n", i, x509.getSubjectX500Principal()));
-//                                try {
-//                                    if (x509.getSubjectAlternativeNames() != null) {
-//                                        for (List<?> x : x509.getSubjectAlternativeNames()) {
-//                                            int type = (Integer) x.get(0);
-//                                            String value = (String) x.get(1);
-//                                            switch (type) {
-//                                                case 2: // dNSName per RFC5280 4.2.1.6
-//                                                    builder.append(String.format("  subjectAlt: DNS:%s\n", value));
-//                                                    break;
-//                                                case 7: // iPAddress per RFC5280 4.2.1.6
-//                                                    builder.append(String.format("  subjectAlt: IP:%s\n", value));
-//                                                    break;
-//                                                default:
-//                                                    builder.append(String.format("  subjectAlt: [%d]:%s\n", type, value));
-//                                                    break;
-//                                            }
-//                                        }
-//                                    }
-//                                } catch (CertificateParsingException e) {
-//                                    builder.append(String.format("  Certificate parsing failure: %s\n", e));
-//                                }
-//                                i++;
-//                            } // for : message.getChain()
-//                        }
-          }
-          break;
-      }
+  private static void feed(TLSStreamDecoder decoder, ByteBuffer buffer, int length) {
+    ByteBuffer chunk = buffer.duplicate();
+    chunk.limit(Math.min(buffer.position() + length, buffer.limit()));
+    buffer.position(chunk.limit());
+    try {
+      decoder.feed(chunk);
+    } catch (InvalidValue e) {
+      logger.debug("Unable to decode TLS stream: {}", e.toString());
     }
   }
 
@@ -301,40 +261,104 @@ public class DiagnosticTLSObserver implements TLSObserver {
     }
   }
 
-  private void recordInput(int length) {
-    log.add(Transaction.create(Transaction.Operation.Input, length));
+  private void exception(Throwable cause) throws SSLException {
+    reportFailure(cause);
+    capture.recordException(cause);
+    capture.diagnose(cause, trustManagers);
+  }
+
+  private synchronized void reportFailure(Throwable cause) {
+    if (handshakeCompleted || handshakeFailed || handshakeEvent == null) {
+      return;
+    }
+    handshakeFailed = true;
+    Throwable blame = Blame.get(cause);
+    if (handshakeStart != 0) {
+      listener.handshakeFailed(peer(), System.nanoTime() - handshakeStart, blame);
+    }
+    handshakeEvent.failed(peer(), blame);
+  }
+
+  private void read(byte[] b, int off, int len, int ret) {
+    startHandshakeTimer();
+    capture.recordInput(b, off, ret); // ret is number of bytes actually read
   }
 
-  private void recordOutput(int length) {
-    log.add(Transaction.create(Transaction.Operation.Output, length));
+  private void write(byte[] b, int off, int len) {
+    startHandshakeTimer();
+    capture.recordOutput(b, off, len);
   }
 
-  private void recordException(Throwable cause) {
-    log.add(Transaction.create(Transaction.Operation.Exception, cause));
+  private void startHandshakeTimer() {
+    if (handshakeEvent == null) {
+      synchronized (this) {
+        if (handshakeEvent == null) {
+          if (listener != HandshakeListener.NOOP) {
+            handshakeStart = System.nanoTime();
+          }
+          handshakeEvent = TLSEvents.get().handshake();
+        }
+      }
+    }
   }
 
-  private void exception(Throwable cause) throws SSLException {
-    recordException(cause);
-    diagnoseException(log, inputBuffer, outputBuffer, cause, trustManagers);
+  private String peer() {
+    Socket socket = transport;
+    if (socket == null || socket.getInetAddress() == null) {
+      return "unknown";
+    }
+    return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
   }
 
-  private void read(byte[] b, int off, int len, int ret) {
-    recordInput(ret);
-    if (ret >= 0) {
-      inputBuffer.put(b, off, ret); // ret is number of bytes actually written
+  // Application data only flows once the handshake is done, so the first successful read or write also marks
+  // completion for handshakes started implicitly rather than with startHandshake().
+  private void applicationRead(byte[] b, int off, int len, int ret) {
+    if (!handshakeCompleted && ret > 0) {
+      handshakeCompleted();
     }
+  }
 
+  private void applicationWrite(byte[] b, int off, int len) {
+    if (!handshakeCompleted) {
+      handshakeCompleted();
+    }
   }
 
-  private void write(byte[] b, int off, int len) {
-    recordOutput(len);
-    outputBuffer.put(b, off, len);
+  /**
+   * Stop capturing: release the capture buffers and switch the observed sockets to pass-through, so a long-lived
+   * connection pays nothing for diagnostics once its handshake has succeeded.
+   */
+  @Override
+  public synchronized void handshakeCompleted() {
+    if (handshakeCompleted) {
+      return;
+    }
+    handshakeCompleted = true;
+    if (handshakeEvent != null && !handshakeFailed) {
+      SSLSession session = application == null ? null : application.getSession();
+      if (handshakeStart != 0) {
+        listener.handshakeCompleted(peer(), System.nanoTime() - handshakeStart, session);
+      }
+      handshakeEvent.completed(peer(), session);
+    }
+    capture.release();
+    if (transport != null) {
+      transport.stopObserving();
+    }
+    if (application != null) {
+      application.stopObserving();
+    }
+  }
 
+  @Override
+  public void closed() {
+    capture.release();
   }
 
   @Override
-  public Socket observeIO(Socket socket) {
-    return new ObservableSocket(socket, this::read, this::write, this::exception);
+  public synchronized Socket observeIO(Socket socket) {
+    transport = new ObservableSocket(socket, this::read, this::write, this::exception);
+    return transport;
   }
 
   @Override
@@ -348,7 +372,8 @@ public class DiagnosticTLSObserver implements TLSObserver {
   }
 
   @Override
-  public SSLSocket observeExceptions(SSLSocket socket) {
-    return new ObservableSSLSocket(socket, null, null, this::exception);
+  public synchronized SSLSocket observeExceptions(SSLSocket socket) {
+    application = new ObservableSSLSocket(socket, this::applicationRead, this::applicationWrite, this::exception, this);
+    return application;
   }
 }
@@ -0,0 +1,185 @@
+package co.elastic.tealess;
+
+import co.elastic.tealess.io.BufferPool;
+import co.elastic.tealess.io.Transaction;
+import co.elastic.tealess.jfr.TLSEvents;
+import co.elastic.tealess.metrics.HandshakeListener;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the bytes exchanged during a TLS handshake so that a failure can be diagnosed.
+ * <p>
+ * Capture buffers are borrowed from a shared pool on the first recorded byte and returned by {@link #release()}, which
+ * callers invoke once the handshake completes or the connection closes. After release, nothing more is recorded.
+ */
+class HandshakeCapture {
+  private static final int captureSize = 16384;
+  private static final BufferPool pool = new BufferPool(captureSize, 256);
+  private static final ByteBuffer emptyBuffer = ByteBuffer.allocate(0);
+
+  private ByteBuffer input;
+  private ByteBuffer output;
+  private List<Transaction<?>> log;
+  private boolean inputFull = false;
+  private boolean outputFull = false;
+  private boolean released = false;
+  private final HandshakeListener listener;
+
+  HandshakeCapture() {
+    this(HandshakeListener.NOOP);
+  }
+
+  HandshakeCapture(HandshakeListener listener) {
+    this.listener = listener;
+  }
+
+  synchronized void recordInput(byte[] b, int off, int len) {
+    if (released || inputFull || len <= 0) {
+      return;
+    }
+    if (input == null) {
+      input = pool.acquire();
+    }
+    if (input.remaining() < len) {
+      inputFull = true;
+      listener.captureOverflow(true);
+      return;
+    }
+    input.put(b, off, len);
+    log().add(Transaction.create(Transaction.Operation.Input, len));
+    listener.captured(len);
+  }
+
+  /**
+   * Record len bytes of src starting at offset without modifying src.
+   */
+  synchronized void recordInput(ByteBuffer src, int offset, int len) {
+    if (released || inputFull || len <= 0) {
+      return;
+    }
+    if (input == null) {
+      input = pool.acquire();
+    }
+    if (input.remaining() < len) {
+      inputFull = true;
+      listener.captureOverflow(true);
+      return;
+    }
+    input.put(slice(src, offset, len));
+    log().add(Transaction.create(Transaction.Operation.Input, len));
+    listener.captured(len);
+  }
+
+  synchronized void recordOutput(byte[] b, int off, int len) {
+    if (released || outputFull || len <= 0) {
+      return;
+    }
+    if (output == null) {
+      output = pool.acquire();
+    }
+    if (output.remaining() < len) {
+      outputFull = true;
+      listener.captureOverflow(false);
+      return;
+    }
+    output.put(b, off, len);
+    log().add(Transaction.create(Transaction.Operation.Output, len));
+    listener.captured(len);
+  }
+
+  /**
+   * Record len bytes of src starting at offset without modifying src.
+   */
+  synchronized void recordOutput(ByteBuffer src, int offset, int len) {
+    if (released || outputFull || len <= 0) {
+      return;
+    }
+    if (output == null) {
+      output = pool.acquire();
+    }
+    if (output.remaining() < len) {
+      outputFull = true;
+      listener.captureOverflow(false);
+      return;
+    }
+    output.put(slice(src, offset, len));
+    log().add(Transaction.create(Transaction.Operation.Output, len));
+    listener.captured(len);
+  }
+
+  synchronized void recordException(Throwable cause) {
+    if (released) {
+      return;
+    }
+    log().add(Transaction.create(Transaction.Operation.Exception, cause));
+  }
+
+  /**
+   * Diagnose a failure using whatever has been captured so far.
+   *
+   * @throws SSLException a replacement exception carrying the diagnosis, if one could be made.
+   */
+  synchronized void diagnose(Throwable cause, TrustManager[] trustManagers) throws SSLException {
+    List<Transaction<?>> transactions = log == null ? Collections.emptyList() : log;
+    TLSEvents.Diagnosis event = TLSEvents.get().diagnosis();
+    try {
+      DiagnosticTLSObserver.diagnoseException(transactions, readable(input), readable(output), cause, trustManagers);
+    } catch (SSLException diagnosis) {
+      event.end(cause, diagnosis);
+      throw diagnosis;
+    }
+    event.end(cause, null);
+  }
+
+  /**
+   * Return the capture buffers to the pool and stop recording. Safe to call more than once.
+   */
+  synchronized void release() {
+    if (released) {
+      return;
+    }
+    released = true;
+    if (input != null) {
+      pool.release(input);
+      input = null;
+    }
+    if (output != null) {
+      pool.release(output);
+      output = null;
+    }
+    log = null;
+  }
+
+  synchronized boolean isReleased() {
+    return released;
+  }
+
+  private List<Transaction<?>> log() {
+    if (log == null) {
+      log = new ArrayList<>();
+    }
+    return log;
+  }
+
+  private static ByteBuffer slice(ByteBuffer src, int offset, int len) {
+    ByteBuffer dup = src.duplicate();
+    dup.limit(offset + len);
+    dup.position(offset);
+    return dup;
+  }
+
+  private static ByteBuffer readable(ByteBuffer buffer) {
+    if (buffer == null) {
+      return emptyBuffer.duplicate();
+    }
+    ByteBuffer dup = buffer.duplicate();
+    dup.flip();
+    return dup;
+  }
+}
@@ -24,7 +24,6 @@ import org.apache.logging.log4j.Logger;
 
 import javax.net.ssl.KeyManagerFactory;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -32,12 +31,20 @@ import java.nio.file.Paths;
 import java.security.*;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Assembles the key store used for keys or trust from keystore files, CA certificate files, and PEM keys.
+ * <p>
+ * Files are parsed through the {@link TrustMaterialCache}, so builders that point at the same files share one parsed
+ * copy. A shared key store is copied into a private in-memory one the first time this builder needs to change it.
+ */
 public class KeyStoreBuilder {
   // Based on some quick research, this appears to be the default java trust store location
   public static final Path defaultTrustStorePath = Paths.get(System.getProperty("java.home"), "lib", "security", "cacerts");
@@ -49,11 +56,21 @@ public class KeyStoreBuilder {
   // (requires a passphrase, even when loading null).
   private final char[] IN_MEMORY_KEYSTORE_PASSPHRASE = "hurray".toCharArray();
   private boolean modified;
+  // Key entries in a private keyStore are protected by IN_MEMORY_KEYSTORE_PASSPHRASE.
   private KeyStore keyStore;
+  // Non-null while keyStore is the shared, cached copy of a keystore file.
+  private TrustMaterialCache.Material shared;
+  // Built on demand from a private keyStore; null when stale.
   private KeyManagerFactory keyManagerFactory;
+  // Everything done to this builder since it was last emptied, so it can be replayed against changed files.
+  private final List<Step> steps = new ArrayList<>();
+  private final List<Path> sources = new ArrayList<>();
+
+  private interface Step {
+    void apply(KeyStoreBuilder builder) throws IOException, GeneralSecurityException, Bug, ConfigurationProblem;
+  }
 
   public KeyStoreBuilder() throws NoSuchAlgorithmException, IOException, CertificateException, KeyStoreException, UnrecoverableKeyException {
-    keyManagerFactory = KeyManagerFactory.getInstance(keyManagerAlgorithm);
     empty();
     modified = false;
   }
@@ -62,13 +79,39 @@ public class KeyStoreBuilder {
     keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
     // default to an empty KeyStore instance.
     keyStore.load(null, IN_MEMORY_KEYSTORE_PASSPHRASE);
-    keyManagerFactory.init(keyStore, IN_MEMORY_KEYSTORE_PASSPHRASE);
+    shared = null;
+    keyManagerFactory = null;
+    steps.clear();
+    sources.clear();
     modified = true;
   }
 
+  /**
+   * @return the files and directories this builder has read from, including the default trust store if it was used.
+   */
+  public List<Path> getSources() {
+    return Collections.unmodifiableList(sources);
+  }
+
+  /**
+   * Build a new KeyStoreBuilder by repeating everything done to this one, reading the files again. Files that have not
+   * changed are not parsed again; see {@link TrustMaterialCache}. Keystore passphrases are not kept, so a keystore that
+   * has changed is opened the way it first was, if that is possible without one; see {@link #useKeyStore(File)}.
+   *
+   * @return the new builder
+   */
+  public KeyStoreBuilder reload() throws IOException, GeneralSecurityException, Bug, ConfigurationProblem {
+    KeyStoreBuilder builder = new KeyStoreBuilder();
+    for (Step step : steps) {
+      step.apply(builder);
+    }
+    builder.modified = modified;
+    return builder;
+  }
+
   void useDefaultTrustStore() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
     logger.trace("Using default trust store: {}", defaultTrustStorePath);
-    useKeyStore(defaultTrustStorePath.toFile(), defaultTrustStorePassphrase);
+    useKeyStore(defaultTrustStorePath.toFile(), defaultTrustStorePassphrase, KeyStoreBuilder::useDefaultTrustStore);
     modified = true;
   }
 
@@ -88,15 +131,19 @@ public class KeyStoreBuilder {
     }
     try {
       logger.info("Adding key+cert named '{}' to internal keystore.", "mykey");
-      keyStore.setKeyEntry("mykey", key, IN_MEMORY_KEYSTORE_PASSPHRASE, certificates.toArray(new Certificate[0]));
-      keyManagerFactory.init(keyStore, IN_MEMORY_KEYSTORE_PASSPHRASE);
+      privateKeyStore().setKeyEntry("mykey", key, IN_MEMORY_KEYSTORE_PASSPHRASE, certificates.toArray(new Certificate[0]));
     } catch (KeyStoreException e) {
       throw new Bug("Failure trying to setKeyEntry in the in-memory keystore", e);
     } catch (UnrecoverableKeyException e) {
       throw new Bug("Corrupt or invalid keystore passphrase? This is a bug (since we are forming the keystore in-memory!", e);
     } catch (NoSuchAlgorithmException e) {
       throw new Bug("No such algorithm?", e);
+    } catch (CertificateException e) {
+      throw new Bug("Failure trying to copy the keystore into memory", e);
     }
+    steps.add(builder -> builder.addPrivateKeyPEM(keyPath, certificatePath));
+    sources.add(keyPath);
+    sources.add(certificatePath);
     modified = true;
   }
 
@@ -107,64 +154,149 @@ public class KeyStoreBuilder {
 
     if (Files.isDirectory(path)) {
       logger.info("Adding all files in {} to trusted certificate authorities.", path);
-      for (File file : path.toFile().listFiles()) {
-        if (file.isFile()) {
-          addCAPath(file);
-        } else {
-          logger.info("Ignoring non-file '{}'", file);
-        }
+      for (X509Certificate cert : CertificateDirectoryLoader.load(path).getCertificates()) {
+        logger.debug("Loaded certificate from {}: {}", path, cert.getSubjectX500Principal());
+        putCertificate(cert.getSubjectX500Principal().toString(), cert);
       }
+      modified = true;
     } else {
       addCAPath(path.toFile());
     }
+    steps.add(builder -> builder.addCAPath(path));
+    sources.add(path);
   }
 
   private void addCAPath(File file) throws CertificateException, IOException, KeyStoreException {
     for (Certificate cert : parseCertificatesPath(file.toPath())) {
       logger.debug("Loaded certificate from {}: {}", file, ((X509Certificate) cert).getSubjectX500Principal());
       String alias = ((X509Certificate) cert).getSubjectX500Principal().toString();
-      keyStore.setCertificateEntry(alias, cert);
+      putCertificate(alias, cert);
+    }
+    modified = true;
+  }
+
+  /**
+   * Add a trusted certificate under the given alias, replacing any entry already using that alias.
+   */
+  public void addTrustedCertificate(String alias, Certificate certificate) throws KeyStoreException {
+    putCertificate(alias, certificate);
+    steps.add(builder -> builder.addTrustedCertificate(alias, certificate));
+  }
+
+  private void putCertificate(String alias, Certificate certificate) throws KeyStoreException {
+    try {
+      privateKeyStore().setCertificateEntry(alias, certificate);
+    } catch (IOException | GeneralSecurityException e) {
+      throw new KeyStoreException("Failure trying to copy the keystore into memory", e);
     }
     modified = true;
   }
 
   private Collection<? extends Certificate> parseCertificatesPath(Path path) throws IOException, CertificateException {
-    CertificateFactory cf = CertificateFactory.getInstance("X.509");
-    try (FileInputStream in = new FileInputStream(path.toFile())) {
-      return cf.generateCertificates(in);
+    try {
+      return TrustMaterialCache.certificates(path);
+    } catch (CertificateException e) {
+      throw e;
+    } catch (GeneralSecurityException e) {
+      throw new CertificateException(e);
     }
   }
 
+  /**
+   * Use the keystore at the given path, asking for its passphrase on the console if the default one does not open it.
+   * The passphrase is not kept: if the file changes, {@link #reload()} opens it the same way again, asking again.
+   */
   public void useKeyStore(File path) throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
+    Step reread = builder -> builder.useKeyStore(path);
     try {
-      useKeyStore(path, defaultTrustStorePassphrase);
+      useKeyStore(path, defaultTrustStorePassphrase, reread);
     } catch (IOException e) {
-      if (e.getCause() instanceof UnrecoverableKeyException) {
+      if (e.getCause() instanceof UnrecoverableKeyException && System.console() != null) {
         System.out.printf("Enter passphrase for keyStore %s: ", path);
         char[] passphrase = System.console().readPassword();
-        useKeyStore(path, passphrase);
-
-        // Make an effort to not keep the passphrase in-memory longer than necessary? Maybe?
-        // This may not matter, anyway, since I'm pretty sure KeyManagerFactor.init() keeps it anyway...
-        Arrays.fill(passphrase, (char) 0);
+        try {
+          useKeyStore(path, passphrase, reread);
+        } finally {
+          Arrays.fill(passphrase, (char) 0);
+        }
       } else {
         throw e;
       }
     }
   }
 
+  /**
+   * Use the keystore at the given path. The passphrase is not kept, so {@link #reload()} fails once the file changes.
+   */
   void useKeyStore(File path, char[] passphrase) throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
-    FileInputStream fs;
+    useKeyStore(path, passphrase, null);
+  }
+
+  /**
+   * @param reread how a reload opens the file again after it has changed, or null if it cannot
+   */
+  private void useKeyStore(File path, char[] passphrase, Step reread) throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
+    TrustMaterialCache.Material material;
+    try {
+      material = TrustMaterialCache.keyStore(path.toPath(), passphrase);
+    } catch (CertificateException | NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
+      throw e;
+    } catch (GeneralSecurityException e) {
+      throw new KeyStoreException(e);
+    }
+    useMaterial(path, material, reread);
+  }
 
-    fs = new FileInputStream(path);
-    keyStore.load(fs, passphrase);
-    keyManagerFactory.init(keyStore, passphrase);
+  private void useMaterial(File path, TrustMaterialCache.Material material, Step reread) throws KeyStoreException {
+    shared = material;
+    keyStore = material.getKeyStore();
+    keyManagerFactory = null;
+    // Loading replaces everything done before, so a replay starts here.
+    steps.clear();
+    steps.add(builder -> builder.reuseKeyStore(path, material, reread));
+    sources.clear();
+    sources.add(path.toPath());
 
     logger.info("Loaded keyStore with {} certificates: {}", (keyStore).size(), path);
     modified = true;
   }
 
-  public KeyStore buildKeyStore() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
+  /**
+   * Replay a loaded keystore: the same material while the file is unchanged, which needs no passphrase.
+   */
+  private void reuseKeyStore(File path, TrustMaterialCache.Material material, Step reread) throws IOException, GeneralSecurityException, Bug, ConfigurationProblem {
+    if (TrustMaterialCache.isCurrent(path.toPath(), material)) {
+      useMaterial(path, material, reread);
+    } else if (reread != null) {
+      reread.apply(this);
+    } else {
+      throw new IOException("Keystore " + path + " has changed, and its passphrase was not kept to open it again");
+    }
+  }
+
+  /**
+   * @return the key store this builder may modify, copying the shared one into memory first if necessary.
+   */
+  private KeyStore privateKeyStore() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
+    if (shared != null) {
+      keyStore = copyKeyStore();
+      shared = null;
+    }
+    keyManagerFactory = null;
+    return keyStore;
+  }
+
+  private KeyStore copyKeyStore() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException {
+    KeyStore copy = shared.copy(IN_MEMORY_KEYSTORE_PASSPHRASE);
+    logger.trace("Copied shared keystore with {} entries into memory", copy.size());
+    return copy;
+  }
+
+  /**
+   * @return the key store itself. If it came straight from a file, it is shared with other builders through the
+   * {@link TrustMaterialCache} and rejects changes, so this is only for building managers from it.
+   */
+  KeyStore sharedKeyStore() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
     if (!modified) {
       useDefaultTrustStore();
     } else {
@@ -173,8 +305,26 @@ public class KeyStoreBuilder {
     return keyStore;
   }
 
+  /**
+   * @return the key store, which the caller may modify. A key store that came straight from a file is shared with
+   * other builders, so the caller gets its own in-memory copy, and changes to it do not affect this builder. Key
+   * entries are protected by a passphrase private to this builder, not by the file's; use
+   * {@link #buildKeyManagerFactory()} for the keys.
+   */
+  public KeyStore buildKeyStore() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
+    KeyStore keyStore = sharedKeyStore();
+    return shared == null ? keyStore : copyKeyStore();
+  }
+
   public KeyManagerFactory buildKeyManagerFactory() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
-    buildKeyStore();
+    sharedKeyStore();
+    if (shared != null) {
+      return shared.getKeyManagerFactory();
+    }
+    if (keyManagerFactory == null) {
+      keyManagerFactory = KeyManagerFactory.getInstance(keyManagerAlgorithm);
+      keyManagerFactory.init(keyStore, IN_MEMORY_KEYSTORE_PASSPHRASE);
+    }
     return keyManagerFactory;
   }
 }
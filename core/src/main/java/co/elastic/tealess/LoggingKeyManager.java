@@ -19,6 +19,7 @@
 
 package co.elastic.tealess;
 
+import co.elastic.tealess.jfr.TLSEvents;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -46,7 +47,9 @@ class LoggingKeyManager extends X509ExtendedKeyManager {
 
   @Override
   public String chooseClientAlias(String[] keyType, Principal[] principals, Socket socket) {
+    TLSEvents.KeySelection event = TLSEvents.get().keySelection();
     String result = keyManager.chooseClientAlias(keyType, principals, socket);
+    event.end(keyType, result);
     logger.debug("KeyManager.chooseClientAlias() => '{}'", result);
     return result;
   }
@@ -85,8 +88,17 @@ class LoggingKeyManager extends X509ExtendedKeyManager {
 
   @Override
   public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+    TLSEvents.KeySelection event = TLSEvents.get().keySelection();
     String result = keyManager.chooseEngineClientAlias(keyType, issuers, engine);
+    event.end(keyType, result);
     logger.trace("KeyManager.chooseEngineClientAlias({}, {}, {}) => {}", keyType, issuers, engine, result);
     return result;
   }
+
+  @Override
+  public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+    String result = keyManager.chooseEngineServerAlias(keyType, issuers, engine);
+    logger.trace("KeyManager.chooseEngineServerAlias({}, {}, {}) => {}", keyType, issuers, engine, result);
+    return result;
+  }
 }
@@ -0,0 +1,67 @@
+package co.elastic.tealess;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import java.nio.ByteBuffer;
+
+/**
+ * Log engine events with log4j.
+ * <p>
+ * Every event is logged at the given level. Wire data also includes a hex dump of the bytes when TRACE is enabled.
+ */
+public class LoggingTLSInstrumentation implements TLSInstrumentation {
+  private static final Logger defaultLogger = LogManager.getLogger();
+
+  private final Logger logger;
+  private final Level level;
+
+  public LoggingTLSInstrumentation() {
+    this(defaultLogger, Level.DEBUG);
+  }
+
+  public LoggingTLSInstrumentation(Logger logger, Level level) {
+    this.logger = logger;
+    this.level = level;
+  }
+
+  @Override
+  public void input(SSLEngine engine, ByteBuffer data, int offset, int length) {
+    wire("input", engine, data, offset, length);
+  }
+
+  @Override
+  public void output(SSLEngine engine, ByteBuffer data, int offset, int length) {
+    wire("output", engine, data, offset, length);
+  }
+
+  private void wire(String direction, SSLEngine engine, ByteBuffer data, int offset, int length) {
+    if (!logger.isEnabled(level)) {
+      return;
+    }
+    if (logger.isTraceEnabled()) {
+      ByteBuffer bytes = data.duplicate();
+      bytes.limit(offset + length);
+      bytes.position(offset);
+      byte[] copy = new byte[length];
+      bytes.get(copy);
+      logger.log(level, "{} {}:{} {} bytes: {}", direction, engine.getPeerHost(), engine.getPeerPort(), length, Hex.encodeHexString(copy));
+    } else {
+      logger.log(level, "{} {}:{} {} bytes", direction, engine.getPeerHost(), engine.getPeerPort(), length);
+    }
+  }
+
+  @Override
+  public void handshakeCompleted(SSLEngine engine, SSLSession session) {
+    logger.log(level, "Handshake completed with {}:{} using {} {}", engine.getPeerHost(), engine.getPeerPort(), session.getProtocol(), session.getCipherSuite());
+  }
+
+  @Override
+  public void failure(SSLEngine engine, Throwable cause) {
+    logger.log(level, "Failure with {}:{}: {}", engine.getPeerHost(), engine.getPeerPort(), cause.toString());
+  }
+}
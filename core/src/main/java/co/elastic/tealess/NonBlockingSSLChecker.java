@@ -0,0 +1,459 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLHandshakeException;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Diagnose SSL problems like {@link SSLChecker}, but with non-blocking sockets.
+ *
+ * {@link SSLChecker} needs one thread per check because it uses blocking sockets. This checker drives every
+ * handshake from a single selector thread by calling {@link SSLEngine#wrap} and {@link SSLEngine#unwrap} itself,
+ * so thousands of handshakes can be in flight at once. Each check produces the same {@link SSLReport} as
+ * {@link SSLChecker} would.
+ */
+public class NonBlockingSSLChecker implements Closeable {
+  private static final int defaultTimeout = 5000;
+  private static final int defaultMaxInFlight = 1024;
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+  private static final Logger logger = LogManager.getLogger();
+
+  private final SSLContext ctx;
+  private final Selector selector;
+  private final Thread thread;
+  private final Queue<Probe> pending = new ConcurrentLinkedQueue<>();
+  // Held while admitting a probe to pending and while shutting down, so no probe is queued after the queue is drained.
+  private final Object admission = new Object();
+
+  // Probes by deadline. The timeout can change between checks, so the earliest deadline is not always the oldest probe.
+  private final PriorityQueue<Probe> inFlight = new PriorityQueue<>((a, b) -> Long.signum(a.deadline - b.deadline));
+
+  // Completed probes stay in inFlight until they reach its head, so count the unfinished ones separately.
+  private int active = 0;
+
+  // Handshakes only make progress on the selector thread, so the tracker is always called from that thread.
+  private PeerCertificateDetails lastPeerCertificateDetails;
+
+  // Handshakes never produce application data, so every probe can share one destination buffer for unwrap.
+  private ByteBuffer applicationBuffer = ByteBuffer.allocate(0);
+
+  private volatile int timeout = defaultTimeout;
+  private volatile int maxInFlight = defaultMaxInFlight;
+  // Guarded by admission.
+  private boolean closed = false;
+
+  public NonBlockingSSLChecker(TealessSSLContextBuilder cb) throws KeyManagementException, KeyStoreException, NoSuchAlgorithmException, IOException {
+    cb.setTracker(this::setPeerCertificateDetails);
+    ctx = cb.build();
+    selector = Selector.open();
+    thread = new Thread(this::run, "tealess-nonblocking-checker");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void setPeerCertificateDetails(X509Certificate[] chain, String authType, Throwable exception) {
+    lastPeerCertificateDetails = new PeerCertificateDetails(chain, authType, exception);
+  }
+
+  /**
+   * Set the time, in milliseconds, allowed for each check to connect and complete its handshake.
+   */
+  public void setTimeout(int timeout) {
+    if (timeout <= 0) {
+      throw new IllegalArgumentException("timeout must be positive. Got " + timeout);
+    }
+    this.timeout = timeout;
+  }
+
+  /**
+   * Set the maximum number of checks to have in progress at once. Further checks wait in a queue.
+   */
+  public void setMaxInFlight(int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1. Got " + maxInFlight);
+    }
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Check a single address. The returned future always completes normally; failures are recorded in the report.
+   *
+   * @param address the address to connect to
+   * @param name the host name to use for SNI and session caching.
+   */
+  public CompletableFuture<SSLReport> check(InetSocketAddress address, String name) {
+    Probe probe = new Probe(newReport(address, name));
+    synchronized (admission) {
+      if (!closed) {
+        pending.add(probe);
+        selector.wakeup();
+        return probe.future;
+      }
+    }
+    probe.fail(new IOException("Checker is closed"));
+    return probe.future;
+  }
+
+  public List<SSLReport> checkAll(InetSocketAddress address) throws ConfigurationProblem {
+    final String hostname = address.getHostString();
+    final Collection<InetAddress> addresses;
+    logger.trace("Doing name resolution on {}", hostname);
+    try {
+      addresses = Resolver.SystemResolver.resolve(hostname);
+    } catch (UnknownHostException e) {
+      throw new ConfigurationProblem("Unknown host", e);
+    }
+
+    List<CompletableFuture<SSLReport>> futures = addresses.stream()
+            .map(a -> check(new InetSocketAddress(a, address.getPort()), hostname))
+            .collect(Collectors.toList());
+    return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+  }
+
+  /**
+   * Stop the selector thread. Any check which has not completed is reported as failed.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (admission) {
+      closed = true;
+    }
+    selector.wakeup();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private SSLReport newReport(InetSocketAddress address, String name) {
+    SSLReport sslReport = new SSLReport();
+    sslReport.setSSLContext(ctx);
+    sslReport.setHostname(name);
+    sslReport.setAddress(address);
+    sslReport.setTimeout(timeout);
+    return sslReport;
+  }
+
+  private void run() {
+    try {
+      while (!isClosed()) {
+        admitPending();
+        long wait = expireProbes(System.nanoTime());
+        selector.select(wait);
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          Probe probe = (Probe) key.attachment();
+          try {
+            probe.ready(key);
+          } catch (IOException | RuntimeException e) {
+            probe.fail(e);
+          }
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Selector failed; aborting all checks", e);
+    } finally {
+      // The selector may have failed without close() being called, so refuse further checks before draining.
+      synchronized (admission) {
+        closed = true;
+      }
+      IOException cause = new IOException("Checker was closed before this check completed");
+      for (Probe probe : inFlight) {
+        probe.fail(cause);
+      }
+      Probe probe;
+      while ((probe = pending.poll()) != null) {
+        probe.fail(cause);
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        logger.warn("Failed to close selector", e);
+      }
+    }
+  }
+
+  private boolean isClosed() {
+    synchronized (admission) {
+      return closed;
+    }
+  }
+
+  private void admitPending() {
+    while (active < maxInFlight) {
+      Probe probe = pending.poll();
+      if (probe == null) {
+        return;
+      }
+      probe.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(probe.report.getTimeout());
+      inFlight.add(probe);
+      active++;
+      probe.started = true;
+      try {
+        probe.start();
+      } catch (IOException | RuntimeException e) {
+        probe.fail(e);
+      }
+    }
+  }
+
+  /**
+   * Fail any probes that have run past their deadline.
+   *
+   * @return the number of milliseconds until the earliest deadline, or 0 if nothing is in flight.
+   */
+  private long expireProbes(long now) {
+    Probe head;
+    while ((head = inFlight.peek()) != null) {
+      if (head.done) {
+        inFlight.poll();
+      } else if (head.deadline - now <= 0) {
+        inFlight.poll();
+        head.fail(new SocketTimeoutException(String.format("Check timed out after %d milliseconds", head.report.getTimeout())));
+      } else {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(head.deadline - now));
+      }
+    }
+    return 0;
+  }
+
+  private class Probe {
+    private final SSLReport report;
+    private final CompletableFuture<SSLReport> future = new CompletableFuture<>();
+    private long deadline;
+    private boolean started = false;
+    private boolean done = false;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SSLEngine engine;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private PeerCertificateDetails peerCertificateDetails;
+
+    Probe(SSLReport report) {
+      this.report = report;
+    }
+
+    void start() throws IOException {
+      final InetSocketAddress address = report.getAddress();
+      logger.debug("Trying address {} (hostname {})", address, report.getHostname());
+
+      channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      try {
+        if (channel.connect(address)) {
+          key = channel.register(selector, 0, this);
+          connected();
+        } else {
+          key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+        }
+      } catch (IOException e) {
+        logger.error("Failed connecting to {}: {}", address, e);
+        throw e;
+      }
+    }
+
+    void ready(SelectionKey key) throws IOException {
+      if (!key.isValid()) {
+        return;
+      }
+      if (key.isConnectable()) {
+        try {
+          channel.finishConnect();
+        } catch (IOException e) {
+          logger.error("Failed connecting to {}: {}", report.getAddress(), e);
+          throw e;
+        }
+        connected();
+      } else {
+        handshake();
+      }
+    }
+
+    private void connected() throws IOException {
+      logger.debug("Connection successful to {}", report.getAddress());
+      engine = ctx.createSSLEngine(report.getHostname(), report.getAddress().getPort());
+      engine.setUseClientMode(true);
+      netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+      netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+      if (applicationBuffer.capacity() < engine.getSession().getApplicationBufferSize()) {
+        applicationBuffer = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+      }
+      engine.beginHandshake();
+      handshake();
+    }
+
+    /**
+     * Advance the handshake as far as possible without blocking.
+     */
+    private void handshake() throws IOException {
+      // Finish writing anything left over from a previous wrap before producing more.
+      if (netOut.position() > 0 && !flush()) {
+        return;
+      }
+
+      while (true) {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        switch (status) {
+          case NEED_WRAP:
+            SSLEngineResult wrapResult = engine.wrap(EMPTY_BUFFER, netOut);
+            collectPeerCertificateDetails();
+            if (!flush()) {
+              return;
+            }
+            if (wrapResult.getStatus() == SSLEngineResult.Status.CLOSED) {
+              throw new SSLHandshakeException("SSLEngine closed during handshake");
+            }
+            break;
+          case NEED_UNWRAP:
+            netIn.flip();
+            SSLEngineResult unwrapResult;
+            try {
+              applicationBuffer.clear();
+              unwrapResult = engine.unwrap(netIn, applicationBuffer);
+            } finally {
+              netIn.compact();
+              collectPeerCertificateDetails();
+            }
+            if (unwrapResult.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+              int bytes = channel.read(netIn);
+              if (bytes < 0) {
+                SSLHandshakeException e = new SSLHandshakeException("Remote host closed connection during handshake");
+                e.initCause(new EOFException("SSL peer shut down incorrectly"));
+                throw e;
+              } else if (bytes == 0) {
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+              }
+            } else if (unwrapResult.getStatus() == SSLEngineResult.Status.CLOSED) {
+              throw new SSLHandshakeException("SSLEngine closed during handshake");
+            }
+            break;
+          case NEED_TASK:
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+              task.run();
+            }
+            collectPeerCertificateDetails();
+            break;
+          default:
+            // FINISHED is only reported by wrap/unwrap results; afterwards the engine reports NOT_HANDSHAKING.
+            complete();
+            return;
+        }
+      }
+    }
+
+    /**
+     * @return true if all pending output has been written.
+     */
+    private boolean flush() throws IOException {
+      netOut.flip();
+      channel.write(netOut);
+      boolean flushed = !netOut.hasRemaining();
+      netOut.compact();
+      key.interestOps(flushed ? 0 : SelectionKey.OP_WRITE);
+      return flushed;
+    }
+
+    private void collectPeerCertificateDetails() {
+      if (lastPeerCertificateDetails != null) {
+        peerCertificateDetails = lastPeerCertificateDetails;
+        lastPeerCertificateDetails = null;
+      }
+    }
+
+    private void complete() {
+      logger.debug("Handshake completed with {}", report.getAddress());
+      report.setSSLSession(engine.getSession());
+      report.setPeerCertificateDetails(peerCertificateDetails);
+      if (peerCertificateDetails != null && peerCertificateDetails.getException() != null) {
+        report.setFailed(peerCertificateDetails.getException());
+      }
+      finish();
+    }
+
+    void fail(Throwable cause) {
+      if (done) {
+        return;
+      }
+      if (engine != null) {
+        Throwable blame = Blame.get(cause);
+        logger.warn("Handshake with {} failed: [{}] {}", report.getAddress(), blame.getClass(), blame.getMessage());
+      }
+      report.setPeerCertificateDetails(peerCertificateDetails);
+      report.setFailed(cause);
+      finish();
+    }
+
+    private void finish() {
+      done = true;
+      if (started) {
+        active--;
+      }
+      if (engine != null) {
+        engine.closeOutbound();
+      }
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          logger.debug("Failed closing channel to {}: {}", report.getAddress(), e);
+        }
+      }
+      future.complete(report);
+    }
+  }
+}
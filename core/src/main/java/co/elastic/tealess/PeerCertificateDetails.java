@@ -25,11 +25,17 @@ public class PeerCertificateDetails {
   private final X509Certificate[] chain;
   private final String authType;
   private final Throwable exception;
+  private final long verificationNanos;
 
   public PeerCertificateDetails(X509Certificate[] chain, String authType, Throwable exception) {
+    this(chain, authType, exception, -1);
+  }
+
+  public PeerCertificateDetails(X509Certificate[] chain, String authType, Throwable exception, long verificationNanos) {
     this.chain = chain;
     this.authType = authType;
     this.exception = exception;
+    this.verificationNanos = verificationNanos;
   }
 
   public X509Certificate[] getChain() {
@@ -43,4 +49,11 @@ public class PeerCertificateDetails {
   public Throwable getException() {
     return exception;
   }
+
+  /**
+   * @return how long verifying the chain took, in nanoseconds, or -1 if unknown.
+   */
+  public long getVerificationNanos() {
+    return verificationNanos;
+  }
 }
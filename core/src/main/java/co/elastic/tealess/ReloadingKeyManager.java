@@ -0,0 +1,70 @@
+package co.elastic.tealess;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * A key manager whose delegate can be replaced while an SSLContext is using it.
+ * <p>
+ * A handshake asks for an alias and then for that alias' key and chain, so a swap between those calls only works if
+ * the new key store uses the same aliases. Rotated keys and certificates normally keep their names.
+ */
+class ReloadingKeyManager extends X509ExtendedKeyManager {
+  private volatile X509ExtendedKeyManager keyManager;
+
+  ReloadingKeyManager(X509ExtendedKeyManager keyManager) {
+    this.keyManager = keyManager;
+  }
+
+  X509ExtendedKeyManager get() {
+    return keyManager;
+  }
+
+  void set(X509ExtendedKeyManager keyManager) {
+    this.keyManager = keyManager;
+  }
+
+  @Override
+  public String[] getClientAliases(String keyType, Principal[] issuers) {
+    return keyManager.getClientAliases(keyType, issuers);
+  }
+
+  @Override
+  public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+    return keyManager.chooseClientAlias(keyType, issuers, socket);
+  }
+
+  @Override
+  public String[] getServerAliases(String keyType, Principal[] issuers) {
+    return keyManager.getServerAliases(keyType, issuers);
+  }
+
+  @Override
+  public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+    return keyManager.chooseServerAlias(keyType, issuers, socket);
+  }
+
+  @Override
+  public X509Certificate[] getCertificateChain(String alias) {
+    return keyManager.getCertificateChain(alias);
+  }
+
+  @Override
+  public PrivateKey getPrivateKey(String alias) {
+    return keyManager.getPrivateKey(alias);
+  }
+
+  @Override
+  public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+    return keyManager.chooseEngineClientAlias(keyType, issuers, engine);
+  }
+
+  @Override
+  public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+    return keyManager.chooseEngineServerAlias(keyType, issuers, engine);
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trust and key managers that follow changes to the files they were built from.
+ * <p>
+ * Give the {@link KeyStoreBuilder}s to this class instead of their key stores, and give this to
+ * {@link TealessSSLContextBuilder#setTrustMaterial(ReloadingTrustMaterial)}. After {@link #startWatching()}, a
+ * background thread watches the directories holding the builders' sources. When something in them changes, the
+ * builders are replayed against the files and the resulting managers are swapped in. Contexts built earlier use the new
+ * material for their next handshake; open connections are untouched. If the files cannot be loaded, for example
+ * because a rotation is half-written, the old material stays in place and the next change tries again.
+ */
+public class ReloadingTrustMaterial implements Closeable {
+  private static final Logger logger = LogManager.getLogger();
+
+  // Rotations usually write several files. Wait for this long without changes before reloading.
+  private static final long quietPeriodMillis = 250;
+
+  private KeyStoreBuilder trust;
+  private KeyStoreBuilder keys;
+  private final ReloadingTrustManager trustManager;
+  private final ReloadingKeyManager keyManager;
+
+  private WatchService watcher;
+  private Thread thread;
+
+  /**
+   * @param trust the trust store
+   * @param keys the key store, or null if there are no keys to offer
+   */
+  public ReloadingTrustMaterial(KeyStoreBuilder trust, KeyStoreBuilder keys) throws IOException, GeneralSecurityException {
+    if (trust == null) {
+      throw new IllegalArgumentException("trust cannot be null");
+    }
+    this.trust = trust;
+    this.keys = keys;
+    trustManager = new ReloadingTrustManager(buildTrustManager(trust));
+    keyManager = keys == null ? null : new ReloadingKeyManager(buildKeyManager(keys));
+  }
+
+  TrustManager getTrustManager() {
+    return trustManager;
+  }
+
+  KeyManager getKeyManager() {
+    return keyManager;
+  }
+
+  /**
+   * @return the files and directories whose changes cause a reload.
+   */
+  public synchronized List<Path> getSources() {
+    List<Path> sources = new ArrayList<>(trust.getSources());
+    if (keys != null) {
+      sources.addAll(keys.getSources());
+    }
+    return sources;
+  }
+
+  /**
+   * Read the sources again now, and swap in the result.
+   *
+   * @return true if the material changed
+   */
+  public synchronized boolean reload() throws IOException, GeneralSecurityException, Bug, ConfigurationProblem {
+    long start = System.nanoTime();
+    KeyStoreBuilder newTrust = trust.reload();
+    KeyStoreBuilder newKeys = keys == null ? null : keys.reload();
+    X509ExtendedTrustManager newTrustManager = buildTrustManager(newTrust);
+    X509ExtendedKeyManager newKeyManager = newKeys == null ? null : buildKeyManager(newKeys);
+
+    trust = newTrust;
+    keys = newKeys;
+    // Unchanged files come back from the TrustMaterialCache as the very same managers.
+    boolean changed = newTrustManager != trustManager.get() || (keyManager != null && newKeyManager != keyManager.get());
+    trustManager.set(newTrustManager);
+    if (keyManager != null) {
+      keyManager.set(newKeyManager);
+    }
+    if (changed) {
+      logger.info("Reloaded trust material from {} in {}ms", getSources(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } else {
+      logger.debug("Trust material in {} is unchanged", getSources());
+    }
+    return changed;
+  }
+
+  /**
+   * Start watching the sources for changes.
+   */
+  public synchronized void startWatching() throws IOException {
+    if (watcher != null) {
+      return;
+    }
+    watcher = FileSystems.getDefault().newWatchService();
+    Set<Path> directories = new LinkedHashSet<>();
+    for (Path source : getSources()) {
+      Path path = source.toAbsolutePath();
+      // Watch the directory holding a file, since editors and rotation tools replace files rather than write them.
+      directories.add(Files.isDirectory(path) ? path : path.getParent());
+    }
+    for (Path directory : directories) {
+      logger.debug("Watching {} for trust material changes", directory);
+      directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    thread = new Thread(() -> watch(watcher), "tealess-trust-reloader");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stop watching. The current material stays in use.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (watcher != null) {
+      watcher.close();
+      watcher = null;
+      thread = null;
+    }
+  }
+
+  private void watch(WatchService watcher) {
+    try {
+      while (true) {
+        WatchKey key = watcher.take();
+        do {
+          key.pollEvents();
+          key.reset();
+          key = watcher.poll(quietPeriodMillis, TimeUnit.MILLISECONDS);
+        } while (key != null);
+
+        try {
+          reload();
+        } catch (IOException | GeneralSecurityException | Bug | ConfigurationProblem | RuntimeException e) {
+          logger.warn("Failed to reload trust material from {}; keeping the current material", getSources(), e);
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      logger.debug("Stopped watching trust material");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static X509ExtendedTrustManager buildTrustManager(KeyStoreBuilder builder) throws IOException, GeneralSecurityException {
+    for (TrustManager tm : TrustMaterialCache.trustManagers(builder.sharedKeyStore())) {
+      if (tm instanceof X509ExtendedTrustManager) {
+        return (X509ExtendedTrustManager) tm;
+      }
+    }
+    throw new GeneralSecurityException("No X509 trust manager available");
+  }
+
+  private static X509ExtendedKeyManager buildKeyManager(KeyStoreBuilder builder) throws IOException, GeneralSecurityException {
+    for (KeyManager km : builder.buildKeyManagerFactory().getKeyManagers()) {
+      if (km instanceof X509ExtendedKeyManager) {
+        return (X509ExtendedKeyManager) km;
+      }
+    }
+    throw new GeneralSecurityException("No X509 key manager available");
+  }
+}
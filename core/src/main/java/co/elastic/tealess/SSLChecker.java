@@ -19,10 +19,14 @@
 
 package co.elastic.tealess;
 
+import co.elastic.tealess.io.InputObserver;
+import co.elastic.tealess.io.ObservableSocket;
+import co.elastic.tealess.io.OutputObserver;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
@@ -30,12 +34,23 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 public class SSLChecker {
@@ -48,59 +63,182 @@ public class SSLChecker {
    */
 
   private static final int defaultTimeout = 1000;
+  private static final int defaultConcurrency = 8;
+  private static final long defaultDeadline = 10000;
+  private static final int ticketTimeout = 200;
   private static final Logger logger = LogManager.getLogger();
+  private final TealessSSLContextBuilder contextBuilder;
   private SSLContext ctx;
-  private PeerCertificateDetails peerCertificateDetails;
+  private int resumptionAttempts = 0;
+  private Resolver resolver = Resolver.SystemResolver;
+
+  // The tracker is invoked on the thread performing the handshake, so keeping the details per-thread
+  // lets concurrent checks share one SSLContext without seeing each other's certificate chains.
+  private final ThreadLocal<PeerCertificateDetails> peerCertificateDetails = new ThreadLocal<>();
 
   public SSLChecker(TealessSSLContextBuilder cb) throws KeyManagementException, KeyStoreException, NoSuchAlgorithmException {
-    cb.setTracker(this::setPeerCertificateDetails);
+    cb.setTracker(new TealessSSLContextBuilder.SSLCertificateVerificationTracker() {
+      @Override
+      public void track(X509Certificate[] chain, String authType, Throwable exception) {
+        track(chain, authType, exception, -1);
+      }
+
+      @Override
+      public void track(X509Certificate[] chain, String authType, Throwable exception, long elapsedNanos) {
+        peerCertificateDetails.set(new PeerCertificateDetails(chain, authType, exception, elapsedNanos));
+      }
+    });
+    contextBuilder = cb;
     ctx = cb.build();
   }
 
-  private static Collection<InetAddress> getAddresses(InetSocketAddress address) throws ConfigurationProblem {
+  /**
+   * After each successful check, reconnect this many times to see whether the server resumes the session. Zero, the
+   * default, skips the resumption check.
+   * <p>
+   * Each checked address then gets an {@link SSLContext} of its own, so that its session cache only holds sessions
+   * from that address. A reconnection counts as resumed when the server echoes the original session ID, or when the
+   * handshake completes without the server's certificate being verified, which is how TLS 1.3 resumption shows.
+   */
+  public void setResumptionAttempts(int attempts) {
+    if (attempts < 0) {
+      throw new IllegalArgumentException("resumption attempts cannot be negative. Got " + attempts);
+    }
+    resumptionAttempts = attempts;
+  }
+
+  /**
+   * Resolve hostnames with the given resolver instead of {@link Resolver#SystemResolver}. `checkAll` calls it once,
+   * before any address is checked.
+   */
+  public void setResolver(Resolver resolver) {
+    this.resolver = resolver;
+  }
+
+  private Collection<InetAddress> getAddresses(InetSocketAddress address) throws ConfigurationProblem {
     final String hostname = address.getHostString();
 
-    final Collection<InetAddress> addresses;
     logger.trace("Doing name resolution on {}", hostname);
     try {
-      return Resolver.SystemResolver.resolve(hostname);
+      return resolver.resolve(hostname);
     } catch (UnknownHostException e) {
       throw new ConfigurationProblem("Unknown host", e);
     }
   }
 
-  private void setPeerCertificateDetails(X509Certificate[] chain, String authType, Throwable exception) {
-    peerCertificateDetails = new PeerCertificateDetails(chain, authType, exception);
+  public List<SSLReport> checkAll(InetSocketAddress address) throws ConfigurationProblem {
+    return checkAll(address, defaultConcurrency, defaultDeadline, TimeUnit.MILLISECONDS);
   }
 
-  public List<SSLReport> checkAll(InetSocketAddress address) throws ConfigurationProblem {
+  /**
+   * Check every address the given host resolves to, running up to `concurrency` checks at the same time.
+   *
+   * Any check which has not completed when the deadline passes is reported as failed with a {@link TimeoutException}.
+   * Reports are returned in the same order as the resolved addresses.
+   *
+   * @param address     the host and port to check
+   * @param concurrency the maximum number of addresses to check at once
+   * @param deadline    the maximum time to wait for all checks to complete
+   * @param unit        the unit of `deadline`
+   */
+  public List<SSLReport> checkAll(InetSocketAddress address, int concurrency, long deadline, TimeUnit unit) throws ConfigurationProblem {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be at least 1. Got " + concurrency);
+    }
+
     final String hostname = address.getHostString();
-    final Collection<InetAddress> addresses = getAddresses(address);
-    return addresses.stream()
-            .map(a -> check(new InetSocketAddress(a, address.getPort()), hostname))
+    final long resolveStart = System.nanoTime();
+    final List<InetSocketAddress> targets = getAddresses(address).stream()
+            .map(a -> new InetSocketAddress(a, address.getPort()))
             .collect(Collectors.toList());
+    final long resolveNanos = System.nanoTime() - resolveStart;
+
+    if (targets.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    final List<Callable<SSLReport>> tasks = targets.stream()
+            .map(target -> (Callable<SSLReport>) () -> check(target, hostname))
+            .collect(Collectors.toList());
+
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, targets.size()), new DaemonThreadFactory("tealess-checker-"));
+    try {
+      final List<Future<SSLReport>> futures;
+      try {
+        futures = executor.invokeAll(tasks, deadline, unit);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return targets.stream().map(target -> failedReport(target, hostname, e)).collect(Collectors.toList());
+      }
+
+      final List<SSLReport> reports = new ArrayList<>(targets.size());
+      for (int i = 0; i < targets.size(); i++) {
+        SSLReport report = getReport(futures.get(i), targets.get(i), hostname, unit.toMillis(deadline));
+        report.setTiming(SSLReport.Phase.Resolve, resolveNanos);
+        reports.add(report);
+      }
+      return reports;
+    } finally {
+      // Blocked sockets will not notice the interrupt, but every socket operation in `check` has its own timeout.
+      executor.shutdownNow();
+    }
   }
 
-  public SSLReport check(InetSocketAddress address, String name) {
-    return check(address, name, defaultTimeout);
+  private SSLReport getReport(Future<SSLReport> future, InetSocketAddress address, String name, long deadline) {
+    try {
+      return future.get();
+    } catch (CancellationException e) {
+      logger.warn("Check of {} did not complete within {} milliseconds", address, deadline);
+      return failedReport(address, name, new TimeoutException(String.format("Check did not complete within the deadline of %d milliseconds", deadline)));
+    } catch (ExecutionException e) {
+      return failedReport(address, name, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return failedReport(address, name, e);
+    }
   }
 
-  private SSLReport check(InetSocketAddress address, String name, int timeout) {
+  private SSLReport failedReport(InetSocketAddress address, String name, Throwable cause) {
+    SSLReport sslReport = newReport(address, name, defaultTimeout);
+    sslReport.setFailed(cause);
+    return sslReport;
+  }
+
+  private SSLReport newReport(InetSocketAddress address, String name, int timeout) {
     SSLReport sslReport = new SSLReport();
     sslReport.setSSLContext(ctx);
     sslReport.setHostname(name);
     sslReport.setAddress(address);
     sslReport.setTimeout(timeout);
+    return sslReport;
+  }
+
+  public SSLReport check(InetSocketAddress address, String name) {
+    return check(address, name, defaultTimeout);
+  }
+
+  private SSLReport check(InetSocketAddress address, String name, int timeout) {
+    SSLReport sslReport = newReport(address, name, timeout);
 
     logger.debug("Trying address {} (hostname {})", address, name);
 
+    SSLContext context = ctx;
+    if (resumptionAttempts > 0) {
+      try {
+        context = newContext();
+      } catch (GeneralSecurityException e) {
+        logger.warn("Unable to build a context for checking session resumption with {}: {}", address, e);
+        sslReport.setResumption(new SessionResumption(0, 0, 0, -1, e));
+      }
+    }
+
     try (Socket socket = new Socket()) {
       checkConnect(sslReport, socket, timeout);
       if (sslReport.getException() != null) {
         return sslReport;
       }
 
-      checkHandshake(sslReport, socket);
+      checkHandshake(sslReport, socket, context);
       if (sslReport.getException() != null) {
         return sslReport;
       }
@@ -109,9 +247,84 @@ public class SSLChecker {
     } catch (IOException e) {
       System.out.println("Failure on socket: " + e);
     }
+
+    if (context != ctx && sslReport.success() && sslReport.getSSLSession() != null) {
+      checkResumption(sslReport, context, timeout);
+    }
     return sslReport;
   }
 
+  private SSLContext newContext() throws GeneralSecurityException {
+    // Checks run concurrently, and the builder is not meant to be shared between threads.
+    synchronized (contextBuilder) {
+      return contextBuilder.build();
+    }
+  }
+
+  /**
+   * Reconnect with the context used for the original handshake, whose session cache now holds the session for this
+   * host and port, and compare the sessions the server agrees to.
+   */
+  private void checkResumption(SSLReport sslReport, SSLContext context, int timeout) {
+    final InetSocketAddress address = sslReport.getAddress();
+    final SSLSession original = sslReport.getSSLSession();
+    final long fullHandshakeNanos = sslReport.getTimings().get(SSLReport.Phase.Handshake);
+
+    int attempts = 0;
+    int resumed = 0;
+    long resumedNanos = 0;
+    Throwable exception = null;
+    for (int i = 0; i < resumptionAttempts; i++) {
+      try (Socket socket = new Socket()) {
+        socket.connect(address, timeout);
+        socket.setSoTimeout(timeout);
+        try (SSLSocket sslSocket = (SSLSocket) context.getSocketFactory().createSocket(socket, sslReport.getHostname(), address.getPort(), true)) {
+          peerCertificateDetails.remove();
+          final long start = System.nanoTime();
+          sslSocket.startHandshake();
+          final long elapsed = System.nanoTime() - start;
+          attempts++;
+          final boolean verified = peerCertificateDetails.get() != null;
+          awaitSessionTickets(sslSocket);
+          if (!verified || isSameSession(original, sslSocket.getSession())) {
+            resumed++;
+            resumedNanos += elapsed;
+          } else {
+            logger.debug("Reconnection {} to {} did a full handshake", i + 1, address);
+          }
+        }
+      } catch (IOException e) {
+        logger.debug("Reconnection {} to {} failed: {}", i + 1, address, e);
+        exception = e;
+        break;
+      } finally {
+        peerCertificateDetails.remove();
+      }
+    }
+    sslReport.setResumption(new SessionResumption(attempts, resumed, fullHandshakeNanos, resumed == 0 ? -1 : resumedNanos / resumed, exception));
+  }
+
+  /**
+   * A TLS 1.3 server sends session tickets after the handshake, and the client only stores them when it next reads.
+   * Read briefly so the cache has something to resume with.
+   */
+  private static void awaitSessionTickets(SSLSocket sslSocket) {
+    if (!"TLSv1.3".equals(sslSocket.getSession().getProtocol())) {
+      return;
+    }
+    try {
+      sslSocket.setSoTimeout(ticketTimeout);
+      sslSocket.getInputStream().read();
+    } catch (IOException e) {
+      // Expected: the server has nothing more to say until we send a request.
+    }
+  }
+
+  private static boolean isSameSession(SSLSession original, SSLSession session) {
+    byte[] id = original.getId();
+    return id != null && id.length > 0 && Arrays.equals(id, session.getId());
+  }
+
   private void checkHostnameVerification(SSLReport sslReport) {
     // XXX: Implement
     //HostnameVerifier hv = new DefaultHostnameVerifier();
@@ -120,27 +333,32 @@ public class SSLChecker {
 
   private void checkConnect(SSLReport sslReport, Socket socket, int timeout) {
     final InetSocketAddress address = sslReport.getAddress();
+    final long start = System.nanoTime();
     try {
       logger.trace("Connecting to {}", address);
       socket.connect(address, timeout);
     } catch (IOException e) {
+      sslReport.setTiming(SSLReport.Phase.Connect, System.nanoTime() - start);
       logger.error("Failed connecting to {}: {}", address, e);
       sslReport.setFailed(e);
       return;
     }
+    sslReport.setTiming(SSLReport.Phase.Connect, System.nanoTime() - start);
 
     logger.debug("Connection successful to {}", address);
   }
 
-  private void checkHandshake(SSLReport sslReport, Socket socket) {
+  private void checkHandshake(SSLReport sslReport, Socket socket, SSLContext context) {
     final InetSocketAddress address = sslReport.getAddress();
     final String name = sslReport.getHostname();
-    SSLSocketFactory socketFactory = ctx.getSocketFactory();
+    SSLSocketFactory socketFactory = context.getSocketFactory();
 
     final SSLSocket sslSocket;
+    final HandshakeTimer timer = new HandshakeTimer();
+    final ObservableSocket timedSocket = new ObservableSocket(socket, timer, timer, cause -> { });
     try {
       socket.setSoTimeout(1000);
-      sslSocket = (SSLSocket) socketFactory.createSocket(socket, name, sslReport.getAddress().getPort(), true);
+      sslSocket = (SSLSocket) socketFactory.createSocket(timedSocket, name, sslReport.getAddress().getPort(), true);
       sslSocket.addHandshakeCompletedListener(e -> logger.debug("Handshake completed: {}", e));
     } catch (IOException e) {
       sslReport.setFailed(e);
@@ -151,17 +369,61 @@ public class SSLChecker {
 
     // Calling getSession here will implicitly attempt to complete the TLS handshake
     // if it is not already done.
+    peerCertificateDetails.remove();
+    final long start = System.nanoTime();
     try {
       sslSocket.startHandshake();
     } catch (IOException e) {
+      timer.report(sslReport, start, peerCertificateDetails.get());
+      peerCertificateDetails.remove();
       sslReport.setFailed(e);
       return;
+    } finally {
+      timedSocket.stopObserving();
     }
 
+    final PeerCertificateDetails peerCertificateDetails = this.peerCertificateDetails.get();
+    this.peerCertificateDetails.remove();
+    timer.report(sslReport, start, peerCertificateDetails);
+    if (context != ctx) {
+      awaitSessionTickets(sslSocket);
+    }
     sslReport.setSSLSession(sslSocket.getSession());
     sslReport.setPeerCertificateDetails(peerCertificateDetails);
     if (peerCertificateDetails != null && peerCertificateDetails.getException() != null) {
       sslReport.setFailed(peerCertificateDetails.getException());
     }
   }
+
+  /**
+   * Notes when the handshake's first bytes cross the network, as seen beneath the TLS layer.
+   */
+  private static class HandshakeTimer implements InputObserver, OutputObserver {
+    private long firstOutput = -1;
+    private long firstInput = -1;
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      if (firstOutput < 0 && len > 0) {
+        firstOutput = System.nanoTime();
+      }
+    }
+
+    @Override
+    public void read(byte[] b, int off, int len, int ret) {
+      if (firstInput < 0 && ret > 0) {
+        firstInput = System.nanoTime();
+      }
+    }
+
+    void report(SSLReport sslReport, long start, PeerCertificateDetails details) {
+      sslReport.setTiming(SSLReport.Phase.Handshake, System.nanoTime() - start);
+      if (firstOutput >= 0 && firstInput >= 0) {
+        sslReport.setTiming(SSLReport.Phase.ServerResponse, firstInput - firstOutput);
+      }
+      if (details != null && details.getVerificationNanos() >= 0) {
+        sslReport.setTiming(SSLReport.Phase.CertificateVerification, details.getVerificationNanos());
+      }
+    }
+  }
 }
@@ -25,6 +25,9 @@ import org.apache.logging.log4j.Logger;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
 import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class SSLReport {
   private static final Logger logger = LogManager.getLogger();
@@ -38,6 +41,25 @@ public class SSLReport {
   private boolean hostnameVerified;
   private long timeout;
   private TealessSSLContextBuilder TealessSSLContextBuilder;
+  private final Map<Phase, Long> timings = new EnumMap<>(Phase.class);
+  private SessionResumption resumption;
+
+  /**
+   * The steps of a check that are timed. Phases that did not run, for example because an earlier one failed, have no
+   * timing.
+   */
+  public enum Phase {
+    /** Name resolution of the host, shared by all of its addresses. */
+    Resolve,
+    /** The TCP connect. */
+    Connect,
+    /** The whole TLS handshake, including the two phases below. */
+    Handshake,
+    /** From sending the ClientHello to the first bytes of the server's reply: a round trip, plus the server's work. */
+    ServerResponse,
+    /** Validating the server's certificate chain, including any OCSP or CRL checks. */
+    CertificateVerification
+  }
 
   SSLReport() {
     // Nothing
@@ -71,7 +93,7 @@ public class SSLReport {
     sslContext = ctx;
   }
 
-  SSLSession getSSLSession() {
+  public SSLSession getSSLSession() {
     return sslSession;
   }
 
@@ -111,6 +133,29 @@ public class SSLReport {
     this.timeout = timeout;
   }
 
+  /**
+   * @return the duration of each phase that completed or failed, in nanoseconds.
+   */
+  public Map<Phase, Long> getTimings() {
+    return Collections.unmodifiableMap(timings);
+  }
+
+  void setTiming(Phase phase, long nanos) {
+    timings.put(phase, nanos);
+  }
+
+  /**
+   * @return the result of the session resumption check, or null if it was not run.
+   * @see SSLChecker#setResumptionAttempts(int)
+   */
+  public SessionResumption getResumption() {
+    return resumption;
+  }
+
+  void setResumption(SessionResumption resumption) {
+    this.resumption = resumption;
+  }
+
   public TealessSSLContextBuilder getTealessSSLContextBuilder() {
     return TealessSSLContextBuilder;
   }
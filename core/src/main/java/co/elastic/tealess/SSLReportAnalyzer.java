@@ -22,13 +22,12 @@ package co.elastic.tealess;
 import javax.net.ssl.SSLParameters;
 import java.io.IOException;
 import java.security.*;
-import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class SSLReportAnalyzer {
@@ -38,7 +37,12 @@ public class SSLReportAnalyzer {
 
     if (successful.size() > 0) {
       // XXX: Show Session details (chosen cipher suite, etc)
-      successful.forEach(r -> System.out.printf("Success: %s\n", r.getAddress()));
+      for (SSLReport r : successful) {
+        System.out.printf("Success: %s%s\n", r.getAddress(), formatTimings(r));
+        if (r.getResumption() != null) {
+          System.out.printf("  %s\n", r.getResumption());
+        }
+      }
     } else {
       System.out.println("All SSL/TLS connections failed.");
     }
@@ -52,7 +56,7 @@ public class SSLReportAnalyzer {
       String[] messageLines = e.getMessage().split("\r?\n");
       System.out.printf("Failure: %s - %s\n", e.getClass(), messageLines[0]);
       for (SSLReport r : failures) {
-        System.out.printf("  %s\n", r.getAddress());
+        System.out.printf("  %s%s\n", r.getAddress(), formatTimings(r));
       }
 
       if (messageLines.length > 1) {
@@ -61,6 +65,19 @@ public class SSLReportAnalyzer {
     }
   }
 
+  /**
+   * @return the phase timings, like " (Resolve 1.2ms, Connect 0.4ms, ...)", or nothing if there are none.
+   */
+  static String formatTimings(SSLReport report) {
+    Map<SSLReport.Phase, Long> timings = report.getTimings();
+    if (timings.isEmpty()) {
+      return "";
+    }
+    return timings.entrySet().stream()
+            .map(e -> String.format("%s %.1fms", e.getKey(), e.getValue() / 1e6))
+            .collect(Collectors.joining(", ", " (", ")"));
+  }
+
   private static void analyzeTimeout(SSLReport report) {
     System.out.printf("  Connection attempt timed-out after %d milliseconds\n", report.getTimeout());
   }
@@ -126,23 +143,14 @@ public class SSLReportAnalyzer {
 
       // Check the default system keystore. Just in case.
       try {
-        KeyStoreBuilder ksb = new KeyStoreBuilder();
-        ksb.useDefaultTrustStore();
-        KeyStore ks = ksb.buildKeyStore();
-        for (Enumeration<String> aliases = ks.aliases(); aliases.hasMoreElements(); ) {
-          String alias = aliases.nextElement();
-          Certificate trusted = ks.getCertificate(alias);
-          try {
-            tail.verify(trusted.getPublicKey());
-            System.out.println();
-            System.out.print("I did some extra digging and found the issuer of this last certificate in your system's default keystore\n");
-            System.out.printf("  Path to system keystore: %s\n", KeyStoreBuilder.defaultTrustStorePath);
-            System.out.printf("  The system's keystore alias for the issuer is '%s'\n", alias);
-          } catch (CertificateException | NoSuchAlgorithmException | InvalidKeyException | NoSuchProviderException | SignatureException e) {
-            // Nothing
-          }
+        Optional<TrustAnchorIndex.Anchor> issuer = TrustAnchorIndex.systemDefault().findIssuer(tail);
+        if (issuer.isPresent()) {
+          System.out.println();
+          System.out.print("I did some extra digging and found the issuer of this last certificate in your system's default keystore\n");
+          System.out.printf("  Path to system keystore: %s\n", KeyStoreBuilder.defaultTrustStorePath);
+          System.out.printf("  The system's keystore alias for the issuer is '%s'\n", issuer.get().getAlias());
         }
-      } catch (IOException | CertificateException | NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
+      } catch (IOException | GeneralSecurityException e) {
         e.printStackTrace();
       }
     }
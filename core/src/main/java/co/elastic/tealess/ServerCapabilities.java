@@ -0,0 +1,116 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import co.elastic.tealess.tls.CipherSuite;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The protocols and cipher suites a server accepted, as found by {@link CipherSuiteScanner}.
+ */
+public class ServerCapabilities {
+  private final InetSocketAddress address;
+  private final Map<String, List<CipherSuite>> accepted;
+  private final int probes;
+  private final int prunedFamilies;
+  private final int errors;
+  private final Throwable exception;
+  private final long elapsedNanos;
+
+  ServerCapabilities(InetSocketAddress address, Map<String, List<CipherSuite>> accepted, int probes, int prunedFamilies,
+                     int errors, Throwable exception, long elapsedNanos) {
+    this.address = address;
+    this.accepted = accepted;
+    this.probes = probes;
+    this.prunedFamilies = prunedFamilies;
+    this.errors = errors;
+    this.exception = exception;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public InetSocketAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * @return the protocols the server accepted, oldest first, by their JSSE names such as "TLSv1.2".
+   */
+  public List<String> getProtocols() {
+    return new ArrayList<>(accepted.keySet());
+  }
+
+  /**
+   * @return the cipher suites the server accepted with the given protocol, or an empty list if it did not accept the
+   * protocol.
+   */
+  public List<CipherSuite> getCipherSuites(String protocol) {
+    return accepted.getOrDefault(protocol, Collections.emptyList());
+  }
+
+  /**
+   * @return how many ClientHello messages were sent.
+   */
+  public int getProbes() {
+    return probes;
+  }
+
+  /**
+   * @return how many key exchange families were rejected as a whole, saving a probe for each of their suites.
+   */
+  public int getPrunedFamilies() {
+    return prunedFamilies;
+  }
+
+  /**
+   * @return how many probes failed without an answer from the server, such as by timing out.
+   */
+  public int getErrors() {
+    return errors;
+  }
+
+  /**
+   * @return the first reason a probe failed without an answer, or null if every probe was answered.
+   */
+  public Throwable getException() {
+    return exception;
+  }
+
+  public long getElapsed(TimeUnit unit) {
+    return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return true if every probe was answered, so the results are complete for the protocols and suites probed.
+   */
+  public boolean isComplete() {
+    return errors == 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ServerCapabilities[%s, protocols: %s, %d probes, %d errors]", address, accepted.keySet(), probes, errors);
+  }
+}
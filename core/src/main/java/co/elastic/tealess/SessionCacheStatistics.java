@@ -0,0 +1,150 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import co.elastic.tealess.metrics.HandshakeListener;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how client handshakes use the session cache of a {@link TealessSSLSessionContext}.
+ * <p>
+ * The JDK looks sessions up internally, so these are inferred from each completed handshake. A hit is a handshake
+ * whose session was created at least {@value #creationMargin}ms before the handshake began, which holds for both
+ * TLS 1.2 session IDs and TLS 1.3 tickets. A miss is a full handshake. When a peer misses after an earlier handshake
+ * with it, and that earlier session is no longer cached, the miss is also counted as an expiration if the session
+ * outlived the session timeout, and otherwise as an eviction because the cache was full. A miss with the earlier
+ * session still cached means the server declined to resume it.
+ */
+public class SessionCacheStatistics implements HandshakeListener {
+  // Peers remembered for telling evictions from other misses; further peers still count as hits and misses.
+  static final int maxPeers = 1024;
+  private static final long creationMargin = 10;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final Map<String, Previous> previous = new ConcurrentHashMap<>();
+  private volatile SSLSessionContext sessionContext;
+
+  void setSessionContext(SSLSessionContext sessionContext) {
+    this.sessionContext = sessionContext;
+  }
+
+  @Override
+  public void handshakeCompleted(String peer, long elapsedNanos, SSLSession session) {
+    SSLSessionContext context = sessionContext;
+    // Server-side handshakes are bound to the server session context, and are not counted.
+    if (session == null || context == null || session.getSessionContext() != context) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    // The session of a full handshake can be created a moment before its first bytes are sent, and the start is only
+    // known to the millisecond, so a session must predate the handshake by a margin to count as resumed.
+    long start = now - TimeUnit.NANOSECONDS.toMillis(elapsedNanos) - creationMargin;
+    String key = session.getPeerHost() + ":" + session.getPeerPort();
+    if (session.getCreationTime() < start) {
+      hits.increment();
+    } else {
+      misses.increment();
+      Previous last = previous.get(key);
+      if (last != null && context.getSession(last.id) == null) {
+        int timeout = context.getSessionTimeout();
+        if (timeout > 0 && last.creationTime + TimeUnit.SECONDS.toMillis(timeout) <= now) {
+          expirations.increment();
+        } else {
+          evictions.increment();
+        }
+      }
+    }
+
+    if (previous.size() < maxPeers || previous.containsKey(key)) {
+      previous.put(key, new Previous(session.getId(), session.getCreationTime()));
+    }
+  }
+
+  /**
+   * @return handshakes which resumed a cached session.
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return full handshakes.
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return misses because the peer's session had been pushed out of a full cache.
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return misses because the peer's session had outlived the session timeout.
+   */
+  public long getExpirations() {
+    return expirations.sum();
+  }
+
+  /**
+   * @return the fraction of handshakes which resumed a session, or 0 if there were none.
+   */
+  public double getHitRatio() {
+    long hits = getHits();
+    long total = hits + getMisses();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+    expirations.reset();
+    previous.clear();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SessionCacheStatistics[hits=%d, misses=%d, evictions=%d, expirations=%d]",
+            getHits(), getMisses(), getEvictions(), getExpirations());
+  }
+
+  private static class Previous {
+    private final byte[] id;
+    private final long creationTime;
+
+    Previous(byte[] id, long creationTime) {
+      this.id = id;
+      this.creationTime = creationTime;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of reconnecting to an address after a full handshake to see whether the server resumes the session.
+ * <p>
+ * An abbreviated handshake skips the key exchange and certificate verification, so a server which never resumes
+ * costs every client a full handshake on every connection. A server which resumes only some of the time is often a
+ * load balancer whose backends do not share a session cache: each reconnection lands on a backend which may never
+ * have seen the session.
+ */
+public class SessionResumption {
+  private final int attempts;
+  private final int resumed;
+  private final long fullHandshakeNanos;
+  private final long resumedHandshakeNanos;
+  private final Throwable exception;
+
+  SessionResumption(int attempts, int resumed, long fullHandshakeNanos, long resumedHandshakeNanos, Throwable exception) {
+    this.attempts = attempts;
+    this.resumed = resumed;
+    this.fullHandshakeNanos = fullHandshakeNanos;
+    this.resumedHandshakeNanos = resumedHandshakeNanos;
+    this.exception = exception;
+  }
+
+  /**
+   * @return how many reconnections completed a handshake.
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * @return how many reconnections resumed the original session.
+   */
+  public int getResumed() {
+    return resumed;
+  }
+
+  public boolean isSupported() {
+    return attempts > 0 && resumed == attempts;
+  }
+
+  /**
+   * @return true if some reconnections resumed the session and others did not.
+   */
+  public boolean isInconsistent() {
+    return resumed > 0 && resumed < attempts;
+  }
+
+  /**
+   * @return the duration of the original full handshake.
+   */
+  public long getFullHandshake(TimeUnit unit) {
+    return unit.convert(fullHandshakeNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return the mean duration of the resumed handshakes, or -1 if none resumed.
+   */
+  public long getResumedHandshake(TimeUnit unit) {
+    return resumedHandshakeNanos < 0 ? -1 : unit.convert(resumedHandshakeNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return how much faster a resumed handshake was than the full one, or 0 if none resumed.
+   */
+  public long getSaved(TimeUnit unit) {
+    return resumedHandshakeNanos < 0 ? 0 : unit.convert(fullHandshakeNanos - resumedHandshakeNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return why reconnecting failed, or null if every attempt completed a handshake.
+   */
+  public Throwable getException() {
+    return exception;
+  }
+
+  @Override
+  public String toString() {
+    if (attempts == 0) {
+      return String.format("Session resumption could not be checked: %s", exception);
+    }
+    if (isSupported()) {
+      return String.format("Session resumption: resumed %d of %d reconnections, saving %.1fms per handshake",
+              resumed, attempts, getSaved(TimeUnit.MICROSECONDS) / 1e3);
+    }
+    if (isInconsistent()) {
+      return String.format("Session resumption: only resumed %d of %d reconnections. If this address is a load balancer, " +
+              "its backends may not share a session cache", resumed, attempts);
+    }
+    return String.format("Session resumption: not supported, all %d reconnections did a full handshake", attempts);
+  }
+}
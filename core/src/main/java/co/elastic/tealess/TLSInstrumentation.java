@@ -0,0 +1,46 @@
+package co.elastic.tealess;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives events from engines created by a Tealess {@link javax.net.ssl.SSLContext}.
+ * <p>
+ * Every method has an empty default, so an implementation only overrides what it needs. Implementations are called on
+ * the thread using the engine and must not modify the buffers they are given. The default is {@link #NOOP}; engines
+ * built without instrumentation skip these calls entirely once their handshake completes.
+ */
+public interface TLSInstrumentation {
+  TLSInstrumentation NOOP = new TLSInstrumentation() {
+    @Override
+    public String toString() {
+      return "TLSInstrumentation.NOOP";
+    }
+  };
+
+  /**
+   * Network bytes consumed by {@link SSLEngine#unwrap}.
+   *
+   * @param data the engine's source buffer. The consumed bytes are those from offset to offset + length.
+   */
+  default void input(SSLEngine engine, ByteBuffer data, int offset, int length) {
+  }
+
+  /**
+   * Network bytes produced by {@link SSLEngine#wrap}.
+   *
+   * @param data the engine's destination buffer. The produced bytes are those from offset to offset + length.
+   */
+  default void output(SSLEngine engine, ByteBuffer data, int offset, int length) {
+  }
+
+  default void handshakeCompleted(SSLEngine engine, SSLSession session) {
+  }
+
+  /**
+   * The engine threw an exception from wrap or unwrap.
+   */
+  default void failure(SSLEngine engine, Throwable cause) {
+  }
+}
@@ -19,11 +19,14 @@
 
 package co.elastic.tealess;
 
+import co.elastic.tealess.metrics.HandshakeListener;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.net.ssl.*;
+import java.io.IOException;
 import java.security.*;
+import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 
@@ -56,6 +59,11 @@ public class TealessSSLContextBuilder {
 
   private KeyStore trustStore;
   private KeyManagerFactory keyManagerFactory;
+  private ReloadingTrustMaterial trustMaterial;
+  private TLSInstrumentation instrumentation = TLSInstrumentation.NOOP;
+  private HandshakeListener handshakeListener = HandshakeListener.NOOP;
+  private int sessionCacheSize = -1;
+  private int sessionTimeout = -1;
 
   /**
    * Set the certificate chain tracker.
@@ -70,7 +78,60 @@ public class TealessSSLContextBuilder {
   }
 
   /**
-   * Get the {@link KeyStore} used for trust verification.
+   * Set the instrumentation that engines created by the built context report to. Defaults to
+   * {@link TLSInstrumentation#NOOP}.
+   *
+   * @param instrumentation {@link TLSInstrumentation}
+   */
+  public void setInstrumentation(TLSInstrumentation instrumentation) {
+    if (instrumentation == null) {
+      throw new IllegalArgumentException("instrumentation cannot be null");
+    }
+    this.instrumentation = instrumentation;
+  }
+
+  /**
+   * Set the listener told about handshakes by sockets, engines and trust managers from the built context, such as
+   * {@link co.elastic.tealess.metrics.TLSMetrics}. Defaults to {@link HandshakeListener#NOOP}.
+   *
+   * @param handshakeListener {@link HandshakeListener}
+   */
+  public void setHandshakeListener(HandshakeListener handshakeListener) {
+    if (handshakeListener == null) {
+      throw new IllegalArgumentException("handshakeListener cannot be null");
+    }
+    this.handshakeListener = handshakeListener;
+  }
+
+  /**
+   * Set the maximum number of client sessions the built context keeps for resumption. Zero means no limit. Without
+   * this, the JDK default applies (20480 sessions, or the javax.net.ssl.sessionCacheSize property).
+   *
+   * @param size the number of sessions
+   */
+  public void setSessionCacheSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("session cache size cannot be negative. Got " + size);
+    }
+    this.sessionCacheSize = size;
+  }
+
+  /**
+   * Set how long the built context may resume a client session after it was first negotiated. Zero means no limit.
+   * Without this, the JDK default of 24 hours applies.
+   *
+   * @param seconds the session lifetime
+   */
+  public void setSessionTimeout(int seconds) {
+    if (seconds < 0) {
+      throw new IllegalArgumentException("session timeout cannot be negative. Got " + seconds);
+    }
+    this.sessionTimeout = seconds;
+  }
+
+  /**
+   * Get the {@link KeyStore} used for trust verification. One set from a {@link KeyStoreBuilder} may be shared, and
+   * rejects changes.
    * @return
    */
   public KeyStore getTrustStore() {
@@ -84,8 +145,29 @@ public class TealessSSLContextBuilder {
     this.trustStore = trustStore;
   }
 
+  /**
+   * Use the trust store a {@link KeyStoreBuilder} built. A trust store read straight from a file is shared, with its
+   * trust managers, with every other context using that file.
+   */
+  public void setTrustStore(KeyStoreBuilder trust) throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, UnrecoverableKeyException {
+    this.trustStore = trust.sharedKeyStore();
+  }
+
+  /**
+   * Use trust and key managers that reload when their files change. This replaces any trust store and key manager
+   * factory set on this builder.
+   *
+   * @param trustMaterial {@link ReloadingTrustMaterial}
+   */
+  public void setTrustMaterial(ReloadingTrustMaterial trustMaterial) {
+    this.trustMaterial = trustMaterial;
+  }
+
   /**
    * Build an {@link SSLContext}  based on the parameters set in this TealessSSLContextBuilder.
+   * <p>
+   * The context's client session context is a {@link TealessSSLSessionContext}, which counts how often handshakes
+   * resume a cached session.
    *
    * @return {@link SSLContext}
    * @throws KeyManagementException
@@ -97,7 +179,11 @@ public class TealessSSLContextBuilder {
 
     KeyManager[] kms = null;
 
-    if (keyManagerFactory != null) {
+    if (trustMaterial != null) {
+      if (trustMaterial.getKeyManager() != null) {
+        kms = new KeyManager[]{new LoggingKeyManager((X509KeyManager) trustMaterial.getKeyManager())};
+      }
+    } else if (keyManagerFactory != null) {
       kms = Arrays.stream(keyManagerFactory.getKeyManagers())
               .map((km) -> new LoggingKeyManager((X509KeyManager) km))
               .toArray(X509KeyManager[]::new);
@@ -106,26 +192,40 @@ public class TealessSSLContextBuilder {
     TrustManager[] tms = buildTrustStore();
 
     logger.trace("Building SSLContext with keys:{}, trusts:{}", kms, tms);
-    SSLContextSpi spi = new TealessSSLContextSpi(ctx, cipherSuites);
+    SSLContextSpi spi = new TealessSSLContextSpi(ctx, cipherSuites, instrumentation, handshakeListener);
     SSLContext tealessContext = new TealessSSLContext(spi, null, null);
     tealessContext.init(kms, tms, random);
+
+    SSLSessionContext sessions = tealessContext.getClientSessionContext();
+    if (sessionCacheSize >= 0) {
+      sessions.setSessionCacheSize(sessionCacheSize);
+    }
+    if (sessionTimeout >= 0) {
+      sessions.setSessionTimeout(sessionTimeout);
+    }
     return tealessContext;
   }
 
   private TrustManager[] buildTrustStore() throws NoSuchAlgorithmException, KeyStoreException {
-    final TrustManagerFactory tmf = TrustManagerFactory.getInstance(trustManagerAlgorithm);
+    final TrustManager[] trustManagers;
 
-    if (trustStore != null) {
+    if (trustMaterial != null) {
+      logger.trace("Using reloading trust material from {}", trustMaterial.getSources());
+      trustManagers = new TrustManager[]{trustMaterial.getTrustManager()};
+    } else if (trustStore != null) {
       logger.trace("Using custom trust store with " + trustStore.size() + " entries");
-      tmf.init(trustStore);
+      // Shared when the trust store came unmodified from a file, so repeated builds don't rebuild them.
+      trustManagers = TrustMaterialCache.trustManagers(trustStore);
     } else {
       logger.trace("Using system default trust store");
+      final TrustManagerFactory tmf = TrustManagerFactory.getInstance(trustManagerAlgorithm);
       tmf.init((KeyStore) null);
+      trustManagers = tmf.getTrustManagers();
     }
 
     // Wrap java's TrustManagers in our own so that we can track verification failures.
-    return Arrays.stream(tmf.getTrustManagers())
-            .map((tm) -> new TrackingTrustManager((X509TrustManager) tm, tracker))
+    return Arrays.stream(trustManagers)
+            .map((tm) -> new TrackingTrustManager((X509TrustManager) tm, tracker, handshakeListener))
             .toArray(TrustManager[]::new);
 //    return tmf.getTrustManagers();
   }
@@ -221,5 +321,14 @@ public class TealessSSLContextBuilder {
      * @param exception The CertificatException if the verification failed. Otherwise, null.
      */
     void track(X509Certificate[] chain, String authType, Throwable exception);
+
+    /**
+     * Like {@link #track(X509Certificate[], String, Throwable)}, with the time the check took.
+     *
+     * @param elapsedNanos how long the trust manager took to verify the chain, in nanoseconds.
+     */
+    default void track(X509Certificate[] chain, String authType, Throwable exception, long elapsedNanos) {
+      track(chain, authType, exception);
+    }
   }
 } // TealessSSLContextBuilder
@@ -1,27 +1,43 @@
 package co.elastic.tealess;
 
+import co.elastic.tealess.metrics.HandshakeListener;
+
 import javax.net.ssl.*;
 import java.security.KeyManagementException;
 import java.security.SecureRandom;
 
 public class TealessSSLContextSpi extends SSLContextSpiProxy {
   private final String[] cipherSuites;
+  private final TLSInstrumentation instrumentation;
+  private final HandshakeListener listener;
+  private final SessionCacheStatistics sessionStatistics = new SessionCacheStatistics();
   private TrustManager[] trustManagers;
+  private TealessSSLSessionContext clientSessionContext;
 
   // Wants: ciphers
   public TealessSSLContextSpi(SSLContext context, String[] cipherSuites) {
+    this(context, cipherSuites, TLSInstrumentation.NOOP);
+  }
+
+  public TealessSSLContextSpi(SSLContext context, String[] cipherSuites, TLSInstrumentation instrumentation) {
+    this(context, cipherSuites, instrumentation, HandshakeListener.NOOP);
+  }
+
+  public TealessSSLContextSpi(SSLContext context, String[] cipherSuites, TLSInstrumentation instrumentation, HandshakeListener listener) {
     super(context);
     this.cipherSuites = cipherSuites;
+    this.instrumentation = instrumentation;
+    this.listener = HandshakeListener.all(listener, sessionStatistics);
   }
 
   @Override
   protected SSLEngine engineCreateSSLEngine() {
-    return new TealessSSLEngine(super.engineCreateSSLEngine(), cipherSuites, trustManagers);
+    return new TealessSSLEngine(super.engineCreateSSLEngine(), cipherSuites, trustManagers, instrumentation, listener);
   }
 
   @Override
   protected SSLEngine engineCreateSSLEngine(String host, int port) {
-    return new TealessSSLEngine(super.engineCreateSSLEngine(host, port), cipherSuites, trustManagers);
+    return new TealessSSLEngine(super.engineCreateSSLEngine(host, port), cipherSuites, trustManagers, instrumentation, listener);
   }
 
   @Override
@@ -31,12 +47,20 @@ public class TealessSSLContextSpi extends SSLContextSpiProxy {
 
   @Override
   protected SSLSocketFactory engineGetSocketFactory() {
-    return new TealessSSLSocketFactory(super.engineGetSocketFactory(), cipherSuites, trustManagers);
+    return new TealessSSLSocketFactory(super.engineGetSocketFactory(), cipherSuites, trustManagers, listener);
   }
 
   @Override
   protected void engineInit(KeyManager[] keyManagers, TrustManager[] trustManagers, SecureRandom secureRandom) throws KeyManagementException {
     super.engineInit(keyManagers, trustManagers, secureRandom);
     this.trustManagers = trustManagers;
+    SSLSessionContext sessions = super.engineGetClientSessionContext();
+    sessionStatistics.setSessionContext(sessions);
+    clientSessionContext = new TealessSSLSessionContext(sessions, sessionStatistics);
+  }
+
+  @Override
+  protected SSLSessionContext engineGetClientSessionContext() {
+    return clientSessionContext == null ? super.engineGetClientSessionContext() : clientSessionContext;
   }
 }
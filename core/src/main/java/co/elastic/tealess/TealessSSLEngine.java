@@ -1,32 +1,48 @@
 package co.elastic.tealess;
 
-import co.elastic.tealess.io.Transaction;
+import co.elastic.tealess.jfr.TLSEvents;
+import co.elastic.tealess.metrics.HandshakeListener;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.TrustManager;
-import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 public class TealessSSLEngine extends SSLEngineProxy {
   private final String[] cipherSuites;
   private final TrustManager[] trustManagers;
 
-  private final List<Transaction<?>> log = new LinkedList<>();
-  private final ByteBuffer input = ByteBuffer.allocate(16384);
-  private final ByteBuffer output = ByteBuffer.allocate(16384);
-  private boolean outputFull = false;
-  private boolean inputFull = false;
+  private final HandshakeCapture capture;
+  private final TLSInstrumentation instrumentation;
+  private final boolean instrumented;
+  private final HandshakeListener listener;
+  // System.nanoTime() of the first handshake bytes, or 0 before then. Only tracked with a listener.
+  private long handshakeStart;
+  // The Flight Recorder event for this handshake, or null before its first bytes.
+  private TLSEvents.Handshake handshakeEvent;
+  private boolean handshakeReported;
 
+  // Once the handshake finishes, and unless instrumented, wrap and unwrap go straight to the underlying engine.
+  private volatile boolean capturing = true;
 
   public TealessSSLEngine(SSLEngine engine, String[] cipherSuites, TrustManager[] trustManagers) {
+    this(engine, cipherSuites, trustManagers, TLSInstrumentation.NOOP);
+  }
+
+  public TealessSSLEngine(SSLEngine engine, String[] cipherSuites, TrustManager[] trustManagers, TLSInstrumentation instrumentation) {
+    this(engine, cipherSuites, trustManagers, instrumentation, HandshakeListener.NOOP);
+  }
+
+  public TealessSSLEngine(SSLEngine engine, String[] cipherSuites, TrustManager[] trustManagers, TLSInstrumentation instrumentation, HandshakeListener listener) {
     super(engine);
     this.cipherSuites = cipherSuites;
     this.trustManagers = trustManagers;
+    this.instrumentation = instrumentation;
+    this.instrumented = instrumentation != TLSInstrumentation.NOOP;
+    this.listener = listener;
+    this.capture = new HandshakeCapture(listener);
 
     try {
       engine.setEnabledCipherSuites(cipherSuites);
@@ -40,42 +56,80 @@ public class TealessSSLEngine extends SSLEngineProxy {
     }
   }
 
-  private void recordOutput(ByteBuffer buffer) {
-    if (!outputFull && buffer.position() > 0) {
-      final ByteBuffer dup = buffer.duplicate();
-      dup.position(0);
-      dup.limit(buffer.position());
-      log.add(Transaction.create(Transaction.Operation.Output, dup.remaining()));
-      try {
-        output.put(dup);
-      } catch (BufferOverflowException e) {
-        outputFull = true;
+  private void recordOutput(ByteBuffer dst, SSLEngineResult result) {
+    int produced = result.bytesProduced();
+    if (produced > 0) {
+      if (capturing) {
+        startHandshakeTimer();
+        capture.recordOutput(dst, dst.position() - produced, produced);
+      }
+      if (instrumented) {
+        instrumentation.output(this, dst, dst.position() - produced, produced);
+      }
+    }
+    checkHandshakeFinished(result);
+  }
+
+  private void recordInput(ByteBuffer src, int position, SSLEngineResult result) {
+    int consumed = result.bytesConsumed();
+    if (consumed > 0) {
+      if (capturing) {
+        startHandshakeTimer();
+        capture.recordInput(src, position, consumed);
+      }
+      if (instrumented) {
+        instrumentation.input(this, src, position, consumed);
+      }
+    }
+    checkHandshakeFinished(result);
+  }
+
+  private void checkHandshakeFinished(SSLEngineResult result) {
+    if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
+      if (instrumented) {
+        instrumentation.handshakeCompleted(this, getSession());
       }
+      if (capturing && handshakeEvent != null && !handshakeReported) {
+        handshakeReported = true;
+        if (handshakeStart != 0) {
+          listener.handshakeCompleted(peer(), System.nanoTime() - handshakeStart, getSession());
+        }
+        handshakeEvent.completed(peer(), getSession());
+      }
+      stopCapturing();
     }
   }
 
-  private void recordInput(ByteBuffer buffer) {
-    if (!inputFull && buffer.remaining() > 0) {
-      System.out.printf("input %s %d\n", buffer, buffer.remaining());
-      buffer.mark();
-      log.add(Transaction.create(Transaction.Operation.Input, buffer.remaining()));
-      try {
-        input.put(buffer);
-      } catch (BufferOverflowException e) {
-        inputFull = true;
-      } finally {
-        buffer.reset();
+  private void startHandshakeTimer() {
+    if (handshakeEvent == null) {
+      handshakeEvent = TLSEvents.get().handshake();
+      if (listener != HandshakeListener.NOOP) {
+        handshakeStart = System.nanoTime();
       }
     }
   }
 
+  private String peer() {
+    return getPeerHost() == null ? "unknown" : getPeerHost() + ":" + getPeerPort();
+  }
+
+  private void stopCapturing() {
+    capturing = false;
+    capture.release();
+  }
+
+  boolean isCapturing() {
+    return capturing;
+  }
+
   @Override
   public SSLEngineResult wrap(ByteBuffer srcs, ByteBuffer dst) throws SSLException {
+    if (!capturing && !instrumented) {
+      return super.wrap(srcs, dst);
+    }
     try {
       SSLEngineResult result = super.wrap(srcs, dst);
-      if (!outputFull) {
-        recordOutput(dst);
-      }
+      recordOutput(dst, result);
       return result;
     } catch (SSLException e) {
       diagnose(e);
@@ -86,25 +140,27 @@ public class TealessSSLEngine extends SSLEngineProxy {
 
   @Override
   public SSLEngineResult wrap(ByteBuffer[] srcs, ByteBuffer dst) throws SSLException {
+    if (!capturing && !instrumented) {
+      return super.wrap(srcs, dst);
+    }
     try {
       SSLEngineResult result = super.wrap(srcs, dst);
-      if (!outputFull) {
-        recordOutput(dst);
-      }
+      recordOutput(dst, result);
       return result;
     } catch (SSLException e) {
-      DiagnosticTLSObserver.diagnoseException(log, input, output, e, trustManagers);
+      diagnose(e);
       throw e;
     }
   }
 
   @Override
   public SSLEngineResult wrap(ByteBuffer[] srcs, int i, int i1, ByteBuffer dst) throws SSLException {
+    if (!capturing && !instrumented) {
+      return super.wrap(srcs, i, i1, dst);
+    }
     try {
       SSLEngineResult result = super.wrap(srcs, i, i1, dst);
-      if (!outputFull) {
-        recordOutput(dst);
-      }
+      recordOutput(dst, result);
       return result;
     } catch (SSLException e) {
       diagnose(e);
@@ -114,46 +170,90 @@ public class TealessSSLEngine extends SSLEngineProxy {
 
   @Override
   public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer dst) throws SSLException {
-    if (!inputFull) {
-      recordInput(src);
+    if (!capturing && !instrumented) {
+      return super.unwrap(src, dst);
     }
+    int position = src.position();
     try {
-      return super.unwrap(src, dst);
+      SSLEngineResult result = super.unwrap(src, dst);
+      recordInput(src, position, result);
+      return result;
     } catch (SSLException e) {
-      diagnose(e);
+      diagnoseInput(src, position, e);
       throw e;
     }
   }
 
   @Override
   public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts) throws SSLException {
-    if (!inputFull) {
-      recordInput(src);
+    if (!capturing && !instrumented) {
+      return super.unwrap(src, dsts);
     }
+    int position = src.position();
     try {
-      return super.unwrap(src, dsts);
+      SSLEngineResult result = super.unwrap(src, dsts);
+      recordInput(src, position, result);
+      return result;
     } catch (SSLException e) {
-      diagnose(e);
+      diagnoseInput(src, position, e);
       throw e;
     }
   }
 
   @Override
   public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int i, int i1) throws SSLException {
-    if (!inputFull) {
-      recordInput(src);
+    if (!capturing && !instrumented) {
+      return super.unwrap(src, dsts, i, i1);
     }
+    int position = src.position();
     try {
-      return super.unwrap(src, dsts, i, i1);
+      SSLEngineResult result = super.unwrap(src, dsts, i, i1);
+      recordInput(src, position, result);
+      return result;
     } catch (SSLException e) {
-      diagnose(e);
+      diagnoseInput(src, position, e);
       throw e;
     }
   }
 
+  @Override
+  public void closeInbound() throws SSLException {
+    try {
+      super.closeInbound();
+    } finally {
+      stopCapturing();
+    }
+  }
+
+  @Override
+  public void closeOutbound() {
+    super.closeOutbound();
+    stopCapturing();
+  }
+
+  private void diagnoseInput(ByteBuffer src, int position, SSLException e) throws SSLException {
+    // Include the input the engine rejected, since that is usually what the diagnosis needs to look at.
+    if (capturing) {
+      capture.recordInput(src, position, src.limit() - position);
+    }
+    diagnose(e);
+  }
+
   private void diagnose(SSLException e) throws SSLException {
-    input.flip();
-    output.flip();
-    DiagnosticTLSObserver.diagnoseException(log, input, output, e, trustManagers);
+    if (instrumented) {
+      instrumentation.failure(this, e);
+    }
+    if (capturing && handshakeEvent != null && !handshakeReported) {
+      handshakeReported = true;
+      Throwable cause = Blame.get(e);
+      if (handshakeStart != 0) {
+        listener.handshakeFailed(peer(), System.nanoTime() - handshakeStart, cause);
+      }
+      handshakeEvent.failed(peer(), cause);
+    }
+    if (capturing) {
+      capture.recordException(e);
+      capture.diagnose(e, trustManagers);
+    }
   }
 }
@@ -0,0 +1,53 @@
+package co.elastic.tealess;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.util.Enumeration;
+
+/**
+ * The client session cache of a context built by {@link TealessSSLContextBuilder}, with statistics on how well it
+ * avoids full handshakes.
+ */
+public class TealessSSLSessionContext implements SSLSessionContext {
+  private final SSLSessionContext context;
+  private final SessionCacheStatistics statistics;
+
+  TealessSSLSessionContext(SSLSessionContext context, SessionCacheStatistics statistics) {
+    this.context = context;
+    this.statistics = statistics;
+  }
+
+  public SessionCacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  @Override
+  public SSLSession getSession(byte[] sessionId) {
+    return context.getSession(sessionId);
+  }
+
+  @Override
+  public Enumeration<byte[]> getIds() {
+    return context.getIds();
+  }
+
+  @Override
+  public void setSessionTimeout(int seconds) throws IllegalArgumentException {
+    context.setSessionTimeout(seconds);
+  }
+
+  @Override
+  public int getSessionTimeout() {
+    return context.getSessionTimeout();
+  }
+
+  @Override
+  public void setSessionCacheSize(int size) throws IllegalArgumentException {
+    context.setSessionCacheSize(size);
+  }
+
+  @Override
+  public int getSessionCacheSize() {
+    return context.getSessionCacheSize();
+  }
+}
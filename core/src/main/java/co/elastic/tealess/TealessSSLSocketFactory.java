@@ -1,5 +1,7 @@
 package co.elastic.tealess;
 
+import co.elastic.tealess.metrics.HandshakeListener;
+
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -16,11 +18,17 @@ class TealessSSLSocketFactory extends SSLSocketFactory {
   private final SSLSocketFactory factory;
   private final String[] cipherSuites;
   private final TrustManager[] trustManagers;
+  private final HandshakeListener listener;
 
   public TealessSSLSocketFactory(SSLSocketFactory factory, String[] cipherSuites, TrustManager[] trustManagers) {
+    this(factory, cipherSuites, trustManagers, HandshakeListener.NOOP);
+  }
+
+  public TealessSSLSocketFactory(SSLSocketFactory factory, String[] cipherSuites, TrustManager[] trustManagers, HandshakeListener listener) {
     this.factory = factory;
     this.cipherSuites = cipherSuites;
     this.trustManagers = trustManagers;
+    this.listener = listener;
   }
 
   private void setEnabledCipherSuites(SSLSocket sslSocket) {
@@ -32,7 +40,7 @@ class TealessSSLSocketFactory extends SSLSocketFactory {
   }
 
   private TLSObserver newObserver() {
-    return new DiagnosticTLSObserver(trustManagers);
+    return new DiagnosticTLSObserver(trustManagers, listener);
   }
 
 
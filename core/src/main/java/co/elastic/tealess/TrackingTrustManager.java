@@ -19,6 +19,10 @@
 
 package co.elastic.tealess;
 
+import co.elastic.tealess.jfr.TLSEvents;
+import co.elastic.tealess.metrics.HandshakeListener;
+
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.X509ExtendedTrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.net.Socket;
@@ -27,21 +31,36 @@ import java.security.cert.X509Certificate;
 
 class TrackingTrustManager extends X509ExtendedTrustManagerProxy {
   private final TealessSSLContextBuilder.SSLCertificateVerificationTracker tracker;
+  private final HandshakeListener listener;
 
   public TrackingTrustManager(X509TrustManager trustManager, TealessSSLContextBuilder.SSLCertificateVerificationTracker tracker) {
+    this(trustManager, tracker, HandshakeListener.NOOP);
+  }
+
+  public TrackingTrustManager(X509TrustManager trustManager, TealessSSLContextBuilder.SSLCertificateVerificationTracker tracker, HandshakeListener listener) {
     super((X509ExtendedTrustManager) trustManager);
     this.tracker = tracker;
+    this.listener = listener;
+  }
+
+  private void track(X509Certificate[] chain, String authType, Throwable exception, long start, TLSEvents.CertificateVerification event) {
+    long elapsed = System.nanoTime() - start;
+    event.end(chain, authType, exception);
+    listener.certificateVerified(elapsed, exception);
+    tracker.track(chain, null, exception, elapsed);
   }
 
 
   @Override
   public void checkClientTrusted(X509Certificate[] chain, String host, Socket socket) throws CertificateException {
+    TLSEvents.CertificateVerification event = TLSEvents.get().certificateVerification();
+    long start = System.nanoTime();
     try {
       super.checkClientTrusted(chain, host, socket);
-      this.tracker.track(chain, null, null);
+      track(chain, host, null, start, event);
     } catch (CertificateException e) {
       // XXX: Perhaps prompt if a user wants to accept?
-      this.tracker.track(chain, null, e);
+      track(chain, host, e, start, event);
       throw e;
     }
   }
@@ -51,12 +70,40 @@ class TrackingTrustManager extends X509ExtendedTrustManagerProxy {
     // XXX: Check if Socket is an ObservableSSLSocket
     // XXX: If it is, we can tell the socket about ourselves so that the exception handler might know more details about the failure.
 
+    TLSEvents.CertificateVerification event = TLSEvents.get().certificateVerification();
+    long start = System.nanoTime();
     try {
       super.checkServerTrusted(chain, host, socket);
-      this.tracker.track(chain, null, null);
+      track(chain, host, null, start, event);
     } catch (CertificateException e) {
       // XXX: Perhaps prompt if a user wants to accept?
-      this.tracker.track(chain, null, e);
+      track(chain, host, e, start, event);
+      throw e;
+    }
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String host, SSLEngine engine) throws CertificateException {
+    TLSEvents.CertificateVerification event = TLSEvents.get().certificateVerification();
+    long start = System.nanoTime();
+    try {
+      super.checkClientTrusted(chain, host, engine);
+      track(chain, host, null, start, event);
+    } catch (CertificateException e) {
+      track(chain, host, e, start, event);
+      throw e;
+    }
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String host, SSLEngine engine) throws CertificateException {
+    TLSEvents.CertificateVerification event = TLSEvents.get().certificateVerification();
+    long start = System.nanoTime();
+    try {
+      super.checkServerTrusted(chain, host, engine);
+      track(chain, host, null, start, event);
+    } catch (CertificateException e) {
+      track(chain, host, e, start, event);
       throw e;
     }
   }
@@ -0,0 +1,229 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the certificates in a trust store, for finding the issuer of a certificate without trying every entry.
+ * <p>
+ * Candidates are found by the certificate's Authority Key Identifier when it has one, and by its issuer name
+ * otherwise. Normally this leaves a single candidate, so finding an issuer costs one signature verification. Results
+ * are remembered, because many failing endpoints tend to share the same missing intermediate.
+ */
+public class TrustAnchorIndex {
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final String subjectKeyIdentifierOID = "2.5.29.14";
+  private static final String authorityKeyIdentifierOID = "2.5.29.35";
+
+  // Bound the memory used by results; this is plenty for the distinct intermediates seen in one run.
+  private static final int maxRememberedResults = 4096;
+
+  private static TrustAnchorIndex systemDefault;
+
+  private final Map<X500Principal, List<Anchor>> bySubject = new HashMap<>();
+  private final Map<ByteBuffer, List<Anchor>> byKeyIdentifier = new HashMap<>();
+  private final Map<X509Certificate, Optional<Anchor>> issuers = new ConcurrentHashMap<>();
+  private final int size;
+
+  public static class Anchor {
+    private final String alias;
+    private final X509Certificate certificate;
+
+    Anchor(String alias, X509Certificate certificate) {
+      this.alias = alias;
+      this.certificate = certificate;
+    }
+
+    public String getAlias() {
+      return alias;
+    }
+
+    public X509Certificate getCertificate() {
+      return certificate;
+    }
+  }
+
+  public TrustAnchorIndex(KeyStore keyStore) throws KeyStoreException {
+    int count = 0;
+    for (Enumeration<String> aliases = keyStore.aliases(); aliases.hasMoreElements(); ) {
+      String alias = aliases.nextElement();
+      Certificate certificate = keyStore.getCertificate(alias);
+      if (!(certificate instanceof X509Certificate)) {
+        continue;
+      }
+      X509Certificate x509 = (X509Certificate) certificate;
+      Anchor anchor = new Anchor(alias, x509);
+      bySubject.computeIfAbsent(x509.getSubjectX500Principal(), k -> new ArrayList<>(1)).add(anchor);
+      byte[] keyIdentifier = subjectKeyIdentifier(x509);
+      if (keyIdentifier != null) {
+        byKeyIdentifier.computeIfAbsent(ByteBuffer.wrap(keyIdentifier), k -> new ArrayList<>(1)).add(anchor);
+      }
+      count++;
+    }
+    size = count;
+  }
+
+  /**
+   * @return the index of the JVM's default trust store, loading it on first use.
+   */
+  public static synchronized TrustAnchorIndex systemDefault() throws IOException, GeneralSecurityException {
+    if (systemDefault == null) {
+      KeyStoreBuilder builder = new KeyStoreBuilder();
+      builder.useDefaultTrustStore();
+      systemDefault = new TrustAnchorIndex(builder.sharedKeyStore());
+      logger.debug("Indexed {} trust anchors from {}", systemDefault.size(), KeyStoreBuilder.defaultTrustStorePath);
+    }
+    return systemDefault;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the trust anchor whose key signed the given certificate, if any.
+   */
+  public Optional<Anchor> findIssuer(X509Certificate certificate) {
+    Optional<Anchor> issuer = issuers.get(certificate);
+    if (issuer == null) {
+      issuer = candidates(certificate).stream().filter(anchor -> signed(anchor, certificate)).findFirst();
+      if (issuers.size() < maxRememberedResults) {
+        issuers.put(certificate, issuer);
+      }
+    }
+    return issuer;
+  }
+
+  private List<Anchor> candidates(X509Certificate certificate) {
+    byte[] keyIdentifier = authorityKeyIdentifier(certificate);
+    if (keyIdentifier != null) {
+      List<Anchor> anchors = byKeyIdentifier.get(ByteBuffer.wrap(keyIdentifier));
+      if (anchors != null) {
+        return anchors;
+      }
+    }
+    // No key identifier, or no anchor with that key identifier: fall back to the issuer name.
+    return bySubject.getOrDefault(certificate.getIssuerX500Principal(), Collections.emptyList());
+  }
+
+  private static boolean signed(Anchor anchor, X509Certificate certificate) {
+    try {
+      certificate.verify(anchor.certificate.getPublicKey());
+      return true;
+    } catch (GeneralSecurityException e) {
+      return false;
+    }
+  }
+
+  /**
+   * RFC 5280 4.2.1.2: SubjectKeyIdentifier ::= KeyIdentifier, where KeyIdentifier ::= OCTET STRING
+   */
+  static byte[] subjectKeyIdentifier(X509Certificate certificate) {
+    ByteBuffer value = extensionValue(certificate, subjectKeyIdentifierOID);
+    if (value == null || !DER.enter(value, DER.octetString)) {
+      return null;
+    }
+    return DER.remaining(value);
+  }
+
+  /**
+   * RFC 5280 4.2.1.1: AuthorityKeyIdentifier ::= SEQUENCE { keyIdentifier [0] KeyIdentifier OPTIONAL, ... }
+   */
+  static byte[] authorityKeyIdentifier(X509Certificate certificate) {
+    ByteBuffer value = extensionValue(certificate, authorityKeyIdentifierOID);
+    if (value == null || !DER.enter(value, DER.sequence) || !value.hasRemaining() || !DER.enter(value, DER.contextPrimitive0)) {
+      return null;
+    }
+    return DER.remaining(value);
+  }
+
+  /**
+   * @return the contents of the extension's extnValue OCTET STRING, or null if the certificate lacks the extension.
+   */
+  private static ByteBuffer extensionValue(X509Certificate certificate, String oid) {
+    byte[] encoded = certificate.getExtensionValue(oid);
+    if (encoded == null) {
+      return null;
+    }
+    ByteBuffer value = ByteBuffer.wrap(encoded);
+    return DER.enter(value, DER.octetString) ? value : null;
+  }
+
+  /**
+   * Just enough DER to reach the key identifiers.
+   */
+  private static class DER {
+    static final int octetString = 0x04;
+    static final int sequence = 0x30;
+    static final int contextPrimitive0 = 0x80;
+
+    /**
+     * If the next element has the expected tag, limit buffer to its contents and return true.
+     */
+    static boolean enter(ByteBuffer buffer, int tag) {
+      if (buffer.remaining() < 2 || (buffer.get(buffer.position()) & 0xff) != tag) {
+        return false;
+      }
+      buffer.get();
+      int length = buffer.get() & 0xff;
+      if ((length & 0x80) != 0) {
+        int octets = length & 0x7f;
+        if (octets > 3 || buffer.remaining() < octets) {
+          return false;
+        }
+        length = 0;
+        for (int i = 0; i < octets; i++) {
+          length = (length << 8) | (buffer.get() & 0xff);
+        }
+      }
+      if (length > buffer.remaining()) {
+        return false;
+      }
+      buffer.limit(buffer.position() + length);
+      return true;
+    }
+
+    static byte[] remaining(ByteBuffer buffer) {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+  }
+}
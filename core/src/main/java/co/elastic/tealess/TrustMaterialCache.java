@@ -0,0 +1,524 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import co.elastic.tealess.io.ByteBufferInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.KeyStoreSpi;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A process-wide cache of parsed trust material, so that every check pointing at the same CA bundle or keystore
+ * parses it once.
+ * <p>
+ * Entries are keyed by the file's absolute path and remembered with its modification time and size; a file that has
+ * changed since it was parsed is parsed again. Cached values are shared between callers, so they are immutable: the
+ * certificate lists are unmodifiable and the key stores reject every change with a {@link KeyStoreException}.
+ * {@link KeyStoreBuilder} copies a cached key store before it adds anything to it. A cached key store is only
+ * returned to callers giving the passphrase it was loaded with; see {@link Material}.
+ */
+public final class TrustMaterialCache {
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final String keyManagerAlgorithm = KeyManagerFactory.getDefaultAlgorithm();
+  private static final String trustManagerAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
+
+  // Files at least this large are memory-mapped rather than read.
+  private static final long mapThreshold = 64 * 1024;
+  // Key store passphrases are checked against an HMAC under this key, which never leaves the process.
+  private static final String verifierAlgorithm = "HmacSHA256";
+  private static final SecureRandom random = new SecureRandom();
+  private static final SecretKey verifierKey = randomKey();
+  // CertificateFactory is not documented as thread-safe, and directories are parsed in parallel.
+  private static final ThreadLocal<CertificateFactory> certificateFactory = new ThreadLocal<>();
+
+  private static final Map<Path, Cached<List<X509Certificate>>> certificates = new ConcurrentHashMap<>();
+  private static final Map<Path, Cached<Material>> keyStores = new ConcurrentHashMap<>();
+  // Keyed by identity, since KeyStore does not override equals. Replaced key stores are dropped with their entries.
+  private static final Map<KeyStore, Material> materials = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private TrustMaterialCache() {
+  }
+
+  private static SecretKey randomKey() {
+    byte[] key = new byte[32];
+    random.nextBytes(key);
+    return new SecretKeySpec(key, verifierAlgorithm);
+  }
+
+  /**
+   * A loaded key store with the factories built from it.
+   * <p>
+   * The passphrase is not kept. To check that later callers know it, a salted HMAC of it is kept instead, under a key
+   * that is random for each process, and the keys are kept already decrypted so the store can be copied without it.
+   */
+  public static class Material {
+    private final KeyStore keyStore;
+    private final KeyManagerFactory keyManagerFactory;
+    private final Map<String, Key> keys;
+    private final byte[] salt;
+    private final byte[] verifier;
+    private TrustManager[] trustManagers;
+
+    Material(KeyStore keyStore, KeyManagerFactory keyManagerFactory, Map<String, Key> keys, char[] passphrase) throws GeneralSecurityException {
+      this.keyStore = keyStore;
+      this.keyManagerFactory = keyManagerFactory;
+      this.keys = keys;
+      if (passphrase == null) {
+        salt = null;
+        verifier = null;
+      } else {
+        salt = new byte[16];
+        random.nextBytes(salt);
+        verifier = derive(passphrase, salt);
+      }
+    }
+
+    /**
+     * @return the key store, which rejects modification.
+     */
+    public KeyStore getKeyStore() {
+      return keyStore;
+    }
+
+    public KeyManagerFactory getKeyManagerFactory() {
+      return keyManagerFactory;
+    }
+
+    /**
+     * @return the trust managers for this key store, built on first use.
+     */
+    public synchronized TrustManager[] getTrustManagers() throws NoSuchAlgorithmException, KeyStoreException {
+      if (trustManagers == null) {
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(trustManagerAlgorithm);
+        tmf.init(keyStore);
+        trustManagers = tmf.getTrustManagers();
+      }
+      return trustManagers.clone();
+    }
+
+    /**
+     * @return true if the key store was loaded with this passphrase.
+     */
+    boolean accepts(char[] passphrase) throws GeneralSecurityException {
+      if (passphrase == null || verifier == null) {
+        return passphrase == null && verifier == null;
+      }
+      return MessageDigest.isEqual(verifier, derive(passphrase, salt));
+    }
+
+    /**
+     * @return a modifiable in-memory copy of the key store, with its keys protected by the given passphrase.
+     */
+    KeyStore copy(char[] protection) throws IOException, KeyStoreException, NoSuchAlgorithmException, CertificateException {
+      KeyStore copy = KeyStore.getInstance(KeyStore.getDefaultType());
+      copy.load(null, protection);
+      for (Enumeration<String> aliases = keyStore.aliases(); aliases.hasMoreElements(); ) {
+        String alias = aliases.nextElement();
+        Key key = keys.get(alias);
+        if (key != null) {
+          copy.setKeyEntry(alias, key, protection, keyStore.getCertificateChain(alias));
+        } else {
+          copy.setCertificateEntry(alias, keyStore.getCertificate(alias));
+        }
+      }
+      return copy;
+    }
+
+    private static byte[] derive(char[] passphrase, byte[] salt) throws GeneralSecurityException {
+      Mac mac = Mac.getInstance(verifierAlgorithm);
+      mac.init(verifierKey);
+      mac.update(salt);
+      ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(passphrase));
+      try {
+        mac.update(encoded);
+      } finally {
+        if (encoded.hasArray()) {
+          Arrays.fill(encoded.array(), (byte) 0);
+        }
+      }
+      return mac.doFinal();
+    }
+  }
+
+  /**
+   * @return the certificates in a PEM or DER file, as an unmodifiable list.
+   */
+  public static List<X509Certificate> certificates(Path path) throws IOException, GeneralSecurityException {
+    Path key = path.toAbsolutePath().normalize();
+    return cached(certificates, key, key, () -> parseCertificates(key));
+  }
+
+  /**
+   * @return the key store at the given path, with a key manager factory initialized with the same passphrase.
+   */
+  public static Material keyStore(Path path, char[] passphrase) throws IOException, GeneralSecurityException {
+    Path file = path.toAbsolutePath().normalize();
+    Material material = cached(keyStores, file, file, () -> loadKeyStore(file, passphrase));
+    if (material.accepts(passphrase)) {
+      return material;
+    }
+    // Not the passphrase the shared copy was loaded with. Load the file with this one, which fails the way it would
+    // without the cache, and keep the shared copy for the callers that know its passphrase.
+    return loadKeyStore(file, passphrase);
+  }
+
+  /**
+   * @return true if this material is still the cached copy of the key store at the given path, and the file has not
+   * changed since.
+   */
+  static boolean isCurrent(Path path, Material material) throws IOException {
+    Path file = path.toAbsolutePath().normalize();
+    Cached<Material> entry = keyStores.get(file);
+    if (entry == null || !entry.value.isDone() || entry.value.isCompletedExceptionally() || entry.value.join() != material) {
+      return false;
+    }
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    return entry.matches(attributes.lastModifiedTime().toMillis(), attributes.size());
+  }
+
+  /**
+   * @return the trust managers for the given key store. These are shared if the key store came from this cache, and
+   * built fresh otherwise.
+   */
+  public static TrustManager[] trustManagers(KeyStore keyStore) throws NoSuchAlgorithmException, KeyStoreException {
+    Material material = materials.get(keyStore);
+    if (material != null) {
+      return material.getTrustManagers();
+    }
+    TrustManagerFactory tmf = TrustManagerFactory.getInstance(trustManagerAlgorithm);
+    tmf.init(keyStore);
+    return tmf.getTrustManagers();
+  }
+
+  /**
+   * @return true if the key store is a shared one from this cache.
+   */
+  public static boolean isShared(KeyStore keyStore) {
+    return materials.containsKey(keyStore);
+  }
+
+  // For tests.
+  static void clear() {
+    certificates.clear();
+    keyStores.clear();
+    materials.clear();
+  }
+
+  private interface Loader<V> {
+    V load() throws IOException, GeneralSecurityException;
+  }
+
+  private static <K, V> V cached(Map<K, Cached<V>> cache, K key, Path file, Loader<V> loader) throws IOException, GeneralSecurityException {
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    long modified = attributes.lastModifiedTime().toMillis();
+    long size = attributes.size();
+
+    // Parse outside the map, so that files in the same bin of the map are parsed in parallel. The first caller to
+    // publish an entry parses the file, and concurrent callers asking for the same file wait for its result.
+    Cached<V> entry = cache.get(key);
+    while (entry == null || !entry.matches(modified, size)) {
+      Cached<V> fresh = new Cached<>(modified, size);
+      boolean published = entry == null ? cache.putIfAbsent(key, fresh) == null : cache.replace(key, entry, fresh);
+      if (published) {
+        try {
+          fresh.value.complete(loader.load());
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+          // Forget the failure, so the next caller tries again.
+          cache.remove(key, fresh);
+          fresh.value.completeExceptionally(e);
+        }
+        entry = fresh;
+      } else {
+        entry = cache.get(key);
+      }
+    }
+
+    try {
+      return entry.value.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof GeneralSecurityException) {
+        throw (GeneralSecurityException) e.getCause();
+      }
+      throw (RuntimeException) e.getCause();
+    }
+  }
+
+  private static List<X509Certificate> parseCertificates(Path path) throws IOException, GeneralSecurityException {
+    CertificateFactory cf = certificateFactory.get();
+    if (cf == null) {
+      cf = CertificateFactory.getInstance("X.509");
+      certificateFactory.set(cf);
+    }
+    List<X509Certificate> parsed = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // Mapping only pays off for bundles; a single PEM certificate is a couple of kilobytes.
+      long size = channel.size();
+      ByteBuffer contents;
+      if (size >= mapThreshold) {
+        contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } else {
+        contents = ByteBuffer.allocate((int) size);
+        while (contents.hasRemaining() && channel.read(contents) >= 0) {
+          // read until full or end of file
+        }
+        contents.flip();
+      }
+      for (Certificate certificate : cf.generateCertificates(new ByteBufferInputStream(contents))) {
+        parsed.add((X509Certificate) certificate);
+      }
+    }
+    logger.debug("Parsed {} certificates from {}", parsed.size(), path);
+    return Collections.unmodifiableList(parsed);
+  }
+
+  private static Material loadKeyStore(Path path, char[] passphrase) throws IOException, GeneralSecurityException {
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    try (InputStream in = Files.newInputStream(path)) {
+      keyStore.load(in, passphrase);
+    }
+    KeyManagerFactory kmf = KeyManagerFactory.getInstance(keyManagerAlgorithm);
+    kmf.init(keyStore, passphrase);
+
+    Map<String, Key> keys = new HashMap<>();
+    for (Enumeration<String> aliases = keyStore.aliases(); aliases.hasMoreElements(); ) {
+      String alias = aliases.nextElement();
+      if (keyStore.isKeyEntry(alias)) {
+        keys.put(alias, keyStore.getKey(alias, passphrase));
+      }
+    }
+
+    Material material = new Material(readOnly(keyStore), kmf, keys, passphrase);
+    materials.put(material.getKeyStore(), material);
+    logger.debug("Parsed keystore with {} entries from {}", keyStore.size(), path);
+    return material;
+  }
+
+  private static KeyStore readOnly(KeyStore keyStore) throws IOException, GeneralSecurityException {
+    KeyStore wrapper = new KeyStore(new ReadOnlyKeyStoreSpi(keyStore), keyStore.getProvider(), keyStore.getType()) {
+    };
+    // A KeyStore refuses to be used until it has been loaded.
+    wrapper.load(null, null);
+    return wrapper;
+  }
+
+  private static class Cached<V> {
+    private final long modified;
+    private final long size;
+    private final CompletableFuture<V> value = new CompletableFuture<>();
+
+    Cached(long modified, long size) {
+      this.modified = modified;
+      this.size = size;
+    }
+
+    boolean matches(long modified, long size) {
+      return this.modified == modified && this.size == size;
+    }
+  }
+
+  /**
+   * Answers reads from a loaded key store, and rejects everything else.
+   */
+  private static class ReadOnlyKeyStoreSpi extends KeyStoreSpi {
+    private final KeyStore keyStore;
+    private boolean loaded;
+
+    ReadOnlyKeyStoreSpi(KeyStore keyStore) {
+      this.keyStore = keyStore;
+    }
+
+    private static KeyStoreException readOnly() {
+      return new KeyStoreException("This keystore is shared and cannot be modified");
+    }
+
+    @Override
+    public Key engineGetKey(String alias, char[] password) throws NoSuchAlgorithmException, UnrecoverableKeyException {
+      try {
+        return keyStore.getKey(alias, password);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public Certificate[] engineGetCertificateChain(String alias) {
+      try {
+        return keyStore.getCertificateChain(alias);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public Certificate engineGetCertificate(String alias) {
+      try {
+        return keyStore.getCertificate(alias);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public Date engineGetCreationDate(String alias) {
+      try {
+        return keyStore.getCreationDate(alias);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) throws KeyStoreException {
+      throw readOnly();
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) throws KeyStoreException {
+      throw readOnly();
+    }
+
+    @Override
+    public void engineSetCertificateEntry(String alias, Certificate cert) throws KeyStoreException {
+      throw readOnly();
+    }
+
+    @Override
+    public void engineDeleteEntry(String alias) throws KeyStoreException {
+      throw readOnly();
+    }
+
+    @Override
+    public Enumeration<String> engineAliases() {
+      try {
+        return keyStore.aliases();
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public boolean engineContainsAlias(String alias) {
+      try {
+        return keyStore.containsAlias(alias);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public int engineSize() {
+      try {
+        return keyStore.size();
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public boolean engineIsKeyEntry(String alias) {
+      try {
+        return keyStore.isKeyEntry(alias);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public boolean engineIsCertificateEntry(String alias) {
+      try {
+        return keyStore.isCertificateEntry(alias);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public String engineGetCertificateAlias(Certificate cert) {
+      try {
+        return keyStore.getCertificateAlias(cert);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void engineStore(OutputStream stream, char[] password) throws IOException, NoSuchAlgorithmException, CertificateException {
+      try {
+        keyStore.store(stream, password);
+      } catch (KeyStoreException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public synchronized void engineLoad(InputStream stream, char[] password) throws IOException {
+      if (loaded) {
+        throw new IOException("This keystore is shared and cannot be reloaded");
+      }
+      loaded = true;
+    }
+  }
+}
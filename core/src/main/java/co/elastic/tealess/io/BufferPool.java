@@ -0,0 +1,67 @@
+package co.elastic.tealess.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free pool of direct buffers, all of the same capacity.
+ * <p>
+ * At most maxRetained buffers are kept for reuse. Releasing more than that simply drops the buffer.
+ */
+public class BufferPool {
+  private final int bufferSize;
+  private final int maxRetained;
+  private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger retained = new AtomicInteger();
+
+  public BufferPool(int bufferSize, int maxRetained) {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("bufferSize must be positive. Got " + bufferSize);
+    }
+    if (maxRetained < 0) {
+      throw new IllegalArgumentException("maxRetained cannot be negative. Got " + maxRetained);
+    }
+    this.bufferSize = bufferSize;
+    this.maxRetained = maxRetained;
+  }
+
+  /**
+   * @return a cleared buffer, either reused from the pool or newly allocated.
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = free.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(bufferSize);
+    }
+    retained.decrementAndGet();
+    return buffer;
+  }
+
+  /**
+   * Return a buffer to the pool. The caller must not use the buffer afterwards.
+   */
+  public void release(ByteBuffer buffer) {
+    if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+      throw new IllegalArgumentException("Buffer was not acquired from this pool: " + buffer);
+    }
+    if (retained.incrementAndGet() > maxRetained) {
+      retained.decrementAndGet();
+      return;
+    }
+    buffer.clear();
+    free.offer(buffer);
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * @return the number of buffers currently held for reuse.
+   */
+  public int available() {
+    return retained.get();
+  }
+}
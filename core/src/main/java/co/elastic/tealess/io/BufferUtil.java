@@ -31,13 +31,37 @@ public class BufferUtil {
   }
 
   public static int readUInt16(ByteBuffer source) {
-    return (source.get() << 8) + source.get();
+    return (readUInt8(source) << 8) + readUInt8(source);
   }
 
   public static int readUInt8(ByteBuffer source) {
     return source.get() & 0xff;
   }
 
+  // Absolute variants of the readers above. These do not move the buffer's position.
+
+  public static int getUInt8(ByteBuffer source, int index) {
+    return source.get(index) & 0xff;
+  }
+
+  public static int getUInt16(ByteBuffer source, int index) {
+    return (getUInt8(source, index) << 8) + getUInt8(source, index + 1);
+  }
+
+  public static int getUInt24(ByteBuffer source, int index) {
+    return (getUInt8(source, index) << 16) + (getUInt8(source, index + 1) << 8) + getUInt8(source, index + 2);
+  }
+
+  /**
+   * @return a read-only view of length bytes of source starting at index. The view shares content with source.
+   */
+  public static ByteBuffer slice(ByteBuffer source, int index, int length) {
+    ByteBuffer view = source.duplicate();
+    view.limit(index + length);
+    view.position(index);
+    return view.slice().asReadOnlyBuffer();
+  }
+
   public static byte[] readOpaque8(ByteBuffer source) {
     return readOpaque(source, readUInt8(source));
   }
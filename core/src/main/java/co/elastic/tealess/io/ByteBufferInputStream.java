@@ -0,0 +1,60 @@
+package co.elastic.tealess.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the remaining bytes of a buffer, such as a memory-mapped file, without copying them into a byte array first.
+ */
+public class ByteBufferInputStream extends InputStream {
+  private final ByteBuffer buffer;
+
+  public ByteBufferInputStream(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    if (!buffer.hasRemaining()) {
+      return -1;
+    }
+    int length = Math.min(len, buffer.remaining());
+    buffer.get(b, off, length);
+    return length;
+  }
+
+  @Override
+  public long skip(long n) {
+    int length = (int) Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + length);
+    return length;
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public boolean markSupported() {
+    return true;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+    buffer.mark();
+  }
+
+  @Override
+  public synchronized void reset() {
+    buffer.reset();
+  }
+}
@@ -0,0 +1,13 @@
+package co.elastic.tealess.io;
+
+public interface LifecycleObserver {
+  /**
+   * Called when a handshake started with {@link javax.net.ssl.SSLSocket#startHandshake()} completes successfully.
+   */
+  void handshakeCompleted();
+
+  /**
+   * Called after the socket is closed.
+   */
+  void closed();
+}
@@ -4,7 +4,8 @@ import java.io.IOException;
 import java.io.InputStream;
 
 class ObservableInputStream extends InputStream {
-  private final InputObserver observer;
+  // Cleared by detach() so that reads after the handshake skip observation entirely.
+  private volatile InputObserver observer;
   private final InputStream stream;
   private final ExceptionObserver exceptionObserver;
 
@@ -14,11 +15,21 @@ class ObservableInputStream extends InputStream {
     this.exceptionObserver = exceptionObserver;
   }
 
+  /**
+   * Stop notifying the input observer. Reads pass straight through to the underlying stream.
+   */
+  void detach() {
+    observer = null;
+  }
+
   @Override
   public int read() throws IOException {
     try {
       int i = stream.read();
-      observer.read(i);
+      InputObserver observer = this.observer;
+      if (observer != null) {
+        observer.read(i);
+      }
       return i;
     } catch (IOException e) {
       if (exceptionObserver != null) {
@@ -32,7 +43,10 @@ class ObservableInputStream extends InputStream {
   public int read(byte[] b) throws IOException {
     try {
       int i = stream.read(b);
-      observer.read(b, i);
+      InputObserver observer = this.observer;
+      if (observer != null) {
+        observer.read(b, i);
+      }
       return i;
     } catch (IOException e) {
       if (exceptionObserver != null) {
@@ -46,7 +60,10 @@ class ObservableInputStream extends InputStream {
   public int read(byte[] b, int off, int len) throws IOException {
     try {
       int i = stream.read(b, off, len);
-      observer.read(b, off, len, i);
+      InputObserver observer = this.observer;
+      if (observer != null) {
+        observer.read(b, off, len, i);
+      }
       return i;
     } catch (IOException e) {
       if (exceptionObserver != null) {
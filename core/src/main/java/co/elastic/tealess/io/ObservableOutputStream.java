@@ -5,7 +5,8 @@ import java.io.OutputStream;
 
 class ObservableOutputStream extends OutputStream {
   private final OutputStream stream;
-  private final OutputObserver observer;
+  // Cleared by detach() so that writes after the handshake skip observation entirely.
+  private volatile OutputObserver observer;
   private final ExceptionObserver exceptionObserver;
 
   public ObservableOutputStream(OutputStream stream, OutputObserver observer, ExceptionObserver exceptionObserver) {
@@ -14,6 +15,13 @@ class ObservableOutputStream extends OutputStream {
     this.exceptionObserver = exceptionObserver;
   }
 
+  /**
+   * Stop notifying the output observer. Writes pass straight through to the underlying stream.
+   */
+  void detach() {
+    observer = null;
+  }
+
   @Override
   public void write(int b) throws IOException {
     try {
@@ -24,6 +32,7 @@ class ObservableOutputStream extends OutputStream {
       }
       throw e;
     }
+    OutputObserver observer = this.observer;
     if (observer != null) {
       observer.write(b);
     }
@@ -39,6 +48,7 @@ class ObservableOutputStream extends OutputStream {
       }
       throw e;
     }
+    OutputObserver observer = this.observer;
     if (observer != null) {
       observer.write(b);
     }
@@ -54,6 +64,7 @@ class ObservableOutputStream extends OutputStream {
       }
       throw e;
     }
+    OutputObserver observer = this.observer;
     if (observer != null) {
       observer.write(b, off, len);
     }
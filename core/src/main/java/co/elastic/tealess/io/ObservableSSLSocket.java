@@ -6,17 +6,23 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 public class ObservableSSLSocket extends SSLSocketProxy {
-  private final OutputStream outputStream;
-  private final InputStream inputStream;
+  private final ObservableOutputStream outputStream;
+  private final ObservableInputStream inputStream;
   private final IOException deferredOutputStreamException;
   private final IOException deferredInputStreamException;
+  private volatile boolean passThrough = false;
   private final ExceptionObserver exceptionObserver;
+  private final LifecycleObserver lifecycleObserver;
 
   public ObservableSSLSocket(SSLSocket socket, InputObserver inputObserver, OutputObserver outputObserver, ExceptionObserver exceptionObserver) {
+    this(socket, inputObserver, outputObserver, exceptionObserver, null);
+  }
+
+  public ObservableSSLSocket(SSLSocket socket, InputObserver inputObserver, OutputObserver outputObserver, ExceptionObserver exceptionObserver, LifecycleObserver lifecycleObserver) {
     super(socket);
 
     IOException deferredInputStreamException1;
-    InputStream inputStream1;
+    ObservableInputStream inputStream1;
     try {
       inputStream1 = new ObservableInputStream(socket.getInputStream(), inputObserver, exceptionObserver);
       deferredInputStreamException1 = null;
@@ -28,7 +34,7 @@ public class ObservableSSLSocket extends SSLSocketProxy {
     inputStream = inputStream1;
 
     IOException deferredOutputStreamException1;
-    OutputStream outputStream1;
+    ObservableOutputStream outputStream1;
     try {
       outputStream1 = new ObservableOutputStream(socket.getOutputStream(), outputObserver, exceptionObserver);
       deferredOutputStreamException1 = null;
@@ -39,6 +45,21 @@ public class ObservableSSLSocket extends SSLSocketProxy {
     outputStream = outputStream1;
     deferredOutputStreamException = deferredOutputStreamException1;
     this.exceptionObserver = exceptionObserver;
+    this.lifecycleObserver = lifecycleObserver;
+  }
+
+  /**
+   * Stop observing input and output. Streams already handed out skip their observers, and streams requested
+   * afterwards are the underlying socket's own.
+   */
+  public void stopObserving() {
+    passThrough = true;
+    if (inputStream != null) {
+      inputStream.detach();
+    }
+    if (outputStream != null) {
+      outputStream.detach();
+    }
   }
 
   @Override
@@ -46,6 +67,9 @@ public class ObservableSSLSocket extends SSLSocketProxy {
     if (deferredInputStreamException != null) {
       throw deferredInputStreamException;
     }
+    if (passThrough) {
+      return super.getInputStream();
+    }
     return inputStream;
   }
 
@@ -54,6 +78,9 @@ public class ObservableSSLSocket extends SSLSocketProxy {
     if (deferredOutputStreamException != null) {
       throw deferredOutputStreamException;
     }
+    if (passThrough) {
+      return super.getOutputStream();
+    }
     return outputStream;
   }
 
@@ -67,5 +94,19 @@ public class ObservableSSLSocket extends SSLSocketProxy {
       }
       throw e;
     }
+    if (lifecycleObserver != null) {
+      lifecycleObserver.handshakeCompleted();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      if (lifecycleObserver != null) {
+        lifecycleObserver.closed();
+      }
+    }
   }
 }
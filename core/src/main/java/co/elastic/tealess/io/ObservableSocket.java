@@ -6,16 +6,17 @@ import java.io.OutputStream;
 import java.net.Socket;
 
 public class ObservableSocket extends SocketProxy {
-  private final OutputStream outputStream;
-  private final InputStream inputStream;
+  private final ObservableOutputStream outputStream;
+  private final ObservableInputStream inputStream;
   private final IOException deferredOutputStreamException;
   private final IOException deferredInputStreamException;
+  private volatile boolean passThrough = false;
 
   public ObservableSocket(Socket socket, InputObserver inputObserver, OutputObserver outputObserver, ExceptionObserver exceptionObserver) {
     super(socket);
 
     IOException deferredInputStreamException1;
-    InputStream inputStream1;
+    ObservableInputStream inputStream1;
     try {
       inputStream1 = new ObservableInputStream(socket.getInputStream(), inputObserver, exceptionObserver);
       deferredInputStreamException1 = null;
@@ -27,7 +28,7 @@ public class ObservableSocket extends SocketProxy {
     inputStream = inputStream1;
 
     IOException deferredOutputStreamException1;
-    OutputStream outputStream1;
+    ObservableOutputStream outputStream1;
     try {
       outputStream1 = new ObservableOutputStream(socket.getOutputStream(), outputObserver, exceptionObserver);
       deferredOutputStreamException1 = null;
@@ -39,11 +40,28 @@ public class ObservableSocket extends SocketProxy {
     deferredOutputStreamException = deferredOutputStreamException1;
   }
 
+  /**
+   * Stop observing input and output. Streams already handed out skip their observers, and streams requested
+   * afterwards are the underlying socket's own.
+   */
+  public void stopObserving() {
+    passThrough = true;
+    if (inputStream != null) {
+      inputStream.detach();
+    }
+    if (outputStream != null) {
+      outputStream.detach();
+    }
+  }
+
   @Override
   public InputStream getInputStream() throws IOException {
     if (deferredInputStreamException != null) {
       throw deferredInputStreamException;
     }
+    if (passThrough) {
+      return super.getInputStream();
+    }
     return inputStream;
   }
 
@@ -52,6 +70,9 @@ public class ObservableSocket extends SocketProxy {
     if (deferredOutputStreamException != null) {
       throw deferredOutputStreamException;
     }
+    if (passThrough) {
+      return super.getOutputStream();
+    }
     return outputStream;
   }
 }
@@ -3,16 +3,21 @@ package co.elastic.tealess.io;
 public class Transaction<T> {
   public final Operation op;
   public final T value;
+  // System.nanoTime() when this happened. Only meaningful relative to other timestamps from the same JVM.
+  public final long timestamp;
 
-  private Transaction(Operation op, T value) {
+  private Transaction(Operation op, T value, long timestamp) {
     this.op = op;
     this.value = value;
-    //this.timestamp = System.nanoTime(); // monotonic
+    this.timestamp = timestamp;
   }
-  //private final long timestamp;
 
   public static <Value> Transaction<Value> create(Operation op, Value value) {
-    return new Transaction<>(op, value);
+    return new Transaction<>(op, value, System.nanoTime());
+  }
+
+  public static <Value> Transaction<Value> create(Operation op, Value value, long timestamp) {
+    return new Transaction<>(op, value, timestamp);
   }
 
   public String toString() {
@@ -0,0 +1,64 @@
+package co.elastic.tealess.jfr;
+
+import co.elastic.tealess.tls.TLSMessage;
+
+/**
+ * {@link TLSEvents} backed by Java Flight Recorder. Each span is the event itself, begun when created and committed
+ * when ended; disabled events are never begun.
+ */
+class FlightRecorderEvents implements TLSEvents {
+  @Override
+  public Handshake handshake() {
+    TealessHandshakeEvent event = new TealessHandshakeEvent();
+    if (!event.isEnabled()) {
+      return Handshake.NOOP;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public CertificateVerification certificateVerification() {
+    TealessCertificateVerificationEvent event = new TealessCertificateVerificationEvent();
+    if (!event.isEnabled()) {
+      return CertificateVerification.NOOP;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public KeySelection keySelection() {
+    TealessKeySelectionEvent event = new TealessKeySelectionEvent();
+    if (!event.isEnabled()) {
+      return KeySelection.NOOP;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public Diagnosis diagnosis() {
+    TealessDiagnosisEvent event = new TealessDiagnosisEvent();
+    if (!event.isEnabled()) {
+      return Diagnosis.NOOP;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void recordDecoded(boolean input, TLSMessage message) {
+    TealessRecordDecodedEvent event = new TealessRecordDecodedEvent();
+    if (event.isEnabled()) {
+      event.direction = input ? "input" : "output";
+      event.messageType = message.getClass().getSimpleName();
+      event.message = message.toString();
+      event.commit();
+    }
+  }
+
+  static String name(Throwable throwable) {
+    return throwable == null ? null : throwable.getClass().getName();
+  }
+}
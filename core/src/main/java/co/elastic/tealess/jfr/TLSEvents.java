@@ -0,0 +1,121 @@
+package co.elastic.tealess.jfr;
+
+import co.elastic.tealess.tls.TLSMessage;
+
+import javax.net.ssl.SSLSession;
+import java.security.cert.X509Certificate;
+
+/**
+ * Java Flight Recorder events from the Tealess wrappers, so TLS handshake stalls can be lined up with GC pauses and
+ * thread activity in a production recording.
+ * <p>
+ * Each method starting a timed event returns a span which the caller ends once the work is done. When the running JVM
+ * has no Flight Recorder (before 8u262), or the event is not enabled in the current recording, the spans do nothing,
+ * so wrappers can call these unconditionally.
+ */
+public interface TLSEvents {
+  /**
+   * Events that are never recorded.
+   */
+  TLSEvents NOOP = new TLSEvents() {
+    @Override
+    public String toString() {
+      return "TLSEvents.NOOP";
+    }
+  };
+
+  /**
+   * @return Flight Recorder events if this JVM supports them, otherwise {@link #NOOP}.
+   */
+  static TLSEvents get() {
+    return TLSEventsLoader.events;
+  }
+
+  /**
+   * Start timing a handshake. Call when the first handshake bytes are sent or received.
+   */
+  default Handshake handshake() {
+    return Handshake.NOOP;
+  }
+
+  /**
+   * Start timing a trust manager's check of a peer certificate chain.
+   */
+  default CertificateVerification certificateVerification() {
+    return CertificateVerification.NOOP;
+  }
+
+  /**
+   * Start timing a key manager's choice of our certificate.
+   */
+  default KeySelection keySelection() {
+    return KeySelection.NOOP;
+  }
+
+  /**
+   * Start timing the diagnosis of a failed handshake.
+   */
+  default Diagnosis diagnosis() {
+    return Diagnosis.NOOP;
+  }
+
+  /**
+   * A TLS message was decoded from captured handshake bytes.
+   *
+   * @param input true if the message was received, false if it was sent
+   */
+  default void recordDecoded(boolean input, TLSMessage message) {
+  }
+
+  interface Handshake {
+    Handshake NOOP = new Handshake() {
+      @Override
+      public void completed(String peer, SSLSession session) {
+      }
+
+      @Override
+      public void failed(String peer, Throwable cause) {
+      }
+    };
+
+    /**
+     * @param session the negotiated session, or null if not available
+     */
+    void completed(String peer, SSLSession session);
+
+    /**
+     * @param cause the root cause of the failure
+     */
+    void failed(String peer, Throwable cause);
+  }
+
+  interface CertificateVerification {
+    CertificateVerification NOOP = (chain, authType, exception) -> {
+    };
+
+    /**
+     * @param exception why the chain was rejected, or null if it was trusted
+     */
+    void end(X509Certificate[] chain, String authType, Throwable exception);
+  }
+
+  interface KeySelection {
+    KeySelection NOOP = (keyTypes, alias) -> {
+    };
+
+    /**
+     * @param alias the chosen alias, or null if no key was suitable
+     */
+    void end(String[] keyTypes, String alias);
+  }
+
+  interface Diagnosis {
+    Diagnosis NOOP = (cause, diagnosis) -> {
+    };
+
+    /**
+     * @param diagnosis the exception carrying the diagnosis, or null if none could be made
+     */
+    void end(Throwable cause, Throwable diagnosis);
+  }
+}
@@ -0,0 +1,28 @@
+package co.elastic.tealess.jfr;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Picks the {@link TLSEvents} implementation once. The Flight Recorder one is only loaded by name, so running on a JVM
+ * without jdk.jfr never links against it.
+ */
+final class TLSEventsLoader {
+  private static final Logger logger = LogManager.getLogger();
+  private static final String implementation = "co.elastic.tealess.jfr.FlightRecorderEvents";
+
+  static final TLSEvents events = load();
+
+  private TLSEventsLoader() {
+  }
+
+  private static TLSEvents load() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return (TLSEvents) Class.forName(implementation).newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      logger.debug("Java Flight Recorder is not available, so no TLS events will be recorded: {}", e.toString());
+      return TLSEvents.NOOP;
+    }
+  }
+}
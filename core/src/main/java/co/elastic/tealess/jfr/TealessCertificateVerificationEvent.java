@@ -0,0 +1,53 @@
+package co.elastic.tealess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.security.cert.X509Certificate;
+
+@Name("co.elastic.tealess.CertificateVerification")
+@Label("TLS Certificate Verification")
+@Category({"Tealess", "TLS"})
+@Description("A trust manager checking a peer's certificate chain")
+class TealessCertificateVerificationEvent extends Event implements TLSEvents.CertificateVerification {
+  @Label("Subject")
+  String subject;
+
+  @Label("Issuer")
+  String issuer;
+
+  @Label("Chain Length")
+  int chainLength;
+
+  @Label("Auth Type")
+  String authType;
+
+  @Label("Trusted")
+  boolean trusted;
+
+  @Label("Failure")
+  String failure;
+
+  @Label("Failure Message")
+  String failureMessage;
+
+  @Override
+  public void end(X509Certificate[] chain, String authType, Throwable exception) {
+    end();
+    if (shouldCommit()) {
+      if (chain != null && chain.length > 0) {
+        chainLength = chain.length;
+        subject = chain[0].getSubjectX500Principal().getName();
+        issuer = chain[0].getIssuerX500Principal().getName();
+      }
+      this.authType = authType;
+      trusted = exception == null;
+      failure = FlightRecorderEvents.name(exception);
+      failureMessage = exception == null ? null : exception.getMessage();
+      commit();
+    }
+  }
+}
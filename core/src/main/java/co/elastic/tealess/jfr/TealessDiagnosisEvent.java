@@ -0,0 +1,34 @@
+package co.elastic.tealess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("co.elastic.tealess.Diagnosis")
+@Label("TLS Diagnosis")
+@Category({"Tealess", "TLS"})
+@Description("Decoding the captured bytes of a failed handshake to explain the failure")
+class TealessDiagnosisEvent extends Event implements TLSEvents.Diagnosis {
+  @Label("Cause")
+  String cause;
+
+  @Label("Cause Message")
+  String causeMessage;
+
+  @Label("Diagnosed")
+  @Description("Whether a diagnosis could be made")
+  boolean diagnosed;
+
+  @Override
+  public void end(Throwable cause, Throwable diagnosis) {
+    end();
+    if (shouldCommit()) {
+      this.cause = FlightRecorderEvents.name(cause);
+      causeMessage = cause == null ? null : cause.getMessage();
+      diagnosed = diagnosis != null;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package co.elastic.tealess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.net.ssl.SSLSession;
+
+@Name("co.elastic.tealess.Handshake")
+@Label("TLS Handshake")
+@Category({"Tealess", "TLS"})
+@Description("A TLS handshake, from its first bytes until it completed or failed")
+class TealessHandshakeEvent extends Event implements TLSEvents.Handshake {
+  @Label("Peer")
+  String peer;
+
+  @Label("Protocol")
+  String protocol;
+
+  @Label("Cipher Suite")
+  String cipherSuite;
+
+  @Label("Success")
+  boolean success;
+
+  @Label("Failure")
+  @Description("Class of the root cause, if the handshake failed")
+  String failure;
+
+  @Label("Failure Message")
+  String failureMessage;
+
+  @Override
+  public void completed(String peer, SSLSession session) {
+    end();
+    if (shouldCommit()) {
+      this.peer = peer;
+      this.success = true;
+      if (session != null) {
+        protocol = session.getProtocol();
+        cipherSuite = session.getCipherSuite();
+      }
+      commit();
+    }
+  }
+
+  @Override
+  public void failed(String peer, Throwable cause) {
+    end();
+    if (shouldCommit()) {
+      this.peer = peer;
+      failure = FlightRecorderEvents.name(cause);
+      failureMessage = cause.getMessage();
+      commit();
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package co.elastic.tealess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("co.elastic.tealess.KeySelection")
+@Label("TLS Key Selection")
+@Category({"Tealess", "TLS"})
+@Description("A key manager choosing which of our certificates to present")
+class TealessKeySelectionEvent extends Event implements TLSEvents.KeySelection {
+  @Label("Key Types")
+  String keyTypes;
+
+  @Label("Alias")
+  @Description("The chosen alias, or empty if no key was suitable")
+  String alias;
+
+  @Override
+  public void end(String[] keyTypes, String alias) {
+    end();
+    if (shouldCommit()) {
+      this.keyTypes = keyTypes == null ? null : String.join(",", keyTypes);
+      this.alias = alias;
+      commit();
+    }
+  }
+}
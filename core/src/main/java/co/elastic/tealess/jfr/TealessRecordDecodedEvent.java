@@ -0,0 +1,24 @@
+package co.elastic.tealess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("co.elastic.tealess.RecordDecoded")
+@Label("TLS Record Decoded")
+@Category({"Tealess", "TLS"})
+@Description("A TLS message decoded from the captured bytes of a handshake")
+@StackTrace(false)
+class TealessRecordDecodedEvent extends Event {
+  @Label("Direction")
+  String direction;
+
+  @Label("Message Type")
+  String messageType;
+
+  @Label("Message")
+  String message;
+}
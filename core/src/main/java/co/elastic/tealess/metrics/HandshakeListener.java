@@ -0,0 +1,117 @@
+package co.elastic.tealess.metrics;
+
+import javax.net.ssl.SSLSession;
+import java.util.Arrays;
+
+/**
+ * Receives handshake events from sockets, engines and trust managers created by a Tealess
+ * {@link javax.net.ssl.SSLContext}.
+ * <p>
+ * Every method has an empty default. Implementations are called on the thread doing the handshake, so they should be
+ * quick and must be thread-safe. {@link TLSMetrics} aggregates these events and publishes them over JMX.
+ */
+public interface HandshakeListener {
+  HandshakeListener NOOP = new HandshakeListener() {
+    @Override
+    public String toString() {
+      return "HandshakeListener.NOOP";
+    }
+  };
+
+  /**
+   * @param peer         "host:port" of the remote end, or "unknown"
+   * @param elapsedNanos from the first handshake bytes sent or received until completion
+   */
+  default void handshakeCompleted(String peer, long elapsedNanos) {
+  }
+
+  /**
+   * Like {@link #handshakeCompleted(String, long)}, with the session the handshake established or resumed. Wrappers
+   * call this one; by default it calls the shorter form.
+   *
+   * @param session the negotiated session, or null if not available
+   */
+  default void handshakeCompleted(String peer, long elapsedNanos, SSLSession session) {
+    handshakeCompleted(peer, elapsedNanos);
+  }
+
+  /**
+   * @param peer         "host:port" of the remote end, or "unknown"
+   * @param elapsedNanos from the first handshake bytes sent or received until the failure
+   * @param cause        the root cause of the failure
+   */
+  default void handshakeFailed(String peer, long elapsedNanos, Throwable cause) {
+  }
+
+  /**
+   * A trust manager checked a peer's certificate chain.
+   *
+   * @param exception why the chain was rejected, or null if it was trusted
+   */
+  default void certificateVerified(long elapsedNanos, Throwable exception) {
+  }
+
+  /**
+   * Handshake bytes were recorded for diagnosis.
+   */
+  default void captured(int bytes) {
+  }
+
+  /**
+   * A handshake produced more bytes than the capture buffer holds, so the rest of it was not recorded.
+   *
+   * @param input true if the overflowing direction is the bytes received
+   */
+  default void captureOverflow(boolean input) {
+  }
+
+  /**
+   * @return a listener passing every event to each of the given listeners in turn.
+   */
+  static HandshakeListener all(HandshakeListener... listeners) {
+    HandshakeListener[] copy = Arrays.copyOf(listeners, listeners.length);
+    return new HandshakeListener() {
+      @Override
+      public void handshakeCompleted(String peer, long elapsedNanos) {
+        for (HandshakeListener listener : copy) {
+          listener.handshakeCompleted(peer, elapsedNanos);
+        }
+      }
+
+      @Override
+      public void handshakeCompleted(String peer, long elapsedNanos, SSLSession session) {
+        for (HandshakeListener listener : copy) {
+          listener.handshakeCompleted(peer, elapsedNanos, session);
+        }
+      }
+
+      @Override
+      public void handshakeFailed(String peer, long elapsedNanos, Throwable cause) {
+        for (HandshakeListener listener : copy) {
+          listener.handshakeFailed(peer, elapsedNanos, cause);
+        }
+      }
+
+      @Override
+      public void certificateVerified(long elapsedNanos, Throwable exception) {
+        for (HandshakeListener listener : copy) {
+          listener.certificateVerified(elapsedNanos, exception);
+        }
+      }
+
+      @Override
+      public void captured(int bytes) {
+        for (HandshakeListener listener : copy) {
+          listener.captured(bytes);
+        }
+      }
+
+      @Override
+      public void captureOverflow(boolean input) {
+        for (HandshakeListener listener : copy) {
+          listener.captureOverflow(input);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,100 @@
+package co.elastic.tealess.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free histogram of durations in nanoseconds, in the style of HdrHistogram.
+ * <p>
+ * Each power of two is split into {@value #subBuckets} linear buckets, so any recorded value is reported within about
+ * 6% of its true value, from one nanosecond up to {@link #maxValue} (about 18 minutes). Larger values are counted as
+ * the maximum. Recording is a couple of shifts and an atomic increment, cheap enough to do on every handshake.
+ */
+public class LatencyHistogram {
+  private static final int subBucketBits = 4;
+  static final int subBuckets = 1 << subBucketBits;
+  private static final int maxMagnitude = 40;
+  public static final long maxValue = (1L << (maxMagnitude + 1)) - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(index(maxValue) + 1);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  static int index(long value) {
+    int magnitude = 63 - Long.numberOfLeadingZeros(value | 1);
+    if (magnitude < subBucketBits) {
+      return (int) value;
+    }
+    int shift = magnitude - subBucketBits;
+    return ((shift + 1) << subBucketBits) + (int) ((value >>> shift) - subBuckets);
+  }
+
+  /**
+   * @return the largest value that falls in the given bucket.
+   */
+  static long highestEquivalentValue(int index) {
+    if (index < subBuckets) {
+      return index;
+    }
+    int shift = (index >>> subBucketBits) - 1;
+    long lowest = ((long) (subBuckets + (index & (subBuckets - 1)))) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  public void record(long nanos) {
+    long value = Math.min(Math.max(nanos, 0), maxValue);
+    counts.incrementAndGet(index(value));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the value at or below which the given percentage of recorded values fall, or 0 if nothing was recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = 0;
+    long[] snapshot = new long[counts.length()];
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return Math.min(highestEquivalentValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+}
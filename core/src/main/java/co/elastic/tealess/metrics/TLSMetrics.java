@@ -0,0 +1,217 @@
+package co.elastic.tealess.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates {@link HandshakeListener} events into counters and latency histograms, for an application running
+ * Tealess to watch its TLS connections as they happen.
+ * <p>
+ * Give an instance to {@link co.elastic.tealess.TealessSSLContextBuilder#setHandshakeListener(HandshakeListener)},
+ * and {@link #register(String)} it to publish it as an MXBean named "co.elastic.tealess:type=TLSMetrics,name=...".
+ * Latencies are kept per peer, for at most {@value #maxPeers} peers; handshakes with any further peers are counted
+ * under "other".
+ */
+public class TLSMetrics implements HandshakeListener, TLSMetricsMXBean {
+  private static final Logger logger = LogManager.getLogger();
+
+  static final int maxPeers = 1024;
+  static final String otherPeers = "other";
+  private static final double nanosPerMilli = 1e6;
+
+  private final LatencyHistogram handshakeLatency = new LatencyHistogram();
+  private final Map<String, LatencyHistogram> peerLatency = new ConcurrentHashMap<>();
+  private final LongAdder completed = new LongAdder();
+  private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+  private final LatencyHistogram verificationLatency = new LatencyHistogram();
+  private final LongAdder verificationFailures = new LongAdder();
+
+  private final LongAdder bytesCaptured = new LongAdder();
+  private final LongAdder inputOverflows = new LongAdder();
+  private final LongAdder outputOverflows = new LongAdder();
+
+  private ObjectName objectName;
+
+  @Override
+  public void handshakeCompleted(String peer, long elapsedNanos) {
+    completed.increment();
+    recordLatency(peer, elapsedNanos);
+  }
+
+  @Override
+  public void handshakeFailed(String peer, long elapsedNanos, Throwable cause) {
+    failures.computeIfAbsent(cause.getClass().getName(), k -> new LongAdder()).increment();
+    recordLatency(peer, elapsedNanos);
+  }
+
+  @Override
+  public void certificateVerified(long elapsedNanos, Throwable exception) {
+    verificationLatency.record(elapsedNanos);
+    if (exception != null) {
+      verificationFailures.increment();
+    }
+  }
+
+  @Override
+  public void captured(int bytes) {
+    bytesCaptured.add(bytes);
+  }
+
+  @Override
+  public void captureOverflow(boolean input) {
+    (input ? inputOverflows : outputOverflows).increment();
+  }
+
+  private void recordLatency(String peer, long elapsedNanos) {
+    handshakeLatency.record(elapsedNanos);
+    LatencyHistogram histogram = peerLatency.get(peer);
+    if (histogram == null) {
+      // The cap is approximate under concurrent first handshakes, which is fine: it only bounds memory.
+      String key = peerLatency.size() < maxPeers ? peer : otherPeers;
+      histogram = peerLatency.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+    histogram.record(elapsedNanos);
+  }
+
+  /**
+   * Publish these metrics on the platform MBean server.
+   *
+   * @param name distinguishes this instance from others in the same JVM
+   */
+  public synchronized void register(String name) throws JMException {
+    if (objectName != null) {
+      throw new InstanceAlreadyExistsException("Already registered as " + objectName);
+    }
+    ObjectName objectName = new ObjectName("co.elastic.tealess:type=TLSMetrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    this.objectName = objectName;
+    logger.debug("Registered TLS metrics as {}", objectName);
+  }
+
+  public synchronized void unregister() throws JMException {
+    if (objectName == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(objectName);
+    } catch (InstanceNotFoundException e) {
+      // Someone else unregistered it.
+    }
+    objectName = null;
+  }
+
+  public synchronized ObjectName getObjectName() {
+    return objectName;
+  }
+
+  @Override
+  public long getHandshakesCompleted() {
+    return completed.sum();
+  }
+
+  @Override
+  public long getHandshakesFailed() {
+    return failures.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  @Override
+  public Map<String, Long> getHandshakeFailuresByCause() {
+    Map<String, Long> byCause = new TreeMap<>();
+    failures.forEach((cause, count) -> byCause.put(cause, count.sum()));
+    return byCause;
+  }
+
+  @Override
+  public Map<String, Double> getHandshakeLatency() {
+    return summarize(handshakeLatency);
+  }
+
+  @Override
+  public List<String> getPeers() {
+    List<String> peers = new ArrayList<>(peerLatency.keySet());
+    Collections.sort(peers);
+    return peers;
+  }
+
+  @Override
+  public Map<String, Double> handshakeLatency(String peer) {
+    LatencyHistogram histogram = peerLatency.get(peer);
+    return histogram == null ? Collections.emptyMap() : summarize(histogram);
+  }
+
+  public LatencyHistogram getHandshakeLatencyHistogram() {
+    return handshakeLatency;
+  }
+
+  @Override
+  public long getCertificateVerifications() {
+    return verificationLatency.getCount();
+  }
+
+  @Override
+  public long getCertificateVerificationFailures() {
+    return verificationFailures.sum();
+  }
+
+  @Override
+  public Map<String, Double> getCertificateVerificationLatency() {
+    return summarize(verificationLatency);
+  }
+
+  @Override
+  public long getBytesCaptured() {
+    return bytesCaptured.sum();
+  }
+
+  @Override
+  public long getCaptureInputOverflows() {
+    return inputOverflows.sum();
+  }
+
+  @Override
+  public long getCaptureOutputOverflows() {
+    return outputOverflows.sum();
+  }
+
+  @Override
+  public void reset() {
+    handshakeLatency.reset();
+    peerLatency.clear();
+    completed.reset();
+    failures.clear();
+    verificationLatency.reset();
+    verificationFailures.reset();
+    bytesCaptured.reset();
+    inputOverflows.reset();
+    outputOverflows.reset();
+  }
+
+  private static Map<String, Double> summarize(LatencyHistogram histogram) {
+    Map<String, Double> summary = new LinkedHashMap<>();
+    summary.put("count", (double) histogram.getCount());
+    summary.put("mean", histogram.getMean() / nanosPerMilli);
+    summary.put("p50", histogram.getValueAtPercentile(50) / nanosPerMilli);
+    summary.put("p90", histogram.getValueAtPercentile(90) / nanosPerMilli);
+    summary.put("p99", histogram.getValueAtPercentile(99) / nanosPerMilli);
+    summary.put("p99.9", histogram.getValueAtPercentile(99.9) / nanosPerMilli);
+    summary.put("max", histogram.getMax() / nanosPerMilli);
+    return summary;
+  }
+}
@@ -0,0 +1,44 @@
+package co.elastic.tealess.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX view of {@link TLSMetrics}. Latencies are in milliseconds.
+ */
+public interface TLSMetricsMXBean {
+  long getHandshakesCompleted();
+
+  long getHandshakesFailed();
+
+  /**
+   * @return failed handshakes by the class name of their root cause.
+   */
+  Map<String, Long> getHandshakeFailuresByCause();
+
+  /**
+   * @return percentiles (p50, p90, p99, p99.9, max) and mean of handshake latency across all peers.
+   */
+  Map<String, Double> getHandshakeLatency();
+
+  List<String> getPeers();
+
+  /**
+   * @return percentiles and mean of handshake latency for one peer, or an empty map if the peer is unknown.
+   */
+  Map<String, Double> handshakeLatency(String peer);
+
+  long getCertificateVerifications();
+
+  long getCertificateVerificationFailures();
+
+  Map<String, Double> getCertificateVerificationLatency();
+
+  long getBytesCaptured();
+
+  long getCaptureInputOverflows();
+
+  long getCaptureOutputOverflows();
+
+  void reset();
+}
@@ -0,0 +1,167 @@
+package co.elastic.tealess.pcap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Finds the TLS handshakes in a pcap or pcapng capture and summarizes each one, for diagnosing many handshakes at
+ * once from a capture taken elsewhere.
+ * <p>
+ * The capture is read in a single pass, with {@link CaptureReader}, and each TCP connection is reassembled and fed
+ * to a {@link co.elastic.tealess.tls.TLSStreamDecoder} per direction only until its handshake is over. A summary is
+ * passed to the consumer as soon as its handshake is over, or when its connection closes, goes idle for longer than
+ * the idle timeout, or the capture ends; the connection is then forgotten. Memory use therefore follows the number of
+ * connections open at once, not the size of the capture.
+ */
+public class CaptureAnalyzer {
+  private static final Logger logger = LogManager.getLogger();
+
+  private final Consumer<HandshakeSummary> consumer;
+  // In order of last activity, so idle connections are found at the head.
+  private final Map<FlowKey, TLSFlow> flows = new LinkedHashMap<>(1024, 0.75f, true);
+  private final TCPSegment segment = new TCPSegment();
+  private long idleTimeout = TimeUnit.MINUTES.toNanos(5);
+  private boolean keepMessages = false;
+
+  private long packets;
+  private long connections;
+  private long handshakes;
+  private boolean truncated;
+
+  /**
+   * @param consumer receives each handshake summary, on the thread calling {@link #analyze(Path)}
+   */
+  public CaptureAnalyzer(Consumer<HandshakeSummary> consumer) {
+    this.consumer = consumer;
+  }
+
+  /**
+   * A connection with no packets for this long, in capture time, is taken to be over.
+   */
+  public void setIdleTimeout(long duration, TimeUnit unit) {
+    if (duration <= 0) {
+      throw new IllegalArgumentException("The idle timeout must be positive.");
+    }
+    this.idleTimeout = unit.toNanos(duration);
+  }
+
+  /**
+   * Keep the decoded messages of each handshake, for {@link HandshakeSummary#getMessages()}. Off by default, as
+   * describing every message costs more than the rest of the analysis.
+   */
+  public void setKeepMessages(boolean keepMessages) {
+    this.keepMessages = keepMessages;
+  }
+
+  /**
+   * Read a capture file and pass the summary of each handshake in it to the consumer.
+   *
+   * @throws IOException if the file cannot be read or is not a capture
+   */
+  public void analyze(Path path) throws IOException {
+    try (CaptureReader reader = new CaptureReader(path)) {
+      analyze(reader);
+    }
+  }
+
+  void analyze(CaptureReader reader) throws IOException {
+    try {
+      reader.read(this::packet);
+    } finally {
+      truncated |= reader.isTruncated();
+      for (TLSFlow flow : flows.values()) {
+        forget(flow);
+      }
+      flows.clear();
+    }
+    logger.debug("Read {} packets in {} connections with {} handshakes", packets, connections, handshakes);
+  }
+
+  private void packet(long timestamp, int linkType, ByteBuffer frame) {
+    packets++;
+    if (!segment.decode(linkType, frame)) {
+      return;
+    }
+    FlowKey key = FlowKey.of(segment);
+    TLSFlow flow = flows.get(key);
+    boolean opening = segment.has(TCPSegment.SYN) && !segment.has(TCPSegment.ACK);
+    if (flow != null && opening && flow.getState() != TLSFlow.State.New) {
+      // The same addresses and ports, used again for a new connection.
+      flows.remove(key);
+      forget(flow);
+      flow = null;
+    }
+    if (flow == null) {
+      // Only a SYN or data starts following a connection, so the stray ACKs and FINs after one closes do not.
+      if (!opening && !segment.payload.hasRemaining()) {
+        return;
+      }
+      flow = new TLSFlow(key, timestamp, keepMessages);
+      flows.put(key, flow);
+      connections++;
+    }
+
+    if (flow.segment(timestamp, segment)) {
+      flows.remove(key);
+      forget(flow);
+    } else if (flow.getState() == TLSFlow.State.Done && flow.hasSummary()) {
+      emit(flow);
+    }
+    expire(timestamp);
+  }
+
+  private void expire(long now) {
+    Iterator<TLSFlow> iterator = flows.values().iterator();
+    while (iterator.hasNext()) {
+      TLSFlow flow = iterator.next();
+      if (now - flow.lastSeen < idleTimeout) {
+        return;
+      }
+      iterator.remove();
+      forget(flow);
+    }
+  }
+
+  private void forget(TLSFlow flow) {
+    flow.finish();
+    if (flow.hasSummary()) {
+      emit(flow);
+    }
+  }
+
+  private void emit(TLSFlow flow) {
+    handshakes++;
+    consumer.accept(flow.takeSummary());
+  }
+
+  public long getPackets() {
+    return packets;
+  }
+
+  /**
+   * @return how many TCP connections were seen, TLS or not.
+   */
+  public long getConnections() {
+    return connections;
+  }
+
+  public long getHandshakes() {
+    return handshakes;
+  }
+
+  /**
+   * @return true if the capture file ended in the middle of a packet.
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+}
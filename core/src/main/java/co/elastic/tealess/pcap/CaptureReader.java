@@ -0,0 +1,354 @@
+package co.elastic.tealess.pcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the packets of a pcap or pcapng capture file, in order, without loading the file into the heap.
+ * <p>
+ * The file is memory-mapped one window of {@value #defaultWindowSize} bytes at a time, and each packet is handed to
+ * the {@link PacketHandler} as a view of the mapping, so a capture of many gigabytes streams through the page cache
+ * with no copying. A window that is no longer referenced is unmapped when it is garbage collected.
+ * <p>
+ * Both pcap byte orders and timestamp resolutions are read, as are pcapng files with several sections and
+ * interfaces. A file cut short in the middle of a packet, as happens when a capture is stopped abruptly, ends at the
+ * last whole packet; see {@link #isTruncated()}.
+ */
+public class CaptureReader implements Closeable {
+  static final int defaultWindowSize = 64 << 20;
+  // Far beyond any real snap length; anything larger is a corrupt length field.
+  private static final int maxBlockLength = 64 << 20;
+
+  // Magic numbers as read big-endian, from the pcap and pcapng specifications.
+  private static final int pcapMicroseconds = 0xa1b2c3d4;
+  private static final int pcapNanoseconds = 0xa1b23c4d;
+  private static final int pcapngSectionHeader = 0x0a0d0d0a;
+  private static final int pcapngByteOrder = 0x1a2b3c4d;
+
+  private static final int pcapngInterfaceDescription = 1;
+  private static final int pcapngPacket = 2;
+  private static final int pcapngSimplePacket = 3;
+  private static final int pcapngEnhancedPacket = 6;
+  private static final int optionTimestampResolution = 9;
+
+  // Smallest whole block of each type: 12 bytes of type and lengths, plus the fixed fields of its body.
+  private static final int minimumBlockLength = 12;
+  private static final int minimumInterfaceDescriptionLength = minimumBlockLength + 8;
+  private static final int minimumPacketLength = minimumBlockLength + 20;
+  private static final int minimumSimplePacketLength = minimumBlockLength + 4;
+
+  private static final long[] powersOfTen = {
+          1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L,
+          100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L,
+          10000000000000000L, 100000000000000000L, 1000000000000000000L
+  };
+
+  /**
+   * Receives each packet of a capture.
+   */
+  public interface PacketHandler {
+    /**
+     * @param timestamp nanoseconds since the epoch, or 0 if the capture did not record one
+     * @param linkType  the LINKTYPE_ value of the link the packet was captured on, such as 1 for Ethernet
+     * @param frame     the captured bytes, starting with the link-layer header, as a big-endian view of the file. It
+     *                  is only valid during the call: copy what needs to be kept.
+     */
+    void packet(long timestamp, int linkType, ByteBuffer frame);
+  }
+
+  private final FileChannel channel;
+  private final long size;
+  private final int windowSize;
+
+  private MappedByteBuffer window;
+  private long windowStart;
+
+  private long packets;
+  private boolean truncated;
+
+  public CaptureReader(Path path) throws IOException {
+    this(path, defaultWindowSize);
+  }
+
+  CaptureReader(Path path, int windowSize) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.size = channel.size();
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * Read every packet in the file, passing each to the handler on this thread.
+   *
+   * @return the number of packets read
+   * @throws IOException if the file is not a capture, or is corrupt
+   */
+  public long read(PacketHandler handler) throws IOException {
+    int index = map(0, 4);
+    if (index < 0) {
+      throw new IOException("The file is too short to be a capture.");
+    }
+    int magic = window.order(ByteOrder.BIG_ENDIAN).getInt(index);
+    if (magic == pcapngSectionHeader) {
+      readPcapng(handler);
+    } else if (magic == pcapMicroseconds || magic == pcapNanoseconds) {
+      readPcap(handler, ByteOrder.BIG_ENDIAN, magic == pcapNanoseconds);
+    } else if (magic == Integer.reverseBytes(pcapMicroseconds) || magic == Integer.reverseBytes(pcapNanoseconds)) {
+      readPcap(handler, ByteOrder.LITTLE_ENDIAN, magic == Integer.reverseBytes(pcapNanoseconds));
+    } else {
+      throw new IOException(String.format("Not a pcap or pcapng file: it starts with 0x%08x.", magic));
+    }
+    return packets;
+  }
+
+  public long getPackets() {
+    return packets;
+  }
+
+  /**
+   * @return true if the file ended in the middle of a packet or block.
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+
+  private void readPcap(PacketHandler handler, ByteOrder order, boolean nanoseconds) throws IOException {
+    // The global header: magic, version (2+2), thiszone, sigfigs, snaplen, network.
+    int index = map(0, 24);
+    if (index < 0) {
+      truncated = true;
+      return;
+    }
+    int linkType = window.order(order).getInt(index + 20) & 0xffff;
+    long offset = 24;
+    while (offset < size) {
+      index = map(offset, 16);
+      if (index < 0) {
+        truncated = true;
+        return;
+      }
+      window.order(order);
+      long seconds = window.getInt(index) & 0xffffffffL;
+      long fraction = window.getInt(index + 4) & 0xffffffffL;
+      int capturedLength = window.getInt(index + 8);
+      if (capturedLength < 0 || capturedLength > maxBlockLength) {
+        throw new IOException("Packet at offset " + offset + " claims an invalid length of " + capturedLength + " bytes.");
+      }
+      index = map(offset + 16, capturedLength);
+      if (index < 0) {
+        truncated = true;
+        return;
+      }
+      long timestamp = seconds * 1000000000L + (nanoseconds ? fraction : fraction * 1000);
+      packet(handler, timestamp, linkType, index, capturedLength);
+      offset += 16 + capturedLength;
+    }
+  }
+
+  private void readPcapng(PacketHandler handler) throws IOException {
+    ByteOrder order = ByteOrder.BIG_ENDIAN;
+    List<Interface> interfaces = new ArrayList<>();
+    long offset = 0;
+    while (offset < size) {
+      int index = map(offset, 12);
+      if (index < 0) {
+        truncated = true;
+        return;
+      }
+      int type = window.order(order).getInt(index);
+      if (type == pcapngSectionHeader) {
+        // Each section says its own byte order, and numbers its interfaces afresh.
+        int byteOrder = window.order(ByteOrder.BIG_ENDIAN).getInt(index + 8);
+        if (byteOrder == pcapngByteOrder) {
+          order = ByteOrder.BIG_ENDIAN;
+        } else if (byteOrder == Integer.reverseBytes(pcapngByteOrder)) {
+          order = ByteOrder.LITTLE_ENDIAN;
+        } else {
+          throw new IOException("Section header at offset " + offset + " has an invalid byte order magic.");
+        }
+        interfaces.clear();
+      }
+      int length = window.order(order).getInt(index + 4);
+      if (length < minimumLength(type) || length % 4 != 0 || length > maxBlockLength) {
+        throw new IOException("Block at offset " + offset + " claims an invalid length of " + length + " bytes.");
+      }
+      index = map(offset, length);
+      if (index < 0) {
+        truncated = true;
+        return;
+      }
+      window.order(order);
+      int body = index + 8;
+      int bodyEnd = index + length - 4;
+      switch (type) {
+        case pcapngInterfaceDescription:
+          interfaces.add(Interface.parse(window, body, bodyEnd));
+          break;
+        case pcapngEnhancedPacket: {
+          Interface link = lookup(interfaces, window.getInt(body), offset);
+          long ticks = ((window.getInt(body + 4) & 0xffffffffL) << 32) | (window.getInt(body + 8) & 0xffffffffL);
+          int capturedLength = checkLength(window.getInt(body + 12), body + 20, bodyEnd, offset);
+          checkOriginalLength(window.getInt(body + 16), offset);
+          packet(handler, link.toNanoseconds(ticks), link.linkType, body + 20, capturedLength);
+          break;
+        }
+        case pcapngSimplePacket: {
+          // No interface id and no timestamp: always the first interface, captured up to its snap length.
+          Interface link = lookup(interfaces, 0, offset);
+          int originalLength = checkOriginalLength(window.getInt(body), offset);
+          int capturedLength = Math.min(bodyEnd - body - 4, originalLength);
+          if (link.snapLength > 0) {
+            capturedLength = Math.min(capturedLength, link.snapLength);
+          }
+          packet(handler, 0, link.linkType, body + 4, capturedLength);
+          break;
+        }
+        case pcapngPacket: {
+          // Obsolete, but still written by some tools.
+          Interface link = lookup(interfaces, window.getShort(body) & 0xffff, offset);
+          long ticks = ((window.getInt(body + 4) & 0xffffffffL) << 32) | (window.getInt(body + 8) & 0xffffffffL);
+          int capturedLength = checkLength(window.getInt(body + 12), body + 20, bodyEnd, offset);
+          checkOriginalLength(window.getInt(body + 16), offset);
+          packet(handler, link.toNanoseconds(ticks), link.linkType, body + 20, capturedLength);
+          break;
+        }
+        default:
+          // Statistics, name resolution, custom and other blocks say nothing about the packets.
+          break;
+      }
+      offset += length;
+    }
+  }
+
+  private static int minimumLength(int type) {
+    switch (type) {
+      case pcapngInterfaceDescription:
+        return minimumInterfaceDescriptionLength;
+      case pcapngEnhancedPacket:
+      case pcapngPacket:
+        return minimumPacketLength;
+      case pcapngSimplePacket:
+        return minimumSimplePacketLength;
+      default:
+        return minimumBlockLength;
+    }
+  }
+
+  private static Interface lookup(List<Interface> interfaces, int id, long offset) throws IOException {
+    if (id < 0 || id >= interfaces.size()) {
+      throw new IOException("Packet block at offset " + offset + " refers to undescribed interface " + id + ".");
+    }
+    return interfaces.get(id);
+  }
+
+  private static int checkLength(int capturedLength, int start, int end, long offset) throws IOException {
+    if (capturedLength < 0 || capturedLength > end - start) {
+      throw new IOException("Packet block at offset " + offset + " claims " + capturedLength + " captured bytes, more than it holds.");
+    }
+    return capturedLength;
+  }
+
+  private static int checkOriginalLength(int originalLength, long offset) throws IOException {
+    // The original length may exceed the block, as the capture can be cut short, but not the largest packet we read.
+    if (originalLength < 0 || originalLength > maxBlockLength) {
+      throw new IOException("Packet block at offset " + offset + " claims an invalid original length of " + originalLength + " bytes.");
+    }
+    return originalLength;
+  }
+
+  private void packet(PacketHandler handler, long timestamp, int linkType, int index, int length) {
+    ByteBuffer frame = window.duplicate();
+    frame.limit(index + length).position(index);
+    packets++;
+    handler.packet(timestamp, linkType, frame.slice());
+  }
+
+  /**
+   * Make sure the current window covers length bytes starting at the given file offset, mapping a new one if not.
+   *
+   * @return the index of the offset in {@link #window}, or -1 if the file ends first.
+   */
+  private int map(long offset, int length) throws IOException {
+    if (offset + length > size) {
+      return -1;
+    }
+    if (window == null || offset < windowStart || offset + length > windowStart + window.limit()) {
+      long mapLength = Math.min(Math.max(windowSize, length), size - offset);
+      window = channel.map(FileChannel.MapMode.READ_ONLY, offset, mapLength);
+      windowStart = offset;
+    }
+    return (int) (offset - windowStart);
+  }
+
+  /**
+   * A pcapng interface description: the link type and how to read timestamps of packets captured on it.
+   */
+  private static class Interface {
+    final int linkType;
+    final int snapLength;
+    // Timestamps count units of 10^-exponent seconds, or 2^-exponent seconds if binary.
+    private final boolean binary;
+    private final int exponent;
+
+    private Interface(int linkType, int snapLength, boolean binary, int exponent) {
+      this.linkType = linkType;
+      this.snapLength = snapLength;
+      this.binary = binary;
+      this.exponent = exponent;
+    }
+
+    static Interface parse(ByteBuffer block, int body, int end) throws IOException {
+      int linkType = block.getShort(body) & 0xffff;
+      int snapLength = block.getInt(body + 4);
+      boolean binary = false;
+      int exponent = 6;
+      // Options are code (2), length (2) and a value padded to 4 bytes, ending with code 0.
+      int option = body + 8;
+      while (option + 4 <= end) {
+        int code = block.getShort(option) & 0xffff;
+        int length = block.getShort(option + 2) & 0xffff;
+        if (code == 0) {
+          break;
+        }
+        if (option + 4 + length > end) {
+          throw new IOException("Interface description option " + code + " runs past the end of its block.");
+        }
+        if (code == optionTimestampResolution && length == 1) {
+          int resolution = block.get(option + 4) & 0xff;
+          binary = (resolution & 0x80) != 0;
+          exponent = resolution & 0x7f;
+          if ((binary && exponent > 62) || (!binary && exponent >= powersOfTen.length)) {
+            throw new IOException("Unsupported interface timestamp resolution 0x" + Integer.toHexString(resolution) + ".");
+          }
+        }
+        option += 4 + ((length + 3) & ~3);
+      }
+      return new Interface(linkType, snapLength, binary, exponent);
+    }
+
+    long toNanoseconds(long ticks) {
+      if (binary) {
+        long seconds = ticks >>> exponent;
+        long fraction = ticks & ((1L << exponent) - 1);
+        return seconds * 1000000000L + (long) (fraction * 1e9 / (1L << exponent));
+      }
+      if (exponent <= 9) {
+        return ticks * powersOfTen[9 - exponent];
+      }
+      return ticks / powersOfTen[exponent - 9];
+    }
+  }
+}
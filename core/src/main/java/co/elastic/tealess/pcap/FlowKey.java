@@ -0,0 +1,94 @@
+package co.elastic.tealess.pcap;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * The two endpoints of a TCP connection, the same whichever direction a segment travels.
+ */
+final class FlowKey {
+  private final byte[] lowAddress;
+  private final int lowPort;
+  private final byte[] highAddress;
+  private final int highPort;
+  private final int hash;
+
+  private FlowKey(byte[] lowAddress, int lowPort, byte[] highAddress, int highPort) {
+    this.lowAddress = lowAddress;
+    this.lowPort = lowPort;
+    this.highAddress = highAddress;
+    this.highPort = highPort;
+    this.hash = 31 * (31 * (31 * Arrays.hashCode(lowAddress) + lowPort) + Arrays.hashCode(highAddress)) + highPort;
+  }
+
+  static FlowKey of(TCPSegment segment) {
+    byte[] source = Arrays.copyOf(segment.source, segment.addressLength);
+    byte[] destination = Arrays.copyOf(segment.destination, segment.addressLength);
+    int order = compare(source, segment.sourcePort, destination, segment.destinationPort);
+    if (order <= 0) {
+      return new FlowKey(source, segment.sourcePort, destination, segment.destinationPort);
+    }
+    return new FlowKey(destination, segment.destinationPort, source, segment.sourcePort);
+  }
+
+  private static int compare(byte[] a, int aPort, byte[] b, int bPort) {
+    for (int i = 0; i < a.length; i++) {
+      int difference = (a[i] & 0xff) - (b[i] & 0xff);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return aPort - bPort;
+  }
+
+  /**
+   * @return true if the segment travels from the low endpoint to the high one.
+   */
+  boolean isFromLow(TCPSegment segment) {
+    return segment.sourcePort == lowPort && segment.destinationPort == highPort
+            && compare(lowAddress, lowPort, segment.source, segment.sourcePort) == 0;
+  }
+
+  InetSocketAddress low() {
+    return address(lowAddress, lowPort);
+  }
+
+  InetSocketAddress high() {
+    return address(highAddress, highPort);
+  }
+
+  private static InetSocketAddress address(byte[] address, int port) {
+    try {
+      // From raw bytes, so nothing is looked up.
+      return new InetSocketAddress(InetAddress.getByAddress(address), port);
+    } catch (UnknownHostException e) {
+      // Only thrown for lengths other than 4 and 16.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FlowKey)) {
+      return false;
+    }
+    FlowKey other = (FlowKey) o;
+    return hash == other.hash && lowPort == other.lowPort && highPort == other.highPort
+            && Arrays.equals(lowAddress, other.lowAddress) && Arrays.equals(highAddress, other.highAddress);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return low() + " <-> " + high();
+  }
+}
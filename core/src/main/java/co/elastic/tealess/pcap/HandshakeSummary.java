@@ -0,0 +1,302 @@
+package co.elastic.tealess.pcap;
+
+import co.elastic.tealess.io.Transaction;
+import co.elastic.tealess.tls.Alert;
+import co.elastic.tealess.tls.AlertLevel;
+import co.elastic.tealess.tls.CipherSuite;
+import co.elastic.tealess.tls.Version;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * What one TLS handshake in a capture did, as found by {@link CaptureAnalyzer}.
+ * <p>
+ * Only the plaintext part of the handshake can be seen. In TLS 1.3 that ends with the ServerHello, so a TLS 1.3
+ * handshake the client aborts with an encrypted alert, such as for an untrusted certificate, looks complete.
+ */
+public class HandshakeSummary {
+  // Enough for any ordinary handshake, while bounding what a misbehaving peer can make us keep.
+  static final int maxMessages = 64;
+
+  public enum Outcome {
+    /**
+     * Both sides went on to send encrypted records.
+     */
+    Completed,
+    /**
+     * One side sent a fatal alert.
+     */
+    Failed,
+    /**
+     * A side reset the connection before the handshake completed.
+     */
+    Reset,
+    /**
+     * A side closed the connection before the handshake completed, without an alert.
+     */
+    Closed,
+    /**
+     * The capture ended, or missed packets, before the handshake did.
+     */
+    Incomplete
+  }
+
+  InetSocketAddress client;
+  InetSocketAddress server;
+  long start;
+  long clientHelloTime;
+  long serverHelloTime = -1;
+  long completedTime = -1;
+
+  String serverName;
+  List<Version> offeredVersions = Collections.emptyList();
+  int offeredCipherSuites;
+  List<String> offeredProtocols = Collections.emptyList();
+
+  boolean helloRetryRequest;
+  Version version;
+  CipherSuite cipherSuite;
+  boolean resumed;
+  int certificates = -1;
+
+  Alert alert;
+  boolean alertFromClient;
+  boolean closedByClient;
+  boolean reset;
+  boolean closed;
+  boolean gap;
+  String decodeError;
+
+  final List<Transaction<String>> messages = new ArrayList<>();
+
+  HandshakeSummary() {
+  }
+
+  public InetSocketAddress getClient() {
+    return client;
+  }
+
+  public InetSocketAddress getServer() {
+    return server;
+  }
+
+  /**
+   * @return when the first packet of the connection was captured.
+   */
+  public Instant getStart() {
+    return Instant.ofEpochSecond(0, start);
+  }
+
+  public Outcome getOutcome() {
+    if (completedTime >= 0) {
+      return Outcome.Completed;
+    }
+    if (alert != null && alert.getLevel() == AlertLevel.Fatal) {
+      return Outcome.Failed;
+    }
+    if (gap || decodeError != null) {
+      return Outcome.Incomplete;
+    }
+    if (reset) {
+      return Outcome.Reset;
+    }
+    return closed ? Outcome.Closed : Outcome.Incomplete;
+  }
+
+  /**
+   * @return the time from the ClientHello until both sides were encrypting, or -1 if the handshake did not complete.
+   */
+  public long getHandshakeTime(TimeUnit unit) {
+    return completedTime < 0 ? -1 : unit.convert(completedTime - clientHelloTime, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return the time from the ClientHello until the ServerHello: a network round trip plus the server's own delay.
+   * -1 if the server never answered.
+   */
+  public long getServerResponseTime(TimeUnit unit) {
+    return serverHelloTime < 0 ? -1 : unit.convert(serverHelloTime - clientHelloTime, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return the server_name the client sent, or null if it sent none.
+   */
+  public String getServerName() {
+    return serverName;
+  }
+
+  /**
+   * @return the versions the client offered, from supported_versions if it sent that, else its one hello version.
+   */
+  public List<Version> getOfferedVersions() {
+    return offeredVersions;
+  }
+
+  public int getOfferedCipherSuites() {
+    return offeredCipherSuites;
+  }
+
+  /**
+   * @return the application protocols the client offered with ALPN, if any.
+   */
+  public List<String> getOfferedProtocols() {
+    return offeredProtocols;
+  }
+
+  public boolean isHelloRetryRequest() {
+    return helloRetryRequest;
+  }
+
+  /**
+   * @return the version the server chose, or null if there was no ServerHello.
+   */
+  public Version getVersion() {
+    return version;
+  }
+
+  /**
+   * @return the cipher suite the server chose, or null if there was no ServerHello.
+   */
+  public CipherSuite getCipherSuite() {
+    return cipherSuite;
+  }
+
+  public boolean isResumed() {
+    return resumed;
+  }
+
+  /**
+   * @return the length of the server's certificate chain, or -1 if it was not seen, as in TLS 1.3 or a resumed
+   * session.
+   */
+  public int getCertificates() {
+    return certificates;
+  }
+
+  /**
+   * @return the first alert sent in plaintext, or null if there was none.
+   */
+  public Alert getAlert() {
+    return alert;
+  }
+
+  public boolean isAlertFromClient() {
+    return alertFromClient;
+  }
+
+  /**
+   * @return the decoded messages in the order they were captured, if {@link CaptureAnalyzer#setKeepMessages(boolean)}
+   * was set. Input is from the server and Output is from the client, as in the client's own diagnostics.
+   */
+  public List<Transaction<String>> getMessages() {
+    return Collections.unmodifiableList(messages);
+  }
+
+  /**
+   * @return a likely explanation of a handshake that did not complete, or null if it completed.
+   */
+  public String getProblem() {
+    switch (getOutcome()) {
+      case Completed:
+        return null;
+      case Failed: {
+        String who = alertFromClient ? "client" : "server";
+        if (version == null && !alertFromClient) {
+          switch (alert.getDescription()) {
+            case ProtocolVersion:
+              return "The server accepts none of the versions the client offered: " + offeredVersions;
+            case HandshakeFailure:
+            case InsufficientSecurity:
+              return String.format("The server rejected the ClientHello (%s). It may accept none of the %d cipher suites or the versions %s the client offered.",
+                      alert.getDescription(), offeredCipherSuites, offeredVersions);
+            case UnrecognizedName:
+              return "The server does not know the server name the client asked for: " + serverName;
+            case NoApplicationProtocol:
+              return "The server speaks none of the application protocols the client offered: " + offeredProtocols;
+            default:
+              break;
+          }
+        }
+        switch (alert.getDescription()) {
+          case UnknownCa:
+          case BadCertificate:
+          case CertificateUnknown:
+          case CertificateExpired:
+          case CertificateRevoked:
+          case UnsupportedCertificate:
+            return String.format("The %s did not accept the %s's certificate (%s).", who, alertFromClient ? "server" : "client", alert.getDescription());
+          case CertificateRequired:
+            return "The server requires a client certificate, and the client sent none.";
+          default:
+            return String.format("The %s aborted the handshake with %s.", who, alert.getDescription());
+        }
+      }
+      case Reset:
+      case Closed: {
+        String how = reset ? "reset" : "closed";
+        if (version == null) {
+          if (closedByClient) {
+            return String.format("The client %s the connection before the server answered the ClientHello.", how);
+          }
+          return String.format("The server %s the connection instead of answering the ClientHello. It may not speak TLS on this port, or may reject the client's address.", how);
+        }
+        if (closedByClient) {
+          return String.format("The client %s the connection during the handshake, without an alert. It may not trust the server's certificate.", how);
+        }
+        return String.format("The server %s the connection during the handshake, without an alert. It may not trust the client's certificate.", how);
+      }
+      default:
+        if (decodeError != null) {
+          return "The handshake could not be decoded: " + decodeError;
+        }
+        if (gap) {
+          return "Packets of the handshake are missing from the capture.";
+        }
+        return "The capture ended before the handshake did.";
+    }
+  }
+
+  /**
+   * @return the messages, one per line, each prefixed with the milliseconds since the first.
+   */
+  public String formatMessages() {
+    if (messages.isEmpty()) {
+      return "";
+    }
+    long first = messages.get(0).timestamp;
+    return messages.stream()
+            .map(m -> String.format("  %+9.3fms %s %s", (m.timestamp - first) / 1e6, m.op == Transaction.Operation.Output ? "client" : "server", m.value))
+            .collect(Collectors.joining("\n"));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(client).append(" -> ").append(server);
+    if (serverName != null) {
+      builder.append(" (").append(serverName).append(")");
+    }
+    builder.append(": ").append(getOutcome());
+    if (version != null) {
+      builder.append(", ").append(version).append(", ").append(cipherSuite);
+    }
+    if (resumed) {
+      builder.append(", resumed");
+    }
+    if (helloRetryRequest) {
+      builder.append(", after HelloRetryRequest");
+    }
+    if (completedTime >= 0) {
+      builder.append(String.format(", %.3fms", (completedTime - clientHelloTime) / 1e6));
+    } else if (alert != null) {
+      builder.append(", ").append(alertFromClient ? "client" : "server").append(" sent ").append(alert);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,189 @@
+package co.elastic.tealess.pcap;
+
+import co.elastic.tealess.io.BufferUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The TCP segment in a captured frame, decoded through the link and IP layers.
+ * <p>
+ * One instance is reused for every packet of a capture, so decoding allocates nothing but the payload view. Addresses
+ * are 4 bytes for IPv4 and 16 for IPv6. IP fragments are not reassembled; they almost never carry TCP.
+ */
+final class TCPSegment {
+  static final int FIN = 0x01;
+  static final int SYN = 0x02;
+  static final int RST = 0x04;
+  static final int ACK = 0x10;
+
+  // LINKTYPE_ values, from the tcpdump.org link-layer header types registry.
+  private static final int linkNull = 0;
+  private static final int linkEthernet = 1;
+  private static final int linkRaw = 101;
+  private static final int linkLoop = 108;
+  private static final int linkLinuxCooked = 113;
+  private static final int linkIPv4 = 228;
+  private static final int linkIPv6 = 229;
+  private static final int linkLinuxCooked2 = 276;
+
+  private static final int etherTypeIPv4 = 0x0800;
+  private static final int etherTypeIPv6 = 0x86dd;
+  private static final int etherTypeVLAN = 0x8100;
+  private static final int etherTypeQinQ = 0x88a8;
+
+  private static final int protocolTCP = 6;
+
+  final byte[] source = new byte[16];
+  final byte[] destination = new byte[16];
+  int addressLength;
+  int sourcePort;
+  int destinationPort;
+  int sequence;
+  int flags;
+  ByteBuffer payload;
+  // How many payload bytes the capture left out because of its snap length.
+  int missing;
+
+  /**
+   * @return true if the frame holds a TCP segment, which is now described by this object.
+   */
+  boolean decode(int linkType, ByteBuffer frame) {
+    int ip = ipOffset(linkType, frame);
+    if (ip < 0 || ip >= frame.limit()) {
+      return false;
+    }
+    switch (BufferUtil.getUInt8(frame, ip) >> 4) {
+      case 4:
+        return decodeIPv4(frame, ip);
+      case 6:
+        return decodeIPv6(frame, ip);
+      default:
+        return false;
+    }
+  }
+
+  boolean has(int flag) {
+    return (flags & flag) != 0;
+  }
+
+  /**
+   * @return where the IP header starts, or -1 if the frame does not carry IP.
+   */
+  private static int ipOffset(int linkType, ByteBuffer frame) {
+    switch (linkType) {
+      case linkNull:
+      case linkLoop:
+        // A 4-byte address family, in the byte order of the capturing host for LINKTYPE_NULL. The IP version is
+        // checked later, so any family is let through.
+        return 4;
+      case linkEthernet: {
+        int offset = 12;
+        if (frame.limit() < offset + 2) {
+          return -1;
+        }
+        int etherType = BufferUtil.getUInt16(frame, offset);
+        while ((etherType == etherTypeVLAN || etherType == etherTypeQinQ) && frame.limit() >= offset + 6) {
+          offset += 4;
+          etherType = BufferUtil.getUInt16(frame, offset);
+        }
+        return isIP(etherType) ? offset + 2 : -1;
+      }
+      case linkRaw:
+      case linkIPv4:
+      case linkIPv6:
+        return 0;
+      case linkLinuxCooked:
+        return frame.limit() >= 16 && isIP(BufferUtil.getUInt16(frame, 14)) ? 16 : -1;
+      case linkLinuxCooked2:
+        return frame.limit() >= 20 && isIP(BufferUtil.getUInt16(frame, 0)) ? 20 : -1;
+      default:
+        return -1;
+    }
+  }
+
+  private static boolean isIP(int etherType) {
+    return etherType == etherTypeIPv4 || etherType == etherTypeIPv6;
+  }
+
+  private boolean decodeIPv4(ByteBuffer frame, int ip) {
+    if (frame.limit() < ip + 20) {
+      return false;
+    }
+    int headerLength = (BufferUtil.getUInt8(frame, ip) & 0x0f) * 4;
+    int totalLength = BufferUtil.getUInt16(frame, ip + 2);
+    int fragment = BufferUtil.getUInt16(frame, ip + 6);
+    // More fragments, or a fragment offset: only part of a datagram.
+    if ((fragment & 0x3fff) != 0 || BufferUtil.getUInt8(frame, ip + 9) != protocolTCP || headerLength < 20) {
+      return false;
+    }
+    addressLength = 4;
+    frame.position(ip + 12);
+    frame.get(source, 0, 4);
+    frame.get(destination, 0, 4);
+    frame.position(0);
+    // Some captures hold a total length of 0 for segments offloaded to the network card.
+    int end = totalLength == 0 ? Integer.MAX_VALUE : ip + totalLength;
+    return decodeTCP(frame, ip + headerLength, end);
+  }
+
+  private boolean decodeIPv6(ByteBuffer frame, int ip) {
+    if (frame.limit() < ip + 40) {
+      return false;
+    }
+    int payloadLength = BufferUtil.getUInt16(frame, ip + 4);
+    int nextHeader = BufferUtil.getUInt8(frame, ip + 6);
+    addressLength = 16;
+    frame.position(ip + 8);
+    frame.get(source, 0, 16);
+    frame.get(destination, 0, 16);
+    frame.position(0);
+
+    int offset = ip + 40;
+    while (nextHeader != protocolTCP) {
+      if (frame.limit() < offset + 8) {
+        return false;
+      }
+      switch (nextHeader) {
+        case 0: // Hop-by-hop options
+        case 43: // Routing
+        case 60: // Destination options
+          nextHeader = BufferUtil.getUInt8(frame, offset);
+          offset += (BufferUtil.getUInt8(frame, offset + 1) + 1) * 8;
+          break;
+        case 51: // Authentication header
+          nextHeader = BufferUtil.getUInt8(frame, offset);
+          offset += (BufferUtil.getUInt8(frame, offset + 1) + 2) * 4;
+          break;
+        default:
+          // Fragments, encryption and anything else that is not a plain TCP segment.
+          return false;
+      }
+    }
+    int end = payloadLength == 0 ? Integer.MAX_VALUE : ip + 40 + payloadLength;
+    return decodeTCP(frame, offset, end);
+  }
+
+  /**
+   * @param end where the IP datagram ends, which may be before the end of the frame (Ethernet pads short frames) or
+   *            after it (the capture's snap length cut it short).
+   */
+  private boolean decodeTCP(ByteBuffer frame, int tcp, int end) {
+    if (frame.limit() < tcp + 20) {
+      return false;
+    }
+    sourcePort = BufferUtil.getUInt16(frame, tcp);
+    destinationPort = BufferUtil.getUInt16(frame, tcp + 2);
+    sequence = frame.getInt(tcp + 4);
+    int headerLength = (BufferUtil.getUInt8(frame, tcp + 12) >> 4) * 4;
+    flags = BufferUtil.getUInt8(frame, tcp + 13);
+
+    int start = tcp + headerLength;
+    if (headerLength < 20 || start > Math.min(end, frame.limit())) {
+      return false;
+    }
+    int captured = Math.min(end, frame.limit());
+    missing = end == Integer.MAX_VALUE ? 0 : Math.max(0, end - frame.limit());
+    payload = BufferUtil.slice(frame, start, captured - start);
+    return true;
+  }
+}
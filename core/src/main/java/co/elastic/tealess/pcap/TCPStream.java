@@ -0,0 +1,139 @@
+package co.elastic.tealess.pcap;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Puts the segments of one direction of a TCP connection back in order, passing each byte to a {@link Sink} once.
+ * <p>
+ * Segments which arrive in order, nearly all of them in a healthy capture, are passed on as they are, without copying.
+ * Retransmitted bytes are dropped, and segments from beyond a hole are copied and held until the hole is filled, up to
+ * {@value #maxHeld} bytes. If the hole is never filled, because the capture missed a packet, the bytes after it cannot
+ * be placed, so the stream reports a gap and stops.
+ */
+final class TCPStream {
+  static final int maxHeld = 1 << 20;
+
+  interface Sink {
+    void data(ByteBuffer data);
+
+    /**
+     * Bytes are missing from the stream, so nothing more will be passed on.
+     */
+    void gap();
+  }
+
+  private final Sink sink;
+  private boolean started;
+  private boolean stopped;
+  // The sequence number of the next byte to pass on, and how many bytes were passed on before it.
+  private int next;
+  private long position;
+  // Segments from beyond a hole, by where they start in the stream.
+  private final TreeMap<Long, byte[]> held = new TreeMap<>();
+  private long heldBytes;
+
+  TCPStream(Sink sink) {
+    this.sink = sink;
+  }
+
+  /**
+   * @param missing how many bytes at the end of the payload were not captured
+   */
+  void segment(int sequence, boolean syn, ByteBuffer payload, int missing) {
+    if (stopped) {
+      return;
+    }
+    if (syn) {
+      // The SYN takes up one sequence number; data follows it.
+      next = sequence + 1;
+      started = true;
+      return;
+    }
+    if (payload.remaining() + missing == 0) {
+      return;
+    }
+    if (!started) {
+      // The capture began after this connection was opened, so take the first segment seen as the start.
+      next = sequence;
+      started = true;
+    }
+
+    // Sequence numbers wrap, so only their difference means anything.
+    int offset = sequence - next;
+    if (offset > 0) {
+      hold(position + offset, payload, missing);
+      return;
+    }
+    deliver(payload, -offset, missing);
+    while (!stopped && !held.isEmpty() && held.firstKey() <= position) {
+      Map.Entry<Long, byte[]> first = held.pollFirstEntry();
+      heldBytes -= first.getValue().length;
+      long skip = position - first.getKey();
+      if (skip < first.getValue().length) {
+        deliver(ByteBuffer.wrap(first.getValue()), (int) skip, 0);
+      }
+    }
+  }
+
+  /**
+   * The capture is over, so any hole left will never be filled.
+   */
+  void finish() {
+    if (!stopped && !held.isEmpty()) {
+      gap();
+    }
+  }
+
+  /**
+   * Stop passing bytes on and release anything held, for when the rest of the stream is of no interest.
+   */
+  void stop() {
+    stopped = true;
+    held.clear();
+    heldBytes = 0;
+  }
+
+  boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * @param skip how many leading bytes were already passed on
+   */
+  private void deliver(ByteBuffer payload, int skip, int missing) {
+    int fresh = payload.remaining() - skip;
+    if (fresh > 0) {
+      ByteBuffer data = payload.duplicate();
+      data.position(data.position() + skip);
+      next += fresh;
+      position += fresh;
+      sink.data(data);
+    }
+    // The sink may have stopped this stream on seeing all it needs, in which case the missing bytes do not matter.
+    if (missing > 0 && fresh + missing > 0 && !stopped) {
+      gap();
+    }
+  }
+
+  private void hold(long start, ByteBuffer payload, int missing) {
+    if (missing > 0 || heldBytes + payload.remaining() > maxHeld) {
+      gap();
+      return;
+    }
+    byte[] existing = held.get(start);
+    if (existing != null && existing.length >= payload.remaining()) {
+      return;
+    }
+    byte[] copy = new byte[payload.remaining()];
+    payload.duplicate().get(copy);
+    held.put(start, copy);
+    heldBytes += copy.length - (existing == null ? 0 : existing.length);
+  }
+
+  private void gap() {
+    stop();
+    sink.gap();
+  }
+}
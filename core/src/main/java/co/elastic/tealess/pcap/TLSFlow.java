@@ -0,0 +1,287 @@
+package co.elastic.tealess.pcap;
+
+import co.elastic.tealess.io.Transaction;
+import co.elastic.tealess.tls.ALPNExtension;
+import co.elastic.tealess.tls.Alert;
+import co.elastic.tealess.tls.AlertLevel;
+import co.elastic.tealess.tls.CertificateMessage;
+import co.elastic.tealess.tls.ClientHello;
+import co.elastic.tealess.tls.ContentType;
+import co.elastic.tealess.tls.ExtensionType;
+import co.elastic.tealess.tls.Extensions;
+import co.elastic.tealess.tls.InvalidValue;
+import co.elastic.tealess.tls.ServerHello;
+import co.elastic.tealess.tls.ServerNameExtension;
+import co.elastic.tealess.tls.SupportedVersionsExtension;
+import co.elastic.tealess.tls.TLSMessage;
+import co.elastic.tealess.tls.TLSPlaintext;
+import co.elastic.tealess.tls.TLSStreamDecoder;
+import co.elastic.tealess.tls.Version;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+/**
+ * One TCP connection of a capture, with each direction reassembled and decoded until its TLS handshake is over.
+ * <p>
+ * The client is the side that sends the ClientHello, so the roles are right even when the capture missed the TCP
+ * handshake. A connection whose first bytes are not a TLS handshake, such as one already running when the capture
+ * began, or another protocol altogether, is not followed.
+ */
+final class TLSFlow {
+  enum State {
+    /**
+     * Waiting for the first bytes.
+     */
+    New,
+    Handshaking,
+    /**
+     * The handshake is over, for better or worse; nothing more is decoded.
+     */
+    Done,
+    /**
+     * Not a TLS handshake; nothing is decoded.
+     */
+    Ignored
+  }
+
+  final FlowKey key;
+  private final boolean keepMessages;
+  private final HandshakeSummary summary = new HandshakeSummary();
+  private final Direction low;
+  private final Direction high;
+
+  private State state = State.New;
+  // Which side sent the ClientHello, once known.
+  private Direction client;
+  private long timestamp;
+  long lastSeen;
+  private boolean emitted;
+  // True while the server's Certificate has not been seen; a TLS 1.2 server skips it when resuming.
+  private boolean certificatePending = true;
+
+  TLSFlow(FlowKey key, long timestamp, boolean keepMessages) {
+    this.key = key;
+    this.keepMessages = keepMessages;
+    this.low = new Direction(true);
+    this.high = new Direction(false);
+    summary.start = timestamp;
+  }
+
+  /**
+   * @return true if the flow is finished with: both sides closed, or one reset.
+   */
+  boolean segment(long timestamp, TCPSegment segment) {
+    this.timestamp = timestamp;
+    lastSeen = timestamp;
+    Direction from = key.isFromLow(segment) ? low : high;
+    if (state == State.New || state == State.Handshaking) {
+      from.stream.segment(segment.sequence, segment.has(TCPSegment.SYN), segment.payload, segment.missing);
+    }
+    if (segment.has(TCPSegment.RST)) {
+      closed(from, true);
+      return true;
+    }
+    if (segment.has(TCPSegment.FIN)) {
+      from.finished = true;
+      closed(from, false);
+      return low.finished && high.finished;
+    }
+    return false;
+  }
+
+  State getState() {
+    return state;
+  }
+
+  /**
+   * @return true if the handshake was seen and its summary has not been taken yet.
+   */
+  boolean hasSummary() {
+    return client != null && !emitted;
+  }
+
+  HandshakeSummary takeSummary() {
+    emitted = true;
+    return summary;
+  }
+
+  /**
+   * The capture is over, or the flow is being forgotten.
+   */
+  void finish() {
+    low.stream.finish();
+    high.stream.finish();
+  }
+
+  private void closed(Direction from, boolean reset) {
+    if (state != State.Handshaking || summary.closed || summary.reset) {
+      return;
+    }
+    summary.reset = reset;
+    summary.closed = !reset;
+    summary.closedByClient = from == client;
+  }
+
+  private void message(Direction from, TLSMessage message) {
+    if (state == State.New) {
+      if (!(message instanceof ClientHello)) {
+        // Picked up mid-connection, or a ServerHello whose ClientHello was not captured: there is nothing to diagnose.
+        ignore();
+        return;
+      }
+      client = from;
+      state = State.Handshaking;
+    }
+    if (state != State.Handshaking) {
+      return;
+    }
+    if (keepMessages && summary.messages.size() < HandshakeSummary.maxMessages) {
+      Transaction.Operation op = from.isClient() ? Transaction.Operation.Output : Transaction.Operation.Input;
+      summary.messages.add(Transaction.create(op, message.toString(), timestamp));
+    }
+
+    if (message instanceof ClientHello) {
+      clientHello(from, (ClientHello) message);
+    } else if (message instanceof ServerHello && !from.isClient()) {
+      serverHello((ServerHello) message);
+    } else if (message instanceof CertificateMessage) {
+      if (!from.isClient()) {
+        summary.certificates = ((CertificateMessage) message).getCertificateCount();
+        certificatePending = false;
+      }
+    } else if (message instanceof Alert) {
+      Alert alert = (Alert) message;
+      if (summary.alert == null || (alert.getLevel() == AlertLevel.Fatal && summary.alert.getLevel() != AlertLevel.Fatal)) {
+        summary.alert = alert;
+        summary.alertFromClient = from.isClient();
+      }
+      if (alert.getLevel() == AlertLevel.Fatal) {
+        done();
+      }
+    } else if (message instanceof TLSPlaintext && ((TLSPlaintext) message).getPayload() == null) {
+      TLSPlaintext record = (TLSPlaintext) message;
+      if (record.getContentType() == ContentType.ChangeCipherSpec) {
+        if (!from.isClient() && certificatePending && summary.version != null && !summary.version.equals(Version.TLS1_3)) {
+          // A TLS 1.2 server that goes straight from its ServerHello to ChangeCipherSpec is resuming.
+          summary.resumed = true;
+        }
+      } else if (summary.version != null) {
+        from.encrypting = true;
+        if (low.encrypting && high.encrypting) {
+          summary.completedTime = timestamp;
+          done();
+        }
+      }
+    }
+  }
+
+  private void clientHello(Direction from, ClientHello hello) {
+    if (summary.client != null) {
+      // The second ClientHello after a HelloRetryRequest.
+      return;
+    }
+    summary.client = from.isLow ? key.low() : key.high();
+    summary.server = from.isLow ? key.high() : key.low();
+    summary.clientHelloTime = timestamp;
+    summary.offeredCipherSuites = hello.getCipherSuiteCount();
+    summary.offeredVersions = Collections.singletonList(hello.getVersion());
+    try {
+      Extensions extensions = hello.getExtensionList();
+      ServerNameExtension serverName = (ServerNameExtension) extensions.get(ExtensionType.ServerName);
+      if (serverName != null) {
+        summary.serverName = serverName.getHostName();
+      }
+      SupportedVersionsExtension versions = (SupportedVersionsExtension) extensions.get(ExtensionType.SupportedVersions);
+      if (versions != null) {
+        summary.offeredVersions = versions.getVersions();
+      }
+      ALPNExtension alpn = (ALPNExtension) extensions.get(ExtensionType.ApplicationLayerProtocolNegotiation);
+      if (alpn != null) {
+        summary.offeredProtocols = alpn.getProtocols();
+      }
+    } catch (InvalidValue e) {
+      // The hello itself was fine, so carry on without what its extensions would have said.
+    }
+  }
+
+  private void serverHello(ServerHello hello) {
+    Version version = hello.getNegotiatedVersion();
+    // So that the client's ChangeCipherSpec after a HelloRetryRequest is not taken for the start of encryption.
+    client.decoder.negotiated(version);
+    if (hello.isHelloRetryRequest()) {
+      summary.helloRetryRequest = true;
+      return;
+    }
+    summary.serverHelloTime = timestamp;
+    summary.version = version;
+    summary.cipherSuite = hello.getCipherSuite();
+    if (version.equals(Version.TLS1_3)) {
+      try {
+        summary.resumed = hello.getExtensionList().contains(ExtensionType.PreSharedKey);
+      } catch (InvalidValue e) {
+        // Not known to be resumed, then.
+      }
+    }
+  }
+
+  private void done() {
+    state = State.Done;
+    low.stream.stop();
+    high.stream.stop();
+  }
+
+  private void ignore() {
+    state = State.Ignored;
+    low.stream.stop();
+    high.stream.stop();
+  }
+
+  /**
+   * One side's bytes, from reassembly to decoding.
+   */
+  private final class Direction implements TCPStream.Sink {
+    final boolean isLow;
+    final TCPStream stream = new TCPStream(this);
+    final TLSStreamDecoder decoder = new TLSStreamDecoder(message -> message(this, message));
+    boolean finished;
+    boolean encrypting;
+
+    Direction(boolean isLow) {
+      this.isLow = isLow;
+    }
+
+    boolean isClient() {
+      return this == client;
+    }
+
+    @Override
+    public void data(ByteBuffer data) {
+      try {
+        decoder.feed(data);
+      } catch (InvalidValue e) {
+        if (state == State.New) {
+          ignore();
+        } else if (state == State.Handshaking) {
+          summary.decodeError = e.getMessage();
+          done();
+        }
+      }
+    }
+
+    @Override
+    public void gap() {
+      if (state == State.Handshaking) {
+        summary.gap = true;
+        done();
+      } else if (state == State.New) {
+        ignore();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TLSFlow[" + key + ", " + state + "]";
+  }
+}
@@ -0,0 +1,42 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * application_layer_protocol_negotiation, RFC 7301. A client lists the application protocols it speaks, such as "h2"
+ * and "http/1.1"; a server names the one it chose.
+ */
+public class ALPNExtension extends Extension {
+  private final List<String> protocols;
+
+  ALPNExtension(int type, ByteBuffer data, HandshakeType context) throws InvalidValue {
+    super(type, data);
+    ByteBuffer buffer = data.duplicate();
+    ByteBuffer list = readVector(buffer, 2, "alpn protocol_name_list");
+    List<String> protocols = new ArrayList<>();
+    while (list.hasRemaining()) {
+      ByteBuffer name = readVector(list, 1, "alpn protocol_name");
+      byte[] bytes = new byte[name.remaining()];
+      name.get(bytes);
+      protocols.add(new String(bytes, StandardCharsets.US_ASCII));
+    }
+    requireEnd(buffer, "alpn");
+    this.protocols = Collections.unmodifiableList(protocols);
+  }
+
+  /**
+   * @return the protocols offered, or the one protocol chosen by a server.
+   */
+  public List<String> getProtocols() {
+    return protocols;
+  }
+
+  @Override
+  String describe() {
+    return String.join(", ", protocols);
+  }
+}
@@ -9,6 +9,14 @@ public class Alert implements TLSMessage {
     this.alertDescription = alertDescription;
   }
 
+  public AlertLevel getLevel() {
+    return alertLevel;
+  }
+
+  public AlertDescription getDescription() {
+    return alertDescription;
+  }
+
   public String toString() {
     return String.format("Alert[%s, %s]", alertLevel, alertDescription);
   }
@@ -24,9 +24,16 @@ public enum AlertDescription {
 
   InsufficientSecurity((byte) 71),
   InternalError((byte) 80),
+  InappropriateFallback((byte) 86),
   UserCanceled((byte) 90),
   NoRenegotiation((byte) 100),
-  UnsupportedExtension((byte) 110);
+  MissingExtension((byte) 109),
+  UnsupportedExtension((byte) 110),
+  UnrecognizedName((byte) 112),
+  BadCertificateStatusResponse((byte) 113),
+  UnknownPskIdentity((byte) 115),
+  CertificateRequired((byte) 116),
+  NoApplicationProtocol((byte) 120);
 
   private final byte value;
 
@@ -34,11 +41,18 @@ public enum AlertDescription {
     this.value = value;
   }
 
+  private static final AlertDescription[] byValue = new AlertDescription[256];
+
+  static {
+    for (AlertDescription description : values()) {
+      byValue[description.value & 0xff] = description;
+    }
+  }
+
   static AlertDescription forValue(byte value) throws InvalidValue {
-    for (AlertDescription description : AlertDescription.values()) {
-      if (description.value == value) {
-        return description;
-      }
+    AlertDescription description = byValue[value & 0xff];
+    if (description != null) {
+      return description;
     }
 
     throw new InvalidValue(String.format("Invalid AlertDescription value %d", value));
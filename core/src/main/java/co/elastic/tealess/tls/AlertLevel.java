@@ -1,7 +1,7 @@
 package co.elastic.tealess.tls;
 
 public enum AlertLevel {
-  Warning((byte) 0),
+  Warning((byte) 1),
   Fatal((byte) 2);
 
   private final byte value;
@@ -12,7 +12,7 @@ public enum AlertLevel {
 
   static AlertLevel forValue(byte value) throws InvalidValue {
     switch (value) {
-      case 0:
+      case 1:
         return Warning;
       case 2:
         return Fatal;
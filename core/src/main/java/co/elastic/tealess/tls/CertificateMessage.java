@@ -1,24 +1,87 @@
 package co.elastic.tealess.tls;
 
+import co.elastic.tealess.io.BufferUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Created by jls on 4/30/2017.
+ * A view over the body of a Certificate message.
+ * <p>
+ * Only the certificate boundaries are located when the message is decoded. The certificates themselves are parsed the
+ * first time {@link #getChain()} is called, so the view is only valid until then if the underlying buffer may change.
  */
 public class CertificateMessage extends TLSHandshake {
-  private final List<Certificate> chain;
+  private static final Logger logger = LogManager.getLogger();
+
+  private final ByteBuffer body;
+  private final int certificateCount;
+  private List<Certificate> chain;
 
-  public CertificateMessage(List<Certificate> chain) {
+  CertificateMessage(ByteBuffer body) throws InvalidValue {
     super();
-    this.chain = chain;
+    this.body = body;
+    // RFC 5246 7.4.2: ASN.1Cert certificate_list<0..2^24-1>; where opaque ASN.1Cert<1..2^24-1>;
+    int end = skipVector(body, 0, 3, "certificate list");
+    int count = 0;
+    int offset = 3;
+    while (offset < end) {
+      offset = skipVector(body, offset, 3, "certificate");
+      count++;
+    }
+    if (offset != end) {
+      throw new InvalidValue("Certificate entries overrun the certificate list.");
+    }
+    certificateCount = count;
+  }
+
+  /**
+   * @return the number of certificates in the message, without parsing them.
+   */
+  public int getCertificateCount() {
+    return certificateCount;
   }
 
-  public List<Certificate> getChain() {
+  /**
+   * @return the certificates, in the order sent. Entries that cannot be parsed as X.509 are omitted.
+   */
+  public synchronized List<Certificate> getChain() {
+    if (chain == null) {
+      chain = Collections.unmodifiableList(parseChain());
+    }
     return chain;
   }
 
+  private List<Certificate> parseChain() {
+    CertificateFactory certificateFactory;
+    try {
+      certificateFactory = CertificateFactory.getInstance("X.509");
+    } catch (CertificateException e) {
+      logger.warn("X.509 certificates are not supported by this JVM", e);
+      return Collections.emptyList();
+    }
+
+    List<Certificate> certificates = new ArrayList<>(certificateCount);
+    int end = 3 + BufferUtil.getUInt24(body, 0);
+    for (int offset = 3; offset < end; offset += 3 + BufferUtil.getUInt24(body, offset)) {
+      try {
+        certificates.add(certificateFactory.generateCertificate(new ByteArrayInputStream(vectorBytes(body, offset, 3))));
+      } catch (CertificateException e) {
+        logger.warn("Failed parsing certificate {} of {}", certificates.size(), certificateCount, e);
+      }
+    }
+    return certificates;
+  }
+
   public String toString() {
-    return String.format("%s[%d certificates]", getClass().getSimpleName(), chain.size());
+    return String.format("%s[%d certificates]", getClass().getSimpleName(), certificateCount);
   }
 }
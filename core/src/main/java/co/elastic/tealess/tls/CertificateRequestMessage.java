@@ -1,21 +1,67 @@
 package co.elastic.tealess.tls;
 
+import co.elastic.tealess.io.BufferUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Created by jls on 4/30/2017.
+ * A view over the body of a CertificateRequest message.
+ * <p>
+ * Fields are decoded when asked for, so the view is only valid as long as the underlying buffer is unchanged.
  */
 public class CertificateRequestMessage extends TLSHandshake {
-  private final List<ClientCertificateType> clientCertificateTypes;
-  private final List<byte[]> certificateAuthorities;
+  private final ByteBuffer body;
+  private final int certificateAuthoritiesOffset;
 
-  public CertificateRequestMessage(List<ClientCertificateType> clientCertificateTypes, List<byte[]> certificateAuthorities) {
+  CertificateRequestMessage(ByteBuffer body) throws InvalidValue {
     super();
-    this.clientCertificateTypes = clientCertificateTypes;
-    this.certificateAuthorities = certificateAuthorities;
+    this.body = body;
+    // RFC 5246 7.4.4: ClientCertificateType certificate_types<1..2^8-1>;
+    //                 SignatureAndHashAlgorithm supported_signature_algorithms<2^16-1>;
+    //                 DistinguishedName certificate_authorities<0..2^16-1>;
+    int signatureAlgorithmsOffset = skipVector(body, 0, 1, "certificate types");
+    certificateAuthoritiesOffset = skipVector(body, signatureAlgorithmsOffset, 2, "signature algorithms");
+    int end = skipVector(body, certificateAuthoritiesOffset, 2, "certificate authorities");
+    int offset = certificateAuthoritiesOffset + 2;
+    while (offset < end) {
+      offset = skipVector(body, offset, 2, "distinguished name");
+    }
+    if (offset != end) {
+      throw new InvalidValue("CertificateRequest distinguished names overrun the certificate authorities list.");
+    }
+  }
+
+  /**
+   * @return the requested certificate types, in order. Values this decoder does not recognize are omitted.
+   */
+  public List<ClientCertificateType> getClientCertificateTypes() {
+    int count = BufferUtil.getUInt8(body, 0);
+    List<ClientCertificateType> types = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      try {
+        types.add(ClientCertificateType.forValue(body.get(1 + i)));
+      } catch (InvalidValue e) {
+        // Unknown value; skip it.
+      }
+    }
+    return types;
+  }
+
+  /**
+   * @return the DER-encoded distinguished names of the certificate authorities the server accepts.
+   */
+  public List<byte[]> getCertificateAuthorities() {
+    int end = certificateAuthoritiesOffset + 2 + BufferUtil.getUInt16(body, certificateAuthoritiesOffset);
+    List<byte[]> authorities = new ArrayList<>();
+    for (int offset = certificateAuthoritiesOffset + 2; offset < end; offset += 2 + BufferUtil.getUInt16(body, offset)) {
+      authorities.add(vectorBytes(body, offset, 2));
+    }
+    return authorities;
   }
 
   public String toString() {
-    return String.format("%s(certificate types: %s)", getClass().getSimpleName(), clientCertificateTypes);
+    return String.format("%s(certificate types: %s)", getClass().getSimpleName(), getClientCertificateTypes());
   }
 }
@@ -1,5 +1,7 @@
 package co.elastic.tealess.tls;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by jls on 5/1/2017.
  */
@@ -148,6 +150,11 @@ public enum CipherSuite {
   TLS_DHE_RSA_WITH_CAMELLIA_256_CBC_SHA256(0x00, 0xC4), // [RFC5932]
   TLS_DH_anon_WITH_CAMELLIA_256_CBC_SHA256(0x00, 0xC5), // [RFC5932]
   TLS_EMPTY_RENEGOTIATION_INFO_SCSV(0x00, 0xFF), // [RFC5746]
+  TLS_AES_128_GCM_SHA256(0x13, 0x01), // [RFC8446]
+  TLS_AES_256_GCM_SHA384(0x13, 0x02), // [RFC8446]
+  TLS_CHACHA20_POLY1305_SHA256(0x13, 0x03), // [RFC8446]
+  TLS_AES_128_CCM_SHA256(0x13, 0x04), // [RFC8446]
+  TLS_AES_128_CCM_8_SHA256(0x13, 0x05), // [RFC8446]
   TLS_FALLBACK_SCSV(0x56, 0x00), // [RFC7507]
   TLS_ECDH_ECDSA_WITH_NULL_SHA(0xC0, 0x01), // [RFC4492]
   TLS_ECDH_ECDSA_WITH_RC4_128_SHA(0xC0, 0x02), // [RFC4492][RFC6347]
@@ -340,17 +347,47 @@ public enum CipherSuite {
     this.b2 = (byte) b2;
   }
 
-  static CipherSuite forValue(byte b1, byte b2) throws InvalidValue {
-    for (CipherSuite c : CipherSuite.values()) {
-      if (c.b1 == b1 && c.b2 == b2) {
-        return c;
+  // Indexed by the first byte, then the second. Suites are sparse across first bytes, so second-level tables are only
+  // allocated for first bytes that are in use.
+  private static final CipherSuite[][] byValue = new CipherSuite[256][];
+
+  static {
+    for (CipherSuite c : values()) {
+      CipherSuite[] second = byValue[c.b1 & 0xff];
+      if (second == null) {
+        second = byValue[c.b1 & 0xff] = new CipherSuite[256];
+      }
+      if (second[c.b2 & 0xff] == null) {
+        second[c.b2 & 0xff] = c;
       }
     }
+  }
+
+  static CipherSuite forValue(byte b1, byte b2) throws InvalidValue {
+    CipherSuite[] second = byValue[b1 & 0xff];
+    if (second != null && second[b2 & 0xff] != null) {
+      return second[b2 & 0xff];
+    }
 
     throw new InvalidValue(String.format("Invalid CipherSuite value 0x%02x,0x%02x", b1, b2));
   }
 
+  void put(ByteBuffer buffer) {
+    buffer.put(b1).put(b2);
+  }
+
+  /**
+   * @return true for the suites defined by TLS 1.3, which can only be used with TLS 1.3, as no other suite can.
+   */
+  public boolean isTLS13() {
+    return b1 == 0x13;
+  }
+
   public String keyExchange() {
+    if (isTLS13()) {
+      // TLS 1.3 negotiates the key exchange separately, with the supported_groups and key_share extensions.
+      return "ANY";
+    }
     // This is a hack until I figure out how to really know what key exchange is used for each cipher suite.
     return name().replaceFirst("(_EXPORT_)?_WITH_.*$", "").replaceFirst("^TLS_", "");
   }
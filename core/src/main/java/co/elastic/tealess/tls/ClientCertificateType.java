@@ -24,30 +24,19 @@ public enum ClientCertificateType {
     this.value = value;
   }
 
+  private static final ClientCertificateType[] byValue = new ClientCertificateType[256];
+
+  static {
+    for (ClientCertificateType certificateType : values()) {
+      byValue[certificateType.value & 0xff] = certificateType;
+    }
+  }
+
   static ClientCertificateType forValue(byte value) throws InvalidValue {
-    switch (value) {
-      case 1:
-        return RSASign;
-      case 2:
-        return DSSSign;
-      case 3:
-        return RSAFixedDH;
-      case 4:
-        return DSSFixedDH;
-      case 5:
-        return RSAEphemeralDHRESERVED;
-      case 6:
-        return DSSEphemeralDHRESERVED;
-      case 20:
-        return FortezzaDMSRESERVED;
-      case 64:
-        return ECDSASign;
-      case 65:
-        return RSAFixedECDH;
-      case 66:
-        return ECDSAFixedECDH;
-      default:
-        throw new InvalidValue("Invalid ClientCertificateType value " + value);
+    ClientCertificateType certificateType = byValue[value & 0xff];
+    if (certificateType == null) {
+      throw new InvalidValue("Invalid ClientCertificateType value " + value);
     }
+    return certificateType;
   }
 }
@@ -1,55 +1,99 @@
 package co.elastic.tealess.tls;
 
+import co.elastic.tealess.io.BufferUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * Created by jls on 4/30/2017.
+ * A view over the body of a ClientHello message.
+ * <p>
+ * Only the field boundaries are located when the message is decoded. Each field is decoded when it is asked for, so
+ * the view is only valid as long as the underlying buffer is unchanged.
  */
 public class ClientHello extends TLSHandshake {
-  private final Version version;
-  private final Random random;
-  private final byte[] session;
-  private final List<CipherSuite> cipherSuites;
-  private final List<Byte> compressionMethods;
-  private final byte[] extensionData;
-
-  public ClientHello(Version version, Random random, byte[] session, List<CipherSuite> cipherSuites, List<Byte> compressionMethods, byte[] extensionData) {
+  // RFC 5246 7.4.1.2: ProtocolVersion client_version; Random random; SessionID session_id; ...
+  private static final int sessionIdOffset = 2 + 32;
+
+  private final ByteBuffer body;
+  private final int cipherSuitesOffset;
+  private final int compressionMethodsOffset;
+  private final int extensionsOffset;
+
+  ClientHello(ByteBuffer body) throws InvalidValue {
     super();
-    this.version = version;
-    this.random = random;
-    this.session = session;
-    this.cipherSuites = cipherSuites;
-    this.compressionMethods = compressionMethods;
-    this.extensionData = extensionData;
+    this.body = body;
+    cipherSuitesOffset = skipVector(body, sessionIdOffset, 1, "session id");
+    compressionMethodsOffset = skipVector(body, cipherSuitesOffset, 2, "cipher suites");
+    extensionsOffset = skipVector(body, compressionMethodsOffset, 1, "compression methods");
+    if (extensionsOffset < body.limit()) {
+      skipVector(body, extensionsOffset, 2, "extensions");
+    }
   }
 
   public Version getVersion() {
-    return version;
+    return new Version(body.get(0), body.get(1));
   }
 
   public Random getRandom() {
-    return random;
+    return Random.parse(BufferUtil.slice(body, 2, 32));
   }
 
   public byte[] getSession() {
-    return session;
+    return vectorBytes(body, sessionIdOffset, 1);
+  }
+
+  /**
+   * @return the number of cipher suite values offered, including any this decoder does not recognize.
+   */
+  public int getCipherSuiteCount() {
+    return BufferUtil.getUInt16(body, cipherSuitesOffset) / 2;
   }
 
+  /**
+   * @return the offered cipher suites, in order. Values this decoder does not recognize are omitted.
+   */
   public List<CipherSuite> getCipherSuites() {
+    int count = getCipherSuiteCount();
+    List<CipherSuite> cipherSuites = new ArrayList<>(count);
+    for (int i = 0, offset = cipherSuitesOffset + 2; i < count; i++, offset += 2) {
+      try {
+        cipherSuites.add(CipherSuite.forValue(body.get(offset), body.get(offset + 1)));
+      } catch (InvalidValue e) {
+        // Unknown or reserved (GREASE, for example) value; skip it.
+      }
+    }
     return cipherSuites;
   }
 
   public List<Byte> getCompressionMethods() {
+    int count = BufferUtil.getUInt8(body, compressionMethodsOffset);
+    List<Byte> compressionMethods = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      compressionMethods.add(body.get(compressionMethodsOffset + 1 + i));
+    }
     return compressionMethods;
   }
 
+  /**
+   * @return the extensions block without its length prefix, as a read-only view. Empty if none were sent.
+   */
+  public ByteBuffer getExtensions() {
+    return vectorView(body, extensionsOffset, 2);
+  }
+
   public byte[] getExtensionData() {
-    return extensionData;
+    return vectorBytes(body, extensionsOffset, 2);
+  }
+
+  public Extensions getExtensionList() {
+    return new Extensions(getExtensions(), HandshakeType.ClientHello);
   }
 
   public String toString() {
-    return String.format("%s[version: %s, %d cipher suites; suites: %s]", getClass().getSimpleName(), version, cipherSuites.size(), cipherSuites.stream().map(CipherSuite::toString).collect(Collectors.joining(", ")));
+    return String.format("%s[version: %s, %d cipher suites; suites: %s]", getClass().getSimpleName(), getVersion(), getCipherSuiteCount(), getCipherSuites().stream().map(CipherSuite::toString).collect(Collectors.joining(", ")));
   }
 
 }
@@ -0,0 +1,258 @@
+package co.elastic.tealess.tls;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Serializes a ClientHello record, the counterpart of {@link ClientHello}, without an {@link javax.net.ssl.SSLEngine}.
+ * <p>
+ * This is for probing what a server accepts, not for handshaking: any {@link CipherSuite} and {@link Version} can be
+ * offered whether or not this JVM supports them, and nothing needed to continue the handshake (key shares, a
+ * meaningful session) is sent. The record is laid out once when the offer changes, so {@link #encode(ByteBuffer)}
+ * is a copy plus a fresh random, cheap enough to send thousands of probes from one reusable buffer.
+ * <p>
+ * A TLS 1.3 offer carries supported_versions and an empty key_share. A server which accepts it cannot complete the
+ * key exchange, so it answers with a HelloRetryRequest, which names the suite and group it chose just as well.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class ClientHelloEncoder {
+  // Some servers reject a first record whose version is newer than TLS 1.0, whatever the ClientHello offers.
+  private static final Version recordVersion = Version.TLS1_0;
+  private static final int maxRecordLength = 1 << 14;
+  // Record header, then handshake header, then client_version.
+  private static final int randomOffset = 5 + 4 + 2;
+  private static final int randomLength = 32;
+  private static final Pattern ipLiteral = Pattern.compile("^[0-9.]+$|:");
+
+  private static final int serverNameExtension = 0;
+  private static final int supportedGroupsExtension = 10;
+  private static final int ecPointFormatsExtension = 11;
+  private static final int signatureAlgorithmsExtension = 13;
+  private static final int supportedVersionsExtension = 43;
+  private static final int keyShareExtension = 51;
+  private static final int renegotiationInfoExtension = 0xff01;
+
+  // x25519, secp256r1, secp384r1, secp521r1
+  private static final int[] namedGroups = {29, 23, 24, 25};
+  // ECDSA, RSA-PSS and RSA PKCS#1 with SHA-256, -384 and -512, then SHA-1 for older servers.
+  private static final int[] signatureSchemes = {
+          0x0403, 0x0503, 0x0603, 0x0804, 0x0805, 0x0806, 0x0401, 0x0501, 0x0601, 0x0203, 0x0201
+  };
+
+  private Version version = Version.TLS1_2;
+  private final List<CipherSuite> cipherSuites = new ArrayList<>();
+  private String serverName;
+  private byte[] template;
+
+  /**
+   * @param version the version to offer, the highest the client claims to support. For TLS 1.3, only TLS 1.3 is
+   *                offered.
+   */
+  public ClientHelloEncoder setVersion(Version version) {
+    this.version = version;
+    template = null;
+    return this;
+  }
+
+  /**
+   * @param cipherSuites the suites to offer, in order of preference
+   */
+  public ClientHelloEncoder setCipherSuites(Collection<CipherSuite> cipherSuites) {
+    if (cipherSuites.isEmpty()) {
+      throw new IllegalArgumentException("At least one cipher suite must be offered");
+    }
+    this.cipherSuites.clear();
+    this.cipherSuites.addAll(cipherSuites);
+    template = null;
+    return this;
+  }
+
+  /**
+   * @param serverName the host name to send with the server_name extension (SNI), or null to send none. IP addresses
+   *                   are never sent, as RFC 6066 forbids it.
+   */
+  public ClientHelloEncoder setServerName(String serverName) {
+    this.serverName = serverName == null || ipLiteral.matcher(serverName).find() ? null : serverName;
+    template = null;
+    return this;
+  }
+
+  /**
+   * @return the length in bytes of each record {@link #encode(ByteBuffer)} writes.
+   */
+  public int length() {
+    return template().length;
+  }
+
+  /**
+   * Write one ClientHello record, with a fresh random, at the buffer's position.
+   *
+   * @return the number of bytes written
+   * @throws BufferOverflowException if fewer than {@link #length()} bytes remain in the buffer. Nothing is written.
+   */
+  public int encode(ByteBuffer destination) {
+    byte[] record = template();
+    if (destination.remaining() < record.length) {
+      throw new BufferOverflowException();
+    }
+    int start = destination.position();
+    destination.put(record);
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < randomLength; i += 8) {
+      destination.putLong(start + randomOffset + i, random.nextLong());
+    }
+    return record.length;
+  }
+
+  private byte[] template() {
+    if (template != null) {
+      return template;
+    }
+    if (cipherSuites.isEmpty()) {
+      throw new IllegalStateException("No cipher suites to offer");
+    }
+
+    // Check the size before writing anything, as the buffer is only as large as the record needs.
+    int helloLength = helloLength();
+    if (helloLength > maxRecordLength) {
+      throw new IllegalStateException("ClientHello of " + helloLength + " bytes with " + cipherSuites.size() + " cipher suites does not fit in one record");
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(5 + helloLength);
+    buffer.put((byte) 22); // ContentType.Handshake
+    recordVersion.put(buffer);
+    int recordLength = reserve(buffer, 2);
+
+    buffer.put((byte) 1); // HandshakeType.ClientHello
+    int handshakeLength = reserve(buffer, 3);
+    // RFC 8446 4.1.2: TLS 1.3 is offered in supported_versions, with TLS 1.2 in the version field.
+    (isTLS13() ? Version.TLS1_2 : version).put(buffer);
+    buffer.position(buffer.position() + randomLength);
+    buffer.put((byte) 0); // empty session id
+
+    buffer.putShort((short) (cipherSuites.size() * 2));
+    for (CipherSuite cipherSuite : cipherSuites) {
+      cipherSuite.put(buffer);
+    }
+    buffer.put((byte) 1).put((byte) 0); // null compression only
+
+    // SSL 3.0 predates extensions, and some SSL 3.0 servers reject a ClientHello carrying any.
+    if (version.value() > Version.SSL3_0.value()) {
+      putExtensions(buffer);
+    }
+
+    fill(buffer, recordLength, 2);
+    fill(buffer, handshakeLength, 3);
+    template = new byte[buffer.position()];
+    buffer.flip();
+    buffer.get(template);
+    return template;
+  }
+
+  /**
+   * @return the length of the handshake message {@link #template()} writes, which must match what it writes.
+   */
+  private int helloLength() {
+    // Handshake header, client_version, random, empty session id, cipher suites, null compression.
+    int length = 4 + 2 + randomLength + 1 + 2 + cipherSuites.size() * 2 + 2;
+    if (version.value() > Version.SSL3_0.value()) {
+      length += 2;
+      if (serverName != null) {
+        length += 4 + 2 + 1 + 2 + serverName.length();
+      }
+      length += 4 + 2 + namedGroups.length * 2;
+      length += 4 + 2;
+      if (version.value() >= Version.TLS1_2.value()) {
+        length += 4 + 2 + signatureSchemes.length * 2;
+      }
+      if (isTLS13()) {
+        length += 4 + 3 + 4 + 2;
+      }
+      length += 4 + 1;
+    }
+    return length;
+  }
+
+  private void putExtensions(ByteBuffer buffer) {
+    int extensionsLength = reserve(buffer, 2);
+
+    if (serverName != null) {
+      byte[] name = serverName.getBytes(StandardCharsets.US_ASCII);
+      buffer.putShort((short) serverNameExtension);
+      buffer.putShort((short) (2 + 1 + 2 + name.length));
+      buffer.putShort((short) (1 + 2 + name.length));
+      buffer.put((byte) 0); // host_name
+      buffer.putShort((short) name.length);
+      buffer.put(name);
+    }
+
+    // Without these, servers will not choose an ECDHE or ECDSA suite.
+    buffer.putShort((short) supportedGroupsExtension);
+    buffer.putShort((short) (2 + namedGroups.length * 2));
+    buffer.putShort((short) (namedGroups.length * 2));
+    for (int group : namedGroups) {
+      buffer.putShort((short) group);
+    }
+    buffer.putShort((short) ecPointFormatsExtension);
+    buffer.putShort((short) 2);
+    buffer.put((byte) 1).put((byte) 0); // uncompressed
+
+    // RFC 5246 7.4.1.4.1: only TLS 1.2 clients send signature_algorithms.
+    if (version.value() >= Version.TLS1_2.value()) {
+      buffer.putShort((short) signatureAlgorithmsExtension);
+      buffer.putShort((short) (2 + signatureSchemes.length * 2));
+      buffer.putShort((short) (signatureSchemes.length * 2));
+      for (int scheme : signatureSchemes) {
+        buffer.putShort((short) scheme);
+      }
+    }
+
+    if (isTLS13()) {
+      buffer.putShort((short) supportedVersionsExtension);
+      buffer.putShort((short) 3);
+      buffer.put((byte) 2);
+      Version.TLS1_3.put(buffer);
+
+      buffer.putShort((short) keyShareExtension);
+      buffer.putShort((short) 2);
+      buffer.putShort((short) 0); // no client_shares
+    }
+
+    // An empty renegotiation_info, as on an initial handshake. Some servers refuse clients without it.
+    buffer.putShort((short) renegotiationInfoExtension);
+    buffer.putShort((short) 1);
+    buffer.put((byte) 0);
+
+    fill(buffer, extensionsLength, 2);
+  }
+
+  private boolean isTLS13() {
+    return version.value() >= Version.TLS1_3.value();
+  }
+
+  /**
+   * Skip a length field of the given size, to be filled in once the data it covers has been written.
+   *
+   * @return the offset of the length field
+   */
+  private static int reserve(ByteBuffer buffer, int size) {
+    int offset = buffer.position();
+    buffer.position(offset + size);
+    return offset;
+  }
+
+  private static void fill(ByteBuffer buffer, int offset, int size) {
+    int length = buffer.position() - offset - size;
+    for (int i = size - 1; i >= 0; i--, length >>>= 8) {
+      buffer.put(offset + i, (byte) length);
+    }
+  }
+}
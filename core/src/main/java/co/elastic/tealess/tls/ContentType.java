@@ -15,18 +15,19 @@ public enum ContentType {
     this.type = type;
   }
 
+  private static final ContentType[] byValue = new ContentType[256];
+
+  static {
+    for (ContentType contentType : values()) {
+      byValue[contentType.type & 0xff] = contentType;
+    }
+  }
+
   static ContentType forValue(byte value) throws InvalidValue {
-    switch (value) {
-      case 20:
-        return ContentType.ChangeCipherSpec;
-      case 21:
-        return ContentType.Alert;
-      case 22:
-        return ContentType.Handshake;
-      case 23:
-        return ContentType.ApplicationData;
-      default:
-        throw new InvalidValue("ContentTYpe value of " + value + " is not valid.");
+    ContentType contentType = byValue[value & 0xff];
+    if (contentType == null) {
+      throw new InvalidValue("ContentTYpe value of " + value + " is not valid.");
     }
+    return contentType;
   }
 }
@@ -0,0 +1,37 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A view over the body of a TLS 1.3 EncryptedExtensions message, which carries the server's extensions that are not
+ * needed to establish keys, such as server_name and alpn.
+ * <p>
+ * As its name says, this message is always encrypted on the wire, so it is only seen when decrypted handshake
+ * messages are decoded.
+ */
+public class EncryptedExtensions extends TLSHandshake {
+  private final ByteBuffer body;
+
+  EncryptedExtensions(ByteBuffer body) throws InvalidValue {
+    super();
+    this.body = body;
+    if (skipVector(body, 0, 2, "extensions") != body.limit()) {
+      throw new InvalidValue("EncryptedExtensions has trailing bytes.");
+    }
+  }
+
+  /**
+   * @return the extensions block without its length prefix, as a read-only view.
+   */
+  public ByteBuffer getExtensions() {
+    return vectorView(body, 0, 2);
+  }
+
+  public Extensions getExtensionList() {
+    return new Extensions(getExtensions(), HandshakeType.EncryptedExtensions);
+  }
+
+  public String toString() {
+    return "EncryptedExtensions[" + getExtensionList() + "]";
+  }
+}
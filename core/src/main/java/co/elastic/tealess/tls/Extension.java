@@ -0,0 +1,86 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A hello extension, as found in ClientHello, ServerHello and EncryptedExtensions messages.
+ * <p>
+ * Extensions this decoder understands are decoded into subclasses with typed accessors; any other extension is an
+ * instance of this class, with only its type and data. Like the messages they come from, extensions are views over
+ * the underlying buffer.
+ */
+public class Extension {
+  private final int type;
+  private final ByteBuffer data;
+
+  Extension(int type, ByteBuffer data) {
+    this.type = type;
+    this.data = data;
+  }
+
+  /**
+   * @return the extension type, or null if this decoder does not know it.
+   */
+  public ExtensionType getType() {
+    return ExtensionType.forValue(type);
+  }
+
+  public int getTypeValue() {
+    return type;
+  }
+
+  /**
+   * @return the extension data without its length prefix, as a read-only view.
+   */
+  public ByteBuffer getData() {
+    return data.duplicate();
+  }
+
+  /**
+   * @return the text after the extension name in {@link #toString()}.
+   */
+  String describe() {
+    return data.remaining() + " bytes";
+  }
+
+  public String toString() {
+    ExtensionType type = getType();
+    String name = type == null ? String.format("unknown(0x%04x)", this.type) : type.toString();
+    return name + "[" + describe() + "]";
+  }
+
+  /**
+   * @throws InvalidValue if the data has bytes left over after decoding.
+   */
+  static void requireEnd(ByteBuffer data, String name) throws InvalidValue {
+    if (data.hasRemaining()) {
+      throw new InvalidValue(name + " extension has " + data.remaining() + " unexpected trailing bytes.");
+    }
+  }
+
+  /**
+   * Read a vector with a lengthBytes-sized length prefix, checking that it fits.
+   *
+   * @return a view of the vector contents. The data's position is moved past the vector.
+   */
+  static ByteBuffer readVector(ByteBuffer data, int lengthBytes, String name) throws InvalidValue {
+    if (data.remaining() < lengthBytes) {
+      throw new InvalidValue(name + " is truncated before its length.");
+    }
+    int length = lengthBytes == 1 ? data.get() & 0xff : data.getShort() & 0xffff;
+    if (length > data.remaining()) {
+      throw new InvalidValue(name + " length " + length + " exceeds the " + data.remaining() + " bytes available.");
+    }
+    ByteBuffer vector = data.slice();
+    vector.limit(length);
+    data.position(data.position() + length);
+    return vector;
+  }
+
+  static int readUInt16(ByteBuffer data, String name) throws InvalidValue {
+    if (data.remaining() < 2) {
+      throw new InvalidValue(name + " is truncated.");
+    }
+    return data.getShort() & 0xffff;
+  }
+}
@@ -0,0 +1,81 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hello extension types, from the IANA TLS ExtensionType Values registry, each with the decoder for its data.
+ * <p>
+ * Types without a typed decoder are kept as a plain {@link Extension}.
+ */
+public enum ExtensionType {
+  ServerName(0, ServerNameExtension::new),
+  StatusRequest(5, StatusRequestExtension::new),
+  SupportedGroups(10, SupportedGroupsExtension::new),
+  ECPointFormats(11),
+  SignatureAlgorithms(13, SignatureAlgorithmsExtension::new),
+  ApplicationLayerProtocolNegotiation(16, ALPNExtension::new),
+  SignedCertificateTimestamp(18),
+  Padding(21),
+  EncryptThenMac(22),
+  ExtendedMasterSecret(23),
+  SessionTicket(35, SessionTicketExtension::new),
+  PreSharedKey(41),
+  EarlyData(42),
+  SupportedVersions(43, SupportedVersionsExtension::new),
+  Cookie(44),
+  PSKKeyExchangeModes(45),
+  CertificateAuthorities(47),
+  SignatureAlgorithmsCert(50, SignatureAlgorithmsExtension::new),
+  KeyShare(51, KeyShareExtension::new),
+  RenegotiationInfo(0xff01);
+
+  /**
+   * Decodes the data of one extension. The handshake type says which message the extension came from, as some
+   * extensions have a different form in each.
+   */
+  interface Decoder {
+    Extension decode(int type, ByteBuffer data, HandshakeType context) throws InvalidValue;
+  }
+
+  private final int value;
+  private final Decoder decoder;
+
+  ExtensionType(int value) {
+    this(value, (type, data, context) -> new Extension(type, data));
+  }
+
+  ExtensionType(int value, Decoder decoder) {
+    this.value = value;
+    this.decoder = decoder;
+  }
+
+  private static final Map<Integer, ExtensionType> byValue = new HashMap<>();
+
+  static {
+    for (ExtensionType type : values()) {
+      byValue.put(type.value, type);
+    }
+  }
+
+  /**
+   * @return the type with the given value, or null if it is unknown. Unknown extensions are normal, since new ones are
+   * defined all the time and GREASE values are sent on purpose.
+   */
+  static ExtensionType forValue(int value) {
+    return byValue.get(value);
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+  static Extension decode(int value, ByteBuffer data, HandshakeType context) throws InvalidValue {
+    ExtensionType type = forValue(value);
+    if (type == null) {
+      return new Extension(value, data);
+    }
+    return type.decoder.decode(value, data, context);
+  }
+}
@@ -0,0 +1,102 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The extensions block of a hello message.
+ * <p>
+ * Nothing is decoded until asked for. The first access locates each extension's type and data, and each extension's
+ * data is only decoded, by its {@link ExtensionType}, the first time that extension is asked for.
+ */
+public class Extensions {
+  private final ByteBuffer block;
+  private final HandshakeType context;
+
+  private List<Integer> types;
+  private List<ByteBuffer> data;
+  private Extension[] decoded;
+
+  /**
+   * @param block   the extensions without their overall length prefix
+   * @param context the message the extensions came from
+   */
+  Extensions(ByteBuffer block, HandshakeType context) {
+    this.block = block;
+    this.context = context;
+  }
+
+  private void index() throws InvalidValue {
+    if (types != null) {
+      return;
+    }
+    List<Integer> types = new ArrayList<>();
+    List<ByteBuffer> data = new ArrayList<>();
+    ByteBuffer buffer = block.duplicate();
+    while (buffer.hasRemaining()) {
+      int type = Extension.readUInt16(buffer, "Extension type");
+      data.add(Extension.readVector(buffer, 2, "Extension " + type).asReadOnlyBuffer());
+      types.add(type);
+    }
+    this.data = data;
+    this.decoded = new Extension[types.size()];
+    this.types = types;
+  }
+
+  /**
+   * @return the type values of the extensions, in the order they were sent.
+   */
+  public List<Integer> getTypeValues() throws InvalidValue {
+    index();
+    return Collections.unmodifiableList(types);
+  }
+
+  public int size() throws InvalidValue {
+    index();
+    return types.size();
+  }
+
+  public boolean contains(ExtensionType type) throws InvalidValue {
+    index();
+    return types.contains(type.getValue());
+  }
+
+  /**
+   * @return the extension of the given type, decoded, or null if it was not sent.
+   */
+  public Extension get(ExtensionType type) throws InvalidValue {
+    index();
+    int i = types.indexOf(type.getValue());
+    return i == -1 ? null : decode(i);
+  }
+
+  /**
+   * @return every extension, decoded, in the order they were sent.
+   */
+  public List<Extension> getAll() throws InvalidValue {
+    index();
+    List<Extension> all = new ArrayList<>(types.size());
+    for (int i = 0; i < types.size(); i++) {
+      all.add(decode(i));
+    }
+    return all;
+  }
+
+  private Extension decode(int i) throws InvalidValue {
+    if (decoded[i] == null) {
+      decoded[i] = ExtensionType.decode(types.get(i), data.get(i).duplicate(), context);
+    }
+    return decoded[i];
+  }
+
+  public String toString() {
+    try {
+      return getAll().stream().map(Extension::toString).collect(Collectors.joining(", "));
+    } catch (InvalidValue e) {
+      return "invalid extensions: " + e.getMessage();
+    }
+  }
+}
@@ -7,13 +7,19 @@ enum HandshakeType {
   HelloRequest((byte) 0),
   ClientHello((byte) 1),
   ServerHello((byte) 2),
+  NewSessionTicket((byte) 4),
+  EndOfEarlyData((byte) 5),
+  EncryptedExtensions((byte) 8),
   Certificate((byte) 11),
   ServerKeyExchange((byte) 12),
   CertificateRequest((byte) 13),
   ServerHelloDone((byte) 14),
   CertificateVerify((byte) 15),
   ClientKeyExchange((byte) 16),
-  Finished((byte) 20);
+  Finished((byte) 20),
+  CertificateStatus((byte) 22),
+  KeyUpdate((byte) 24),
+  MessageHash((byte) 254);
 
   private final byte type;
 
@@ -21,30 +27,19 @@ enum HandshakeType {
     this.type = type;
   }
 
+  private static final HandshakeType[] byValue = new HandshakeType[256];
+
+  static {
+    for (HandshakeType handshakeType : values()) {
+      byValue[handshakeType.type & 0xff] = handshakeType;
+    }
+  }
+
   static HandshakeType forValue(byte value) throws InvalidValue {
-    switch (value) {
-      case 0:
-        return HandshakeType.HelloRequest;
-      case 1:
-        return HandshakeType.ClientHello;
-      case 2:
-        return HandshakeType.ServerHello;
-      case 11:
-        return HandshakeType.Certificate;
-      case 12:
-        return HandshakeType.ServerKeyExchange;
-      case 13:
-        return HandshakeType.CertificateRequest;
-      case 14:
-        return HandshakeType.ServerHelloDone;
-      case 15:
-        return HandshakeType.CertificateVerify;
-      case 16:
-        return HandshakeType.ClientKeyExchange;
-      case 20:
-        return HandshakeType.Finished;
-      default:
-        throw new InvalidValue("HandshakeType value of " + value + " is not valid.");
+    HandshakeType handshakeType = byValue[value & 0xff];
+    if (handshakeType == null) {
+      throw new InvalidValue("HandshakeType value of " + value + " is not valid.");
     }
+    return handshakeType;
   }
 }
@@ -0,0 +1,74 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * key_share, RFC 8446 section 4.2.8. A client sends a key share for each group it guesses the server will accept,
+ * possibly none; a server answers with its own share in one of those groups, or, in a HelloRetryRequest, names the
+ * group it wants a share for instead.
+ */
+public class KeyShareExtension extends Extension {
+  private final List<Integer> groups;
+  private final List<Integer> keyLengths;
+  private final boolean retryRequest;
+
+  KeyShareExtension(int type, ByteBuffer data, HandshakeType context) throws InvalidValue {
+    super(type, data);
+    ByteBuffer buffer = data.duplicate();
+    List<Integer> groups = new ArrayList<>();
+    List<Integer> keyLengths = new ArrayList<>();
+    if (context == HandshakeType.ClientHello) {
+      ByteBuffer shares = readVector(buffer, 2, "key_share client_shares");
+      while (shares.hasRemaining()) {
+        groups.add(readUInt16(shares, "key_share group"));
+        keyLengths.add(readVector(shares, 2, "key_share key_exchange").remaining());
+      }
+      retryRequest = false;
+    } else if (buffer.remaining() == 2) {
+      // A HelloRetryRequest carries only the selected group.
+      groups.add(readUInt16(buffer, "key_share selected_group"));
+      retryRequest = true;
+    } else {
+      groups.add(readUInt16(buffer, "key_share group"));
+      keyLengths.add(readVector(buffer, 2, "key_share key_exchange").remaining());
+      retryRequest = false;
+    }
+    requireEnd(buffer, "key_share");
+    this.groups = Collections.unmodifiableList(groups);
+    this.keyLengths = Collections.unmodifiableList(keyLengths);
+  }
+
+  /**
+   * @return the group of each key share, or the group a HelloRetryRequest asks for. See {@link NamedGroup}.
+   */
+  public List<Integer> getGroups() {
+    return groups;
+  }
+
+  /**
+   * @return the length in bytes of each key share's public key, in the order of {@link #getGroups()}. Empty for a
+   * HelloRetryRequest.
+   */
+  public List<Integer> getKeyLengths() {
+    return keyLengths;
+  }
+
+  /**
+   * @return true if this is a HelloRetryRequest asking the client to retry with a share in the given group.
+   */
+  public boolean isRetryRequest() {
+    return retryRequest;
+  }
+
+  @Override
+  String describe() {
+    if (groups.isEmpty()) {
+      return "no shares";
+    }
+    return (retryRequest ? "retry with " : "") + groups.stream().map(NamedGroup::describe).collect(Collectors.joining(", "));
+  }
+}
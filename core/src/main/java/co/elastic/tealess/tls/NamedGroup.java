@@ -0,0 +1,54 @@
+package co.elastic.tealess.tls;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Key exchange groups, from the IANA TLS Supported Groups registry, as used by the supported_groups and key_share
+ * extensions.
+ */
+public enum NamedGroup {
+  secp256r1(23),
+  secp384r1(24),
+  secp521r1(25),
+  x25519(29),
+  x448(30),
+  ffdhe2048(256),
+  ffdhe3072(257),
+  ffdhe4096(258),
+  ffdhe6144(259),
+  ffdhe8192(260);
+
+  private final int value;
+
+  NamedGroup(int value) {
+    this.value = value;
+  }
+
+  private static final Map<Integer, NamedGroup> byValue = new HashMap<>();
+
+  static {
+    for (NamedGroup group : values()) {
+      byValue.put(group.value, group);
+    }
+  }
+
+  /**
+   * @return the group with the given value, or null if it is unknown.
+   */
+  public static NamedGroup forValue(int value) {
+    return byValue.get(value);
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+  /**
+   * @return the name of the group with the given value, or its value in hex if it is unknown.
+   */
+  static String describe(int value) {
+    NamedGroup group = forValue(value);
+    return group == null ? String.format("0x%04x", value) : group.name();
+  }
+}
@@ -1,29 +1,113 @@
 package co.elastic.tealess.tls;
 
+import co.elastic.tealess.io.BufferUtil;
+
+import java.nio.ByteBuffer;
+
 /**
- * Created by jls on 4/30/2017.
+ * A view over the body of a ServerHello message.
+ * <p>
+ * Only the field boundaries and the cipher suite are decoded up front. Other fields are decoded when asked for, so the
+ * view is only valid as long as the underlying buffer is unchanged.
  */
 public class ServerHello extends TLSHandshake {
-  private final Version version;
-  private final Random random;
-  private final byte[] session;
+  // RFC 5246 7.4.1.3: ProtocolVersion server_version; Random random; SessionID session_id; ...
+  private static final int sessionIdOffset = 2 + 32;
+  // RFC 8446 4.1.3: a HelloRetryRequest is a ServerHello with this random, the SHA-256 of "HelloRetryRequest".
+  private static final byte[] helloRetryRequestRandom = {
+          (byte) 0xCF, 0x21, (byte) 0xAD, 0x74, (byte) 0xE5, (byte) 0x9A, 0x61, 0x11,
+          (byte) 0xBE, 0x1D, (byte) 0x8C, 0x02, 0x1E, 0x65, (byte) 0xB8, (byte) 0x91,
+          (byte) 0xC2, (byte) 0xA2, 0x11, 0x16, 0x7A, (byte) 0xBB, (byte) 0x8C, 0x5E,
+          0x07, (byte) 0x9E, 0x09, (byte) 0xE2, (byte) 0xC8, (byte) 0xA8, 0x33, (byte) 0x9C
+  };
+
+  private final ByteBuffer body;
+  private final int cipherSuiteOffset;
+  private final int extensionsOffset;
 
   private final CipherSuite cipherSuite;
-  private final byte compressionMethod;
-  private final byte[] extensionData;
 
-  public ServerHello(Version version, Random random, byte[] session, CipherSuite cipherSuite, byte compressionMethod, byte[] extensionData) {
+  ServerHello(ByteBuffer body) throws InvalidValue {
     super();
-    this.version = version;
-    this.random = random;
-    this.session = session;
-    this.cipherSuite = cipherSuite;
-    this.compressionMethod = compressionMethod;
-    this.extensionData = extensionData;
+    this.body = body;
+    cipherSuiteOffset = skipVector(body, sessionIdOffset, 1, "session id");
+    // cipher_suite (2 bytes) and compression_method (1 byte)
+    extensionsOffset = cipherSuiteOffset + 3;
+    if (extensionsOffset > body.limit()) {
+      throw new InvalidValue("ServerHello is truncated.");
+    }
+    if (extensionsOffset < body.limit()) {
+      skipVector(body, extensionsOffset, 2, "extensions");
+    }
+    cipherSuite = CipherSuite.forValue(body.get(cipherSuiteOffset), body.get(cipherSuiteOffset + 1));
+  }
+
+  /**
+   * @return the version field of the message. From TLS 1.3 on, this is always TLS 1.2; see
+   * {@link #getNegotiatedVersion()}.
+   */
+  public Version getVersion() {
+    return new Version(body.get(0), body.get(1));
+  }
+
+  /**
+   * @return the version the server chose: the supported_versions extension if it was sent, otherwise the version field.
+   */
+  public Version getNegotiatedVersion() {
+    try {
+      Extension extension = getExtensionList().get(ExtensionType.SupportedVersions);
+      if (extension != null) {
+        return ((SupportedVersionsExtension) extension).getSelectedVersion();
+      }
+    } catch (InvalidValue e) {
+      // Fall back to what the version field says.
+    }
+    return getVersion();
+  }
+
+  /**
+   * @return true if this is a TLS 1.3 HelloRetryRequest: the server accepts the offer but wants the client to send
+   * another ClientHello, usually with a key share in a different group.
+   */
+  public boolean isHelloRetryRequest() {
+    for (int i = 0; i < helloRetryRequestRandom.length; i++) {
+      if (body.get(2 + i) != helloRetryRequestRandom[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public Random getRandom() {
+    return Random.parse(BufferUtil.slice(body, 2, 32));
+  }
+
+  public byte[] getSession() {
+    return vectorBytes(body, sessionIdOffset, 1);
+  }
+
+  public byte getCompressionMethod() {
+    return body.get(cipherSuiteOffset + 2);
+  }
+
+  /**
+   * @return the extensions block without its length prefix, as a read-only view. Empty if none were sent.
+   */
+  public ByteBuffer getExtensions() {
+    return vectorView(body, extensionsOffset, 2);
+  }
+
+  public byte[] getExtensionData() {
+    return vectorBytes(body, extensionsOffset, 2);
+  }
+
+  public Extensions getExtensionList() {
+    return new Extensions(getExtensions(), HandshakeType.ServerHello);
   }
 
   public String toString() {
-    return String.format("ServerHello[%s, %s, keyex %s]", version, cipherSuite, cipherSuite.keyExchange());
+    return String.format("%s[%s, %s, keyex %s]", isHelloRetryRequest() ? "HelloRetryRequest" : "ServerHello",
+            getNegotiatedVersion(), cipherSuite, cipherSuite.keyExchange());
   }
 
   public CipherSuite getCipherSuite() {
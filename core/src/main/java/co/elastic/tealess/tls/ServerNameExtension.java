@@ -0,0 +1,53 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * server_name (SNI), RFC 6066 section 3. A client sends the host names it wants; a server acknowledges using one with
+ * an empty extension.
+ */
+public class ServerNameExtension extends Extension {
+  private static final int hostNameType = 0;
+
+  private final List<String> hostNames;
+
+  ServerNameExtension(int type, ByteBuffer data, HandshakeType context) throws InvalidValue {
+    super(type, data);
+    if (!data.hasRemaining()) {
+      hostNames = Collections.emptyList();
+      return;
+    }
+    ByteBuffer list = readVector(data.duplicate(), 2, "server_name list");
+    List<String> names = new ArrayList<>();
+    while (list.hasRemaining()) {
+      int nameType = list.get() & 0xff;
+      ByteBuffer name = readVector(list, 2, "server_name");
+      if (nameType == hostNameType) {
+        byte[] bytes = new byte[name.remaining()];
+        name.get(bytes);
+        names.add(new String(bytes, StandardCharsets.US_ASCII));
+      }
+    }
+    hostNames = Collections.unmodifiableList(names);
+  }
+
+  public List<String> getHostNames() {
+    return hostNames;
+  }
+
+  /**
+   * @return the first host name, or null if there is none, as in a server's acknowledgement.
+   */
+  public String getHostName() {
+    return hostNames.isEmpty() ? null : hostNames.get(0);
+  }
+
+  @Override
+  String describe() {
+    return hostNames.isEmpty() ? "acknowledged" : String.join(", ", hostNames);
+  }
+}
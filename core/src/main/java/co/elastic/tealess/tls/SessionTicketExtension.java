@@ -0,0 +1,35 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+
+/**
+ * session_ticket, RFC 5077. A client sends a ticket to resume a session, or an empty extension to ask for one; a
+ * server acknowledges that it will send a new ticket with an empty extension.
+ */
+public class SessionTicketExtension extends Extension {
+  SessionTicketExtension(int type, ByteBuffer data, HandshakeType context) {
+    super(type, data);
+  }
+
+  /**
+   * @return the ticket bytes. Tickets are opaque to everyone but the server which issued them.
+   */
+  public byte[] getTicket() {
+    ByteBuffer data = getData();
+    byte[] ticket = new byte[data.remaining()];
+    data.get(ticket);
+    return ticket;
+  }
+
+  /**
+   * @return true if no ticket was sent: a client asking for one, or a server promising one.
+   */
+  public boolean isEmpty() {
+    return !getData().hasRemaining();
+  }
+
+  @Override
+  String describe() {
+    return isEmpty() ? "empty" : getData().remaining() + " byte ticket";
+  }
+}
@@ -0,0 +1,39 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * signature_algorithms and signature_algorithms_cert, RFC 8446 section 4.2.3. The signature schemes a peer accepts,
+ * in preference order.
+ */
+public class SignatureAlgorithmsExtension extends Extension {
+  private final List<Integer> schemes;
+
+  SignatureAlgorithmsExtension(int type, ByteBuffer data, HandshakeType context) throws InvalidValue {
+    super(type, data);
+    ByteBuffer buffer = data.duplicate();
+    ByteBuffer list = readVector(buffer, 2, "signature_algorithms list");
+    List<Integer> schemes = new ArrayList<>();
+    while (list.hasRemaining()) {
+      schemes.add(readUInt16(list, "signature_algorithms"));
+    }
+    requireEnd(buffer, "signature_algorithms");
+    this.schemes = Collections.unmodifiableList(schemes);
+  }
+
+  /**
+   * @return the scheme values, in order. See {@link SignatureScheme}.
+   */
+  public List<Integer> getSchemes() {
+    return schemes;
+  }
+
+  @Override
+  String describe() {
+    return schemes.stream().map(SignatureScheme::describe).collect(Collectors.joining(", "));
+  }
+}
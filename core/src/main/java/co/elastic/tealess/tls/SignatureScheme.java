@@ -0,0 +1,58 @@
+package co.elastic.tealess.tls;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Signature algorithms, from the IANA TLS SignatureScheme registry, as used by the signature_algorithms and
+ * signature_algorithms_cert extensions. In TLS 1.2 each value is a hash byte followed by a signature byte, and the
+ * TLS 1.3 names below cover the combinations in common use.
+ */
+public enum SignatureScheme {
+  rsa_pkcs1_sha1(0x0201),
+  ecdsa_sha1(0x0203),
+  rsa_pkcs1_sha256(0x0401),
+  ecdsa_secp256r1_sha256(0x0403),
+  rsa_pkcs1_sha384(0x0501),
+  ecdsa_secp384r1_sha384(0x0503),
+  rsa_pkcs1_sha512(0x0601),
+  ecdsa_secp521r1_sha512(0x0603),
+  rsa_pss_rsae_sha256(0x0804),
+  rsa_pss_rsae_sha384(0x0805),
+  rsa_pss_rsae_sha512(0x0806),
+  ed25519(0x0807),
+  ed448(0x0808),
+  rsa_pss_pss_sha256(0x0809),
+  rsa_pss_pss_sha384(0x080a),
+  rsa_pss_pss_sha512(0x080b);
+
+  private final int value;
+
+  SignatureScheme(int value) {
+    this.value = value;
+  }
+
+  private static final Map<Integer, SignatureScheme> byValue = new HashMap<>();
+
+  static {
+    for (SignatureScheme scheme : values()) {
+      byValue.put(scheme.value, scheme);
+    }
+  }
+
+  /**
+   * @return the scheme with the given value, or null if it is unknown.
+   */
+  public static SignatureScheme forValue(int value) {
+    return byValue.get(value);
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+  static String describe(int value) {
+    SignatureScheme scheme = forValue(value);
+    return scheme == null ? String.format("0x%04x", value) : scheme.name();
+  }
+}
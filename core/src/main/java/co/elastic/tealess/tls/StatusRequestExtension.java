@@ -0,0 +1,47 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+
+/**
+ * status_request, RFC 6066 section 8. A client asks the server to staple a certificate status (OCSP) response to its
+ * certificate; a server acknowledges with an empty extension.
+ */
+public class StatusRequestExtension extends Extension {
+  public static final int OCSP = 1;
+
+  private final int statusType;
+
+  StatusRequestExtension(int type, ByteBuffer data, HandshakeType context) throws InvalidValue {
+    super(type, data);
+    ByteBuffer buffer = data.duplicate();
+    if (!buffer.hasRemaining()) {
+      statusType = -1;
+      return;
+    }
+    statusType = buffer.get() & 0xff;
+    if (statusType == OCSP && context == HandshakeType.ClientHello) {
+      readVector(buffer, 2, "status_request responder_id_list");
+      readVector(buffer, 2, "status_request request_extensions");
+      requireEnd(buffer, "status_request");
+    }
+  }
+
+  /**
+   * @return the status type requested, such as {@link #OCSP}, or -1 for a server's acknowledgement.
+   */
+  public int getStatusType() {
+    return statusType;
+  }
+
+  public boolean isAcknowledgement() {
+    return statusType == -1;
+  }
+
+  @Override
+  String describe() {
+    if (isAcknowledgement()) {
+      return "acknowledged";
+    }
+    return statusType == OCSP ? "ocsp" : "type " + statusType;
+  }
+}
@@ -0,0 +1,39 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * supported_groups, RFC 8446 section 4.2.7 (elliptic_curves in RFC 4492). The key exchange groups a client supports,
+ * in preference order.
+ */
+public class SupportedGroupsExtension extends Extension {
+  private final List<Integer> groups;
+
+  SupportedGroupsExtension(int type, ByteBuffer data, HandshakeType context) throws InvalidValue {
+    super(type, data);
+    ByteBuffer buffer = data.duplicate();
+    ByteBuffer list = readVector(buffer, 2, "supported_groups list");
+    List<Integer> groups = new ArrayList<>();
+    while (list.hasRemaining()) {
+      groups.add(readUInt16(list, "supported_groups"));
+    }
+    requireEnd(buffer, "supported_groups");
+    this.groups = Collections.unmodifiableList(groups);
+  }
+
+  /**
+   * @return the group values, in order. See {@link NamedGroup}.
+   */
+  public List<Integer> getGroups() {
+    return groups;
+  }
+
+  @Override
+  String describe() {
+    return groups.stream().map(NamedGroup::describe).collect(Collectors.joining(", "));
+  }
+}
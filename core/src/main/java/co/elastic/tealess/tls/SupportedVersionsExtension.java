@@ -0,0 +1,57 @@
+package co.elastic.tealess.tls;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * supported_versions, RFC 8446 section 4.2.1. A client lists the versions it supports, in preference order; a server
+ * names the one it chose. From TLS 1.3 on, this and not the version field of the hello is the negotiated version.
+ */
+public class SupportedVersionsExtension extends Extension {
+  private final List<Version> versions;
+  private final boolean selected;
+
+  SupportedVersionsExtension(int type, ByteBuffer data, HandshakeType context) throws InvalidValue {
+    super(type, data);
+    ByteBuffer buffer = data.duplicate();
+    List<Version> versions = new ArrayList<>();
+    if (context == HandshakeType.ClientHello) {
+      ByteBuffer list = readVector(buffer, 1, "supported_versions list");
+      while (list.remaining() >= 2) {
+        versions.add(new Version(list.get(), list.get()));
+      }
+      requireEnd(list, "supported_versions");
+      selected = false;
+    } else {
+      if (buffer.remaining() < 2) {
+        throw new InvalidValue("supported_versions is truncated.");
+      }
+      versions.add(new Version(buffer.get(), buffer.get()));
+      selected = true;
+    }
+    requireEnd(buffer, "supported_versions");
+    this.versions = Collections.unmodifiableList(versions);
+  }
+
+  /**
+   * @return the versions offered, or the one version chosen by a server.
+   */
+  public List<Version> getVersions() {
+    return versions;
+  }
+
+  /**
+   * @return the version a server chose, or null if this extension is a client's offer.
+   */
+  public Version getSelectedVersion() {
+    return selected ? versions.get(0) : null;
+  }
+
+  @Override
+  String describe() {
+    return (selected ? "selected " : "") + versions.stream().map(Version::toString).collect(Collectors.joining(", "));
+  }
+}
@@ -4,37 +4,31 @@ import co.elastic.tealess.io.BufferUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.ByteArrayInputStream;
 import java.nio.ByteBuffer;
-import java.security.cert.Certificate;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 
 public class TLSHandshake implements TLSMessage {
   private static final Logger logger = LogManager.getLogger();
-  private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0).asReadOnlyBuffer();
 
   public static TLSHandshake parse(ByteBuffer buffer) throws InvalidValue {
     HandshakeType handshakeType = HandshakeType.forValue(buffer.get());
     int length = BufferUtil.readUInt24(buffer);
-
-    // XXX: Assert that we have enough data in the buffer?
+    if (length > buffer.remaining()) {
+      throw new InvalidValue(handshakeType + " length " + length + " exceeds the " + buffer.remaining() + " bytes available.");
+    }
 
     switch (handshakeType) {
       case ClientHello:
-        return parseClientHello(buffer, length);
+        return new ClientHello(body(buffer, length));
       case ServerHello:
-        return parseServerHello(buffer, length);
+        return new ServerHello(body(buffer, length));
+      case EncryptedExtensions:
+        return new EncryptedExtensions(body(buffer, length));
       case Certificate:
-        return parseCertificate(buffer, length);
+        return new CertificateMessage(body(buffer, length));
       case CertificateRequest:
-        return parseCertificateRequest(buffer, length);
+        return new CertificateRequestMessage(body(buffer, length));
       case ServerHelloDone:
         return parseServerHelloDone(buffer, length);
       case ServerKeyExchange:
@@ -79,136 +73,59 @@ public class TLSHandshake implements TLSMessage {
     return new ServerHelloDone();
   }
 
-  private static TLSHandshake parseCertificateRequest(ByteBuffer buffer, int length) {
-
-    int typesLength = BufferUtil.readUInt8(buffer);
-    List<ClientCertificateType> certificateTypes = new LinkedList<>();
-    for (int i = 0; i < typesLength; i++) {
-      try {
-        certificateTypes.add(ClientCertificateType.forValue(buffer.get()));
-      } catch (InvalidValue invalidValue) {
-        invalidValue.printStackTrace();
-        return null;
-      }
-    }
-
-    byte[] signatureAndHashAlgorithm = BufferUtil.readOpaque16(buffer);
-
-    List<byte[]> certificateAuthorities = new LinkedList<>();
-
-    int certificateAuthoritiesLength = BufferUtil.readUInt16(buffer);
-    while (certificateAuthoritiesLength > 0) {
-      final byte[] distinguishedName = BufferUtil.readOpaque16(buffer);
-      certificateAuthorities.add(distinguishedName);
-      certificateAuthoritiesLength -= distinguishedName.length + 3;
-    }
-
-    return new CertificateRequestMessage(certificateTypes, certificateAuthorities);
+  /**
+   * Consume the next length bytes of buffer, returning them as a read-only view for a message to decode lazily.
+   */
+  private static ByteBuffer body(ByteBuffer buffer, int length) {
+    ByteBuffer body = BufferUtil.slice(buffer, buffer.position(), length);
+    buffer.position(buffer.position() + length);
+    return body;
   }
 
-  private static TLSHandshake parseCertificate(ByteBuffer buffer, int length) {
-    CertificateFactory certificateFactory;
-    try {
-      certificateFactory = CertificateFactory.getInstance("X.509");
-    } catch (CertificateException e) {
-      e.printStackTrace();
-      return null;
+  /**
+   * Check that a vector with a lengthBytes-sized length prefix at offset fits within body.
+   *
+   * @return the offset just past the end of the vector.
+   */
+  static int skipVector(ByteBuffer body, int offset, int lengthBytes, String name) throws InvalidValue {
+    if (offset + lengthBytes > body.limit()) {
+      throw new InvalidValue("Message is truncated before the " + name + " length.");
     }
-
-    //       opaque ASN.1Cert<1..2^24-1>;
-    List<Certificate> chain = new LinkedList<>();
-
-    int certificatesLength = BufferUtil.readUInt24(buffer);
-
-    while (certificatesLength > 0) {
-      //       struct {
-      //         ASN.1Cert certificate_list<0..2^24-1>;
-      //       } Certificate;
-      byte[] certificateEntry = BufferUtil.readOpaque24(buffer);
-      certificatesLength -= certificateEntry.length + 3;
-
-      try {
-        chain.add(certificateFactory.generateCertificate(new ByteArrayInputStream(certificateEntry)));
-      } catch (CertificateException e) {
-        e.printStackTrace();
-        return null;
-      }
+    int length = vectorLength(body, offset, lengthBytes);
+    int end = offset + lengthBytes + length;
+    if (end > body.limit()) {
+      throw new InvalidValue("The " + name + " length " + length + " exceeds the message.");
     }
-
-    return new CertificateMessage(chain);
+    return end;
   }
 
-  private static TLSHandshake parseServerHello(ByteBuffer buffer, int length) {
-    Version version = new Version(buffer.get(), buffer.get());
-    Random random = Random.parse(buffer);
-    byte[] session = getSessionID(buffer);
-
-    CipherSuite cipherSuite;
-    try {
-      cipherSuite = CipherSuite.forValue(buffer.get(), buffer.get());
-    } catch (InvalidValue invalidValue) {
-      invalidValue.printStackTrace();
-      return null;
+  /**
+   * @return a read-only view of the contents of the vector at offset, or an empty buffer if offset is at the end of
+   * body (vectors such as extensions may be omitted entirely).
+   */
+  static ByteBuffer vectorView(ByteBuffer body, int offset, int lengthBytes) {
+    if (offset >= body.limit()) {
+      return EMPTY_BUFFER.duplicate();
     }
-
-    byte compressionMethod = buffer.get();
-
-    byte[] extensionData = getExtensions(buffer);
-
-    return new ServerHello(version, random, session, cipherSuite, compressionMethod, extensionData);
+    return BufferUtil.slice(body, offset + lengthBytes, vectorLength(body, offset, lengthBytes));
   }
 
-  private static TLSHandshake parseClientHello(ByteBuffer buffer, int length) {
-    Version version = new Version(buffer.get(), buffer.get());
-
-    // Random...
-    Random random = Random.parse(buffer);
-
-    byte[] session = getSessionID(buffer);
-
-    int cipherSuitesLength = BufferUtil.readUInt16(buffer);
-    int numCipherSuites = cipherSuitesLength / 2; // 2 bytes per cipher suite
-    List<CipherSuite> cipherSuites = new ArrayList<>(numCipherSuites);
-    // XXX: Parse the cipher suites list.)
-    for (int i = 0; i < numCipherSuites; i++) {
-      try {
-        CipherSuite cipherSuite = CipherSuite.forValue(buffer.get(), buffer.get());
-        cipherSuites.add(cipherSuite);
-      } catch (InvalidValue invalidValue) {
-        invalidValue.printStackTrace();
-        return null;
-      }
+  private static int vectorLength(ByteBuffer body, int offset, int lengthBytes) {
+    switch (lengthBytes) {
+      case 1:
+        return BufferUtil.getUInt8(body, offset);
+      case 2:
+        return BufferUtil.getUInt16(body, offset);
+      default:
+        return BufferUtil.getUInt24(body, offset);
     }
-
-    int compressionMethodsLength = BufferUtil.readUInt8(buffer);
-    // XXX: Parse the compression methods list
-    List<Byte> compressionMethods = IntStream.range(0, compressionMethodsLength).boxed().map(i -> buffer.get()).collect(Collectors.toList());
-
-    byte[] extensionData = getExtensions(buffer);
-
-    return new ClientHello(version, random, session, cipherSuites, compressionMethods, extensionData);
   }
 
-  private static byte[] getSessionID(ByteBuffer buffer) {
-    int sessionLength = buffer.get();
-    byte[] session = new byte[sessionLength];
-    buffer.get(session);
-    return session;
-  }
-
-  private static byte[] getExtensions(ByteBuffer buffer) {
-    /* From RFC 5246 section 7.4.1.2:
-     *   > The presence of extensions can be detected by determining whether there
-     *   > are bytes following the compression_methods at the end of the ClientHello.
-     */
-    int extensionsLength = 0;
-
-    // Per RFC, older clients may not support extensions and thus won't send any.
-    if (buffer.hasRemaining()) {
-      // RFC 5246 A.4.1 -- Extension extensions<0..2^16-1>
-      return BufferUtil.readOpaque16(buffer);
-    }
-    return EMPTY_BYTE_ARRAY;
+  static byte[] vectorBytes(ByteBuffer body, int offset, int lengthBytes) {
+    ByteBuffer view = vectorView(body, offset, lengthBytes);
+    byte[] bytes = new byte[view.remaining()];
+    view.get(bytes);
+    return bytes;
   }
 
   public String toString() {
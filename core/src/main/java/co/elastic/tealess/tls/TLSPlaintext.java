@@ -36,6 +36,13 @@ public class TLSPlaintext implements TLSMessage {
     return new TLSPlaintext(contentType, version, length, payload);
   }
 
+  /**
+   * A record seen only by its header, such as one whose contents are encrypted. Its payload is null.
+   */
+  static TLSPlaintext header(ContentType contentType, Version version, int length) {
+    return new TLSPlaintext(contentType, version, length, null);
+  }
+
   public String toString() {
     return "TLSPlaintext[" + contentType + ", " + version + ", length:" + length + "]";
   }
@@ -44,6 +51,9 @@ public class TLSPlaintext implements TLSMessage {
     return contentType;
   }
 
+  /**
+   * @return the record contents, or null if this record was described only by its header.
+   */
   public ByteBuffer getPayload() {
     return payload;
   }
@@ -0,0 +1,239 @@
+package co.elastic.tealess.tls;
+
+import co.elastic.tealess.io.BufferUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * A push-based decoder for one direction of a TLS connection.
+ * <p>
+ * Bytes may be fed in chunks of any size, split anywhere. Records are tracked as they arrive and handshake messages are
+ * reassembled across records, so a message is emitted as soon as its last byte has been fed.
+ * <p>
+ * Emitted messages are:
+ * <ul>
+ * <li>{@link TLSHandshake} for each handshake message that could be parsed,</li>
+ * <li>{@link Alert} for each plaintext alert,</li>
+ * <li>{@link TLSPlaintext}, without a payload, for ChangeCipherSpec records and for records whose contents are
+ * encrypted.</li>
+ * </ul>
+ * Records following a ChangeCipherSpec are encrypted and are reported only as {@link TLSPlaintext}. In TLS 1.3,
+ * everything after the ServerHello is encrypted instead, and a ChangeCipherSpec is only sent for the benefit of
+ * middleboxes; see {@link #negotiated(Version)}.
+ * <p>
+ * A handshake message that arrives within a single fed chunk is decoded in place, so the emitted message is a view over
+ * that chunk and is only valid while the chunk's contents are unchanged. Messages spanning chunks are copied.
+ */
+public class TLSStreamDecoder {
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final int recordHeaderLength = 5;
+  private static final int handshakeHeaderLength = 4;
+
+  // RFC 5246 6.2.3: TLSCiphertext may be up to 2^14 + 2048 bytes.
+  private static final int maxRecordLength = (1 << 14) + 2048;
+  // Handshake lengths are 24 bits on the wire. Real messages, even long certificate chains, are far smaller: OpenSSL
+  // accepts a certificate list of at most 100 KiB, and the JDK 32 KiB by default.
+  private static final int maxHandshakeLength = 1 << 17;
+
+  private final Consumer<TLSMessage> listener;
+
+  private final ByteBuffer recordHeader = ByteBuffer.allocate(recordHeaderLength);
+  private ContentType contentType;
+  private Version version;
+  private int recordLength;
+  private int recordRemaining = 0;
+
+  private final ByteBuffer handshakeHeader = ByteBuffer.allocate(handshakeHeaderLength);
+  private ByteBuffer handshakeMessage;
+
+  private final ByteBuffer alert = ByteBuffer.allocate(2);
+
+  private boolean encrypted = false;
+  private boolean tls13 = false;
+  private InvalidValue failure;
+
+  public TLSStreamDecoder(Consumer<TLSMessage> listener) {
+    this.listener = listener;
+  }
+
+  public void feed(byte[] b, int off, int len) throws InvalidValue {
+    feed(ByteBuffer.wrap(b, off, len));
+  }
+
+  /**
+   * Decode all remaining bytes of the given buffer, advancing its position to the limit.
+   *
+   * @throws InvalidValue if the stream is not TLS. Once this happens, all later calls throw the same exception.
+   */
+  public void feed(ByteBuffer chunk) throws InvalidValue {
+    if (failure != null) {
+      chunk.position(chunk.limit());
+      throw failure;
+    }
+
+    try {
+      while (chunk.hasRemaining()) {
+        if (recordRemaining == 0) {
+          readRecordHeader(chunk);
+        } else {
+          readRecordPayload(chunk);
+        }
+      }
+    } catch (InvalidValue e) {
+      failure = e;
+      chunk.position(chunk.limit());
+      throw e;
+    }
+  }
+
+  /**
+   * Tell this decoder the version the connection negotiated, as learned from the ServerHello in the other direction. A
+   * decoder of a server's bytes learns it by itself.
+   * <p>
+   * This matters for a TLS 1.3 client, whose ChangeCipherSpec does not start encryption: after a HelloRetryRequest, a
+   * second plaintext ClientHello follows it.
+   */
+  public void negotiated(Version version) {
+    tls13 = Version.TLS1_3.equals(version);
+  }
+
+  /**
+   * @return true if all bytes fed so far form complete records.
+   */
+  public boolean isAtRecordBoundary() {
+    return recordRemaining == 0 && recordHeader.position() == 0;
+  }
+
+  private void readRecordHeader(ByteBuffer chunk) throws InvalidValue {
+    transfer(chunk, recordHeader);
+    if (recordHeader.hasRemaining()) {
+      return;
+    }
+
+    recordHeader.flip();
+    contentType = ContentType.forValue(recordHeader.get());
+    version = new Version(recordHeader.get(), recordHeader.get());
+    recordLength = recordHeader.getShort() & 0xffff;
+    recordHeader.clear();
+
+    if (recordLength == 0 || recordLength > maxRecordLength) {
+      throw new InvalidValue("TLS record length " + recordLength + " is not valid.");
+    }
+    recordRemaining = recordLength;
+  }
+
+  private void readRecordPayload(ByteBuffer chunk) throws InvalidValue {
+    int length = Math.min(chunk.remaining(), recordRemaining);
+    ByteBuffer fragment = chunk.duplicate();
+    fragment.limit(fragment.position() + length);
+    chunk.position(fragment.limit());
+    recordRemaining -= length;
+
+    if (encrypted) {
+      endOfRecord();
+      return;
+    }
+
+    switch (contentType) {
+      case Handshake:
+        // A TLS 1.3 ServerHello starts encryption with the next record, not this one.
+        readHandshake(fragment);
+        return;
+      case Alert:
+        transfer(fragment, alert);
+        if (!alert.hasRemaining()) {
+          alert.flip();
+          listener.accept(TLSDecoder.decodeAlert(alert));
+          alert.clear();
+        }
+        break;
+      case ChangeCipherSpec:
+        if (recordRemaining == 0) {
+          encrypted = !tls13;
+          listener.accept(TLSPlaintext.header(contentType, version, recordLength));
+        }
+        return;
+      default:
+        break;
+    }
+    endOfRecord();
+  }
+
+  private void endOfRecord() {
+    if (recordRemaining == 0 && (encrypted || contentType == ContentType.ApplicationData)) {
+      listener.accept(TLSPlaintext.header(contentType, version, recordLength));
+    }
+  }
+
+  private void readHandshake(ByteBuffer fragment) throws InvalidValue {
+    while (fragment.hasRemaining()) {
+      if (handshakeMessage == null && handshakeHeader.position() == 0 && fragment.remaining() >= handshakeHeaderLength) {
+        int messageLength = handshakeHeaderLength + BufferUtil.getUInt24(fragment, fragment.position() + 1);
+        if (fragment.remaining() >= messageLength) {
+          // The whole message is here, so decode it in place rather than copying it.
+          ByteBuffer message = BufferUtil.slice(fragment, fragment.position(), messageLength);
+          fragment.position(fragment.position() + messageLength);
+          emitHandshake(message);
+          continue;
+        }
+      }
+
+      if (handshakeMessage == null) {
+        transfer(fragment, handshakeHeader);
+        if (handshakeHeader.hasRemaining()) {
+          return;
+        }
+        handshakeHeader.flip();
+        int bodyLength = BufferUtil.getUInt24(handshakeHeader, 1);
+        if (bodyLength > maxHandshakeLength) {
+          throw new InvalidValue("TLS handshake message length " + bodyLength + " is larger than " + maxHandshakeLength + " bytes.");
+        }
+        // Keep the header with the body because TLSHandshake.parse reads both.
+        handshakeMessage = ByteBuffer.allocate(handshakeHeaderLength + bodyLength);
+        handshakeMessage.put(handshakeHeader);
+        handshakeHeader.clear();
+      }
+
+      transfer(fragment, handshakeMessage);
+      if (!handshakeMessage.hasRemaining()) {
+        handshakeMessage.flip();
+        emitHandshake(handshakeMessage);
+        handshakeMessage = null;
+      }
+    }
+  }
+
+  private void emitHandshake(ByteBuffer message) {
+    TLSHandshake handshake;
+    try {
+      handshake = TLSDecoder.decodeHandshake(message);
+    } catch (InvalidValue | RuntimeException e) {
+      // The message boundaries are known, so a message we cannot parse does not stop the rest of the stream.
+      logger.debug("Skipping handshake message that could not be parsed: {}", e.toString());
+      return;
+    }
+    if (handshake == null) {
+      return;
+    }
+    if (handshake instanceof ServerHello) {
+      ServerHello hello = (ServerHello) handshake;
+      if (!hello.isHelloRetryRequest() && Version.TLS1_3.equals(hello.getNegotiatedVersion())) {
+        tls13 = true;
+        encrypted = true;
+      }
+    }
+    listener.accept(handshake);
+  }
+
+  private static void transfer(ByteBuffer source, ByteBuffer destination) {
+    int length = Math.min(source.remaining(), destination.remaining());
+    ByteBuffer slice = source.duplicate();
+    slice.limit(slice.position() + length);
+    destination.put(slice);
+    source.position(source.position() + length);
+  }
+}
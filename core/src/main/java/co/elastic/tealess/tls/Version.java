@@ -1,9 +1,17 @@
 package co.elastic.tealess.tls;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by jls on 4/30/2017.
  */
 public class Version {
+  public static final Version SSL3_0 = new Version((byte) 3, (byte) 0);
+  public static final Version TLS1_0 = new Version((byte) 3, (byte) 1);
+  public static final Version TLS1_1 = new Version((byte) 3, (byte) 2);
+  public static final Version TLS1_2 = new Version((byte) 3, (byte) 3);
+  public static final Version TLS1_3 = new Version((byte) 3, (byte) 4);
+
   private final byte major;
   private final byte minor;
 
@@ -26,11 +34,44 @@ public class Version {
             return "TLS 1.1";
           case 3:
             return "TLS 1.2";
+          case 4:
+            return "TLS 1.3";
         }
+        return "UNKNOWN_VERSION(" + major + "," + minor + ")";
+      case 0x7f:
+        // Implementations of the TLS 1.3 drafts sent 0x7f and the draft number.
+        return "TLS 1.3 draft " + (minor & 0xff);
       default:
         return "UNKNOWN_VERSION(" + major + "," + minor + ")";
     }
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Version)) {
+      return false;
+    }
+    Version other = (Version) o;
+    return major == other.major && minor == other.minor;
+  }
+
+  @Override
+  public int hashCode() {
+    return value();
+  }
+
+  /**
+   * @return the version as its two-byte wire value, so versions can be ordered.
+   */
+  int value() {
+    return ((major & 0xff) << 8) | (minor & 0xff);
+  }
+
+  void put(ByteBuffer buffer) {
+    buffer.put(major).put(minor);
+  }
 
 }
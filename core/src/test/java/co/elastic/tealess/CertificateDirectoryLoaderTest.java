@@ -0,0 +1,78 @@
+package co.elastic.tealess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CertificateDirectoryLoaderTest {
+  private Path directory;
+
+  private static byte[] resource(String name) throws Exception {
+    return Files.readAllBytes(Paths.get(CertificateDirectoryLoaderTest.class.getClassLoader().getResource(name).toURI()));
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    TrustMaterialCache.clear();
+    directory = Files.createTempDirectory("tealess-cas");
+    byte[] anchors = resource("trust-anchors/anchors.pem");
+    Files.write(directory.resolve("anchors.pem"), anchors);
+    Files.write(directory.resolve("intermediate.pem"), resource("trust-anchors/intermediate.pem"));
+    // Like c_rehash output: a hash-named link to a file already in the directory.
+    Files.createSymbolicLink(directory.resolve("a1b2c3d4.0"), directory.resolve("intermediate.pem"));
+    Files.createDirectory(directory.resolve("private"));
+
+    // A bundle large enough to be memory-mapped, repeating certificates found elsewhere.
+    ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+    while (bundle.size() < 128 * 1024) {
+      bundle.write(anchors);
+    }
+    Files.write(directory.resolve("bundle.pem"), bundle.toByteArray());
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  void testLinksAndDuplicatesAreLoadedOnce() throws Exception {
+    CertificateDirectoryLoader.Result result = CertificateDirectoryLoader.load(directory);
+    assertEquals(3, result.getFiles());
+    assertEquals(3, result.getCertificates().size());
+    int bundled = (int) Math.ceil(128 * 1024.0 / resource("trust-anchors/anchors.pem").length) * 2;
+    assertEquals(bundled, result.getDuplicates());
+    assertTrue(result.getElapsed(TimeUnit.NANOSECONDS) > 0);
+  }
+
+  @Test
+  void testKeyStoreBuilderLoadsDirectory() throws Exception {
+    KeyStoreBuilder builder = new KeyStoreBuilder();
+    builder.empty();
+    builder.addCAPath(directory);
+    KeyStore keyStore = builder.buildKeyStore();
+    // The two anchors share a subject name, and so an alias.
+    assertEquals(2, keyStore.size());
+  }
+
+  @Test
+  void testInvalidFileFails() throws Exception {
+    Files.write(directory.resolve("broken.pem"), "-----BEGIN CERTIFICATE-----\nnope\n-----END CERTIFICATE-----\n".getBytes());
+    CertificateException e = assertThrows(CertificateException.class, () -> CertificateDirectoryLoader.load(directory));
+    assertTrue(e.getMessage().contains("broken.pem"));
+  }
+}
@@ -0,0 +1,88 @@
+package co.elastic.tealess;
+
+import co.elastic.tealess.tls.CipherSuite;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CipherSuiteScannerTest {
+  private TestTLSServer server;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    server = new TestTLSServer();
+    server.getSocket().setEnabledProtocols(new String[]{"TLSv1.2"});
+    server.getSocket().setEnabledCipherSuites(new String[]{
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+            "TLS_RSA_WITH_AES_128_CBC_SHA"
+    });
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Test
+  void findsAcceptedProtocolsAndSuites() throws Exception {
+    CipherSuiteScanner scanner = new CipherSuiteScanner();
+    ServerCapabilities capabilities = scanner.scan(new InetSocketAddress("localhost", server.getPort()), "localhost");
+
+    assertTrue(capabilities.isComplete(), () -> "Probe failed: " + capabilities.getException());
+    assertEquals(Collections.singletonList("TLSv1.2"), capabilities.getProtocols());
+    assertEquals(Arrays.asList(
+            CipherSuite.TLS_RSA_WITH_AES_128_CBC_SHA,
+            CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256,
+            CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384
+    ), capabilities.getCipherSuites("TLSv1.2"));
+    assertTrue(capabilities.getCipherSuites("TLSv1").isEmpty());
+  }
+
+  @Test
+  void findsTLS13Suites() throws Exception {
+    server.getSocket().setEnabledProtocols(new String[]{"TLSv1.2", "TLSv1.3"});
+    server.getSocket().setEnabledCipherSuites(new String[]{"TLS_AES_128_GCM_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"});
+    CipherSuiteScanner scanner = new CipherSuiteScanner();
+    ServerCapabilities capabilities = scanner.scan(new InetSocketAddress("localhost", server.getPort()), "localhost");
+
+    assertTrue(capabilities.isComplete(), () -> "Probe failed: " + capabilities.getException());
+    assertEquals(Arrays.asList("TLSv1.2", "TLSv1.3"), capabilities.getProtocols());
+    assertEquals(Collections.singletonList(CipherSuite.TLS_AES_128_GCM_SHA256), capabilities.getCipherSuites("TLSv1.3"));
+    assertEquals(Collections.singletonList(CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256),
+            capabilities.getCipherSuites("TLSv1.2"));
+  }
+
+  @Test
+  void prunesRejectedKeyExchangeFamilies() throws Exception {
+    CipherSuiteScanner scanner = new CipherSuiteScanner();
+    ServerCapabilities capabilities = scanner.scan(new InetSocketAddress("localhost", server.getPort()), "localhost");
+
+    // ECDHE_ECDSA, DHE_RSA and others are rejected as a whole.
+    assertTrue(capabilities.getPrunedFamilies() > 0);
+    int suites = CipherSuite.values().length;
+    assertTrue(capabilities.getProbes() < suites, () -> capabilities.getProbes() + " probes for " + suites + " suites");
+  }
+
+  @Test
+  void reportsUnansweredProbes() throws Exception {
+    int port;
+    try (ServerSocket closed = new ServerSocket(0)) {
+      port = closed.getLocalPort();
+    }
+    CipherSuiteScanner scanner = new CipherSuiteScanner();
+    ServerCapabilities capabilities = scanner.scan(new InetSocketAddress("localhost", port), "localhost");
+
+    assertFalse(capabilities.isComplete());
+    assertTrue(capabilities.getProtocols().isEmpty());
+    assertTrue(capabilities.getException() instanceof java.net.ConnectException, () -> String.valueOf(capabilities.getException()));
+  }
+}
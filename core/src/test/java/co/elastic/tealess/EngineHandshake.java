@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import java.nio.ByteBuffer;
+
+/**
+ * Drives a handshake between two SSLEngines entirely in memory, for the engine tests and benchmarks.
+ */
+public final class EngineHandshake {
+  private EngineHandshake() {
+  }
+
+  /**
+   * Run a complete handshake between client and server.
+   *
+   * @throws IllegalStateException if the handshake does not complete
+   */
+  public static void run(SSLEngine client, SSLEngine server) throws Exception {
+    ByteBuffer clientToServer = ByteBuffer.allocate(client.getSession().getPacketBufferSize() * 4);
+    ByteBuffer serverToClient = ByteBuffer.allocate(server.getSession().getPacketBufferSize() * 4);
+    ByteBuffer clientApplication = ByteBuffer.allocate(client.getSession().getApplicationBufferSize());
+    ByteBuffer serverApplication = ByteBuffer.allocate(server.getSession().getApplicationBufferSize());
+
+    client.beginHandshake();
+    server.beginHandshake();
+    for (int i = 0; i < 100 && (handshaking(client) || handshaking(server)); i++) {
+      step(client, clientToServer, serverToClient, clientApplication);
+      step(server, serverToClient, clientToServer, serverApplication);
+    }
+    if (handshaking(client) || handshaking(server)) {
+      throw new IllegalStateException("Handshake did not complete");
+    }
+  }
+
+  private static boolean handshaking(SSLEngine engine) {
+    SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+    return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && status != SSLEngineResult.HandshakeStatus.FINISHED;
+  }
+
+  /**
+   * Advance one side of the handshake until it needs more input from the peer. `out` holds bytes written to the peer,
+   * `in` holds bytes from the peer.
+   */
+  public static void step(SSLEngine engine, ByteBuffer out, ByteBuffer in, ByteBuffer application) throws Exception {
+    SSLEngineResult.HandshakeStatus status;
+    while ((status = engine.getHandshakeStatus()) != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+      if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+        if (engine.wrap(ByteBuffer.allocate(0), out).getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+          // Let the peer drain what has been written so far.
+          return;
+        }
+      } else if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+          task.run();
+        }
+      } else if (status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+        in.flip();
+        SSLEngineResult result;
+        try {
+          application.clear();
+          result = engine.unwrap(in, application);
+        } finally {
+          in.compact();
+        }
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+          return;
+        }
+      } else {
+        return;
+      }
+    }
+  }
+}
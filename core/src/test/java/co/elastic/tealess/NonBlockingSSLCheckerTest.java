@@ -0,0 +1,125 @@
+package co.elastic.tealess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class NonBlockingSSLCheckerTest {
+  private TestTLSServer server;
+  private KeyStore keyStore;
+
+  @BeforeEach
+  void startServer() throws Exception {
+    server = new TestTLSServer();
+    keyStore = server.getKeyStore();
+  }
+
+  @AfterEach
+  void stopServer() throws IOException {
+    server.close();
+  }
+
+  private NonBlockingSSLChecker checker(KeyStore trust) throws Exception {
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(trust);
+    return new NonBlockingSSLChecker(cb);
+  }
+
+  @Test
+  void trustedServer() throws Exception {
+    try (NonBlockingSSLChecker checker = checker(keyStore)) {
+      SSLReport report = checker.check(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), "localhost").join();
+
+      assertThat(report.getException() == null ? null : report.getException().toString(), report.success(), is(true));
+      assertThat(report.getSSLSession(), is(notNullValue()));
+      assertThat(report.getPeerCertificateDetails(), is(notNullValue()));
+    }
+  }
+
+  @Test
+  void untrustedServer() throws Exception {
+    // The system default trust store does not know about our self-signed certificate.
+    KeyStore systemDefault = new KeyStoreBuilder().buildKeyStore();
+
+    try (NonBlockingSSLChecker checker = checker(systemDefault)) {
+      SSLReport report = checker.check(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), "localhost").join();
+
+      assertThat(report.success(), is(false));
+      assertThat(report.getPeerCertificateDetails().getException(), is(notNullValue()));
+    }
+  }
+
+  @Test
+  void connectionRefused() throws Exception {
+    int port;
+    try (ServerSocket unused = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      port = unused.getLocalPort();
+    }
+
+    try (NonBlockingSSLChecker checker = checker(keyStore)) {
+      SSLReport report = checker.check(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), "localhost").join();
+
+      assertThat(report.success(), is(false));
+      assertThat(report.getException(), instanceOf(ConnectException.class));
+    }
+  }
+
+  @Test
+  void shorterTimeoutExpiresFirst() throws Exception {
+    // Accepts connections, but never answers a ClientHello.
+    try (ServerSocket silent = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+         NonBlockingSSLChecker checker = checker(keyStore)) {
+      InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), silent.getLocalPort());
+      checker.setTimeout(60000);
+      CompletableFuture<SSLReport> slow = checker.check(address, "localhost");
+      checker.setTimeout(100);
+      SSLReport report = checker.check(address, "localhost").get(10, TimeUnit.SECONDS);
+
+      assertThat(report.getException(), instanceOf(SocketTimeoutException.class));
+      assertThat(slow.isDone(), is(false));
+    }
+  }
+
+  @Test
+  void checksRacingCloseAllComplete() throws Exception {
+    int port;
+    try (ServerSocket unused = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      port = unused.getLocalPort();
+    }
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+
+    for (int i = 0; i < 20; i++) {
+      NonBlockingSSLChecker checker = checker(keyStore);
+      List<CompletableFuture<SSLReport>> futures = new ArrayList<>();
+      Thread submitter = new Thread(() -> {
+        for (int j = 0; j < 200; j++) {
+          futures.add(checker.check(address, "localhost"));
+        }
+      });
+      submitter.start();
+      checker.close();
+      submitter.join();
+
+      for (CompletableFuture<SSLReport> future : futures) {
+        assertThat(future.get(10, TimeUnit.SECONDS), is(notNullValue()));
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package co.elastic.tealess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.X509TrustManager;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReloadingTrustMaterialTest {
+  private Path directory;
+  private Path ca;
+  private ReloadingTrustMaterial material;
+
+  private static Path resource(String name) throws Exception {
+    return Paths.get(ReloadingTrustMaterialTest.class.getClassLoader().getResource(name).toURI());
+  }
+
+  private void replace(String resource) throws Exception {
+    // Rotate the way tools do: write elsewhere, then move into place.
+    Path staged = directory.resolve("staged");
+    Files.copy(resource(resource), staged, StandardCopyOption.REPLACE_EXISTING);
+    Files.setLastModifiedTime(staged, FileTime.fromMillis(Files.getLastModifiedTime(ca).toMillis() + 1000));
+    Files.move(staged, ca, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private X509Certificate[] issuers() {
+    return ((X509TrustManager) material.getTrustManager()).getAcceptedIssuers();
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    directory = Files.createTempDirectory("tealess-reload");
+    ca = directory.resolve("ca.pem");
+    Files.copy(resource("trust-anchors/intermediate.pem"), ca);
+
+    KeyStoreBuilder trust = new KeyStoreBuilder();
+    trust.empty();
+    trust.addCAPath(ca);
+    material = new ReloadingTrustMaterial(trust, null);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    material.close();
+    Files.deleteIfExists(directory.resolve("staged"));
+    Files.deleteIfExists(ca);
+    Files.delete(directory);
+  }
+
+  @Test
+  void testReload() throws Exception {
+    assertEquals(1, issuers().length);
+    assertEquals(1, material.getSources().size());
+
+    replace("trust-anchors/anchors.pem");
+    assertTrue(material.reload());
+    // Both anchors have the same subject, and so the same alias.
+    assertEquals(1, issuers().length);
+    assertEquals(issuers()[0].getSubjectX500Principal(), issuers()[0].getIssuerX500Principal());
+  }
+
+  @Test
+  void testFailedReloadKeepsCurrentMaterial() throws Exception {
+    X509Certificate before = issuers()[0];
+    Files.write(ca, "not a certificate".getBytes());
+    Files.setLastModifiedTime(ca, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+    assertThrows(CertificateException.class, () -> material.reload());
+    assertEquals(before, issuers()[0]);
+  }
+
+  @Test
+  void testWatchingSwapsMaterial() throws Exception {
+    X509Certificate before = issuers()[0];
+    material.startWatching();
+    replace("trust-anchors/anchors.pem");
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+    while (issuers()[0].equals(before) && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    assertNotEquals(before, issuers()[0]);
+  }
+}
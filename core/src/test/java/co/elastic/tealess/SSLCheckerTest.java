@@ -0,0 +1,208 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SSLCheckerTest {
+  private TestTLSServer server;
+  private KeyStore keyStore;
+  private volatile boolean invalidateSessions = false;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    server = new TestTLSServer(socket -> {
+      socket.startHandshake();
+      if (invalidateSessions) {
+        socket.getSession().invalidate();
+      }
+    });
+    keyStore = server.getKeyStore();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Test
+  void testReportsPhaseTimings() throws Exception {
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(keyStore);
+    SSLChecker checker = new SSLChecker(cb);
+
+    List<SSLReport> reports = checker.checkAll(new InetSocketAddress("localhost", server.getPort()));
+    assertFalse(reports.isEmpty());
+    SSLReport report = reports.get(0);
+    assertTrue(report.success(), () -> "Check failed: " + report.getException());
+
+    Map<SSLReport.Phase, Long> timings = report.getTimings();
+    for (SSLReport.Phase phase : SSLReport.Phase.values()) {
+      assertTrue(timings.containsKey(phase), "Missing timing for " + phase);
+      assertTrue(timings.get(phase) >= 0, "Negative timing for " + phase);
+    }
+    assertTrue(timings.get(SSLReport.Phase.Handshake) >= timings.get(SSLReport.Phase.CertificateVerification));
+    assertTrue(SSLReportAnalyzer.formatTimings(report).startsWith(" (Resolve "));
+  }
+
+  @Test
+  void testReportsSessionResumption() throws Exception {
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(keyStore);
+    SSLChecker checker = new SSLChecker(cb);
+    checker.setResumptionAttempts(3);
+
+    SSLReport report = checker.check(new InetSocketAddress("localhost", server.getPort()), "localhost");
+    assertTrue(report.success(), () -> "Check failed: " + report.getException());
+    SessionResumption resumption = report.getResumption();
+    assertNotNull(resumption);
+    assertNull(resumption.getException());
+    assertEquals(3, resumption.getAttempts());
+    assertTrue(resumption.isSupported(), resumption::toString);
+    assertTrue(resumption.getResumedHandshake(TimeUnit.NANOSECONDS) >= 0);
+  }
+
+  @Test
+  void testReportsMissingSessionResumption() throws Exception {
+    invalidateSessions = true;
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(keyStore);
+    SSLChecker checker = new SSLChecker(cb);
+    checker.setResumptionAttempts(2);
+
+    SSLReport report = checker.check(new InetSocketAddress("localhost", server.getPort()), "localhost");
+    assertTrue(report.success(), () -> "Check failed: " + report.getException());
+    SessionResumption resumption = report.getResumption();
+    assertEquals(2, resumption.getAttempts());
+    assertEquals(0, resumption.getResumed());
+    assertFalse(resumption.isSupported());
+    assertFalse(resumption.isInconsistent());
+    assertEquals(-1, resumption.getResumedHandshake(TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  void testResumptionIsNotCheckedByDefault() throws Exception {
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(keyStore);
+    SSLReport report = new SSLChecker(cb).check(new InetSocketAddress("localhost", server.getPort()), "localhost");
+    assertTrue(report.success(), () -> "Check failed: " + report.getException());
+    assertNull(report.getResumption());
+  }
+
+  @Test
+  void testFailedConnectHasNoHandshakeTiming() throws Exception {
+    // A bound socket which is not listening refuses connections. Unlike a closed server's port, the client cannot be
+    // given it as its own port, and so connect to itself.
+    try (Socket refusing = new Socket()) {
+      refusing.bind(new InetSocketAddress("127.0.0.1", 0));
+
+      TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+      cb.setTrustStore(keyStore);
+      SSLReport report = new SSLChecker(cb).check(new InetSocketAddress("127.0.0.1", refusing.getLocalPort()), "localhost");
+      assertFalse(report.success());
+      assertTrue(report.getTimings().containsKey(SSLReport.Phase.Connect));
+      assertFalse(report.getTimings().containsKey(SSLReport.Phase.Handshake));
+    }
+  }
+
+  @Test
+  void testCheckAllKeepsEachAddressesCertificateDetails() throws Exception {
+    // Both handshakes must be in flight at once, so each tracker call races the other check's.
+    CyclicBarrier bothConnected = new CyclicBarrier(2);
+    try (TestTLSServer parallel = new TestTLSServer(socket -> {
+      try {
+        bothConnected.await(5, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new IOException("The checks did not run in parallel", e);
+      }
+      socket.startHandshake();
+    })) {
+      TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+      cb.setTrustStore(keyStore);
+      SSLChecker checker = new SSLChecker(cb);
+      InetAddress loopback = InetAddress.getByName("127.0.0.1");
+      checker.setResolver(name -> Arrays.asList(loopback, loopback));
+
+      List<SSLReport> reports = checker.checkAll(new InetSocketAddress("localhost", parallel.getPort()), 2, 10, TimeUnit.SECONDS);
+      assertEquals(2, reports.size());
+      for (SSLReport report : reports) {
+        assertTrue(report.success(), () -> "Check failed: " + report.getException());
+        PeerCertificateDetails details = report.getPeerCertificateDetails();
+        assertNotNull(details);
+        assertEquals(report.getSSLSession().getPeerCertificates()[0], details.getChain()[0]);
+      }
+      assertNotSame(reports.get(0).getPeerCertificateDetails(), reports.get(1).getPeerCertificateDetails());
+    }
+  }
+
+  @Test
+  void testCheckAllReportsTimeoutAtDeadline() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    try (TestTLSServer silent = new TestTLSServer(socket -> {
+      try {
+        // Accept the connection but never answer the ClientHello.
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    })) {
+      TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+      cb.setTrustStore(keyStore);
+      SSLChecker checker = new SSLChecker(cb);
+
+      // The handshake's own read timeout is one second, so a shorter deadline has to be what ends the check.
+      final long start = System.nanoTime();
+      List<SSLReport> reports = checker.checkAll(new InetSocketAddress("127.0.0.1", silent.getPort()), 1, 200, TimeUnit.MILLISECONDS);
+      final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertEquals(1, reports.size());
+      assertFalse(reports.get(0).success());
+      assertTrue(reports.get(0).getException() instanceof TimeoutException, () -> "Unexpected failure: " + reports.get(0).getException());
+      assertTrue(elapsed < 1000, "checkAll returned after " + elapsed + "ms");
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  void testCheckAllRejectsConcurrencyBelowOne() throws Exception {
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(keyStore);
+    SSLChecker checker = new SSLChecker(cb);
+    InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+    assertThrows(IllegalArgumentException.class, () -> checker.checkAll(address, 0, 1, TimeUnit.SECONDS));
+  }
+}
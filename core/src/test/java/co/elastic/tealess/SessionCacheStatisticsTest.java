@@ -0,0 +1,85 @@
+package co.elastic.tealess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionCacheStatisticsTest {
+  private TestTLSServer first;
+  private TestTLSServer second;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    first = new TestTLSServer();
+    second = new TestTLSServer();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    first.close();
+    second.close();
+  }
+
+  private SSLContext build(int cacheSize) throws Exception {
+    TealessSSLContextBuilder cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(first.getKeyStore());
+    cb.setTracker((chain, authType, exception) -> { });
+    cb.setSessionCacheSize(cacheSize);
+    return cb.build();
+  }
+
+  private static void connect(SSLContext context, TestTLSServer server) throws IOException {
+    try (SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket("localhost", server.getPort())) {
+      socket.startHandshake();
+      // TLS 1.3 session tickets arrive after the handshake, and are only stored once the client reads.
+      socket.setSoTimeout(200);
+      try {
+        socket.getInputStream().read();
+      } catch (IOException e) {
+        // The server has nothing to send.
+      }
+    }
+  }
+
+  private static SessionCacheStatistics statistics(SSLContext context) {
+    return ((TealessSSLSessionContext) context.getClientSessionContext()).getStatistics();
+  }
+
+  @Test
+  void countsResumedHandshakesAsHits() throws Exception {
+    SSLContext context = build(0);
+    for (int i = 0; i < 3; i++) {
+      connect(context, first);
+    }
+
+    SessionCacheStatistics statistics = statistics(context);
+    assertEquals(1, statistics.getMisses(), statistics::toString);
+    assertEquals(2, statistics.getHits(), statistics::toString);
+    assertEquals(0, statistics.getEvictions());
+    assertEquals(2.0 / 3, statistics.getHitRatio(), 0.001);
+  }
+
+  @Test
+  void countsEvictionsFromAFullCache() throws Exception {
+    SSLContext context = build(1);
+    connect(context, first);
+    // Only one session fits, so this pushes out the session with the first server.
+    connect(context, second);
+    connect(context, first);
+
+    SessionCacheStatistics statistics = statistics(context);
+    assertEquals(3, statistics.getMisses(), statistics::toString);
+    assertEquals(0, statistics.getHits(), statistics::toString);
+    assertEquals(1, statistics.getEvictions(), statistics::toString);
+    assertEquals(0, statistics.getExpirations());
+
+    statistics.reset();
+    assertEquals(0, statistics.getMisses());
+  }
+}
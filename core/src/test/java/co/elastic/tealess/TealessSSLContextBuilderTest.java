@@ -4,12 +4,15 @@ import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.Test;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
@@ -53,4 +56,20 @@ class TealessSSLContextBuilderTest {
   void setProtocolsWithInvalidProtocol() {
     assertThrows(IllegalArgumentException.class, () -> builder.setProtocols(new String[]{"SSL100"}));
   }
-}
\ No newline at end of file
+
+  @Test
+  void sessionCacheSettingsApplyToClientSessions() throws Exception {
+    builder.setSessionCacheSize(10);
+    builder.setSessionTimeout(60);
+    SSLSessionContext sessions = builder.build().getClientSessionContext();
+    assertTrue(sessions instanceof TealessSSLSessionContext);
+    assertEquals(10, sessions.getSessionCacheSize());
+    assertEquals(60, sessions.getSessionTimeout());
+  }
+
+  @Test
+  void sessionCacheSettingsMustNotBeNegative() {
+    assertThrows(IllegalArgumentException.class, () -> builder.setSessionCacheSize(-1));
+    assertThrows(IllegalArgumentException.class, () -> builder.setSessionTimeout(-1));
+  }
+}
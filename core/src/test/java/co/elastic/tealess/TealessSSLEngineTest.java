@@ -0,0 +1,165 @@
+package co.elastic.tealess;
+
+import co.elastic.tealess.metrics.TLSMetrics;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TealessSSLEngineTest {
+  private static final char[] passphrase = "password".toCharArray();
+
+  private TealessSSLContextBuilder cb;
+  private SSLEngine server;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    String keystorePath = TealessSSLEngineTest.class.getClassLoader().getResource("keystore.jks").getPath();
+    KeyStoreBuilder keys = new KeyStoreBuilder();
+    keys.useKeyStore(new File(keystorePath), passphrase);
+    KeyStore keyStore = keys.buildKeyStore();
+
+    SSLContext serverContext = SSLContext.getInstance("TLS");
+    serverContext.init(keys.buildKeyManagerFactory().getKeyManagers(), null, null);
+    server = serverContext.createSSLEngine();
+    server.setUseClientMode(false);
+
+    cb = new TealessSSLContextBuilder();
+    cb.setTrustStore(keyStore);
+    cb.setTracker((chain, authType, exception) -> { });
+  }
+
+  private TealessSSLEngine client() throws Exception {
+    TealessSSLEngine client = (TealessSSLEngine) cb.build().createSSLEngine("localhost", 443);
+    client.setUseClientMode(true);
+    return client;
+  }
+
+  @Test
+  void capturingStopsAfterHandshake() throws Exception {
+    TealessSSLEngine client = client();
+    assertTrue(client.isCapturing());
+
+    handshake(client);
+    assertFalse(client.isCapturing());
+
+    // Application data still flows once the engine is passing straight through.
+    send(client, "hello");
+  }
+
+  @Test
+  void instrumentationSeesHandshakeAndApplicationData() throws Exception {
+    AtomicInteger input = new AtomicInteger();
+    AtomicInteger output = new AtomicInteger();
+    AtomicInteger completed = new AtomicInteger();
+    cb.setInstrumentation(new TLSInstrumentation() {
+      @Override
+      public void input(SSLEngine engine, ByteBuffer data, int offset, int length) {
+        input.addAndGet(length);
+      }
+
+      @Override
+      public void output(SSLEngine engine, ByteBuffer data, int offset, int length) {
+        output.addAndGet(length);
+      }
+
+      @Override
+      public void handshakeCompleted(SSLEngine engine, SSLSession session) {
+        completed.incrementAndGet();
+      }
+    });
+    TealessSSLEngine client = client();
+
+    handshake(client);
+    assertEquals(1, completed.get());
+    assertTrue(input.get() > 0);
+    int handshakeOutput = output.get();
+    assertTrue(handshakeOutput > 0);
+
+    // Application data is still reported after the handshake, even though capture has stopped.
+    assertFalse(client.isCapturing());
+    send(client, "hello");
+    assertTrue(output.get() > handshakeOutput);
+  }
+
+  @Test
+  void metricsSeeHandshakeAndCapture() throws Exception {
+    TLSMetrics metrics = new TLSMetrics();
+    cb.setHandshakeListener(metrics);
+    TealessSSLEngine client = client();
+
+    handshake(client);
+    assertEquals(1, metrics.getHandshakesCompleted());
+    assertEquals(0, metrics.getHandshakesFailed());
+    assertTrue(metrics.getPeers().contains("localhost:443"));
+    assertEquals(1.0, (double) metrics.handshakeLatency("localhost:443").get("count"));
+    assertTrue(metrics.getBytesCaptured() > 0);
+    assertEquals(1, metrics.getCertificateVerifications());
+    assertEquals(0, metrics.getCertificateVerificationFailures());
+  }
+
+  @Test
+  void flightRecorderSeesHandshake() throws Exception {
+    Path file = Files.createTempFile("tealess", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("co.elastic.tealess.Handshake");
+      recording.enable("co.elastic.tealess.CertificateVerification");
+      recording.start();
+      handshake(client());
+      recording.stop();
+      recording.dump(file);
+
+      List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+      RecordedEvent handshake = events.stream()
+              .filter(e -> e.getEventType().getName().equals("co.elastic.tealess.Handshake"))
+              .findFirst().orElseThrow(() -> new AssertionError("No handshake event in " + events));
+      assertTrue(handshake.getBoolean("success"));
+      assertEquals("localhost:443", handshake.getString("peer"));
+      assertNotNull(handshake.getString("cipherSuite"));
+      assertFalse(handshake.getDuration().isNegative());
+
+      RecordedEvent verification = events.stream()
+              .filter(e -> e.getEventType().getName().equals("co.elastic.tealess.CertificateVerification"))
+              .findFirst().orElseThrow(() -> new AssertionError("No verification event in " + events));
+      assertTrue(verification.getBoolean("trusted"));
+      assertTrue(verification.getInt("chainLength") > 0);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private void handshake(SSLEngine client) throws Exception {
+    EngineHandshake.run(client, server);
+  }
+
+  /**
+   * Send text from client to server and check it arrives.
+   */
+  private void send(SSLEngine client, String text) throws Exception {
+    ByteBuffer clientToServer = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+    ByteBuffer serverApplication = ByteBuffer.allocate(server.getSession().getApplicationBufferSize());
+
+    client.wrap(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), clientToServer);
+    clientToServer.flip();
+    while (clientToServer.hasRemaining()) {
+      server.unwrap(clientToServer, serverApplication);
+    }
+    serverApplication.flip();
+    assertEquals(text, StandardCharsets.UTF_8.decode(serverApplication).toString());
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package co.elastic.tealess;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * A TLS server on a local port, for tests, serving the self-signed certificate in keystore.jks.
+ *
+ * Each connection is handled on its own daemon thread. Clients can trust the server with {@link #getKeyStore()}.
+ */
+public class TestTLSServer implements Closeable {
+  private static final char[] passphrase = "password".toCharArray();
+
+  private final KeyStore keyStore;
+  private final SSLServerSocket server;
+  private final Handler handler;
+
+  /**
+   * Handles one accepted connection. The socket is closed once this returns.
+   */
+  public interface Handler {
+    void handle(SSLSocket socket) throws IOException;
+  }
+
+  /**
+   * Start a server that completes each handshake and then hangs up.
+   */
+  public TestTLSServer() throws IOException, GeneralSecurityException {
+    this(SSLSocket::startHandshake);
+  }
+
+  public TestTLSServer(Handler handler) throws IOException, GeneralSecurityException {
+    this.handler = handler;
+    keyStore = KeyStore.getInstance("JKS");
+    try (InputStream in = TestTLSServer.class.getClassLoader().getResourceAsStream("keystore.jks")) {
+      keyStore.load(in, passphrase);
+    }
+
+    KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(keyStore, passphrase);
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(kmf.getKeyManagers(), null, null);
+    server = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0);
+
+    Thread acceptor = new Thread(this::accept, "test-tls-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  private void accept() {
+    while (!server.isClosed()) {
+      SSLSocket socket;
+      try {
+        socket = (SSLSocket) server.accept();
+      } catch (IOException e) {
+        // The test is over.
+        return;
+      }
+      Thread connection = new Thread(() -> {
+        try (SSLSocket s = socket) {
+          handler.handle(s);
+        } catch (IOException e) {
+          // Clients hang up during or right after their handshake, and some tests expect handshakes to fail.
+        }
+      }, "test-tls-server-connection");
+      connection.setDaemon(true);
+      connection.start();
+    }
+  }
+
+  /**
+   * @return the key store holding the server's certificate, for use as a client trust store.
+   */
+  public KeyStore getKeyStore() {
+    return keyStore;
+  }
+
+  /**
+   * @return the listening socket, so tests can restrict its enabled protocols and cipher suites.
+   */
+  public SSLServerSocket getSocket() {
+    return server;
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+  }
+}
@@ -0,0 +1,90 @@
+package co.elastic.tealess;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrustAnchorIndexTest {
+  // Two CAs with the same subject name but different keys. The intermediate was issued by the second.
+  private List<X509Certificate> anchors;
+  private X509Certificate intermediate;
+  private TrustAnchorIndex index;
+
+  private static List<X509Certificate> load(String resource) throws Exception {
+    CertificateFactory cf = CertificateFactory.getInstance("X.509");
+    List<X509Certificate> certificates = new ArrayList<>();
+    try (InputStream in = TrustAnchorIndexTest.class.getClassLoader().getResourceAsStream(resource)) {
+      for (Certificate certificate : cf.generateCertificates(in)) {
+        certificates.add((X509Certificate) certificate);
+      }
+    }
+    return certificates;
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    anchors = load("trust-anchors/anchors.pem");
+    intermediate = load("trust-anchors/intermediate.pem").get(0);
+
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    keyStore.setCertificateEntry("first", anchors.get(0));
+    keyStore.setCertificateEntry("second", anchors.get(1));
+    index = new TrustAnchorIndex(keyStore);
+  }
+
+  @Test
+  void testFixtures() {
+    assertEquals(2, anchors.size());
+    assertEquals(anchors.get(0).getSubjectX500Principal(), anchors.get(1).getSubjectX500Principal());
+    assertArrayEquals(TrustAnchorIndex.subjectKeyIdentifier(anchors.get(1)), TrustAnchorIndex.authorityKeyIdentifier(intermediate));
+  }
+
+  @Test
+  void testFindsIssuerByKeyIdentifier() {
+    Optional<TrustAnchorIndex.Anchor> issuer = index.findIssuer(intermediate);
+    assertTrue(issuer.isPresent());
+    assertEquals("second", issuer.get().getAlias());
+    assertSame(issuer.get(), index.findIssuer(intermediate).get());
+  }
+
+  @Test
+  void testFindsSelfSignedIssuer() {
+    assertEquals("first", index.findIssuer(anchors.get(0)).get().getAlias());
+    assertEquals("second", index.findIssuer(anchors.get(1)).get().getAlias());
+  }
+
+  @Test
+  void testFindsIssuerByNameWithoutKeyIdentifier() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    try (InputStream in = TrustAnchorIndexTest.class.getClassLoader().getResourceAsStream("keystore.jks")) {
+      keyStore.load(in, "password".toCharArray());
+    }
+    X509Certificate selfSigned = (X509Certificate) keyStore.getCertificate("selfsigned");
+    assertNull(TrustAnchorIndex.authorityKeyIdentifier(selfSigned));
+
+    assertEquals("selfsigned", new TrustAnchorIndex(keyStore).findIssuer(selfSigned).get().getAlias());
+  }
+
+  @Test
+  void testUnknownIssuer() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    keyStore.setCertificateEntry("first", anchors.get(0));
+    TrustAnchorIndex partial = new TrustAnchorIndex(keyStore);
+
+    assertEquals(1, partial.size());
+    // Same issuer name as the only anchor, but signed by a different key.
+    assertFalse(partial.findIssuer(intermediate).isPresent());
+  }
+}
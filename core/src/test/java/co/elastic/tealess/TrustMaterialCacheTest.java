@@ -0,0 +1,167 @@
+package co.elastic.tealess;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrustMaterialCacheTest {
+  private final char[] passphrase = "password".toCharArray();
+  private Path keystore;
+  private Path anchors;
+
+  private static Path resource(String name) throws Exception {
+    return Paths.get(TrustMaterialCacheTest.class.getClassLoader().getResource(name).toURI());
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    TrustMaterialCache.clear();
+    keystore = resource("keystore.jks");
+    anchors = resource("trust-anchors/anchors.pem");
+  }
+
+  @Test
+  void testKeyStoreIsParsedOnce() throws Exception {
+    TrustMaterialCache.Material first = TrustMaterialCache.keyStore(keystore, passphrase);
+    assertSame(first, TrustMaterialCache.keyStore(keystore, passphrase));
+    assertSame(first.getKeyStore(), TrustMaterialCache.keyStore(keystore.getParent().resolve("./keystore.jks"), passphrase).getKeyStore());
+    assertSame(first.getTrustManagers()[0], TrustMaterialCache.trustManagers(first.getKeyStore())[0]);
+  }
+
+  @Test
+  void testWrongPassphraseStillFails() throws Exception {
+    TrustMaterialCache.Material first = TrustMaterialCache.keyStore(keystore, passphrase);
+    assertThrows(Exception.class, () -> TrustMaterialCache.keyStore(keystore, "wrong".toCharArray()));
+    assertSame(first, TrustMaterialCache.keyStore(keystore, passphrase));
+  }
+
+  @Test
+  void testSharedKeyStoreRejectsChanges() throws Exception {
+    KeyStore shared = TrustMaterialCache.keyStore(keystore, passphrase).getKeyStore();
+    X509Certificate certificate = TrustMaterialCache.certificates(anchors).get(0);
+    assertTrue(shared.size() > 0);
+    assertThrows(KeyStoreException.class, () -> shared.setCertificateEntry("new", certificate));
+    assertThrows(KeyStoreException.class, () -> shared.deleteEntry(shared.aliases().nextElement()));
+  }
+
+  @Test
+  void testChangedFileIsParsedAgain() throws Exception {
+    Path copy = Files.createTempFile("tealess", ".pem");
+    try {
+      Files.copy(anchors, copy, StandardCopyOption.REPLACE_EXISTING);
+      List<X509Certificate> first = TrustMaterialCache.certificates(copy);
+      assertEquals(2, first.size());
+      assertSame(first, TrustMaterialCache.certificates(copy));
+      assertThrows(UnsupportedOperationException.class, () -> first.clear());
+
+      try (InputStream in = Files.newInputStream(resource("trust-anchors/intermediate.pem"))) {
+        Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+      }
+      Files.setLastModifiedTime(copy, FileTime.fromMillis(Files.getLastModifiedTime(copy).toMillis() + 1000));
+      assertEquals(1, TrustMaterialCache.certificates(copy).size());
+    } finally {
+      Files.delete(copy);
+    }
+  }
+
+  @Test
+  void testConcurrentCallersShareOneParse() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<X509Certificate>>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(() -> TrustMaterialCache.certificates(anchors)));
+      }
+      List<X509Certificate> first = results.get(0).get();
+      for (Future<List<X509Certificate>> result : results) {
+        assertSame(first, result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testFailedParseIsNotCached() throws Exception {
+    Path copy = Files.createTempFile("tealess", ".pem");
+    try {
+      Files.write(copy, "not a certificate".getBytes());
+      assertThrows(CertificateException.class, () -> TrustMaterialCache.certificates(copy));
+      assertThrows(CertificateException.class, () -> TrustMaterialCache.certificates(copy));
+    } finally {
+      Files.delete(copy);
+    }
+  }
+
+  @Test
+  void testBuilderCopiesSharedKeyStoreBeforeChanging() throws Exception {
+    KeyStoreBuilder first = new KeyStoreBuilder();
+    first.useKeyStore(keystore.toFile(), passphrase);
+    KeyStoreBuilder second = new KeyStoreBuilder();
+    second.useKeyStore(keystore.toFile(), passphrase);
+    KeyStore shared = first.sharedKeyStore();
+    assertSame(shared, second.sharedKeyStore());
+    assertSame(first.buildKeyManagerFactory(), second.buildKeyManagerFactory());
+
+    second.addCAPath(anchors);
+    KeyStore copy = second.sharedKeyStore();
+    assertNotSame(shared, copy);
+    assertEquals(shared.size() + 1, copy.size());
+    assertTrue(copy.isKeyEntry(shared.aliases().nextElement()) == shared.isKeyEntry(shared.aliases().nextElement()));
+    assertNotNull(second.buildKeyManagerFactory().getKeyManagers());
+    assertSame(shared, first.sharedKeyStore());
+  }
+
+  @Test
+  void testBuiltKeyStoreIsPrivate() throws Exception {
+    KeyStoreBuilder builder = new KeyStoreBuilder();
+    builder.useKeyStore(keystore.toFile(), passphrase);
+    KeyStore shared = builder.sharedKeyStore();
+    KeyStore built = builder.buildKeyStore();
+    assertNotSame(shared, built);
+
+    X509Certificate anchor = TrustMaterialCache.certificates(anchors).get(0);
+    built.setCertificateEntry("added", anchor);
+    assertEquals(shared.size() + 1, built.size());
+    assertSame(shared, builder.sharedKeyStore());
+  }
+
+  @Test
+  void testReloadReusesUnchangedKeyStore() throws Exception {
+    KeyStoreBuilder builder = new KeyStoreBuilder();
+    builder.useKeyStore(keystore.toFile(), passphrase);
+    assertSame(builder.sharedKeyStore(), builder.reload().sharedKeyStore());
+  }
+
+  @Test
+  void testReloadOfChangedKeyStoreNeedsItsPassphrase() throws Exception {
+    Path copy = Files.createTempFile("tealess", ".jks");
+    try {
+      Files.copy(keystore, copy, StandardCopyOption.REPLACE_EXISTING);
+      KeyStoreBuilder builder = new KeyStoreBuilder();
+      builder.useKeyStore(copy.toFile(), passphrase);
+      Files.setLastModifiedTime(copy, FileTime.fromMillis(Files.getLastModifiedTime(copy).toMillis() + 1000));
+      assertThrows(IOException.class, builder::reload);
+    } finally {
+      Files.delete(copy);
+    }
+  }
+}
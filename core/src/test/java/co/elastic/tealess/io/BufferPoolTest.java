@@ -0,0 +1,52 @@
+package co.elastic.tealess.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+  private final BufferPool pool = new BufferPool(1024, 2);
+
+  @Test
+  void testAcquireAllocatesDirectBuffers() {
+    ByteBuffer buffer = pool.acquire();
+    assertTrue(buffer.isDirect());
+    assertEquals(1024, buffer.capacity());
+    assertEquals(0, buffer.position());
+    assertEquals(1024, buffer.limit());
+  }
+
+  @Test
+  void testReleasedBuffersAreReusedCleared() {
+    ByteBuffer buffer = pool.acquire();
+    buffer.put((byte) 1);
+    buffer.flip();
+    pool.release(buffer);
+    assertEquals(1, pool.available());
+
+    ByteBuffer reused = pool.acquire();
+    assertSame(buffer, reused);
+    assertEquals(0, reused.position());
+    assertEquals(1024, reused.limit());
+    assertEquals(0, pool.available());
+  }
+
+  @Test
+  void testRetainsAtMostMaxRetained() {
+    ByteBuffer a = pool.acquire();
+    ByteBuffer b = pool.acquire();
+    ByteBuffer c = pool.acquire();
+    pool.release(a);
+    pool.release(b);
+    pool.release(c);
+    assertEquals(2, pool.available());
+  }
+
+  @Test
+  void testRejectsForeignBuffers() {
+    assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocate(1024)));
+    assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocateDirect(512)));
+  }
+}
@@ -27,4 +27,13 @@ class BufferUtilTest {
     assertEquals(input, new String(result));
   }
 
-}
\ No newline at end of file
+  @Test
+  void testReadUInt16IsUnsigned() {
+    buffer.put((byte) 0x01).put((byte) 0x80);
+    buffer.put((byte) 0xff).put((byte) 0xff);
+    buffer.flip();
+
+    assertEquals(0x0180, BufferUtil.readUInt16(buffer));
+    assertEquals(0xffff, BufferUtil.readUInt16(buffer));
+  }
+}
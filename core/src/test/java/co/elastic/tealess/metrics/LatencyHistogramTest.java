@@ -0,0 +1,61 @@
+package co.elastic.tealess.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+  @Test
+  void bucketsAreContiguous() {
+    int previous = LatencyHistogram.index(0);
+    for (long value = 1; value < 1 << 20; value++) {
+      int index = LatencyHistogram.index(value);
+      assertTrue(index == previous || index == previous + 1, "Gap in buckets at " + value);
+      assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+      previous = index;
+    }
+  }
+
+  @Test
+  void percentilesAreWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 10000; i++) {
+      histogram.record(i * 1000);
+    }
+    assertEquals(10000, histogram.getCount());
+    assertEquals(10000000, histogram.getMax());
+    assertEquals(5000500, histogram.getMean(), 0.001);
+
+    double tolerance = 1.0 / LatencyHistogram.subBuckets;
+    assertEquals(5000000, histogram.getValueAtPercentile(50), 5000000 * tolerance);
+    assertEquals(9900000, histogram.getValueAtPercentile(99), 9900000 * tolerance);
+    assertEquals(10000000, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void randomValuesAreReportedAtOrAbove() {
+    Random random = new Random(0);
+    for (int i = 0; i < 10000; i++) {
+      long value = random.nextLong() & LatencyHistogram.maxValue;
+      long reported = LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(value));
+      assertTrue(reported >= value);
+      assertTrue(reported - value <= value / LatencyHistogram.subBuckets, "Imprecise bucket for " + value);
+    }
+  }
+
+  @Test
+  void outOfRangeValuesAreClamped() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(2, histogram.getCount());
+    assertEquals(LatencyHistogram.maxValue, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+}
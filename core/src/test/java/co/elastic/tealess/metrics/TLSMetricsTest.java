@@ -0,0 +1,84 @@
+package co.elastic.tealess.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLHandshakeException;
+import java.lang.management.ManagementFactory;
+import java.security.cert.CertificateException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TLSMetricsTest {
+  @Test
+  void countsHandshakesByOutcome() {
+    TLSMetrics metrics = new TLSMetrics();
+    metrics.handshakeCompleted("a:443", 2000000);
+    metrics.handshakeCompleted("b:443", 4000000);
+    metrics.handshakeFailed("a:443", 1000000, new CertificateException("untrusted"));
+    metrics.handshakeFailed("a:443", 1000000, new SSLHandshakeException("no cipher suites in common"));
+
+    assertEquals(2, metrics.getHandshakesCompleted());
+    assertEquals(2, metrics.getHandshakesFailed());
+    Map<String, Long> byCause = metrics.getHandshakeFailuresByCause();
+    assertEquals(1L, (long) byCause.get(CertificateException.class.getName()));
+    assertEquals(1L, (long) byCause.get(SSLHandshakeException.class.getName()));
+
+    assertEquals(4.0, (double) metrics.getHandshakeLatency().get("count"));
+    assertEquals(3.0, (double) metrics.handshakeLatency("a:443").get("count"));
+    assertEquals(4.0, metrics.handshakeLatency("b:443").get("max"), 0.001);
+    assertTrue(metrics.handshakeLatency("c:443").isEmpty());
+
+    metrics.reset();
+    assertEquals(0, metrics.getHandshakesCompleted());
+    assertTrue(metrics.getPeers().isEmpty());
+  }
+
+  @Test
+  void capsTheNumberOfPeers() {
+    TLSMetrics metrics = new TLSMetrics();
+    for (int i = 0; i < TLSMetrics.maxPeers + 10; i++) {
+      metrics.handshakeCompleted("host" + i + ":443", 1000);
+    }
+    assertEquals(TLSMetrics.maxPeers + 1, metrics.getPeers().size());
+    assertEquals(10.0, (double) metrics.handshakeLatency(TLSMetrics.otherPeers).get("count"));
+  }
+
+  @Test
+  void publishesOverJMX() throws Exception {
+    TLSMetrics metrics = new TLSMetrics();
+    metrics.captured(100);
+    metrics.captureOverflow(true);
+    metrics.certificateVerified(1000, null);
+    metrics.certificateVerified(1000, new CertificateException("expired"));
+
+    metrics.register("test");
+    ObjectName name = metrics.getObjectName();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      assertEquals(100L, server.getAttribute(name, "BytesCaptured"));
+      assertEquals(1L, server.getAttribute(name, "CaptureInputOverflows"));
+      assertEquals(0L, server.getAttribute(name, "CaptureOutputOverflows"));
+      assertEquals(2L, server.getAttribute(name, "CertificateVerifications"));
+      assertEquals(1L, server.getAttribute(name, "CertificateVerificationFailures"));
+      assertThrows(Exception.class, () -> metrics.register("test"));
+    } finally {
+      metrics.unregister();
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+  @Test
+  void fansOutToAllListeners() {
+    TLSMetrics first = new TLSMetrics();
+    TLSMetrics second = new TLSMetrics();
+    HandshakeListener listener = HandshakeListener.all(first, second, HandshakeListener.NOOP);
+    listener.handshakeCompleted("a:443", 1000);
+    listener.captured(10);
+    assertEquals(1, first.getHandshakesCompleted());
+    assertEquals(1, second.getHandshakesCompleted());
+    assertEquals(10, second.getBytesCaptured());
+  }
+}
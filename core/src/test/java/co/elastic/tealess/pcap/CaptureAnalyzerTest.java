@@ -0,0 +1,304 @@
+package co.elastic.tealess.pcap;
+
+import co.elastic.tealess.io.Transaction;
+import co.elastic.tealess.tls.AlertDescription;
+import co.elastic.tealess.tls.CipherSuite;
+import co.elastic.tealess.tls.ClientHelloEncoder;
+import co.elastic.tealess.tls.Version;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureAnalyzerTest {
+  private static final int client = 1;
+  private static final int server = 2;
+  private static final int serverPort = 443;
+
+  private final Captures captures = new Captures();
+  private final List<HandshakeSummary> summaries = new ArrayList<>();
+  private final CaptureAnalyzer analyzer = new CaptureAnalyzer(summaries::add);
+  private long now = 1500000000000000000L;
+  private Path path;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    path = Files.createTempFile("tealess", ".pcap");
+    analyzer.setKeepMessages(true);
+  }
+
+  @AfterEach
+  void deleteFile() throws IOException {
+    Files.delete(path);
+  }
+
+  private void analyze() throws IOException {
+    analyzer.analyze(captures.write(path));
+  }
+
+  private static byte[] record(int contentType, byte[] payload) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(contentType);
+    out.write(3);
+    out.write(3);
+    out.write(payload.length >> 8);
+    out.write(payload.length & 0xff);
+    out.write(payload, 0, payload.length);
+    return out.toByteArray();
+  }
+
+  private static byte[] handshake(int type, byte[] body) {
+    ByteBuffer message = ByteBuffer.allocate(4 + body.length);
+    message.putInt(type << 24 | body.length).put(body);
+    return message.array();
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      out.write(part, 0, part.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] clientHello() {
+    ClientHelloEncoder encoder = new ClientHelloEncoder()
+            .setServerName("example.com")
+            .setCipherSuites(Arrays.asList(CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256, CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA));
+    ByteBuffer buffer = ByteBuffer.allocate(encoder.length());
+    encoder.encode(buffer);
+    return buffer.array();
+  }
+
+  /**
+   * @param extensions the ServerHello extensions, or null for none
+   */
+  private static byte[] serverHello(int cipherSuite, byte[] extensions) {
+    ByteBuffer body = ByteBuffer.allocate(2 + 32 + 1 + 3 + (extensions == null ? 0 : 2 + extensions.length));
+    body.put((byte) 3).put((byte) 3).put(new byte[32]).put((byte) 0).putShort((short) cipherSuite).put((byte) 0);
+    if (extensions != null) {
+      body.putShort((short) extensions.length).put(extensions);
+    }
+    return handshake(2, body.array());
+  }
+
+  private static final byte[] tls12ServerHello = serverHello(0xc02f, null);
+  private static final byte[] tls13ServerHello = serverHello(0x1301, new byte[]{0, 43, 0, 2, 3, 4});
+  private static final byte[] emptyCertificate = handshake(11, new byte[3]);
+  private static final byte[] serverHelloDone = handshake(14, new byte[0]);
+  private static final byte[] changeCipherSpec = record(20, new byte[]{1});
+  private static final byte[] encrypted = record(22, new byte[40]);
+
+  /**
+   * Writes both sides of one TCP connection, keeping track of sequence numbers.
+   */
+  private class Connection {
+    final int clientPort;
+    int clientSequence = 1000;
+    int serverSequence = -2000;
+
+    Connection(int clientPort) {
+      this.clientPort = clientPort;
+    }
+
+    Connection open() {
+      fromClient(Captures.tcp(client, clientPort, server, serverPort, clientSequence++, TCPSegment.SYN, new byte[0]));
+      fromServer(Captures.tcp(server, serverPort, client, clientPort, serverSequence++, TCPSegment.SYN | TCPSegment.ACK, new byte[0]));
+      return this;
+    }
+
+    Connection client(byte[] data) {
+      fromClient(Captures.tcp(client, clientPort, server, serverPort, clientSequence, TCPSegment.ACK, data));
+      clientSequence += data.length;
+      return this;
+    }
+
+    Connection server(byte[] data) {
+      fromServer(Captures.tcp(server, serverPort, client, clientPort, serverSequence, TCPSegment.ACK, data));
+      serverSequence += data.length;
+      return this;
+    }
+
+    /**
+     * Skip over the server's next bytes, as if their packet was not captured.
+     */
+    Connection lost(int length) {
+      serverSequence += length;
+      return this;
+    }
+
+    Connection serverReset() {
+      fromServer(Captures.tcp(server, serverPort, client, clientPort, serverSequence, TCPSegment.RST, new byte[0]));
+      return this;
+    }
+
+    private void fromClient(byte[] frame) {
+      captures.packet(now += TimeUnit.MILLISECONDS.toNanos(1), frame);
+    }
+
+    private void fromServer(byte[] frame) {
+      captures.packet(now += TimeUnit.MILLISECONDS.toNanos(2), frame);
+    }
+  }
+
+  @Test
+  void fullHandshake() throws IOException {
+    byte[] hello = clientHello();
+    Connection connection = new Connection(50000).open();
+    // The ClientHello's second segment is captured before its first.
+    connection.clientSequence += 100;
+    connection.client(Arrays.copyOfRange(hello, 100, hello.length));
+    connection.clientSequence -= hello.length;
+    connection.client(Arrays.copyOfRange(hello, 0, 100));
+    connection.clientSequence += hello.length - 100;
+    connection.server(record(22, concat(tls12ServerHello, emptyCertificate, serverHelloDone)))
+            .client(concat(changeCipherSpec, encrypted))
+            .server(concat(changeCipherSpec, encrypted));
+    analyze();
+
+    assertEquals(1, summaries.size());
+    HandshakeSummary summary = summaries.get(0);
+    assertEquals(HandshakeSummary.Outcome.Completed, summary.getOutcome());
+    assertNull(summary.getProblem());
+    assertEquals(50000, summary.getClient().getPort());
+    assertEquals(serverPort, summary.getServer().getPort());
+    assertEquals("example.com", summary.getServerName());
+    assertEquals(2, summary.getOfferedCipherSuites());
+    assertEquals(Version.TLS1_2, summary.getVersion());
+    assertEquals(CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256, summary.getCipherSuite());
+    assertEquals(0, summary.getCertificates());
+    assertFalse(summary.isResumed());
+    // The ClientHello is complete with its first segment, and the server answers one packet later.
+    assertEquals(2, summary.getServerResponseTime(TimeUnit.MILLISECONDS));
+    assertEquals(5, summary.getHandshakeTime(TimeUnit.MILLISECONDS));
+
+    List<Transaction<String>> messages = summary.getMessages();
+    assertEquals(Transaction.Operation.Output, messages.get(0).op);
+    assertTrue(messages.get(0).value.startsWith("ClientHello"), messages.get(0).value);
+    assertEquals(Transaction.Operation.Input, messages.get(1).op);
+    assertEquals(1, analyzer.getHandshakes());
+    assertEquals(1, analyzer.getConnections());
+  }
+
+  @Test
+  void resumedHandshake() throws IOException {
+    new Connection(50000).open()
+            .client(clientHello())
+            .server(concat(record(22, tls12ServerHello), changeCipherSpec, encrypted))
+            .client(concat(changeCipherSpec, encrypted));
+    analyze();
+
+    assertEquals(HandshakeSummary.Outcome.Completed, summaries.get(0).getOutcome());
+    assertTrue(summaries.get(0).isResumed());
+    assertEquals(-1, summaries.get(0).getCertificates());
+  }
+
+  @Test
+  void tls13Handshake() throws IOException {
+    new Connection(50000).open()
+            .client(clientHello())
+            .server(concat(record(22, tls13ServerHello), changeCipherSpec, record(23, new byte[100])))
+            .client(concat(changeCipherSpec, record(23, new byte[50])));
+    analyze();
+
+    HandshakeSummary summary = summaries.get(0);
+    assertEquals(HandshakeSummary.Outcome.Completed, summary.getOutcome());
+    assertEquals(Version.TLS1_3, summary.getVersion());
+    assertEquals(CipherSuite.TLS_AES_128_GCM_SHA256, summary.getCipherSuite());
+  }
+
+  @Test
+  void serverRejectsClientHello() throws IOException {
+    new Connection(50000).open()
+            .client(clientHello())
+            .server(record(21, new byte[]{2, 40}));
+    analyze();
+
+    HandshakeSummary summary = summaries.get(0);
+    assertEquals(HandshakeSummary.Outcome.Failed, summary.getOutcome());
+    assertFalse(summary.isAlertFromClient());
+    assertEquals(AlertDescription.HandshakeFailure, summary.getAlert().getDescription());
+    assertTrue(summary.getProblem().startsWith("The server rejected the ClientHello"), summary.getProblem());
+  }
+
+  @Test
+  void serverResets() throws IOException {
+    new Connection(50000).open()
+            .client(clientHello())
+            .serverReset();
+    analyze();
+
+    HandshakeSummary summary = summaries.get(0);
+    assertEquals(HandshakeSummary.Outcome.Reset, summary.getOutcome());
+    assertTrue(summary.getProblem().startsWith("The server reset the connection instead of answering the ClientHello."), summary.getProblem());
+  }
+
+  @Test
+  void missedPacket() throws IOException {
+    byte[] reply = record(22, concat(tls12ServerHello, emptyCertificate, serverHelloDone));
+    new Connection(50000).open()
+            .client(clientHello())
+            .lost(10)
+            .server(Arrays.copyOfRange(reply, 10, reply.length));
+    analyze();
+
+    HandshakeSummary summary = summaries.get(0);
+    assertEquals(HandshakeSummary.Outcome.Incomplete, summary.getOutcome());
+    assertEquals("Packets of the handshake are missing from the capture.", summary.getProblem());
+  }
+
+  @Test
+  void captureEndsFirst() throws IOException {
+    new Connection(50000).open().client(clientHello());
+    analyze();
+
+    HandshakeSummary summary = summaries.get(0);
+    assertEquals(HandshakeSummary.Outcome.Incomplete, summary.getOutcome());
+    assertEquals(-1, summary.getServerResponseTime(TimeUnit.NANOSECONDS));
+    assertEquals("The capture ended before the handshake did.", summary.getProblem());
+  }
+
+  @Test
+  void separatesInterleavedConnections() throws IOException {
+    Connection first = new Connection(50000).open();
+    Connection second = new Connection(50001).open();
+    Connection plaintext = new Connection(50002).open();
+    first.client(clientHello());
+    second.client(clientHello());
+    plaintext.client("GET / HTTP/1.1\r\n\r\n".getBytes());
+    second.server(record(21, new byte[]{2, 40}));
+    plaintext.server("HTTP/1.1 400 Bad Request\r\n\r\n".getBytes());
+    first.server(concat(record(22, tls13ServerHello), changeCipherSpec, record(23, new byte[100])));
+    first.client(concat(changeCipherSpec, record(23, new byte[50])));
+    analyze();
+
+    // Each summary is emitted as soon as its handshake is over.
+    assertEquals(2, summaries.size());
+    assertEquals(50001, summaries.get(0).getClient().getPort());
+    assertEquals(HandshakeSummary.Outcome.Failed, summaries.get(0).getOutcome());
+    assertEquals(50000, summaries.get(1).getClient().getPort());
+    assertEquals(HandshakeSummary.Outcome.Completed, summaries.get(1).getOutcome());
+    assertEquals(3, analyzer.getConnections());
+  }
+
+  @Test
+  void messagesAreOnlyKeptWhenAsked() throws IOException {
+    analyzer.setKeepMessages(false);
+    new Connection(50000).open().client(clientHello());
+    analyze();
+
+    assertTrue(summaries.get(0).getMessages().isEmpty());
+    assertEquals("", summaries.get(0).formatMessages());
+  }
+}
@@ -0,0 +1,222 @@
+package co.elastic.tealess.pcap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureReaderTest {
+  private final List<Long> timestamps = new ArrayList<>();
+  private final List<Integer> linkTypes = new ArrayList<>();
+  private final List<byte[]> frames = new ArrayList<>();
+  private Path path;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    path = Files.createTempFile("tealess", ".pcap");
+  }
+
+  @AfterEach
+  void deleteFile() throws IOException {
+    Files.delete(path);
+  }
+
+  private void packet(long timestamp, int linkType, ByteBuffer frame) {
+    assertEquals(ByteOrder.BIG_ENDIAN, frame.order());
+    byte[] bytes = new byte[frame.remaining()];
+    frame.get(bytes);
+    timestamps.add(timestamp);
+    linkTypes.add(linkType);
+    frames.add(bytes);
+  }
+
+  private long read(byte[] capture, int windowSize) throws IOException {
+    Files.write(path, capture);
+    try (CaptureReader reader = new CaptureReader(path, windowSize)) {
+      return reader.read(this::packet);
+    }
+  }
+
+  private static byte[] frame(int length, int seed) {
+    byte[] frame = new byte[length];
+    for (int i = 0; i < length; i++) {
+      frame[i] = (byte) (seed + i);
+    }
+    return frame;
+  }
+
+  @Test
+  void readsPcapInEitherByteOrder() throws IOException {
+    for (ByteOrder order : Arrays.asList(ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN)) {
+      timestamps.clear();
+      linkTypes.clear();
+      frames.clear();
+      byte[] capture = new Captures(order, false)
+              .packet(1500000000123456000L, frame(60, 1))
+              .packet(1500000001000001000L, frame(70, 2))
+              .toByteArray();
+
+      assertEquals(2, read(capture, CaptureReader.defaultWindowSize));
+      assertEquals(Arrays.asList(1500000000123456000L, 1500000001000001000L), timestamps);
+      assertEquals(Arrays.asList(Captures.linkEthernet, Captures.linkEthernet), linkTypes);
+      assertArrayEquals(frame(60, 1), frames.get(0));
+      assertArrayEquals(frame(70, 2), frames.get(1));
+    }
+  }
+
+  @Test
+  void readsNanosecondPcap() throws IOException {
+    byte[] capture = new Captures(ByteOrder.LITTLE_ENDIAN, true).packet(1500000000123456789L, frame(60, 1)).toByteArray();
+
+    read(capture, CaptureReader.defaultWindowSize);
+    assertEquals(Arrays.asList(1500000000123456789L), timestamps);
+  }
+
+  @Test
+  void readsAcrossWindows() throws IOException {
+    Captures captures = new Captures();
+    for (int i = 0; i < 50; i++) {
+      captures.packet(i * 1000L, frame(33 + i, i));
+    }
+
+    // Much smaller than the file, and not aligned to anything in it.
+    assertEquals(50, read(captures.toByteArray(), 100));
+    for (int i = 0; i < 50; i++) {
+      assertArrayEquals(frame(33 + i, i), frames.get(i));
+    }
+  }
+
+  @Test
+  void stopsAtTruncatedPacket() throws IOException {
+    byte[] capture = new Captures().packet(0, frame(60, 1)).packet(1000, frame(60, 2)).toByteArray();
+    Files.write(path, Arrays.copyOf(capture, capture.length - 10));
+
+    try (CaptureReader reader = new CaptureReader(path)) {
+      assertEquals(1, reader.read(this::packet));
+      assertTrue(reader.isTruncated());
+    }
+  }
+
+  @Test
+  void rejectsOtherFiles() {
+    assertThrows(IOException.class, () -> read("GET / HTTP/1.1\r\n\r\n".getBytes(), CaptureReader.defaultWindowSize));
+  }
+
+  private static void block(ByteArrayOutputStream out, ByteOrder order, int type, byte[] body) {
+    int length = 12 + ((body.length + 3) & ~3);
+    ByteBuffer block = ByteBuffer.allocate(length).order(order);
+    block.putInt(type).putInt(length).put(body);
+    block.putInt(length - 4, length);
+    out.write(block.array(), 0, length);
+  }
+
+  /**
+   * A section header and one Ethernet interface, with the default microsecond timestamps.
+   */
+  private static ByteArrayOutputStream section(ByteOrder order) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBuffer section = ByteBuffer.allocate(16).order(order);
+    section.putInt(0x1a2b3c4d).putShort((short) 1).putShort((short) 0).putLong(-1);
+    block(out, order, 0x0a0d0d0a, section.array());
+
+    ByteBuffer ethernet = ByteBuffer.allocate(8).order(order);
+    ethernet.putShort((short) Captures.linkEthernet).putShort((short) 0).putInt(0);
+    block(out, order, 1, ethernet.array());
+    return out;
+  }
+
+  private static byte[] pcapng(ByteOrder order) {
+    ByteArrayOutputStream out = section(order);
+
+    // Raw IP, with nanosecond timestamps given by if_tsresol, and a 64 byte snap length.
+    ByteBuffer raw = ByteBuffer.allocate(20).order(order);
+    raw.putShort((short) 101).putShort((short) 0).putInt(64);
+    raw.putShort((short) 9).putShort((short) 1).put((byte) 9).put(new byte[3]);
+    raw.putShort((short) 0).putShort((short) 0);
+    block(out, order, 1, raw.array());
+
+    // A name resolution block, which is skipped.
+    block(out, order, 4, new byte[8]);
+
+    byte[] first = frame(61, 1);
+    ByteBuffer enhanced = ByteBuffer.allocate(20 + first.length).order(order);
+    long micros = 1500000000123456L;
+    enhanced.putInt(0).putInt((int) (micros >>> 32)).putInt((int) micros).putInt(first.length).putInt(first.length).put(first);
+    block(out, order, 6, enhanced.array());
+
+    byte[] second = frame(40, 2);
+    enhanced = ByteBuffer.allocate(20 + second.length).order(order);
+    long nanos = 1500000000123456789L;
+    enhanced.putInt(1).putInt((int) (nanos >>> 32)).putInt((int) nanos).putInt(second.length).putInt(100).put(second);
+    block(out, order, 6, enhanced.array());
+
+    // A simple packet block, from the first interface, with no timestamp.
+    byte[] third = frame(50, 3);
+    ByteBuffer simple = ByteBuffer.allocate(4 + third.length).order(order);
+    simple.putInt(third.length).put(third);
+    block(out, order, 3, simple.array());
+    return out.toByteArray();
+  }
+
+  @Test
+  void readsPcapngInEitherByteOrder() throws IOException {
+    for (ByteOrder order : Arrays.asList(ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN)) {
+      timestamps.clear();
+      linkTypes.clear();
+      frames.clear();
+
+      assertEquals(3, read(pcapng(order), 64));
+      assertEquals(Arrays.asList(1500000000123456000L, 1500000000123456789L, 0L), timestamps);
+      assertEquals(Arrays.asList(Captures.linkEthernet, 101, Captures.linkEthernet), linkTypes);
+      assertArrayEquals(frame(61, 1), frames.get(0));
+      assertArrayEquals(frame(40, 2), frames.get(1));
+      assertArrayEquals(frame(50, 3), frames.get(2));
+    }
+  }
+
+  private void assertRejected(ByteOrder order, int type, ByteBuffer body) {
+    ByteArrayOutputStream out = section(order);
+    block(out, order, type, body.array());
+    assertThrows(IOException.class, () -> read(out.toByteArray(), CaptureReader.defaultWindowSize));
+  }
+
+  @Test
+  void rejectsBlocksTooShortForTheirFields() {
+    ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+    // An enhanced or obsolete packet block needs 20 bytes of fields, a simple packet block 4, an interface 8.
+    assertRejected(order, 6, ByteBuffer.allocate(16).order(order).putInt(0));
+    assertRejected(order, 2, ByteBuffer.allocate(16).order(order).putInt(0));
+    assertRejected(order, 3, ByteBuffer.allocate(0));
+    assertRejected(order, 1, ByteBuffer.allocate(4).order(order).putShort((short) Captures.linkEthernet));
+  }
+
+  @Test
+  void rejectsInvalidPacketLengths() {
+    ByteOrder order = ByteOrder.BIG_ENDIAN;
+    byte[] frame = frame(8, 1);
+    assertRejected(order, 6, ByteBuffer.allocate(28).order(order).putInt(0).putLong(0).putInt(-1).putInt(8).put(frame));
+    assertRejected(order, 6, ByteBuffer.allocate(28).order(order).putInt(0).putLong(0).putInt(8).putInt(-1).put(frame));
+    assertRejected(order, 6, ByteBuffer.allocate(28).order(order).putInt(0).putLong(0).putInt(8).putInt(Integer.MAX_VALUE).put(frame));
+    assertRejected(order, 3, ByteBuffer.allocate(12).order(order).putInt(-1).put(frame));
+    assertRejected(order, 3, ByteBuffer.allocate(12).order(order).putInt(Integer.MAX_VALUE).put(frame));
+  }
+
+  @Test
+  void rejectsInterfaceOptionPastItsBlock() {
+    ByteOrder order = ByteOrder.BIG_ENDIAN;
+    // if_tsresol claims a 12 byte value, but the block ends after 4.
+    assertRejected(order, 1, ByteBuffer.allocate(16).order(order).putShort((short) Captures.linkEthernet).putShort((short) 0).putInt(0)
+            .putShort((short) 9).putShort((short) 12).put((byte) 9));
+  }
+}
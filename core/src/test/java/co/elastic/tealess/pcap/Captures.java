@@ -0,0 +1,81 @@
+package co.elastic.tealess.pcap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Builds small capture files, and the Ethernet, IPv4 and TCP frames in them, for tests.
+ */
+class Captures {
+  static final int linkEthernet = 1;
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final ByteOrder order;
+  private final boolean nanoseconds;
+
+  /**
+   * Start a pcap file.
+   */
+  Captures(ByteOrder order, boolean nanoseconds) {
+    this.order = order;
+    this.nanoseconds = nanoseconds;
+    ByteBuffer header = ByteBuffer.allocate(24).order(order);
+    header.putInt(nanoseconds ? 0xa1b23c4d : 0xa1b2c3d4);
+    header.putShort((short) 2).putShort((short) 4);
+    header.putInt(0).putInt(0);
+    header.putInt(65535);
+    header.putInt(linkEthernet);
+    write(header);
+  }
+
+  Captures() {
+    this(ByteOrder.LITTLE_ENDIAN, false);
+  }
+
+  /**
+   * @param timestamp nanoseconds since the epoch
+   */
+  Captures packet(long timestamp, byte[] frame) {
+    ByteBuffer header = ByteBuffer.allocate(16).order(order);
+    header.putInt((int) (timestamp / 1000000000L));
+    header.putInt((int) (nanoseconds ? timestamp % 1000000000L : timestamp % 1000000000L / 1000));
+    header.putInt(frame.length).putInt(frame.length);
+    write(header);
+    out.write(frame, 0, frame.length);
+    return this;
+  }
+
+  byte[] toByteArray() {
+    return out.toByteArray();
+  }
+
+  Path write(Path path) throws IOException {
+    return Files.write(path, toByteArray());
+  }
+
+  private void write(ByteBuffer buffer) {
+    out.write(buffer.array(), 0, buffer.position());
+  }
+
+  /**
+   * @return an Ethernet frame carrying an IPv4 TCP segment.
+   */
+  static byte[] tcp(int sourceHost, int sourcePort, int destinationHost, int destinationPort, int sequence, int flags, byte[] payload) {
+    ByteBuffer frame = ByteBuffer.allocate(14 + 20 + 20 + payload.length);
+    frame.put(new byte[12]).putShort((short) 0x0800);
+    frame.put((byte) 0x45).put((byte) 0).putShort((short) (20 + 20 + payload.length));
+    frame.putShort((short) 0).putShort((short) 0x4000);
+    frame.put((byte) 64).put((byte) 6).putShort((short) 0);
+    frame.putInt(0x0a000000 | sourceHost).putInt(0x0a000000 | destinationHost);
+    frame.putShort((short) sourcePort).putShort((short) destinationPort);
+    frame.putInt(sequence).putInt(0);
+    frame.put((byte) 0x50).put((byte) flags).putShort((short) 65535);
+    frame.putShort((short) 0).putShort((short) 0);
+    frame.put(payload);
+    return frame.array();
+  }
+}
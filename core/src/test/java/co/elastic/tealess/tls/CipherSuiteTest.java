@@ -0,0 +1,48 @@
+package co.elastic.tealess.tls;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CipherSuiteTest {
+  @Test
+  void testForValue() throws InvalidValue {
+    assertEquals(CipherSuite.TLS_NULL_WITH_NULL_NULL, CipherSuite.forValue((byte) 0x00, (byte) 0x00));
+    assertEquals(CipherSuite.TLS_EMPTY_RENEGOTIATION_INFO_SCSV, CipherSuite.forValue((byte) 0x00, (byte) 0xFF));
+    assertEquals(CipherSuite.TLS_FALLBACK_SCSV, CipherSuite.forValue((byte) 0x56, (byte) 0x00));
+    assertEquals(CipherSuite.TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256, CipherSuite.forValue((byte) 0xCC, (byte) 0xA8));
+    assertEquals(CipherSuite.TLS_RSA_PSK_WITH_CHACHA20_POLY1305_SHA256, CipherSuite.forValue((byte) 0xCC, (byte) 0xAE));
+  }
+
+  @Test
+  void testTLS13Suites() throws InvalidValue {
+    CipherSuite suite = CipherSuite.forValue((byte) 0x13, (byte) 0x02);
+    assertEquals(CipherSuite.TLS_AES_256_GCM_SHA384, suite);
+    assertTrue(suite.isTLS13());
+    assertEquals("ANY", suite.keyExchange());
+    assertFalse(CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256.isTLS13());
+    assertEquals("TLS 1.3", Version.TLS1_3.toString());
+    assertEquals("TLS 1.3 draft 23", new Version((byte) 0x7f, (byte) 23).toString());
+  }
+
+  @Test
+  void testForValueRejectsUnknownValues() {
+    // Unassigned second byte under a first byte that is in use.
+    assertThrows(InvalidValue.class, () -> CipherSuite.forValue((byte) 0xCC, (byte) 0xFF));
+    // First byte with no suites at all.
+    assertThrows(InvalidValue.class, () -> CipherSuite.forValue((byte) 0xFE, (byte) 0x00));
+  }
+
+  @Test
+  void testSingleByteLookups() throws InvalidValue {
+    assertEquals(ContentType.ApplicationData, ContentType.forValue((byte) 23));
+    assertEquals(HandshakeType.Finished, HandshakeType.forValue((byte) 20));
+    assertEquals(AlertDescription.HandshakeFailure, AlertDescription.forValue((byte) 40));
+    assertEquals(ClientCertificateType.ECDSAFixedECDH, ClientCertificateType.forValue((byte) 66));
+
+    assertThrows(InvalidValue.class, () -> ContentType.forValue((byte) 0x80));
+    assertThrows(InvalidValue.class, () -> HandshakeType.forValue((byte) 3));
+    assertThrows(InvalidValue.class, () -> AlertDescription.forValue((byte) 0xff));
+    assertThrows(InvalidValue.class, () -> ClientCertificateType.forValue((byte) 0));
+  }
+}
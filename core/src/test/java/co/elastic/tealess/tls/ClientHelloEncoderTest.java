@@ -0,0 +1,153 @@
+package co.elastic.tealess.tls;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientHelloEncoderTest {
+  private static final List<CipherSuite> suites = Arrays.asList(
+          CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256,
+          CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA);
+
+  private static ClientHello decode(ByteBuffer record) throws InvalidValue {
+    TLSPlaintext plaintext = TLSDecoder.decode(record);
+    assertEquals(ContentType.Handshake, plaintext.getContentType());
+    return (ClientHello) TLSDecoder.decodeHandshake(plaintext.getPayload());
+  }
+
+  /**
+   * @return the data of the first extension of the given type, or null if there is none.
+   */
+  private static ByteBuffer extension(ClientHello hello, int type) {
+    ByteBuffer extensions = hello.getExtensions();
+    while (extensions.hasRemaining()) {
+      int extensionType = extensions.getShort() & 0xffff;
+      int length = extensions.getShort() & 0xffff;
+      ByteBuffer data = extensions.slice();
+      data.limit(length);
+      extensions.position(extensions.position() + length);
+      if (extensionType == type) {
+        return data;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  void encodesADecodableClientHello() throws InvalidValue {
+    ClientHelloEncoder encoder = new ClientHelloEncoder().setCipherSuites(suites).setServerName("example.com");
+    ByteBuffer record = ByteBuffer.allocate(1024);
+    int length = encoder.encode(record);
+    assertEquals(encoder.length(), length);
+    assertEquals(length, record.position());
+    record.flip();
+
+    ClientHello hello = decode(record);
+    assertFalse(record.hasRemaining());
+    assertEquals(Version.TLS1_2, hello.getVersion());
+    assertEquals(suites, hello.getCipherSuites());
+    assertEquals(0, hello.getSession().length);
+    assertEquals(Collections.singletonList((byte) 0), hello.getCompressionMethods());
+
+    ByteBuffer serverName = extension(hello, 0);
+    assertNotNull(serverName);
+    byte[] name = new byte[serverName.remaining() - 5];
+    serverName.position(5);
+    serverName.get(name);
+    assertEquals("example.com", new String(name, java.nio.charset.StandardCharsets.US_ASCII));
+    assertNotNull(extension(hello, 10), "supported_groups");
+    assertNotNull(extension(hello, 13), "signature_algorithms");
+  }
+
+  @Test
+  void reusesOneBufferWithAFreshRandomEachTime() throws InvalidValue {
+    ClientHelloEncoder encoder = new ClientHelloEncoder().setCipherSuites(suites);
+    ByteBuffer buffer = ByteBuffer.allocate(encoder.length() * 2);
+    encoder.encode(buffer);
+    encoder.encode(buffer);
+    assertFalse(buffer.hasRemaining());
+    buffer.flip();
+
+    // The random follows the record header, the handshake header and the version.
+    int length = encoder.length();
+    byte[] firstRandom = Arrays.copyOfRange(buffer.array(), 11, 11 + 32);
+    byte[] secondRandom = Arrays.copyOfRange(buffer.array(), length + 11, length + 11 + 32);
+    assertFalse(Arrays.equals(firstRandom, secondRandom));
+
+    ClientHello first = decode(buffer);
+    ClientHello second = decode(buffer);
+    assertEquals(first.getCipherSuites(), second.getCipherSuites());
+  }
+
+  @Test
+  void overflowWritesNothing() {
+    ClientHelloEncoder encoder = new ClientHelloEncoder().setCipherSuites(suites);
+    ByteBuffer buffer = ByteBuffer.allocate(encoder.length() - 1);
+    assertThrows(BufferOverflowException.class, () -> encoder.encode(buffer));
+    assertEquals(0, buffer.position());
+  }
+
+  @Test
+  void olderVersionsOmitNewerExtensions() throws InvalidValue {
+    ClientHelloEncoder encoder = new ClientHelloEncoder().setCipherSuites(suites).setServerName("10.0.0.1");
+    ByteBuffer record = ByteBuffer.allocate(1024);
+
+    encoder.setVersion(Version.TLS1_0).encode(record);
+    record.flip();
+    ClientHello hello = decode(record);
+    assertEquals(Version.TLS1_0, hello.getVersion());
+    assertNull(extension(hello, 0), "IP addresses are not sent as server names");
+    assertNull(extension(hello, 13), "signature_algorithms is TLS 1.2 only");
+    assertNotNull(extension(hello, 10));
+
+    record.clear();
+    encoder.setVersion(Version.SSL3_0).encode(record);
+    record.flip();
+    assertEquals(0, decode(record).getExtensions().remaining());
+  }
+
+  @Test
+  void offersTLS13InSupportedVersions() throws InvalidValue {
+    ClientHelloEncoder encoder = new ClientHelloEncoder()
+            .setVersion(Version.TLS1_3)
+            .setCipherSuites(Collections.singletonList(CipherSuite.TLS_AES_128_GCM_SHA256))
+            .setServerName("example.com");
+    ByteBuffer record = ByteBuffer.allocate(1024);
+    encoder.encode(record);
+    record.flip();
+
+    ClientHello hello = decode(record);
+    assertEquals(Version.TLS1_2, hello.getVersion());
+    Extensions extensions = hello.getExtensionList();
+    assertEquals("example.com", ((ServerNameExtension) extensions.get(ExtensionType.ServerName)).getHostName());
+    SupportedVersionsExtension versions = (SupportedVersionsExtension) extensions.get(ExtensionType.SupportedVersions);
+    assertEquals(Collections.singletonList(Version.TLS1_3), versions.getVersions());
+    // No key shares, so a server that accepts the offer answers with a HelloRetryRequest.
+    assertTrue(((KeyShareExtension) extensions.get(ExtensionType.KeyShare)).getGroups().isEmpty());
+    assertTrue(extensions.contains(ExtensionType.SignatureAlgorithms));
+    assertTrue(extensions.contains(ExtensionType.SupportedGroups));
+  }
+
+  @Test
+  void requiresCipherSuites() {
+    assertThrows(IllegalStateException.class, () -> new ClientHelloEncoder().length());
+    assertThrows(IllegalArgumentException.class, () -> new ClientHelloEncoder().setCipherSuites(Collections.emptyList()));
+  }
+
+  @Test
+  void rejectsClientHelloLargerThanOneRecord() {
+    // 98 bytes of TLS 1.2 ClientHello without server_name, and 2 per suite, fill a 16384 byte record with 8143 suites.
+    ClientHelloEncoder encoder = new ClientHelloEncoder()
+            .setCipherSuites(Collections.nCopies(8143, CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA));
+    assertEquals(5 + (1 << 14), encoder.length());
+
+    encoder.setCipherSuites(Collections.nCopies(8144, CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA));
+    assertThrows(IllegalStateException.class, encoder::length);
+  }
+}
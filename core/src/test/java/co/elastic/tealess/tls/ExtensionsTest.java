@@ -0,0 +1,106 @@
+package co.elastic.tealess.tls;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtensionsTest {
+  private static Extensions extensions(HandshakeType context, int... block) {
+    ByteBuffer buffer = ByteBuffer.allocate(block.length);
+    for (int b : block) {
+      buffer.put((byte) b);
+    }
+    buffer.flip();
+    return new Extensions(buffer, context);
+  }
+
+  @Test
+  void testUnknownAndGreaseExtensionsAreKept() throws InvalidValue {
+    Extensions extensions = extensions(HandshakeType.ClientHello,
+            0x0A, 0x0A, 0, 0, // GREASE
+            0xff, 0x01, 0, 1, 0, // renegotiation_info
+            0x12, 0x34, 0, 2, 1, 2);
+    assertEquals(Arrays.asList(0x0A0A, 0xff01, 0x1234), extensions.getTypeValues());
+    assertTrue(extensions.contains(ExtensionType.RenegotiationInfo));
+    assertFalse(extensions.contains(ExtensionType.KeyShare));
+    assertNull(extensions.get(ExtensionType.KeyShare));
+
+    Extension unknown = extensions.getAll().get(2);
+    assertNull(unknown.getType());
+    assertEquals(2, unknown.getData().remaining());
+    assertEquals("unknown(0x0a0a)[0 bytes], RenegotiationInfo[1 bytes], unknown(0x1234)[2 bytes]",
+            extensions.toString());
+  }
+
+  @Test
+  void testTruncatedExtensionIsInvalid() {
+    Extensions extensions = extensions(HandshakeType.ClientHello, 0, 0, 0, 5, 0);
+    assertThrows(InvalidValue.class, extensions::size);
+  }
+
+  @Test
+  void testSupportedVersions() throws InvalidValue {
+    SupportedVersionsExtension offered = (SupportedVersionsExtension) extensions(HandshakeType.ClientHello,
+            0, 43, 0, 5, 4, 0x7f, 28, 3, 4).get(ExtensionType.SupportedVersions);
+    assertEquals(Arrays.asList(new Version((byte) 0x7f, (byte) 28), Version.TLS1_3), offered.getVersions());
+    assertNull(offered.getSelectedVersion());
+    assertEquals("SupportedVersions[TLS 1.3 draft 28, TLS 1.3]", offered.toString());
+
+    SupportedVersionsExtension selected = (SupportedVersionsExtension) extensions(HandshakeType.ServerHello,
+            0, 43, 0, 2, 3, 4).get(ExtensionType.SupportedVersions);
+    assertEquals(Version.TLS1_3, selected.getSelectedVersion());
+  }
+
+  @Test
+  void testKeyShare() throws InvalidValue {
+    KeyShareExtension client = (KeyShareExtension) extensions(HandshakeType.ClientHello,
+            0, 51, 0, 10, 0, 8, 0, 0x1d, 0, 4, 1, 2, 3, 4).get(ExtensionType.KeyShare);
+    assertEquals(Collections.singletonList(0x1d), client.getGroups());
+    assertEquals(Collections.singletonList(4), client.getKeyLengths());
+    assertFalse(client.isRetryRequest());
+
+    KeyShareExtension retry = (KeyShareExtension) extensions(HandshakeType.ServerHello,
+            0, 51, 0, 2, 0, 0x17).get(ExtensionType.KeyShare);
+    assertTrue(retry.isRetryRequest());
+    assertEquals(Collections.singletonList(0x17), retry.getGroups());
+    assertTrue(retry.getKeyLengths().isEmpty());
+  }
+
+  @Test
+  void testServerNameAndALPN() throws InvalidValue {
+    Extensions extensions = extensions(HandshakeType.ClientHello,
+            0, 0, 0, 8, 0, 6, 0, 0, 3, 'f', 'o', 'o',
+            0, 16, 0, 14, 0, 12, 2, 'h', '2', 8, 'h', 't', 't', 'p', '/', '1', '.', '1');
+    assertEquals("foo", ((ServerNameExtension) extensions.get(ExtensionType.ServerName)).getHostName());
+    ALPNExtension alpn = (ALPNExtension) extensions.get(ExtensionType.ApplicationLayerProtocolNegotiation);
+    assertEquals(Arrays.asList("h2", "http/1.1"), alpn.getProtocols());
+  }
+
+  @Test
+  void testStatusRequestAndSessionTicket() throws InvalidValue {
+    Extensions client = extensions(HandshakeType.ClientHello,
+            0, 5, 0, 5, 1, 0, 0, 0, 0,
+            0, 35, 0, 3, 7, 8, 9);
+    StatusRequestExtension request = (StatusRequestExtension) client.get(ExtensionType.StatusRequest);
+    assertEquals(StatusRequestExtension.OCSP, request.getStatusType());
+    assertFalse(request.isAcknowledgement());
+    SessionTicketExtension ticket = (SessionTicketExtension) client.get(ExtensionType.SessionTicket);
+    assertFalse(ticket.isEmpty());
+    assertArrayEquals(new byte[]{7, 8, 9}, ticket.getTicket());
+
+    Extensions server = extensions(HandshakeType.ServerHello, 0, 5, 0, 0, 0, 35, 0, 0);
+    assertTrue(((StatusRequestExtension) server.get(ExtensionType.StatusRequest)).isAcknowledgement());
+    assertTrue(((SessionTicketExtension) server.get(ExtensionType.SessionTicket)).isEmpty());
+  }
+
+  @Test
+  void testTrailingBytesAreInvalid() throws InvalidValue {
+    Extensions extensions = extensions(HandshakeType.ServerHello, 0, 43, 0, 3, 3, 4, 0);
+    assertEquals(1, extensions.size());
+    assertThrows(InvalidValue.class, () -> extensions.get(ExtensionType.SupportedVersions));
+  }
+}
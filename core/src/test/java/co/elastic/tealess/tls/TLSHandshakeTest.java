@@ -0,0 +1,149 @@
+package co.elastic.tealess.tls;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TLSHandshakeTest {
+  private static ByteBuffer message(int type, int... body) {
+    ByteBuffer buffer = ByteBuffer.allocate(4 + body.length);
+    buffer.put((byte) type);
+    buffer.put((byte) (body.length >> 16)).put((byte) (body.length >> 8)).put((byte) body.length);
+    for (int b : body) {
+      buffer.put((byte) b);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int[] hello(int... tail) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(3);
+    out.write(3);
+    out.write(new byte[32], 0, 32); // random
+    for (int b : tail) {
+      out.write(b);
+    }
+    byte[] bytes = out.toByteArray();
+    int[] result = new int[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      result[i] = bytes[i] & 0xff;
+    }
+    return result;
+  }
+
+  @Test
+  void testClientHello() throws InvalidValue {
+    ByteBuffer buffer = message(1, hello(
+            1, 0xAB, // session id
+            0, 6, 0xCC, 0xA8, 0x0A, 0x0A, 0x00, 0xFF, // cipher suites, including a GREASE value
+            1, 0, // compression methods
+            0, 4, 0xFF, 0x01, 0x00, 0x00 // extensions
+    ));
+    ClientHello hello = (ClientHello) TLSHandshake.parse(buffer);
+    assertFalse(buffer.hasRemaining());
+
+    assertEquals("TLS 1.2", hello.getVersion().toString());
+    assertArrayEquals(new byte[]{(byte) 0xAB}, hello.getSession());
+    assertEquals(3, hello.getCipherSuiteCount());
+    assertEquals(Arrays.asList(CipherSuite.TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256, CipherSuite.TLS_EMPTY_RENEGOTIATION_INFO_SCSV), hello.getCipherSuites());
+    assertEquals(Collections.singletonList((byte) 0), hello.getCompressionMethods());
+    assertEquals(4, hello.getExtensions().remaining());
+    assertArrayEquals(new byte[]{(byte) 0xFF, 0x01, 0x00, 0x00}, hello.getExtensionData());
+  }
+
+  @Test
+  void testClientHelloWithoutExtensions() throws InvalidValue {
+    ClientHello hello = (ClientHello) TLSHandshake.parse(message(1, hello(0, 0, 2, 0x00, 0xFF, 1, 0)));
+    assertEquals(0, hello.getSession().length);
+    assertEquals(0, hello.getExtensions().remaining());
+  }
+
+  @Test
+  void testTruncatedClientHelloIsInvalid() {
+    // Claims 4 bytes of cipher suites but carries 2.
+    assertThrows(InvalidValue.class, () -> TLSHandshake.parse(message(1, hello(0, 0, 4, 0x00, 0xFF))));
+  }
+
+  @Test
+  void testViewDoesNotCopy() throws InvalidValue {
+    ByteBuffer buffer = message(1, hello(0, 0, 2, 0x00, 0xFF, 1, 0));
+    ClientHello hello = (ClientHello) TLSHandshake.parse(buffer);
+    // Rewriting the underlying bytes changes what the view reports.
+    buffer.put(4 + 2 + 32 + 1 + 2, (byte) 0x0A);
+    assertEquals(Collections.emptyList(), hello.getCipherSuites());
+  }
+
+  @Test
+  void testServerHello() throws InvalidValue {
+    ServerHello hello = (ServerHello) TLSHandshake.parse(message(2, hello(0, 0xC0, 0x2F, 0)));
+    assertEquals(CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256, hello.getCipherSuite());
+    assertEquals(0, hello.getCompressionMethod());
+    assertEquals(0, hello.getExtensions().remaining());
+  }
+
+  @Test
+  void testTLS13ServerHello() throws InvalidValue {
+    ServerHello hello = (ServerHello) TLSHandshake.parse(message(2, hello(0, 0x13, 0x01, 0,
+            0, 6, 0, 43, 0, 2, 3, 4 // supported_versions
+    )));
+    assertEquals(Version.TLS1_2, hello.getVersion());
+    assertEquals(Version.TLS1_3, hello.getNegotiatedVersion());
+    assertFalse(hello.isHelloRetryRequest());
+    assertEquals(CipherSuite.TLS_AES_128_GCM_SHA256, hello.getCipherSuite());
+    assertEquals("ServerHello[TLS 1.3, TLS_AES_128_GCM_SHA256, keyex ANY]", hello.toString());
+  }
+
+  @Test
+  void testHelloRetryRequest() throws InvalidValue {
+    int[] body = hello(0, 0x13, 0x02, 0,
+            0, 12, 0, 43, 0, 2, 3, 4, 0, 51, 0, 2, 0, 0x1d // supported_versions, key_share asking for x25519
+    );
+    int[] random = {
+            0xCF, 0x21, 0xAD, 0x74, 0xE5, 0x9A, 0x61, 0x11, 0xBE, 0x1D, 0x8C, 0x02, 0x1E, 0x65, 0xB8, 0x91,
+            0xC2, 0xA2, 0x11, 0x16, 0x7A, 0xBB, 0x8C, 0x5E, 0x07, 0x9E, 0x09, 0xE2, 0xC8, 0xA8, 0x33, 0x9C};
+    System.arraycopy(random, 0, body, 2, random.length);
+    ServerHello hello = (ServerHello) TLSHandshake.parse(message(2, body));
+    assertTrue(hello.isHelloRetryRequest());
+    KeyShareExtension keyShare = (KeyShareExtension) hello.getExtensionList().get(ExtensionType.KeyShare);
+    assertTrue(keyShare.isRetryRequest());
+    assertEquals(Collections.singletonList(0x1d), keyShare.getGroups());
+    assertTrue(hello.toString().startsWith("HelloRetryRequest[TLS 1.3, "), hello::toString);
+  }
+
+  @Test
+  void testEncryptedExtensions() throws InvalidValue {
+    EncryptedExtensions message = (EncryptedExtensions) TLSHandshake.parse(message(8,
+            0, 9, 0, 16, 0, 5, 0, 3, 2, 'h', '2' // alpn
+    ));
+    ALPNExtension alpn = (ALPNExtension) message.getExtensionList().get(ExtensionType.ApplicationLayerProtocolNegotiation);
+    assertEquals(Collections.singletonList("h2"), alpn.getProtocols());
+  }
+
+  @Test
+  void testCertificateRequest() throws InvalidValue {
+    CertificateRequestMessage request = (CertificateRequestMessage) TLSHandshake.parse(message(13,
+            2, 1, 64, // certificate types
+            0, 2, 4, 1, // signature algorithms
+            0, 7, 0, 2, 0x30, 0x00, 0, 1, 0x30 // two distinguished names
+    ));
+    assertEquals(Arrays.asList(ClientCertificateType.RSASign, ClientCertificateType.ECDSASign), request.getClientCertificateTypes());
+    assertEquals(2, request.getCertificateAuthorities().size());
+    assertArrayEquals(new byte[]{0x30, 0x00}, request.getCertificateAuthorities().get(0));
+    assertArrayEquals(new byte[]{0x30}, request.getCertificateAuthorities().get(1));
+  }
+
+  @Test
+  void testCertificateMessageCountsWithoutParsing() throws InvalidValue {
+    // These entries are not valid X.509, but counting them does not require parsing.
+    CertificateMessage message = (CertificateMessage) TLSHandshake.parse(message(11,
+            0, 0, 9, 0, 0, 2, 0x30, 0x00, 0, 0, 1, 0x30));
+    assertEquals(2, message.getCertificateCount());
+    assertEquals("CertificateMessage[2 certificates]", message.toString());
+  }
+}
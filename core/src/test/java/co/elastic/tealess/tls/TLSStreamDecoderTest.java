@@ -0,0 +1,187 @@
+package co.elastic.tealess.tls;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TLSStreamDecoderTest {
+  private final List<TLSMessage> messages = new ArrayList<>();
+  private final TLSStreamDecoder decoder = new TLSStreamDecoder(messages::add);
+
+  private static byte[] record(ContentType contentType, byte[] payload) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(contentTypeValue(contentType));
+    out.write(3);
+    out.write(3);
+    out.write(payload.length >> 8);
+    out.write(payload.length & 0xff);
+    out.write(payload, 0, payload.length);
+    return out.toByteArray();
+  }
+
+  private static int contentTypeValue(ContentType contentType) {
+    switch (contentType) {
+      case ChangeCipherSpec:
+        return 20;
+      case Alert:
+        return 21;
+      case Handshake:
+        return 22;
+      case ApplicationData:
+        return 23;
+      default:
+        throw new IllegalArgumentException(contentType.toString());
+    }
+  }
+
+  private static byte[] handshake(int type, int bodyLength) {
+    byte[] message = new byte[4 + bodyLength];
+    message[0] = (byte) type;
+    message[1] = (byte) (bodyLength >> 16);
+    message[2] = (byte) (bodyLength >> 8);
+    message[3] = (byte) bodyLength;
+    for (int i = 4; i < message.length; i++) {
+      message[i] = (byte) i;
+    }
+    return message;
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      out.write(part, 0, part.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] range(byte[] b, int from, int to) {
+    byte[] result = new byte[to - from];
+    System.arraycopy(b, from, result, 0, result.length);
+    return result;
+  }
+
+  @Test
+  void testMultipleMessagesInOneRecord() throws InvalidValue {
+    byte[] stream = record(ContentType.Handshake, concat(handshake(16, 3), handshake(14, 0)));
+    decoder.feed(stream, 0, stream.length);
+
+    assertEquals(2, messages.size());
+    assertTrue(messages.get(0) instanceof ClientKeyExchange);
+    assertTrue(messages.get(1) instanceof ServerHelloDone);
+    assertTrue(decoder.isAtRecordBoundary());
+  }
+
+  @Test
+  void testMessageSplitAcrossRecordsFedOneByteAtATime() throws InvalidValue {
+    byte[] message = handshake(16, 300);
+    byte[] stream = concat(
+            record(ContentType.Handshake, range(message, 0, 2)),
+            record(ContentType.Handshake, range(message, 2, 200)),
+            record(ContentType.Handshake, range(message, 200, message.length)));
+
+    for (int i = 0; i < stream.length; i++) {
+      assertTrue(messages.isEmpty(), "Message emitted before its last byte was fed");
+      decoder.feed(stream, i, 1);
+    }
+
+    assertEquals(1, messages.size());
+    assertTrue(messages.get(0) instanceof ClientKeyExchange);
+    assertTrue(decoder.isAtRecordBoundary());
+  }
+
+  @Test
+  void testAlert() throws InvalidValue {
+    byte[] stream = record(ContentType.Alert, new byte[]{2, 40});
+    decoder.feed(stream, 0, 6);
+    assertTrue(messages.isEmpty());
+    assertFalse(decoder.isAtRecordBoundary());
+
+    decoder.feed(stream, 6, 1);
+    assertEquals(1, messages.size());
+    assertEquals("Alert[Fatal, HandshakeFailure]", messages.get(0).toString());
+  }
+
+  @Test
+  void testWarningAlert() throws InvalidValue {
+    byte[] stream = record(ContentType.Alert, new byte[]{1, 0});
+    decoder.feed(stream, 0, stream.length);
+    assertEquals("Alert[Warning, CloseNotify]", messages.get(0).toString());
+  }
+
+  @Test
+  void testRecordsAfterChangeCipherSpecAreNotDecoded() throws InvalidValue {
+    // After ChangeCipherSpec, this "handshake" is encrypted and must not be parsed as a ServerHelloDone.
+    byte[] stream = concat(
+            record(ContentType.ChangeCipherSpec, new byte[]{1}),
+            record(ContentType.Handshake, handshake(14, 0)),
+            record(ContentType.ApplicationData, new byte[100]));
+    decoder.feed(stream, 0, stream.length);
+
+    assertEquals(3, messages.size());
+    for (TLSMessage message : messages) {
+      assertTrue(message instanceof TLSPlaintext);
+      assertNull(((TLSPlaintext) message).getPayload());
+    }
+    assertEquals(ContentType.ChangeCipherSpec, ((TLSPlaintext) messages.get(0)).getContentType());
+    assertEquals(ContentType.Handshake, ((TLSPlaintext) messages.get(1)).getContentType());
+    assertEquals(ContentType.ApplicationData, ((TLSPlaintext) messages.get(2)).getContentType());
+  }
+
+  private static byte[] tls13ServerHello() {
+    byte[] hello = handshake(2, 2 + 32 + 1 + 3 + 2 + 6);
+    byte[] tail = {0, 0x13, 0x01, 0, 0, 6, 0, 43, 0, 2, 3, 4};
+    hello[4] = 3;
+    hello[5] = 3;
+    System.arraycopy(tail, 0, hello, 4 + 34, tail.length);
+    return hello;
+  }
+
+  @Test
+  void testTLS13ServerEncryptsAfterServerHello() throws InvalidValue {
+    // The compatibility ChangeCipherSpec comes after the ServerHello, and encryption has already begun.
+    byte[] stream = concat(
+            record(ContentType.Handshake, tls13ServerHello()),
+            record(ContentType.ChangeCipherSpec, new byte[]{1}),
+            record(ContentType.ApplicationData, new byte[50]));
+    decoder.feed(stream, 0, stream.length);
+
+    assertEquals(3, messages.size());
+    assertEquals(Version.TLS1_3, ((ServerHello) messages.get(0)).getNegotiatedVersion());
+    assertEquals(ContentType.ChangeCipherSpec, ((TLSPlaintext) messages.get(1)).getContentType());
+    assertEquals(ContentType.ApplicationData, ((TLSPlaintext) messages.get(2)).getContentType());
+  }
+
+  @Test
+  void testTLS13ClientChangeCipherSpecDoesNotStartEncryption() throws InvalidValue {
+    // After a HelloRetryRequest, a TLS 1.3 client may send ChangeCipherSpec and then its second ClientHello.
+    decoder.negotiated(Version.TLS1_3);
+    byte[] stream = concat(
+            record(ContentType.ChangeCipherSpec, new byte[]{1}),
+            record(ContentType.Handshake, handshake(16, 3)));
+    decoder.feed(stream, 0, stream.length);
+
+    assertEquals(2, messages.size());
+    assertTrue(messages.get(1) instanceof ClientKeyExchange);
+  }
+
+  @Test
+  void testOversizedHandshakeMessageFails() {
+    // A Certificate message claiming a body of 16 MiB - 1, which is never buffered.
+    byte[] stream = record(ContentType.Handshake, new byte[]{11, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0, 0});
+    assertThrows(InvalidValue.class, () -> decoder.feed(stream, 0, stream.length));
+    assertTrue(messages.isEmpty());
+  }
+
+  @Test
+  void testNonTLSStreamFails() {
+    byte[] stream = "GET / HTTP/1.1\r\n".getBytes();
+    assertThrows(InvalidValue.class, () -> decoder.feed(stream, 0, stream.length));
+    // The decoder stays failed.
+    assertThrows(InvalidValue.class, () -> decoder.feed(new byte[]{22}, 0, 1));
+    assertTrue(messages.isEmpty());
+  }
+}